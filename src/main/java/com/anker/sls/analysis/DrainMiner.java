@@ -0,0 +1,225 @@
+package com.anker.sls.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drain 日志模板挖掘
+ * 固定深度的解析树：第一层按分词数分组，之后 depth-2 层依次按前几个分词分组，叶子节点保存模板列表。
+ * 新日志沿树找到叶子后与叶子内的模板比较相似度（相同分词占比），达到阈值则并入该模板，否则新建模板。
+ * 含数字的分词预先视为变量。已计入的日志按指纹去重，同一行重复拉取不会重复计数。
+ * 非线程安全，由 {@link TemplateStore} 按日志库加锁调用。
+ */
+public class DrainMiner {
+
+    private final int depth;
+    private final double similarity;
+    private final int maxChildren;
+    private final int maxTemplates;
+    private final int maxHours;
+    private final int maxFingerprints;
+
+    /** 分词数 → 子树 */
+    private final Map<Integer, Node> root = new HashMap<>();
+    private final List<LogTemplate> templates = new ArrayList<>();
+    private final LinkedHashSet<Long> fingerprints = new LinkedHashSet<>();
+    private long lines;
+    private long duplicates;
+    private long unmatched;
+
+    public DrainMiner(int depth, double similarity, int maxChildren, int maxTemplates, int maxHours, int maxFingerprints) {
+        this.depth = Math.max(3, depth);
+        this.similarity = similarity;
+        this.maxChildren = Math.max(1, maxChildren);
+        this.maxTemplates = Math.max(1, maxTemplates);
+        this.maxHours = maxHours;
+        this.maxFingerprints = Math.max(0, maxFingerprints);
+    }
+
+    /**
+     * 计入一行日志
+     *
+     * @param fingerprint 日志指纹，已计入过的指纹直接跳过；为0表示不去重
+     * @return 日志所属模板；重复的日志或模板数已达上限时返回null
+     */
+    public LogTemplate add(String message, long time, long fingerprint) {
+        if (fingerprint != 0 && maxFingerprints > 0) {
+            if (!fingerprints.add(fingerprint)) {
+                duplicates++;
+                return null;
+            }
+            if (fingerprints.size() > maxFingerprints) {
+                Iterator<Long> it = fingerprints.iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        lines++;
+        String[] raw = tokenize(message);
+        String[] masked = new String[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            masked[i] = hasDigit(raw[i]) ? LogTemplate.WILDCARD : raw[i];
+        }
+        List<LogTemplate> leaf = leaf(masked);
+        LogTemplate best = null;
+        double bestSimilarity = -1;
+        int bestParams = -1;
+        for (LogTemplate template : leaf) {
+            String[] tokens = template.tokens();
+            int same = 0;
+            int params = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                if (LogTemplate.WILDCARD.equals(tokens[i])) {
+                    params++;
+                } else if (tokens[i].equals(masked[i])) {
+                    same++;
+                }
+            }
+            double sim = tokens.length == 0 ? 1.0 : (double) same / tokens.length;
+            if (sim > bestSimilarity || (sim == bestSimilarity && params > bestParams)) {
+                best = template;
+                bestSimilarity = sim;
+                bestParams = params;
+            }
+        }
+        if (best == null || bestSimilarity < similarity) {
+            if (templates.size() >= maxTemplates) {
+                unmatched++;
+                return null;
+            }
+            best = new LogTemplate(templates.size() + 1, masked.clone());
+            templates.add(best);
+            leaf.add(best);
+        }
+        best.add(masked, raw, time, maxHours);
+        return best;
+    }
+
+    public List<LogTemplate> getTemplates() {
+        return templates;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getUnmatched() {
+        return unmatched;
+    }
+
+    /**
+     * 沿解析树找到叶子：第一层为分词数，之后依次为前 depth-2 个分词，
+     * 变量分词或子节点数已达上限时走 &lt;*&gt; 分支
+     */
+    private List<LogTemplate> leaf(String[] tokens) {
+        Node node = root.get(tokens.length);
+        if (node == null) {
+            node = new Node();
+            root.put(tokens.length, node);
+        }
+        int levels = Math.min(depth - 2, tokens.length);
+        for (int i = 0; i < levels; i++) {
+            String key = tokens[i];
+            Node child = node.children.get(key);
+            if (child == null) {
+                if (!LogTemplate.WILDCARD.equals(key) && node.children.size() >= maxChildren) {
+                    key = LogTemplate.WILDCARD;
+                    child = node.children.get(key);
+                }
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(key, child);
+                }
+            }
+            node = child;
+        }
+        return node.templates;
+    }
+
+    /**
+     * 按空白分词
+     */
+    static String[] tokenize(String message) {
+        List<String> tokens = new ArrayList<>();
+        int n = message == null ? 0 : message.length();
+        int start = -1;
+        for (int i = 0; i < n; i++) {
+            if (Character.isWhitespace(message.charAt(i))) {
+                if (start >= 0) {
+                    tokens.add(message.substring(start, i));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(message.substring(start));
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static boolean hasDigit(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.isDigit(token.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 持久化格式：模板、统计和已计入的日志指纹
+     */
+    public Map<String, Object> toState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("lines", lines);
+        state.put("duplicates", duplicates);
+        state.put("unmatched", unmatched);
+        List<Map<String, Object>> templateStates = new ArrayList<>();
+        for (LogTemplate template : templates) {
+            templateStates.add(template.toState());
+        }
+        state.put("templates", templateStates);
+        state.put("fingerprints", new ArrayList<>(fingerprints));
+        return state;
+    }
+
+    /**
+     * 从持久化状态恢复，模板按各自的分词重新挂到解析树上
+     */
+    @SuppressWarnings("unchecked")
+    public void restore(Map<String, Object> state) {
+        lines = ((Number) state.getOrDefault("lines", 0)).longValue();
+        duplicates = ((Number) state.getOrDefault("duplicates", 0)).longValue();
+        unmatched = ((Number) state.getOrDefault("unmatched", 0)).longValue();
+        List<Map<String, Object>> templateStates = (List<Map<String, Object>>) state.get("templates");
+        if (templateStates != null) {
+            for (Map<String, Object> templateState : templateStates) {
+                LogTemplate template = LogTemplate.fromState(templateState);
+                templates.add(template);
+                leaf(template.tokens()).add(template);
+            }
+        }
+        List<Number> fingerprintStates = (List<Number>) state.get("fingerprints");
+        if (fingerprintStates != null) {
+            for (Number fingerprint : fingerprintStates) {
+                fingerprints.add(fingerprint.longValue());
+            }
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final List<LogTemplate> templates = new ArrayList<>(2);
+    }
+}
@@ -0,0 +1,464 @@
+package com.anker.sls.analysis;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地聚合：对已拉取的日志行做 group by、count、count distinct、top-k 和首末时间统计，不再请求SLS
+ * 分组key到下标、去重指纹都用基本类型的开放寻址哈希表保存，计数和时间保存在按下标索引的 long 数组中，
+ * 每行日志只有分组key一个字符串分配。非线程安全，每次统计新建实例。
+ */
+public class LogAggregator {
+
+    /** 虚拟字段：日志中的异常类，由 {@link StackTraceParser} 从日志内容解析 */
+    public static final String EXCEPTION_FIELD = "__exception__";
+
+    private static final String TIME_FIELD = "__time__";
+
+    /** 多个分组字段的值之间的分隔符 */
+    private static final char KEY_SEPARATOR = '\u0001';
+
+    /** 字段不存在时的占位，与空字符串区分 */
+    private static final String MISSING = "\u0000";
+
+    private final String[] groupBy;
+    private final String[] distinct;
+    private final Condition[] conditions;
+    private final String[] messageFields;
+    private final int maxGroups;
+    private final boolean needsException;
+
+    private final StringIntMap index = new StringIntMap();
+    private final LongHashSet seen = new LongHashSet();
+    private String[][] values = new String[64][];
+    private long[] counts = new long[64];
+    private long[] firstTimes = new long[64];
+    private long[] lastTimes = new long[64];
+    private long[] distinctCounts;
+    private int groups;
+
+    private long rows;
+    private long matched;
+    private long overflow;
+    private long firstTime = Long.MAX_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * @param groupBy       分组字段，为空时所有行为一组
+     * @param distinct      每组统计不同取值个数的字段
+     * @param filter        过滤条件，逗号分隔的 field=value 或 field!=value，为空时不过滤
+     * @param messageFields 解析 {@link #EXCEPTION_FIELD} 时取日志内容的字段，取法同 {@link TemplateStore}
+     * @param maxGroups     分组数上限，超过后新出现的分组不再统计
+     */
+    public LogAggregator(List<String> groupBy, List<String> distinct, String filter, String[] messageFields, int maxGroups) {
+        this.groupBy = groupBy == null ? new String[0] : groupBy.toArray(new String[0]);
+        this.distinct = distinct == null ? new String[0] : distinct.toArray(new String[0]);
+        this.conditions = Condition.parse(filter);
+        this.messageFields = messageFields == null ? new String[0] : messageFields;
+        this.maxGroups = Math.max(1, maxGroups);
+        this.distinctCounts = new long[64 * Math.max(1, this.distinct.length)];
+        boolean exception = Arrays.asList(this.groupBy).contains(EXCEPTION_FIELD)
+                || Arrays.asList(this.distinct).contains(EXCEPTION_FIELD);
+        for (Condition condition : conditions) {
+            exception |= EXCEPTION_FIELD.equals(condition.field);
+        }
+        this.needsException = exception;
+    }
+
+    /**
+     * 解析逗号分隔的字段列表
+     */
+    public static List<String> fields(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> fields = new ArrayList<>();
+        for (String field : text.split(",")) {
+            if (!field.trim().isEmpty() && !fields.contains(field.trim())) {
+                fields.add(field.trim());
+            }
+        }
+        return fields;
+    }
+
+    public void addAll(List<?> rows) {
+        for (Object row : rows) {
+            if (row instanceof Map) {
+                add((Map<?, ?>) row);
+            }
+        }
+    }
+
+    /**
+     * 计入一行日志
+     */
+    public void add(Map<?, ?> row) {
+        rows++;
+        String exception = needsException ? exceptionOf(row) : null;
+        for (Condition condition : conditions) {
+            if (!condition.matches(valueOf(row, condition.field, exception))) {
+                return;
+            }
+        }
+        String key = keyOf(row, exception);
+        int group = index.get(key);
+        if (group < 0) {
+            if (groups >= maxGroups) {
+                overflow++;
+                return;
+            }
+            group = newGroup(key, row, exception);
+        }
+        matched++;
+        counts[group]++;
+        long time = CommUtil.toLong(row.get(TIME_FIELD));
+        if (time > 0) {
+            firstTimes[group] = Math.min(firstTimes[group], time);
+            lastTimes[group] = Math.max(lastTimes[group], time);
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            String value = valueOf(row, distinct[i], exception);
+            if (value != null && seen.add(distinctFingerprint(group, i, value))) {
+                distinctCounts[group * distinct.length + i]++;
+            }
+        }
+    }
+
+    private String keyOf(Map<?, ?> row, String exception) {
+        if (groupBy.length == 1) {
+            String value = valueOf(row, groupBy[0], exception);
+            return value == null ? MISSING : value;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < groupBy.length; i++) {
+            if (i > 0) {
+                sb.append(KEY_SEPARATOR);
+            }
+            String value = valueOf(row, groupBy[i], exception);
+            sb.append(value == null ? MISSING : value);
+        }
+        return sb.toString();
+    }
+
+    private int newGroup(String key, Map<?, ?> row, String exception) {
+        int group = groups++;
+        if (group == counts.length) {
+            int capacity = counts.length * 2;
+            values = Arrays.copyOf(values, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            firstTimes = Arrays.copyOf(firstTimes, capacity);
+            lastTimes = Arrays.copyOf(lastTimes, capacity);
+            distinctCounts = Arrays.copyOf(distinctCounts, capacity * Math.max(1, distinct.length));
+        }
+        String[] groupValues = new String[groupBy.length];
+        for (int i = 0; i < groupBy.length; i++) {
+            groupValues[i] = valueOf(row, groupBy[i], exception);
+        }
+        values[group] = groupValues;
+        firstTimes[group] = Long.MAX_VALUE;
+        lastTimes[group] = Long.MIN_VALUE;
+        index.put(key, group);
+        return group;
+    }
+
+    private String exceptionOf(Map<?, ?> row) {
+        StackTraceParser.Trace trace = StackTraceParser.parse(TemplateStore.messageOf(row, messageFields),
+                Collections.emptyList(), 1);
+        return trace == null ? null : trace.getExceptionClass();
+    }
+
+    private static String valueOf(Map<?, ?> row, String field, String exception) {
+        if (EXCEPTION_FIELD.equals(field)) {
+            return exception;
+        }
+        Object value = row.get(field);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 去重指纹：分组下标、字段下标和取值的 64 位 FNV-1a
+     */
+    private static long distinctFingerprint(int group, int field, String value) {
+        return CommUtil.fnv1a(CommUtil.fnv1a(CommUtil.fnv1a(CommUtil.FNV_OFFSET_BASIS, group), field), value);
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public int getGroupCount() {
+        return groups;
+    }
+
+    /**
+     * 输出行数最多的 top 组，行数相同时先出现的分组在前
+     */
+    public Map<String, Object> toMap(int top) {
+        int[] order = topGroups(Math.max(0, top));
+        List<Map<String, Object>> items = new ArrayList<>(order.length);
+        for (int group : order) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            Map<String, Object> key = new LinkedHashMap<>();
+            for (int i = 0; i < groupBy.length; i++) {
+                key.put(groupBy[i], values[group][i]);
+            }
+            item.put("key", key);
+            item.put("count", counts[group]);
+            if (distinct.length > 0) {
+                Map<String, Object> distinctMap = new LinkedHashMap<>();
+                for (int i = 0; i < distinct.length; i++) {
+                    distinctMap.put(distinct[i], distinctCounts[group * distinct.length + i]);
+                }
+                item.put("distinct", distinctMap);
+            }
+            if (firstTimes[group] != Long.MAX_VALUE) {
+                item.put("firstTime", firstTimes[group]);
+                item.put("lastTime", lastTimes[group]);
+            }
+            items.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rows", rows);
+        result.put("matchedRows", matched);
+        result.put("groupBy", Arrays.asList(groupBy));
+        result.put("groupCount", groups);
+        result.put("overflowRows", overflow);
+        if (firstTime != Long.MAX_VALUE) {
+            result.put("firstTime", firstTime);
+            result.put("lastTime", lastTime);
+        }
+        result.put("groups", items);
+        return result;
+    }
+
+    /**
+     * 用大小为 top 的小顶堆选出行数最多的分组，按行数倒序返回下标
+     */
+    int[] topGroups(int top) {
+        int k = Math.min(top, groups);
+        int[] heap = new int[k];
+        int size = 0;
+        for (int group = 0; group < groups; group++) {
+            if (size < k) {
+                heap[size] = group;
+                siftUp(heap, size++);
+            } else if (k > 0 && before(group, heap[0])) {
+                heap[0] = group;
+                siftDown(heap, size);
+            }
+        }
+        int[] order = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            order[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+        }
+        return order;
+    }
+
+    /** 分组a是否排在分组b之前：行数多的在前，相同时下标小（先出现）的在前 */
+    private boolean before(int a, int b) {
+        return counts[a] != counts[b] ? counts[a] > counts[b] : a < b;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(heap[parent], heap[i])) {
+                break;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int child = left + 1 < size && before(heap[left], heap[left + 1]) ? left + 1 : left;
+            if (!before(heap[i], heap[child])) {
+                return;
+            }
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+    /**
+     * 过滤条件 field=value / field!=value，字段不存在时取值视为空字符串
+     */
+    private static final class Condition {
+        final String field;
+        final String value;
+        final boolean negate;
+
+        Condition(String field, String value, boolean negate) {
+            this.field = field;
+            this.value = value;
+            this.negate = negate;
+        }
+
+        boolean matches(String actual) {
+            return value.equals(actual == null ? "" : actual) != negate;
+        }
+
+        static Condition[] parse(String filter) {
+            if (filter == null || filter.trim().isEmpty()) {
+                return new Condition[0];
+            }
+            List<Condition> conditions = new ArrayList<>();
+            for (String part : filter.split(",")) {
+                if (part.trim().isEmpty()) {
+                    continue;
+                }
+                int eq = part.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("过滤条件格式应为 field=value 或 field!=value: " + part.trim());
+                }
+                boolean negate = part.charAt(eq - 1) == '!';
+                String field = part.substring(0, negate ? eq - 1 : eq).trim();
+                if (field.isEmpty()) {
+                    throw new IllegalArgumentException("过滤条件缺少字段名: " + part.trim());
+                }
+                conditions.add(new Condition(field, part.substring(eq + 1).trim(), negate));
+            }
+            return conditions.toArray(new Condition[0]);
+        }
+    }
+
+    /**
+     * 字符串到下标的开放寻址哈希表（线性探测），只增不删
+     */
+    static final class StringIntMap {
+        private String[] keys = new String[128];
+        private int[] slots = new int[128];
+        private int size;
+
+        int get(String key) {
+            int mask = keys.length - 1;
+            for (int i = spread(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+                String k = keys[i];
+                if (k == null) {
+                    return -1;
+                }
+                if (k.equals(key)) {
+                    return slots[i];
+                }
+            }
+        }
+
+        void put(String key, int value) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = spread(key.hashCode()) & mask;
+            while (keys[i] != null && !keys[i].equals(key)) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == null) {
+                size++;
+            }
+            keys[i] = key;
+            slots[i] = value;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new String[oldKeys.length * 2];
+            slots = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = spread(oldKeys[j].hashCode()) & mask;
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    slots[i] = oldSlots[j];
+                }
+            }
+        }
+
+        private static int spread(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * long 的开放寻址哈希集合（线性探测），0 作为空槽，值为0的元素单独记录
+     */
+    static final class LongHashSet {
+        private long[] table = new long[256];
+        private int size;
+        private boolean containsZero;
+
+        boolean add(long value) {
+            if (value == 0) {
+                boolean added = !containsZero;
+                containsZero = true;
+                return added;
+            }
+            if (size * 2 >= table.length) {
+                resize();
+            }
+            if (insert(table, value)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            for (int i = spread(value) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == 0) {
+                    table[i] = value;
+                    return true;
+                }
+                if (table[i] == value) {
+                    return false;
+                }
+            }
+        }
+
+        private void resize() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            for (long value : old) {
+                if (value != 0) {
+                    insert(table, value);
+                }
+            }
+        }
+
+        private static int spread(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.anker.sls.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 日志模板：一组结构相同的日志，变化的位置用 {@value #WILDCARD} 表示
+ * 记录命中次数、每个变量位置的取值示例，以及按小时统计的命中次数，用于按时间范围输出模板。
+ */
+public class LogTemplate {
+
+    public static final String WILDCARD = "<*>";
+
+    /** 每个变量位置保留的取值示例数 */
+    static final int MAX_SAMPLES = 3;
+    /** 记录取值示例的变量位置数 */
+    static final int MAX_SAMPLE_POSITIONS = 8;
+
+    private final int id;
+    private final String[] tokens;
+    private long count;
+    private final Map<Integer, List<String>> samples = new TreeMap<>();
+    /** 小时起点（秒）→ 命中次数 */
+    private final TreeMap<Long, Long> hourly = new TreeMap<>();
+
+    LogTemplate(int id, String[] tokens) {
+        this.id = id;
+        this.tokens = tokens;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String getTemplate() {
+        return String.join(" ", tokens);
+    }
+
+    String[] tokens() {
+        return tokens;
+    }
+
+    /**
+     * 计入一行日志：与模板不同的位置变为变量，并记录变量取值示例
+     *
+     * @param masked 脱敏后的分词
+     * @param raw 原始分词
+     * @param maxHours 保留的小时统计数，超过时丢弃最早的
+     */
+    void add(String[] masked, String[] raw, long time, int maxHours) {
+        count++;
+        for (int i = 0; i < tokens.length; i++) {
+            if (!WILDCARD.equals(tokens[i]) && !tokens[i].equals(masked[i])) {
+                tokens[i] = WILDCARD;
+            }
+            if (WILDCARD.equals(tokens[i])) {
+                sample(i, raw[i]);
+            }
+        }
+        if (time > 0) {
+            hourly.merge(time - time % 3600, 1L, Long::sum);
+            while (hourly.size() > Math.max(1, maxHours)) {
+                hourly.pollFirstEntry();
+            }
+        }
+    }
+
+    private void sample(int position, String value) {
+        List<String> values = samples.get(position);
+        if (values == null) {
+            if (samples.size() >= MAX_SAMPLE_POSITIONS) {
+                return;
+            }
+            values = new ArrayList<>(MAX_SAMPLES);
+            samples.put(position, values);
+        }
+        if (values.size() < MAX_SAMPLES && !values.contains(value)) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * [from, to) 内的命中次数，按整小时统计；from、to 为空时返回总次数
+     */
+    long countBetween(Long from, Long to) {
+        if (from == null && to == null) {
+            return count;
+        }
+        long lower = from == null ? Long.MIN_VALUE : from - from % 3600;
+        long upper = to == null ? Long.MAX_VALUE : to;
+        long total = 0;
+        for (long n : hourly.subMap(lower, true, upper, false).values()) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 输出模板，count 为时间范围内的命中次数
+     */
+    Map<String, Object> toMap(long rangeCount) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("template", getTemplate());
+        result.put("count", rangeCount);
+        result.put("totalCount", count);
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<String>> e : samples.entrySet()) {
+            if (WILDCARD.equals(tokens[e.getKey()])) {
+                variables.put(String.valueOf(e.getKey()), e.getValue());
+            }
+        }
+        result.put("variableSamples", variables);
+        if (!hourly.isEmpty()) {
+            result.put("firstHour", hourly.firstKey());
+            result.put("lastHour", hourly.lastKey());
+        }
+        return result;
+    }
+
+    /**
+     * 持久化格式
+     */
+    Map<String, Object> toState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("id", id);
+        state.put("tokens", Arrays.asList(tokens));
+        state.put("count", count);
+        Map<String, List<String>> sampleState = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<String>> e : samples.entrySet()) {
+            sampleState.put(String.valueOf(e.getKey()), e.getValue());
+        }
+        state.put("samples", sampleState);
+        Map<String, Long> hourState = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> e : hourly.entrySet()) {
+            hourState.put(String.valueOf(e.getKey()), e.getValue());
+        }
+        state.put("hourly", hourState);
+        return state;
+    }
+
+    @SuppressWarnings("unchecked")
+    static LogTemplate fromState(Map<String, Object> state) {
+        List<String> tokenList = (List<String>) state.get("tokens");
+        LogTemplate template = new LogTemplate(((Number) state.get("id")).intValue(), tokenList.toArray(new String[0]));
+        template.count = ((Number) state.get("count")).longValue();
+        Map<String, List<String>> sampleState = (Map<String, List<String>>) state.get("samples");
+        if (sampleState != null) {
+            for (Map.Entry<String, List<String>> e : sampleState.entrySet()) {
+                template.samples.put(Integer.valueOf(e.getKey()), new ArrayList<>(e.getValue()));
+            }
+        }
+        Map<String, Number> hourState = (Map<String, Number>) state.get("hourly");
+        if (hourState != null) {
+            for (Map.Entry<String, Number> e : hourState.entrySet()) {
+                template.hourly.put(Long.valueOf(e.getKey()), e.getValue().longValue());
+            }
+        }
+        return template;
+    }
+}
@@ -0,0 +1,147 @@
+package com.anker.sls.analysis;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 异常分组：按 {@link StackTraceParser} 计算的指纹合并同一种失败
+ * 每组记录次数、首次/末次出现时间、第一次出现时的消息和示例日志位置，按次数倒序输出，
+ * 用一份去重后的失败列表代替逐条返回原始堆栈。非线程安全，每次统计新建实例。
+ */
+public class StackTraceGrouper {
+
+    private static final String TIME_FIELD = "__time__";
+    private static final String PACK_ID_FIELD = "__tag__:__pack_id__";
+    private static final String PACK_META_FIELD = "__pack_meta__";
+
+    private final List<String> appPackages;
+    private final int maxFrames;
+    private final int maxGroups;
+    private final int maxExamples;
+
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+    private long lines;
+    private long traces;
+    private long overflow;
+
+    public StackTraceGrouper(List<String> appPackages, int maxFrames, int maxGroups, int maxExamples) {
+        this.appPackages = appPackages;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.maxGroups = Math.max(1, maxGroups);
+        this.maxExamples = Math.max(0, maxExamples);
+    }
+
+    /**
+     * 计入一行日志
+     *
+     * @param row 原始日志行，用于记录示例位置，可为空
+     * @return 解析出的异常，不含异常或分组数已达上限时返回null
+     */
+    public StackTraceParser.Trace add(String content, long time, Map<?, ?> row) {
+        lines++;
+        StackTraceParser.Trace trace = StackTraceParser.parse(content, appPackages, maxFrames);
+        if (trace == null) {
+            return null;
+        }
+        traces++;
+        Group group = groups.get(trace.fingerprint);
+        if (group == null) {
+            if (groups.size() >= maxGroups) {
+                overflow++;
+                return null;
+            }
+            group = new Group(trace);
+            groups.put(trace.fingerprint, group);
+        }
+        group.add(time, row, maxExamples);
+        return trace;
+    }
+
+    /**
+     * 计入一行查询结果，日志内容取法同 {@link TemplateStore}
+     */
+    public StackTraceParser.Trace add(Map<?, ?> row, String[] messageFields) {
+        return add(TemplateStore.messageOf(row, messageFields), CommUtil.toLong(row.get(TIME_FIELD)), row);
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getTraces() {
+        return traces;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * 输出次数最多的 top 组
+     */
+    public Map<String, Object> toMap(int top) {
+        List<Group> sorted = new ArrayList<>(groups.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < sorted.size() && i < Math.max(0, top); i++) {
+            items.add(sorted.get(i).toMap());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("lines", lines);
+        result.put("traces", traces);
+        result.put("groupCount", groups.size());
+        result.put("overflowTraces", overflow);
+        result.put("groups", items);
+        return result;
+    }
+
+    private static final class Group {
+        final StackTraceParser.Trace first;
+        long count;
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+        final List<Map<String, Object>> examples = new ArrayList<>();
+
+        Group(StackTraceParser.Trace first) {
+            this.first = first;
+        }
+
+        void add(long time, Map<?, ?> row, int maxExamples) {
+            count++;
+            if (time > 0) {
+                firstTime = Math.min(firstTime, time);
+                lastTime = Math.max(lastTime, time);
+            }
+            Object packId = row == null ? null : row.get(PACK_ID_FIELD);
+            if (packId != null && examples.size() < maxExamples) {
+                Map<String, Object> example = new LinkedHashMap<>();
+                example.put("pack_id", packId);
+                example.put("pack_meta", row.get(PACK_META_FIELD));
+                examples.add(example);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("fingerprint", first.fingerprint);
+            map.put("count", count);
+            map.put("exception", first.exceptionClass);
+            map.put("message", first.message);
+            if (first.rootCause != null) {
+                map.put("rootCause", first.rootCause);
+                map.put("rootMessage", first.rootMessage);
+            }
+            map.put("frames", first.topFrames);
+            if (firstTime != Long.MAX_VALUE) {
+                map.put("firstTime", firstTime);
+                map.put("lastTime", lastTime);
+            }
+            map.put("examples", examples);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.anker.sls.analysis;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java异常堆栈解析与指纹
+ * 从日志内容中找出第一段异常：异常类、消息、调用帧，以及 Caused by 链中最底层的异常类。
+ * 指纹由异常类、根因异常类和前几个业务帧（类名.方法名）计算，去掉行号以及 lambda 序号、
+ * CGLIB/JDK 动态代理、反射访问器等每次部署都可能变化的部分，代码行号变动或重新部署后指纹不变。
+ */
+public final class StackTraceParser {
+
+    private static final String CAUSED_BY = "Caused by: ";
+    private static final String SUPPRESSED = "Suppressed: ";
+
+    /** 不计入指纹的框架帧前缀 */
+    private static final String[] NOISE_PREFIXES = {
+            "java.", "javax.", "jdk.", "sun.", "com.sun.", "org.springframework.", "org.apache.", "io.netty.",
+            "com.alibaba.druid.", "org.mybatis.", "com.baomidou.", "feign.", "reactor.", "kotlin.", "scala."
+    };
+
+    private StackTraceParser() {
+    }
+
+    /**
+     * 解析日志内容中的异常
+     *
+     * @param appPackages 业务包前缀，为空时除框架帧外都视为业务帧
+     * @param maxFrames 计入指纹的帧数
+     * @return 解析结果，内容中没有异常时返回null
+     */
+    public static Trace parse(String content, List<String> appPackages, int maxFrames) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        Trace trace = null;
+        boolean inTop = false;
+        int start = 0;
+        int n = content.length();
+        while (start <= n) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = n;
+            }
+            String line = content.substring(start, end).trim();
+            start = end + 1;
+            if (line.startsWith("at ")) {
+                if (trace != null && inTop) {
+                    Frame frame = Frame.parse(line.substring(3));
+                    if (frame != null) {
+                        trace.frames.add(frame);
+                    }
+                }
+                continue;
+            }
+            if (line.startsWith("...") || line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith(CAUSED_BY)) {
+                String[] header = header(line.substring(CAUSED_BY.length()));
+                if (trace != null && header != null) {
+                    trace.rootCause = header[0];
+                    trace.rootMessage = header[1];
+                    inTop = false;
+                }
+                continue;
+            }
+            if (line.startsWith(SUPPRESSED)) {
+                inTop = false;
+                continue;
+            }
+            if (trace == null) {
+                String[] header = header(line);
+                if (header != null) {
+                    trace = new Trace(header[0], header[1]);
+                    inTop = true;
+                }
+            }
+        }
+        if (trace != null) {
+            trace.fingerprint = fingerprint(trace, appPackages, maxFrames);
+        }
+        return trace;
+    }
+
+    /**
+     * 解析异常头 "com.foo.BarException: message"，异常类可能出现在日志前缀之后
+     *
+     * @return [异常类, 消息]，不是异常头时返回null
+     */
+    static String[] header(String line) {
+        int colon = line.indexOf(": ");
+        String head = colon < 0 ? line : line.substring(0, colon);
+        // 日志前缀中异常类之前的部分以空白分隔，取最后一个词
+        int space = head.lastIndexOf(' ');
+        String className = space < 0 ? head : head.substring(space + 1);
+        if (!isExceptionClass(className)) {
+            return null;
+        }
+        return new String[]{className, colon < 0 ? "" : line.substring(colon + 2).trim()};
+    }
+
+    private static boolean isExceptionClass(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) && c != '.') {
+                return false;
+            }
+        }
+        String simple = name.substring(dot + 1);
+        return simple.endsWith("Exception") || simple.endsWith("Error") || simple.endsWith("Throwable")
+                || simple.contains("Exception$");
+    }
+
+    /**
+     * 计算指纹：优先取业务帧，没有业务帧时取非框架帧，再没有时取前几帧
+     */
+    static String fingerprint(Trace trace, List<String> appPackages, int maxFrames) {
+        List<String> selected = new ArrayList<>();
+        for (Frame frame : trace.frames) {
+            if (selected.size() >= maxFrames) {
+                break;
+            }
+            if (isApplication(frame.className, appPackages)) {
+                selected.add(frame.signature());
+            }
+        }
+        if (selected.isEmpty()) {
+            for (int i = 0; i < trace.frames.size() && selected.size() < maxFrames; i++) {
+                selected.add(trace.frames.get(i).signature());
+            }
+        }
+        trace.topFrames = selected;
+        long hash = mix(CommUtil.FNV_OFFSET_BASIS, trace.exceptionClass);
+        hash = mix(hash, trace.rootCause == null ? "" : trace.rootCause);
+        for (String frame : selected) {
+            hash = mix(hash, frame);
+        }
+        return String.format("%016x", hash);
+    }
+
+    private static boolean isApplication(String className, List<String> appPackages) {
+        if (appPackages != null && !appPackages.isEmpty()) {
+            for (String prefix : appPackages) {
+                if (className.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (String prefix : NOISE_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mix(long hash, String text) {
+        return CommUtil.fnv1a(CommUtil.fnv1a(hash, text), 0x1f);
+    }
+
+    /**
+     * 去掉类名、方法名中生成的部分：
+     * Foo$$EnhancerBySpringCGLIB$$1a2b → Foo，Foo$$Lambda$12/0x... → Foo，$Proxy123 → $Proxy，
+     * GeneratedMethodAccessor12 → GeneratedMethodAccessor，lambda$pay$3 → lambda$pay，Foo$1 → Foo$
+     */
+    static String normalize(String name) {
+        int generated = name.indexOf("$$");
+        if (generated > 0) {
+            name = name.substring(0, generated);
+        }
+        StringBuilder sb = new StringBuilder(name.length());
+        int i = 0;
+        while (i < name.length()) {
+            char c = name.charAt(i);
+            if (Character.isDigit(c) && i > 0 && !Character.isDigit(name.charAt(i - 1))
+                    && (name.charAt(i - 1) == '$' || isGeneratedPrefix(sb))) {
+                // 跳过生成的序号
+                while (i < name.length() && Character.isDigit(name.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) == '$' && endsWithLambda(sb)) {
+                    sb.setLength(sb.length() - 1);
+                }
+                continue;
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isGeneratedPrefix(StringBuilder sb) {
+        return endsWith(sb, "$Proxy") || endsWith(sb, "GeneratedMethodAccessor")
+                || endsWith(sb, "GeneratedConstructorAccessor") || endsWith(sb, "GeneratedSerializationConstructorAccessor");
+    }
+
+    private static boolean endsWithLambda(StringBuilder sb) {
+        int dollar = sb.lastIndexOf("lambda$");
+        return dollar >= 0 && sb.indexOf("$", dollar + "lambda$".length()) == sb.length() - 1;
+    }
+
+    private static boolean endsWith(StringBuilder sb, String suffix) {
+        int offset = sb.length() - suffix.length();
+        return offset >= 0 && sb.indexOf(suffix, offset) == offset;
+    }
+
+    /**
+     * 解析结果
+     */
+    public static final class Trace {
+        final String exceptionClass;
+        final String message;
+        final List<Frame> frames = new ArrayList<>();
+        String rootCause;
+        String rootMessage;
+        String fingerprint;
+        List<String> topFrames = Collections.emptyList();
+
+        Trace(String exceptionClass, String message) {
+            this.exceptionClass = exceptionClass;
+            this.message = message;
+        }
+
+        public String getExceptionClass() {
+            return exceptionClass;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getRootCause() {
+            return rootCause;
+        }
+
+        public String getRootMessage() {
+            return rootMessage;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public List<String> getTopFrames() {
+            return topFrames;
+        }
+
+        public List<Frame> getFrames() {
+            return frames;
+        }
+    }
+
+    /**
+     * 调用帧
+     */
+    public static final class Frame {
+        final String className;
+        final String method;
+        final String location;
+
+        Frame(String className, String method, String location) {
+            this.className = className;
+            this.method = method;
+            this.location = location;
+        }
+
+        /**
+         * 解析 "com.foo.Bar.pay(Bar.java:12)"，可能带模块前缀 "java.base/" 或 "app//"；
+         * lambda 类名中的 "/0x..." 不是模块前缀，随类名一起在 {@link #normalize} 中去掉
+         */
+        static Frame parse(String text) {
+            int paren = text.indexOf('(');
+            String qualified = paren < 0 ? text : text.substring(0, paren);
+            int slash = qualified.indexOf('/');
+            if (slash >= 0 && qualified.lastIndexOf('$', slash) < 0) {
+                while (slash < qualified.length() && qualified.charAt(slash) == '/') {
+                    slash++;
+                }
+                qualified = qualified.substring(slash);
+            }
+            int dot = qualified.lastIndexOf('.');
+            if (dot <= 0) {
+                return null;
+            }
+            String location = paren < 0 ? "" : text.substring(paren + 1, text.endsWith(")") ? text.length() - 1 : text.length());
+            return new Frame(qualified.substring(0, dot), qualified.substring(dot + 1), location);
+        }
+
+        /**
+         * 计入指纹的部分：去掉行号和生成部分后的 类名.方法名
+         */
+        String signature() {
+            return normalize(className) + "." + normalize(method);
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.anker.sls.analysis;
+
+import com.anker.sls.config.SlsAnalysisConfig;
+import com.anker.sls.util.CommUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志模板存储
+ * 每个（系统, 日志库）一个 {@link DrainMiner}，查询结果经过时增量计入，已计入的日志按指纹跳过。
+ * 配置了持久化目录时，模板按日志库保存为JSON文件：首次使用某个日志库时加载，之后定期保存有变化的日志库，
+ * 重启后继续在已有模板上计入新日志。
+ */
+@Slf4j
+@Component
+public class TemplateStore {
+
+    private static final String TIME_FIELD = "__time__";
+    private static final String PACK_ID_FIELD = "__tag__:__pack_id__";
+    private static final String PACK_META_FIELD = "__pack_meta__";
+    private static final String SOURCE_FIELD = "__logstore__";
+
+    @Autowired
+    private SlsAnalysisConfig analysisConfig;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** 系统|日志库 → 模板，按访问顺序排列 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private ScheduledExecutorService saver;
+
+    @PostConstruct
+    public void init() {
+        if (directory() == null) {
+            return;
+        }
+        saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sls-template-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, analysisConfig.getTemplateSaveIntervalSeconds());
+        saver.scheduleWithFixedDelay(this::saveDirty, interval, interval, TimeUnit.SECONDS);
+        log.info("[TemplateStore] 状态=初始化 目录={} 保存间隔={}s", directory().getAbsolutePath(), interval);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (saver != null) {
+            saver.shutdownNow();
+        }
+        saveDirty();
+    }
+
+    /**
+     * 计入查询结果中的日志，多日志库结果按 __logstore__ 分别计入
+     */
+    public void observe(String systemName, String logstore, Map<String, Object> result) {
+        if (!analysisConfig.isTemplateEnabled() || result == null || !(result.get("data") instanceof List)) {
+            return;
+        }
+        Map<String, List<Map<?, ?>>> bySource = new LinkedHashMap<>();
+        for (Object row : (List<?>) result.get("data")) {
+            if (row instanceof Map) {
+                Object source = ((Map<?, ?>) row).get(SOURCE_FIELD);
+                String target = source == null ? logstore : source.toString();
+                bySource.computeIfAbsent(target, k -> new ArrayList<>()).add((Map<?, ?>) row);
+            }
+        }
+        for (Map.Entry<String, List<Map<?, ?>>> e : bySource.entrySet()) {
+            ingest(systemName, e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * 计入一批日志
+     *
+     * @return 新计入的行数（不含重复的行）
+     */
+    public int ingest(String systemName, String logstore, List<? extends Map<?, ?>> rows) {
+        if (logstore == null || rows.isEmpty()) {
+            return 0;
+        }
+        Entry entry = entryOf(systemName, logstore);
+        String[] fields = messageFields();
+        int added = 0;
+        synchronized (entry) {
+            for (Map<?, ?> row : rows) {
+                String message = messageOf(row, fields);
+                Object time = row.get(TIME_FIELD);
+                long fingerprint = fingerprint(time, row.get(PACK_ID_FIELD), row.get(PACK_META_FIELD), message);
+                long before = entry.miner.getLines();
+                entry.miner.add(message, CommUtil.toLong(time), fingerprint);
+                if (entry.miner.getLines() > before) {
+                    added++;
+                }
+            }
+            entry.dirty |= added > 0;
+        }
+        return added;
+    }
+
+    /**
+     * 输出日志库在 [from, to) 内出现过的模板，按时间范围内的条数倒序
+     *
+     * @param from 起始时间（秒），为空时不限
+     * @param to 结束时间（秒），为空时不限
+     */
+    public Map<String, Object> templates(String systemName, String logstore, Long from, Long to, int top) {
+        Entry entry = entryOf(systemName, logstore);
+        List<Map<String, Object>> items = new ArrayList<>();
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (entry) {
+            List<long[]> counts = new ArrayList<>();
+            List<LogTemplate> templates = entry.miner.getTemplates();
+            for (int i = 0; i < templates.size(); i++) {
+                long count = templates.get(i).countBetween(from, to);
+                if (count > 0) {
+                    counts.add(new long[]{i, count});
+                }
+            }
+            counts.sort((a, b) -> Long.compare(b[1], a[1]));
+            long total = 0;
+            for (long[] count : counts) {
+                total += count[1];
+            }
+            for (int i = 0; i < counts.size() && i < Math.max(0, top); i++) {
+                items.add(templates.get((int) counts.get(i)[0]).toMap(counts.get(i)[1]));
+            }
+            result.put("logstore", logstore);
+            result.put("templateCount", counts.size());
+            result.put("lineCount", total);
+            result.put("minedLines", entry.miner.getLines());
+            result.put("skippedDuplicates", entry.miner.getDuplicates());
+            result.put("unmatchedLines", entry.miner.getUnmatched());
+        }
+        result.put("templates", items);
+        return result;
+    }
+
+    private synchronized Entry entryOf(String systemName, String logstore) {
+        String key = systemName + "|" + logstore;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(systemName, logstore, newMiner());
+            load(entry);
+            entries.put(key, entry);
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > Math.max(1, analysisConfig.getTemplateMaxLogstores()) && it.hasNext()) {
+                Entry evicted = it.next();
+                save(evicted);
+                it.remove();
+            }
+        }
+        return entry;
+    }
+
+    private DrainMiner newMiner() {
+        return new DrainMiner(analysisConfig.getTemplateDepth(), analysisConfig.getTemplateSimilarity(),
+                analysisConfig.getTemplateMaxChildren(), analysisConfig.getTemplateMaxTemplates(),
+                analysisConfig.getTemplateMaxHours(), analysisConfig.getTemplateMaxFingerprints());
+    }
+
+    private void saveDirty() {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        for (Entry entry : snapshot) {
+            save(entry);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(Entry entry) {
+        File file = fileOf(entry);
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        try {
+            Map<String, Object> state = objectMapper.readValue(file, Map.class);
+            entry.miner.restore(state);
+            log.info("[TemplateStore] 状态=加载 日志库={} 模板数={}", entry.logstore, entry.miner.getTemplates().size());
+        } catch (Exception e) {
+            log.warn("[TemplateStore] 状态=加载失败 文件={} 原因={}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 有变化时写入临时文件后替换，避免保存中途退出留下不完整的文件
+     */
+    private void save(Entry entry) {
+        File file = fileOf(entry);
+        if (file == null) {
+            return;
+        }
+        try {
+            byte[] bytes;
+            synchronized (entry) {
+                if (!entry.dirty) {
+                    return;
+                }
+                bytes = objectMapper.writeValueAsBytes(entry.miner.toState());
+                entry.dirty = false;
+            }
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IllegalStateException("无法创建目录 " + parent);
+            }
+            File tmp = new File(parent, file.getName() + ".tmp");
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            log.warn("[TemplateStore] 状态=保存失败 日志库={} 原因={}", entry.logstore, e.getMessage());
+        }
+    }
+
+    private File directory() {
+        String dir = analysisConfig.getTemplateDir();
+        return dir == null || dir.trim().isEmpty() ? null : new File(dir.trim());
+    }
+
+    private File fileOf(Entry entry) {
+        File dir = directory();
+        if (dir == null) {
+            return null;
+        }
+        try {
+            return new File(dir, URLEncoder.encode(entry.systemName + "|" + entry.logstore, "UTF-8") + ".json");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String[] messageFields() {
+        String fields = analysisConfig.getTemplateMessageFields();
+        return fields == null ? new String[0] : fields.split("\\s*,\\s*");
+    }
+
+    /**
+     * 取日志内容：第一个存在的内容字段，否则拼接所有非系统字段
+     */
+    static String messageOf(Map<?, ?> row, String[] fields) {
+        for (String field : fields) {
+            Object value = field.isEmpty() ? null : row.get(field);
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<?, ?> e : row.entrySet()) {
+            String name = String.valueOf(e.getKey());
+            if (!name.startsWith("__")) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(name).append('=').append(e.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 64位 FNV-1a 指纹
+     */
+    static long fingerprint(Object... parts) {
+        long hash = CommUtil.FNV_OFFSET_BASIS;
+        for (Object part : parts) {
+            // 各部分之间混入分隔符，避免 ("ab", "c") 与 ("a", "bc") 相同
+            hash = CommUtil.fnv1a(CommUtil.fnv1a(hash, String.valueOf(part)), 0x1f);
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static final class Entry {
+        final String systemName;
+        final String logstore;
+        final DrainMiner miner;
+        boolean dirty;
+
+        Entry(String systemName, String logstore, DrainMiner miner) {
+            this.systemName = systemName;
+            this.logstore = logstore;
+            this.miner = miner;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.anker.sls.analysis;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 时间窗口对比：把基准窗口和对比窗口的日志分别聚合为模板或异常指纹，输出新增、消失和显著增长的分组
+ * 逐页计入，只保留分组计数，窗口内可以有几十万行日志。两个窗口共用一个模板解析树，同一种日志在两边归入同一模板。
+ * 两个窗口都完整拉取时按单位时间的条数比较，任一窗口达到行数上限时按占拉取行数的比例比较。
+ * 非线程安全，并发拉取两个窗口时由调用方加锁。
+ */
+public class WindowDiff {
+
+    public static final int BASE = 0;
+    public static final int TARGET = 1;
+
+    public static final String MODE_TEMPLATE = "template";
+    public static final String MODE_EXCEPTION = "exception";
+
+    private static final String TIME_FIELD = "__time__";
+
+    private final String mode;
+    private final DrainMiner miner;
+    private final List<String> appPackages;
+    private final int maxFrames;
+    private final String[] messageFields;
+    private final int maxGroups;
+
+    private final Map<Object, Group> groups = new LinkedHashMap<>();
+    private final long[] lines = new long[2];
+    private final long[] matched = new long[2];
+    private long overflow;
+
+    /**
+     * @param miner       模板模式使用的解析树，每次对比新建；异常模式为null
+     * @param appPackages 异常模式计算指纹的业务包前缀
+     */
+    public WindowDiff(String mode, DrainMiner miner, List<String> appPackages, int maxFrames, String[] messageFields,
+                      int maxGroups) {
+        this.mode = mode;
+        this.miner = miner;
+        this.appPackages = appPackages;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.messageFields = messageFields;
+        this.maxGroups = Math.max(1, maxGroups);
+    }
+
+    /**
+     * 计入一个窗口的一页日志
+     */
+    public void addAll(int window, List<? extends Map<?, ?>> rows) {
+        for (Map<?, ?> row : rows) {
+            add(window, row);
+        }
+    }
+
+    /**
+     * 计入一个窗口的一行日志
+     */
+    public void add(int window, Map<?, ?> row) {
+        lines[window]++;
+        String message = TemplateStore.messageOf(row, messageFields);
+        long time = CommUtil.toLong(row.get(TIME_FIELD));
+        Object key;
+        Object first;
+        if (MODE_EXCEPTION.equals(mode)) {
+            StackTraceParser.Trace trace = StackTraceParser.parse(message, appPackages, maxFrames);
+            if (trace == null) {
+                return;
+            }
+            key = trace.fingerprint;
+            first = trace;
+        } else {
+            LogTemplate template = miner.add(message, time, 0);
+            if (template == null) {
+                overflow++;
+                return;
+            }
+            key = template.getId();
+            first = template;
+        }
+        matched[window]++;
+        Group group = groups.get(key);
+        if (group == null) {
+            if (groups.size() >= maxGroups) {
+                overflow++;
+                return;
+            }
+            group = new Group(first);
+            groups.put(key, group);
+        }
+        group.count[window]++;
+        if (time > 0 && (group.firstTime[window] == 0 || time < group.firstTime[window])) {
+            group.firstTime[window] = time;
+        }
+    }
+
+    public long getLines(int window) {
+        return lines[window];
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * 输出对比结果
+     *
+     * @param baseScale   基准窗口的归一化分母：窗口秒数，或按比例比较时的拉取行数
+     * @param targetScale 对比窗口的归一化分母，与 baseScale 同一口径
+     * @param minRatio    判定显著增长的最低倍数
+     * @param minCount    计入新增、消失、增长的最低条数，过滤偶发日志
+     * @param top         每类最多输出的分组数
+     */
+    public Map<String, Object> toMap(double baseScale, double targetScale, double minRatio, long minCount, int top) {
+        double scale = baseScale <= 0 ? 1.0 : Math.max(targetScale, 1e-9) / baseScale;
+        List<Group> added = new ArrayList<>();
+        List<Group> removed = new ArrayList<>();
+        List<Group> increased = new ArrayList<>();
+        for (Group group : groups.values()) {
+            long base = group.count[BASE];
+            long target = group.count[TARGET];
+            if (base == 0) {
+                if (target >= minCount) {
+                    added.add(group);
+                }
+            } else if (target == 0) {
+                if (base >= minCount) {
+                    removed.add(group);
+                }
+            } else if (target >= minCount && target >= base * scale * minRatio) {
+                increased.add(group);
+            }
+        }
+        added.sort(Comparator.comparingLong((Group g) -> g.count[TARGET]).reversed());
+        removed.sort(Comparator.comparingLong((Group g) -> g.count[BASE]).reversed());
+        // 按超出预期的条数排序，避免少量日志的高倍数排在前面
+        increased.sort(Comparator.comparingDouble((Group g) -> g.count[TARGET] - g.count[BASE] * scale).reversed());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        result.put("baseLines", lines[BASE]);
+        result.put("targetLines", lines[TARGET]);
+        result.put("baseMatched", matched[BASE]);
+        result.put("targetMatched", matched[TARGET]);
+        result.put("groupCount", groups.size());
+        result.put("overflowLines", overflow);
+        result.put("scale", round(scale));
+        result.put("newCount", added.size());
+        result.put("disappearedCount", removed.size());
+        result.put("increasedCount", increased.size());
+        result.put("new", toItems(added, scale, top));
+        result.put("disappeared", toItems(removed, scale, top));
+        result.put("increased", toItems(increased, scale, top));
+        return result;
+    }
+
+    private List<Map<String, Object>> toItems(List<Group> sorted, double scale, int top) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < sorted.size() && i < Math.max(0, top); i++) {
+            items.add(sorted.get(i).toMap(scale));
+        }
+        return items;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static final class Group {
+        final Object first;
+        final long[] count = new long[2];
+        final long[] firstTime = new long[2];
+
+        Group(Object first) {
+            this.first = first;
+        }
+
+        Map<String, Object> toMap(double scale) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (first instanceof LogTemplate) {
+                LogTemplate template = (LogTemplate) first;
+                map.put("templateId", template.getId());
+                map.put("template", template.getTemplate());
+            } else {
+                StackTraceParser.Trace trace = (StackTraceParser.Trace) first;
+                map.put("fingerprint", trace.fingerprint);
+                map.put("exception", trace.exceptionClass);
+                map.put("message", trace.message);
+                if (trace.rootCause != null) {
+                    map.put("rootCause", trace.rootCause);
+                }
+                map.put("frames", trace.topFrames);
+            }
+            map.put("baseCount", count[BASE]);
+            map.put("targetCount", count[TARGET]);
+            if (count[BASE] > 0 && count[TARGET] > 0) {
+                map.put("ratio", round(count[TARGET] / (count[BASE] * scale)));
+            }
+            if (firstTime[TARGET] > 0 && count[BASE] == 0) {
+                map.put("firstTime", firstTime[TARGET]);
+            }
+            return map;
+        }
+    }
+}
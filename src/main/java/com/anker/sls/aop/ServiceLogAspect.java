@@ -1,7 +1,7 @@
 package com.anker.sls.aop;
 
 import com.anker.sls.util.LogUtil;
-import com.anker.sls.util.SlsConfigUtil;
+import com.anker.sls.registry.SystemRegistry;
 
 import cn.hutool.core.map.MapUtil;
 
@@ -14,7 +14,6 @@ import org.springframework.stereotype.Component;
 import com.anker.sls.model.McpServiceLog;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.anker.sls.config.AliyunSLSConfig;
 import com.anker.sls.mapper.ServiceLogMapper;
 import java.util.Date;
 
@@ -30,7 +29,7 @@ public class ServiceLogAspect {
     private ServiceLogMapper serviceLogMapper;
 
     @Autowired
-    private AliyunSLSConfig aliyunSLSConfig;
+    private SystemRegistry systemRegistry;
 
     @Around("execution(public * com.anker.sls.controller..*(..))")
     public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
@@ -61,7 +60,7 @@ public class ServiceLogAspect {
         log.setUpdateTime(new Date());
         log.setIsDeleted(false);
         if (systemName != null) {
-            String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+            String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
             log.setEndpoint(ep[0]);
             log.setProject(ep[1]);
         }
@@ -0,0 +1,114 @@
+package com.anker.sls.cache;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存统计计数器，缓存层和每个系统各持有一份
+ * 加载耗时保存在固定大小的环形缓冲区中，分位数基于最近的采样计算。
+ */
+public class CacheStats {
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong totalLoadMillis = new AtomicLong();
+
+    private final long[] latencySamples = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    public void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    public void recordLoad(long millis, boolean success) {
+        loads.incrementAndGet();
+        if (!success) {
+            loadFailures.incrementAndGet();
+        }
+        totalLoadMillis.addAndGet(millis);
+        synchronized (latencySamples) {
+            latencySamples[(int) (latencyCount % LATENCY_SAMPLES)] = millis;
+            latencyCount++;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    public long getTotalLoadMillis() {
+        return totalLoadMillis.get();
+    }
+
+    /**
+     * 输出统计快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        result.put("hits", hitCount);
+        result.put("misses", missCount);
+        result.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        result.put("evictions", evictions.get());
+        result.put("loads", loads.get());
+        result.put("loadFailures", loadFailures.get());
+        result.put("loadLatencyMs", latencyPercentiles());
+        return result;
+    }
+
+    private Map<String, Object> latencyPercentiles() {
+        long[] samples;
+        synchronized (latencySamples) {
+            int size = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+            samples = Arrays.copyOf(latencySamples, size);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("samples", samples.length);
+        if (samples.length == 0) {
+            return result;
+        }
+        Arrays.sort(samples);
+        result.put("p50", percentile(samples, 0.50));
+        result.put("p90", percentile(samples, 0.90));
+        result.put("p99", percentile(samples, 0.99));
+        result.put("max", samples[samples.length - 1]);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
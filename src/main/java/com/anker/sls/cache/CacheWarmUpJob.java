@@ -0,0 +1,268 @@
+package com.anker.sls.cache;
+
+import cn.hutool.core.map.MapUtil;
+import com.anker.sls.config.SlsCacheWarmUpConfig;
+import com.anker.sls.mapper.ServiceLogMapper;
+import com.anker.sls.model.McpServiceLog;
+import com.anker.sls.service.SlsLogService;
+import com.anker.sls.util.ParamValidationUtil;
+import com.anker.sls.util.QpsLimiter;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓存预热任务
+ * 从 mcp_service_log 统计最近一段时间调用次数最多的（系统, 方法, 参数）组合，
+ * 在启动后和低峰期按QPS上限重放这些调用，提前填充元数据缓存和结果缓存。
+ * 结果缓存只预热时间范围已定型的查询，相对时间（默认最近一个月）的查询只预热其元数据。
+ */
+@Slf4j
+@Component
+public class CacheWarmUpJob implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Autowired
+    private SlsCacheWarmUpConfig warmUpConfig;
+
+    @Autowired
+    private ServiceLogMapper serviceLogMapper;
+
+    @Autowired
+    private SlsCacheManager cacheManager;
+
+    @Autowired
+    @Qualifier("SlsLogServiceImpl")
+    private SlsLogService logService;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!warmUpConfig.isEnabled() || !warmUpConfig.isOnStartup()) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(warmUpConfig.getStartupDelaySeconds() * 1000L);
+                warmUp(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "sls-cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 定时预热，只在低峰期内执行
+     */
+    @Scheduled(cron = "${sls.cache.warm-up.cron:0 30 1 * * ?}")
+    public void scheduledWarmUp() {
+        if (!warmUpConfig.isEnabled()) {
+            return;
+        }
+        if (!isOffPeak(LocalTime.now())) {
+            log.info("[CacheWarmUpJob] 状态=跳过 描述=当前不在低峰期 offPeak={}~{}",
+                    warmUpConfig.getOffPeakStart(), warmUpConfig.getOffPeakEnd());
+            return;
+        }
+        warmUp(true);
+    }
+
+    /**
+     * 执行一次预热
+     *
+     * @param offPeakOnly 为true时超出低峰期立即停止
+     * @return 实际预热的调用数
+     */
+    public int warmUp(boolean offPeakOnly) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("[CacheWarmUpJob] 状态=跳过 描述=已有预热任务在执行");
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int warmed = 0;
+        int failed = 0;
+        try {
+            List<Map<String, Object>> topCalls = loadTopCalls();
+            log.info("[CacheWarmUpJob] 状态=开始 描述=待预热调用组合数={} maxQps={}", topCalls.size(), warmUpConfig.getMaxQps());
+            QpsLimiter limiter = new QpsLimiter(warmUpConfig.getMaxQps());
+            Set<String> warmedMetadata = new LinkedHashSet<>();
+            for (Map<String, Object> call : topCalls) {
+                if (offPeakOnly && !isOffPeak(LocalTime.now())) {
+                    log.info("[CacheWarmUpJob] 状态=中止 描述=已超出低峰期");
+                    break;
+                }
+                String systemName = MapUtil.getStr(call, "system_name");
+                String method = MapUtil.getStr(call, "method");
+                String logstore = MapUtil.getStr(call, "logstore");
+                try {
+                    warmed += warmMetadata(systemName, logstore, warmedMetadata, limiter);
+                    if (replay(method, systemName, MapUtil.getStr(call, "query_param"), limiter)) {
+                        warmed++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("[CacheWarmUpJob] 状态=失败 方法={} 系统={} 原因={}", method, systemName, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.error("[CacheWarmUpJob] 状态=异常 描述=统计调用记录失败: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+        log.info("[CacheWarmUpJob] 状态=完成 预热数={} 失败数={} 耗时={}ms", warmed, failed, System.currentTimeMillis() - start);
+        return warmed;
+    }
+
+    /**
+     * 统计回溯期内成功调用次数最多的前N个（系统, 方法, 日志库, 参数）组合
+     */
+    private List<Map<String, Object>> loadTopCalls() {
+        Date since = new Date(System.currentTimeMillis() - warmUpConfig.getLookbackDays() * 24L * 3600 * 1000);
+        QueryWrapper<McpServiceLog> wrapper = new QueryWrapper<>();
+        wrapper.select("system_name", "method", "logstore", "query_param", "COUNT(*) AS hits")
+                .eq("result", "SUCCESS")
+                .isNotNull("system_name")
+                .ge("create_time", since)
+                .groupBy("system_name", "method", "logstore", "query_param")
+                .orderByDesc("hits")
+                .last("LIMIT " + Math.max(1, warmUpConfig.getTopN()));
+        return serviceLogMapper.selectMaps(wrapper);
+    }
+
+    /**
+     * 预热系统和日志库的元数据，每个系统/日志库只预热一次
+     */
+    private int warmMetadata(String systemName, String logstore, Set<String> warmedMetadata, QpsLimiter limiter)
+            throws InterruptedException {
+        int count = 0;
+        if (warmedMetadata.add(systemName + "|")) {
+            limiter.acquire();
+            logService.getLogstoreList(systemName);
+            count++;
+        }
+        if (logstore != null && !logstore.trim().isEmpty() && warmedMetadata.add(systemName + "|" + logstore)) {
+            limiter.acquire();
+            logService.getIndex(logstore, systemName);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 按记录的控制器参数重放调用，只重放结果可长期缓存的查询
+     *
+     * @return 是否发起了重放
+     */
+    @SuppressWarnings("unchecked")
+    private boolean replay(String method, String systemName, String queryParam, QpsLimiter limiter) throws Exception {
+        if (method == null || queryParam == null) {
+            return false;
+        }
+        Map<String, Object> params = objectMapper.readValue(queryParam, Map.class);
+        String logstore = MapUtil.getStr(params, "logstore");
+        switch (method) {
+            case "getLogsPro": {
+                long[] range = finalizedRange(params);
+                if (range == null) {
+                    return false;
+                }
+                // 预热入口每次只发一次请求，不预取、不分片，一个配额对应一次SLS请求
+                limiter.acquire();
+                return logService.warmLogsPro(logstore, range[0], range[1], MapUtil.getStr(params, "query"),
+                        MapUtil.getInt(params, "line", 100), MapUtil.getInt(params, "offset", 0), systemName,
+                        MapUtil.getStr(params, "fields"));
+            }
+            case "getHistograms": {
+                long[] range = finalizedRange(params);
+                if (range == null) {
+                    return false;
+                }
+                // 补齐缺失区间时一次调用可能请求多次，每次请求前各取一个配额
+                return logService.warmHistograms(logstore, range[0], range[1], MapUtil.getStr(params, "topic"),
+                        MapUtil.getStr(params, "query"), systemName, () -> acquire(limiter));
+            }
+            case "getContextLogs":
+                // 扩展已缓存的窗口时两端各请求一次，每次请求前各取一个配额
+                return logService.warmContextLogs(logstore, MapUtil.getStr(params, "packId"), MapUtil.getStr(params, "packMeta"),
+                        MapUtil.getInt(params, "backLines", 70), MapUtil.getInt(params, "forwardLines", 30), systemName,
+                        () -> acquire(limiter));
+            case "getLogstore": {
+                limiter.acquire();
+                logService.getLogstore(logstore, systemName);
+                return true;
+            }
+            case "listShards": {
+                limiter.acquire();
+                logService.listShards(logstore, systemName);
+                return true;
+            }
+            case "getProject": {
+                limiter.acquire();
+                logService.getProject(systemName);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 在缓存加载函数中获取预热配额，被中断时抛出 {@link CancellationException} 结束本次预热
+     */
+    private static void acquire(QpsLimiter limiter) {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("预热被中断");
+        }
+    }
+
+    /**
+     * 解析记录中的绝对时间范围，相对时间或未定型的范围返回null
+     */
+    private long[] finalizedRange(Map<String, Object> params) {
+        String from = MapUtil.getStr(params, "from");
+        String to = MapUtil.getStr(params, "to");
+        if (from == null || from.trim().isEmpty() || to == null || to.trim().isEmpty()) {
+            return null;
+        }
+        long[] range = ParamValidationUtil.processTimeParams(from, to);
+        return cacheManager.isFinalized(range[1]) ? range : null;
+    }
+
+    /**
+     * 判断当前时间是否处于低峰期，支持跨零点的区间（如 22:00~06:00）
+     */
+    boolean isOffPeak(LocalTime now) {
+        LocalTime start = LocalTime.parse(warmUpConfig.getOffPeakStart());
+        LocalTime end = LocalTime.parse(warmUpConfig.getOffPeakEnd());
+        if (start.isBefore(end)) {
+            return !now.isBefore(start) && now.isBefore(end);
+        }
+        return !now.isBefore(start) || now.isBefore(end);
+    }
+}
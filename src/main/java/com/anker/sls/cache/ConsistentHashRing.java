@@ -0,0 +1,77 @@
+package com.anker.sls.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * 一致性哈希环，构建后不可修改
+ * 每个节点在环上放置若干虚拟节点，key归属于顺时针方向第一个可用节点；
+ * 节点不可用时只有它负责的key迁移到下一个节点。
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = Collections.unmodifiableSet(new LinkedHashSet<>(nodes));
+        int replicas = Math.max(1, virtualNodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < replicas; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 获取key的归属节点
+     *
+     * @param alive 判断节点是否可用，为空时视为全部可用
+     * @return 归属节点，没有可用节点时返回null
+     */
+    public String owner(String key, Predicate<String> alive) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        long h = hash(key);
+        for (Map.Entry<Long, String> e : ring.tailMap(h, true).entrySet()) {
+            if (alive == null || alive.test(e.getValue())) {
+                return e.getValue();
+            }
+        }
+        for (Map.Entry<Long, String> e : ring.headMap(h, false).entrySet()) {
+            if (alive == null || alive.test(e.getValue())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取MD5摘要的前8个字节作为哈希值，分布比String.hashCode均匀
+     */
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
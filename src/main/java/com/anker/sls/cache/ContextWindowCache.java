@@ -0,0 +1,327 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上下文日志窗口缓存
+ * 按（系统, 日志库, pack_id, pack_meta）保存已经拉取的上下文行。请求的上下文范围落在已缓存窗口内时直接返回；
+ * 范围更大时，以窗口最上方/最下方一行的 pack_id、pack_meta 为锚点只补拉缺失的上文/下文行。
+ * 上下文日志写入后不会变化，窗口只受数量上限约束，不设置过期时间。
+ * 窗口中的行与已返回给调用方的行共享，不做修改；返回时逐行复制后再以锚点行为0编号。
+ */
+@Slf4j
+@Component
+public class ContextWindowCache {
+
+    public static final String TIER_CONTEXT = "context";
+
+    private static final String PACK_ID_FIELD = "__tag__:__pack_id__";
+    private static final String PACK_META_FIELD = "__pack_meta__";
+    private static final String INDEX_FIELD = "__index_number__";
+
+    /**
+     * 按锚点拉取上下文的函数，返回与 getContextLogs 相同结构的结果
+     */
+    public interface ContextLoader {
+        Map<String, Object> load(String packId, String packMeta, int backLines, int forwardLines);
+    }
+
+    @Autowired
+    private SlsCacheConfig cacheConfig;
+
+    private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong extensions = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ContextWindowCache() {
+    }
+
+    ContextWindowCache(SlsCacheConfig cacheConfig) {
+        this.cacheConfig = cacheConfig;
+    }
+
+    /**
+     * 获取以(packId, packMeta)为中心、上文backLines行、下文forwardLines行的上下文日志
+     */
+    public Map<String, Object> query(String systemName, String logstore, String packId, String packMeta,
+                                     int backLines, int forwardLines, ContextLoader loader) {
+        String key = SlsCacheManager.buildKey(systemName, logstore, "getContextLogs", packId, packMeta);
+        Window window = windowOf(key, systemName, logstore);
+        synchronized (window) {
+            int fetchedTop = 0;
+            int fetchedBottom = 0;
+            if (window.lines == null) {
+                misses.incrementAndGet();
+                Map<String, Object> response = loader.load(packId, packMeta, backLines, forwardLines);
+                List<Map<String, Object>> logs = logsOf(response);
+                if (logs == null) {
+                    removeWindow(key, window);
+                    return response;
+                }
+                window.init(logs, intOf(response.get("back_lines"), 0), backLines, forwardLines);
+                fetchedTop = window.center;
+                fetchedBottom = window.lines.size() - 1 - window.center;
+            } else {
+                int needTop = window.topReached ? 0 : backLines - window.center;
+                int needBottom = window.bottomReached ? 0 : forwardLines - (window.lines.size() - 1 - window.center);
+                if (needTop > 0 || needBottom > 0) {
+                    extensions.incrementAndGet();
+                } else {
+                    hits.incrementAndGet();
+                }
+                if (needTop > 0) {
+                    Integer added = extendTop(window, needTop, loader);
+                    if (added == null) {
+                        return reload(key, window, packId, packMeta, backLines, forwardLines, loader);
+                    }
+                    fetchedTop = added;
+                }
+                if (needBottom > 0) {
+                    Integer added = extendBottom(window, needBottom, loader);
+                    if (added == null) {
+                        return reload(key, window, packId, packMeta, backLines, forwardLines, loader);
+                    }
+                    fetchedBottom = added;
+                }
+            }
+            window.trim(cacheConfig.getContextMaxLinesPerWindow());
+            return window.slice(packId, packMeta, backLines, forwardLines, fetchedTop, fetchedBottom);
+        }
+    }
+
+    /**
+     * 按系统、日志库、key前缀使上下文窗口失效
+     *
+     * @return 失效的窗口数
+     */
+    public synchronized int invalidate(String systemName, String logstore, String keyPrefix) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Window>> it = windows.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Window> e = it.next();
+            Window window = e.getValue();
+            if ((isBlank(systemName) || systemName.equals(window.systemName))
+                    && (isBlank(logstore) || logstore.equals(window.logstore))
+                    && (isBlank(keyPrefix) || e.getKey().startsWith(keyPrefix))) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 输出上下文窗口缓存统计
+     */
+    public synchronized Map<String, Object> snapshot(String systemName) {
+        long lines = 0;
+        int count = 0;
+        for (Window window : windows.values()) {
+            if (!isBlank(systemName) && !systemName.equals(window.systemName)) {
+                continue;
+            }
+            count++;
+            synchronized (window) {
+                lines += window.lines == null ? 0 : window.lines.size();
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tier", TIER_CONTEXT);
+        result.put("maxWindows", cacheConfig.getContextMaxWindows());
+        result.put("windows", count);
+        result.put("lines", lines);
+        result.put("hits", hits.get());
+        result.put("extensions", extensions.get());
+        result.put("misses", misses.get());
+        return result;
+    }
+
+    /**
+     * 以窗口第一行为锚点补拉上文
+     *
+     * @return 新增行数，锚点缺少 pack 信息或拉取失败时返回null
+     */
+    private Integer extendTop(Window window, int needTop, ContextLoader loader) {
+        Map<String, Object> anchor = window.lines.get(0);
+        String anchorPackId = stringOf(anchor.get(PACK_ID_FIELD));
+        String anchorPackMeta = stringOf(anchor.get(PACK_META_FIELD));
+        if (anchorPackId == null || anchorPackMeta == null) {
+            return null;
+        }
+        Map<String, Object> response = loader.load(anchorPackId, anchorPackMeta, needTop, 0);
+        List<Map<String, Object>> logs = logsOf(response);
+        if (logs == null) {
+            return null;
+        }
+        int returned = Math.min(intOf(response.get("back_lines"), 0), logs.size());
+        window.lines.addAll(0, logs.subList(0, returned));
+        window.center += returned;
+        window.topReached = returned < needTop;
+        return returned;
+    }
+
+    /**
+     * 以窗口最后一行为锚点补拉下文
+     */
+    private Integer extendBottom(Window window, int needBottom, ContextLoader loader) {
+        Map<String, Object> anchor = window.lines.get(window.lines.size() - 1);
+        String anchorPackId = stringOf(anchor.get(PACK_ID_FIELD));
+        String anchorPackMeta = stringOf(anchor.get(PACK_META_FIELD));
+        if (anchorPackId == null || anchorPackMeta == null) {
+            return null;
+        }
+        Map<String, Object> response = loader.load(anchorPackId, anchorPackMeta, 0, needBottom);
+        List<Map<String, Object>> logs = logsOf(response);
+        if (logs == null) {
+            return null;
+        }
+        int returned = Math.min(intOf(response.get("forward_lines"), 0), logs.size());
+        window.lines.addAll(logs.subList(logs.size() - returned, logs.size()));
+        window.bottomReached = returned < needBottom;
+        return returned;
+    }
+
+    /**
+     * 无法增量补齐时整体重新拉取
+     */
+    private Map<String, Object> reload(String key, Window window, String packId, String packMeta,
+                                       int backLines, int forwardLines, ContextLoader loader) {
+        Map<String, Object> response = loader.load(packId, packMeta, backLines, forwardLines);
+        List<Map<String, Object>> logs = logsOf(response);
+        if (logs == null) {
+            removeWindow(key, window);
+            return response;
+        }
+        window.init(logs, intOf(response.get("back_lines"), 0), backLines, forwardLines);
+        return window.slice(packId, packMeta, backLines, forwardLines, window.center, window.lines.size() - 1 - window.center);
+    }
+
+    private synchronized Window windowOf(String key, String systemName, String logstore) {
+        Window window = windows.get(key);
+        if (window == null) {
+            window = new Window(systemName, logstore);
+            windows.put(key, window);
+            Iterator<Window> it = windows.values().iterator();
+            while (windows.size() > Math.max(1, cacheConfig.getContextMaxWindows()) && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return window;
+    }
+
+    private synchronized void removeWindow(String key, Window window) {
+        windows.remove(key, window);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> logsOf(Map<String, Object> response) {
+        if (response == null || response.containsKey("error")) {
+            return null;
+        }
+        Object logs = response.get("logs");
+        return logs instanceof List ? (List<Map<String, Object>>) logs : null;
+    }
+
+    private static int intOf(Object value, int defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString());
+            } catch (NumberFormatException ignored) {
+                // 无法解析时使用默认值
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String stringOf(Object value) {
+        return value == null || value.toString().isEmpty() ? null : value.toString();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * 单个pack的上下文窗口，lines按时间从上到下排列，center为锚点行下标
+     */
+    static class Window {
+        final String systemName;
+        final String logstore;
+        List<Map<String, Object>> lines;
+        int center;
+        boolean topReached;
+        boolean bottomReached;
+
+        Window(String systemName, String logstore) {
+            this.systemName = systemName;
+            this.logstore = logstore;
+        }
+
+        void init(List<Map<String, Object>> logs, int returnedBack, int requestedBack, int requestedForward) {
+            lines = new ArrayList<>(logs);
+            center = Math.max(0, Math.min(returnedBack, lines.size() - 1));
+            topReached = returnedBack < requestedBack;
+            bottomReached = lines.size() - 1 - center < requestedForward;
+        }
+
+        /**
+         * 超过上限时从离锚点较远的一端裁剪
+         */
+        void trim(int maxLines) {
+            int limit = Math.max(1, maxLines);
+            while (lines.size() > limit) {
+                if (center >= lines.size() - 1 - center) {
+                    lines.remove(0);
+                    center--;
+                    topReached = false;
+                } else {
+                    lines.remove(lines.size() - 1);
+                    bottomReached = false;
+                }
+            }
+        }
+
+        Map<String, Object> slice(String packId, String packMeta, int backLines, int forwardLines,
+                                  int fetchedTop, int fetchedBottom) {
+            int back = Math.min(Math.max(0, backLines), center);
+            int forward = Math.min(Math.max(0, forwardLines), lines.size() - 1 - center);
+            List<Map<String, Object>> logs = new ArrayList<>(back + forward + 1);
+            for (int i = center - back; i <= center + forward; i++) {
+                // 补拉的行原本相对各自的锚点编号，复制后以当前锚点行为0重新编号
+                Map<String, Object> row = new LinkedHashMap<>(lines.get(i));
+                row.put(INDEX_FIELD, String.valueOf(i - center));
+                logs.add(row);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("logs", logs);
+            result.put("back_lines", back);
+            result.put("forward_lines", forward);
+            result.put("total_lines", back + forward + 1);
+            result.put("progress", "Complete");
+            result.put("pack_id", packId);
+            result.put("pack_meta", packMeta);
+            Map<String, Object> meta = new LinkedHashMap<>();
+            meta.put("cachedLines", lines.size());
+            meta.put("fetchedBackLines", fetchedTop);
+            meta.put("fetchedForwardLines", fetchedBottom);
+            result.put("contextCache", meta);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.util.CommUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 增量直方图缓存
+ * 按（系统, 日志库, 查询语句, 主题, 桶宽）保存已定型的直方图桶。新的时间范围到来时，
+ * 只向SLS请求缓存未覆盖的头部/尾部（或中间空洞）区间，再与缓存的桶按时间拼接。
+ * 只有 progress=Complete 且结束时间早于 now - finalizeDelay 的桶才会被保存。
+ * SLS按区间长度自动决定桶宽：记录每次拉取的区间长度与返回的桶宽，只有能确定本次区间长度对应的桶宽时
+ * 才从该桶宽的序列拼接，否则整段拉取（与冷查询一致）并存入对应桶宽的序列，宽区间的粗桶不会用于窄区间。
+ * 补拉的短区间桶更细，合并到序列的桶宽网格后再拼接和保存，序列内的桶宽保持一致。
+ */
+@Slf4j
+@Component
+public class HistogramStore {
+
+    public static final String TIER_HISTOGRAM = "histogram";
+
+    /** 记录的区间长度与桶宽对应关系的数量上限 */
+    private static final int MAX_SPAN_WIDTHS = 1024;
+
+    /** 至少有这么多桶时才记录桶宽，中间的桶未被区间边界截断 */
+    private static final int MIN_BUCKETS_TO_OBSERVE = 3;
+
+    /**
+     * 按区间拉取直方图桶的函数，返回SLS原始桶列表，失败时抛出异常
+     */
+    public interface SegmentLoader {
+        List<Map<String, Object>> load(long from, long to);
+    }
+
+    @Autowired
+    private SlsCacheConfig cacheConfig;
+
+    @Autowired
+    private SlsCacheManager cacheManager;
+
+    /** 按访问顺序淘汰的直方图序列 */
+    private final LinkedHashMap<String, Series> seriesMap = new LinkedHashMap<>(64, 0.75f, true);
+
+    /** 区间长度（秒）→ SLS返回的桶宽（秒），桶宽随区间长度单调不减 */
+    private final TreeMap<Long, Long> spanWidths = new TreeMap<>();
+
+    public HistogramStore() {
+    }
+
+    HistogramStore(SlsCacheConfig cacheConfig, SlsCacheManager cacheManager) {
+        this.cacheConfig = cacheConfig;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 查询[from, to)的直方图
+     *
+     * @return 与 getHistograms 相同的结构：data 为按时间排序的桶列表，histogramCache 为本次复用情况
+     */
+    public Map<String, Object> query(String systemName, String logstore, String query, String topic,
+                                     long from, long to, SegmentLoader loader) {
+        String key = SlsCacheManager.buildKey(systemName, logstore, "getHistograms", query, topic);
+        long width = expectedWidth(to - from);
+        if (width > 0) {
+            Map<String, Object> result = stitch(key, seriesOf(key, width, systemName, logstore), from, to, loader);
+            if (result != null) {
+                return result;
+            }
+        }
+        // 桶宽未知或缓存无法拼接：整段拉取，结果与冷查询相同，再存入返回桶宽对应的序列
+        List<Map<String, Object>> fetched = load(loader, from, to);
+        long fetchedWidth = widthOf(fetched);
+        if (fetchedWidth > 0) {
+            Series series = seriesOf(key, fetchedWidth, systemName, logstore);
+            synchronized (series) {
+                series.align(fetched);
+                store(series, fetched);
+            }
+        }
+        List<long[]> segments = new ArrayList<>();
+        segments.add(new long[]{from, to});
+        return result(key, new ArrayList<>(), fetched, segments);
+    }
+
+    /**
+     * 从缓存序列拼接，只补拉缺失的区间；序列为空、空洞过多或补拉的桶无法合并到序列的网格上时返回null
+     */
+    private Map<String, Object> stitch(String key, Series series, long from, long to, SegmentLoader loader) {
+        synchronized (series) {
+            List<long[]> gaps = new ArrayList<>();
+            List<Map<String, Object>> cached = series.collect(from, to, gaps);
+            if (cached.isEmpty() || gaps.size() > cacheConfig.getHistogramMaxSegments()) {
+                // 没有可复用的桶，或空洞过多时整段重新拉取，避免请求数放大
+                return null;
+            }
+            List<Map<String, Object>> fetched = new ArrayList<>();
+            for (long[] gap : gaps) {
+                fetched.addAll(load(loader, gap[0], gap[1]));
+            }
+            long fetchedWidth = widthOf(fetched);
+            if (fetchedWidth > 0 && !series.fits(fetchedWidth)) {
+                log.debug("[HistogramStore] key={} 补拉桶宽={} 序列桶宽={} 无法合并，整段拉取", key, fetchedWidth, series.width);
+                return null;
+            }
+            fetched = series.rebucket(fetched);
+            store(series, fetched);
+            return result(key, cached, fetched, gaps);
+        }
+    }
+
+    /**
+     * 保存已定型且未被区间边界截断的桶，之后的补拉仍按完整的网格合并
+     */
+    private void store(Series series, List<Map<String, Object>> buckets) {
+        for (Map<String, Object> bucket : buckets) {
+            if (isFinalized(bucket) && series.isFullBucket(bucket)) {
+                series.insert(bucket);
+            }
+        }
+        series.trim(cacheConfig.getHistogramMaxBucketsPerSeries());
+    }
+
+    private Map<String, Object> result(String key, List<Map<String, Object>> cached, List<Map<String, Object>> fetched,
+                                       List<long[]> gaps) {
+        List<Map<String, Object>> merged = merge(cached, fetched);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", merged);
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("cachedBuckets", merged.size() - fetched.size());
+        meta.put("fetchedBuckets", fetched.size());
+        List<Map<String, Object>> segments = new ArrayList<>();
+        for (long[] gap : gaps) {
+            Map<String, Object> segment = new LinkedHashMap<>();
+            segment.put("from", gap[0]);
+            segment.put("to", gap[1]);
+            segments.add(segment);
+        }
+        meta.put("fetchedSegments", segments);
+        result.put("histogramCache", meta);
+        log.debug("[HistogramStore] key={} 复用桶数={} 拉取区间数={}", key, meta.get("cachedBuckets"), gaps.size());
+        return result;
+    }
+
+    /**
+     * 拉取区间并记录区间长度对应的桶宽
+     */
+    private List<Map<String, Object>> load(SegmentLoader loader, long from, long to) {
+        List<Map<String, Object>> buckets = loader.load(from, to);
+        if (buckets != null && buckets.size() >= MIN_BUCKETS_TO_OBSERVE) {
+            synchronized (spanWidths) {
+                if (spanWidths.size() >= MAX_SPAN_WIDTHS && !spanWidths.containsKey(to - from)) {
+                    spanWidths.clear();
+                }
+                spanWidths.put(to - from, widthOf(buckets));
+            }
+        }
+        return buckets == null ? new ArrayList<>() : buckets;
+    }
+
+    /**
+     * 区间长度对应的桶宽：相同长度已记录过，或前后最近的两个记录桶宽相同时可以确定，否则返回0
+     */
+    private long expectedWidth(long span) {
+        synchronized (spanWidths) {
+            Map.Entry<Long, Long> floor = spanWidths.floorEntry(span);
+            Map.Entry<Long, Long> ceiling = spanWidths.ceilingEntry(span);
+            if (floor == null || ceiling == null || !floor.getValue().equals(ceiling.getValue())) {
+                return 0L;
+            }
+            return floor.getValue();
+        }
+    }
+
+    /**
+     * 按系统、日志库、key前缀使直方图序列失效
+     *
+     * @return 失效的序列数
+     */
+    public synchronized int invalidate(String systemName, String logstore, String keyPrefix) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Series>> it = seriesMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Series> e = it.next();
+            Series series = e.getValue();
+            if ((isBlank(systemName) || systemName.equals(series.systemName))
+                    && (isBlank(logstore) || logstore.equals(series.logstore))
+                    && (isBlank(keyPrefix) || e.getKey().startsWith(keyPrefix))) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 输出直方图缓存统计
+     */
+    public synchronized Map<String, Object> snapshot(String systemName) {
+        long buckets = 0;
+        int count = 0;
+        for (Series series : seriesMap.values()) {
+            if (!isBlank(systemName) && !systemName.equals(series.systemName)) {
+                continue;
+            }
+            count++;
+            synchronized (series) {
+                buckets += series.buckets.size();
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tier", TIER_HISTOGRAM);
+        result.put("maxSeries", cacheConfig.getHistogramMaxSeries());
+        result.put("series", count);
+        result.put("buckets", buckets);
+        return result;
+    }
+
+    private synchronized Series seriesOf(String key, long width, String systemName, String logstore) {
+        String seriesKey = key + "|" + width;
+        Series series = seriesMap.get(seriesKey);
+        if (series == null) {
+            series = new Series(systemName, logstore, width);
+            seriesMap.put(seriesKey, series);
+            Iterator<Series> it = seriesMap.values().iterator();
+            while (seriesMap.size() > Math.max(1, cacheConfig.getHistogramMaxSeries()) && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return series;
+    }
+
+    private boolean isFinalized(Map<String, Object> bucket) {
+        return "Complete".equals(bucket.get("progress")) && cacheManager.isFinalized(CommUtil.toLong(bucket.get("to")));
+    }
+
+    /**
+     * 合并缓存桶与新拉取的桶，新拉取的桶优先，按起始时间排序
+     */
+    private static List<Map<String, Object>> merge(List<Map<String, Object>> cached, List<Map<String, Object>> fetched) {
+        TreeMap<Long, Map<String, Object>> sorted = new TreeMap<>();
+        for (Map<String, Object> bucket : cached) {
+            sorted.put(CommUtil.toLong(bucket.get("from")), bucket);
+        }
+        for (Map<String, Object> bucket : fetched) {
+            sorted.put(CommUtil.toLong(bucket.get("from")), bucket);
+        }
+        return new ArrayList<>(sorted.values());
+    }
+
+    /**
+     * 桶宽取最宽的桶，首尾的桶可能被区间边界截断
+     */
+    private static long widthOf(List<Map<String, Object>> buckets) {
+        long width = 0;
+        for (Map<String, Object> bucket : buckets) {
+            width = Math.max(width, CommUtil.toLong(bucket.get("to")) - CommUtil.toLong(bucket.get("from")));
+        }
+        return width;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * 单个直方图序列，桶按起始时间保存且互不重叠，完整的桶宽均为width、起点与phase对齐
+     */
+    static class Series {
+        final String systemName;
+        final String logstore;
+        final TreeMap<Long, Map<String, Object>> buckets = new TreeMap<>();
+        /** 桶宽（秒） */
+        final long width;
+        long phase;
+        boolean aligned;
+
+        Series(String systemName, String logstore, long width) {
+            this.systemName = systemName;
+            this.logstore = logstore;
+            this.width = width;
+        }
+
+        /**
+         * 收集完全落在[from, to)内的连续缓存桶，未覆盖的区间写入gaps
+         */
+        List<Map<String, Object>> collect(long from, long to, List<long[]> gaps) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            long cursor = from;
+            for (Map<String, Object> bucket : buckets.tailMap(from, true).values()) {
+                long bFrom = CommUtil.toLong(bucket.get("from"));
+                long bTo = CommUtil.toLong(bucket.get("to"));
+                if (bTo > to) {
+                    break;
+                }
+                if (bFrom > cursor) {
+                    gaps.add(new long[]{cursor, bFrom});
+                }
+                result.add(bucket);
+                cursor = bTo;
+            }
+            if (cursor < to) {
+                gaps.add(new long[]{cursor, to});
+            }
+            return result;
+        }
+
+        /**
+         * 写入桶，先移除与其重叠的旧桶
+         */
+        void insert(Map<String, Object> bucket) {
+            long bFrom = CommUtil.toLong(bucket.get("from"));
+            long bTo = CommUtil.toLong(bucket.get("to"));
+            if (bTo <= bFrom) {
+                return;
+            }
+            Map.Entry<Long, Map<String, Object>> floor = buckets.lowerEntry(bFrom);
+            if (floor != null && CommUtil.toLong(floor.getValue().get("to")) > bFrom) {
+                buckets.remove(floor.getKey());
+            }
+            buckets.subMap(bFrom, true, bTo, false).clear();
+            buckets.put(bFrom, new LinkedHashMap<>(bucket));
+        }
+
+        /**
+         * 宽度为fetchedWidth的桶能否合并到序列的网格上
+         */
+        boolean fits(long fetchedWidth) {
+            return fetchedWidth <= width && width % fetchedWidth == 0;
+        }
+
+        /**
+         * 按整段拉取的桶确定网格起点：取第一个完整桶的起点；与已有网格错开时丢弃旧桶
+         */
+        void align(List<Map<String, Object>> fetched) {
+            for (Map<String, Object> bucket : fetched) {
+                if (isFullBucket(bucket)) {
+                    long start = Math.floorMod(CommUtil.toLong(bucket.get("from")), width);
+                    if (aligned && start != phase) {
+                        buckets.clear();
+                    }
+                    phase = start;
+                    aligned = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 把较细的桶按起点归入网格，同一格的计数相加，全部完成时该格才是 Complete；
+         * 格的起止按实际覆盖的桶截断，不会延伸到补拉区间之外
+         */
+        List<Map<String, Object>> rebucket(List<Map<String, Object>> fetched) {
+            TreeMap<Long, Map<String, Object>> cells = new TreeMap<>();
+            for (Map<String, Object> bucket : fetched) {
+                long bFrom = CommUtil.toLong(bucket.get("from"));
+                long bTo = CommUtil.toLong(bucket.get("to"));
+                long cellFrom = phase + Math.floorDiv(bFrom - phase, width) * width;
+                Map<String, Object> cell = cells.get(cellFrom);
+                if (cell == null) {
+                    cell = new LinkedHashMap<>(bucket);
+                    cell.put("from", bFrom);
+                    cell.put("to", Math.min(bTo, cellFrom + width));
+                    cells.put(cellFrom, cell);
+                    continue;
+                }
+                cell.put("to", Math.min(Math.max(CommUtil.toLong(cell.get("to")), bTo), cellFrom + width));
+                cell.put("count", CommUtil.toLong(cell.get("count")) + CommUtil.toLong(bucket.get("count")));
+                if (!"Complete".equals(bucket.get("progress"))) {
+                    cell.put("progress", bucket.get("progress"));
+                }
+            }
+            return new ArrayList<>(cells.values());
+        }
+
+        boolean isFullBucket(Map<String, Object> bucket) {
+            return CommUtil.toLong(bucket.get("to")) - CommUtil.toLong(bucket.get("from")) == width;
+        }
+
+        /**
+         * 超过上限时丢弃最早的桶
+         */
+        void trim(int maxBuckets) {
+            while (buckets.size() > Math.max(1, maxBuckets)) {
+                buckets.pollFirstEntry();
+            }
+        }
+    }
+}
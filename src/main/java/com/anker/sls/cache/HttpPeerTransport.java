@@ -0,0 +1,122 @@
+package com.anker.sls.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于HTTP的副本间缓存协议，对端由 {@link PeerCacheController} 处理
+ * GET  {peer}/internal/cache/peer?tier=..&key=..  返回 {hit, value, ttlMillis}
+ * POST {peer}/internal/cache/peer                 请求体 {tier, key, systemName, logstore, value, ttlMillis}
+ * POST {peer}/internal/cache/peer/invalidate      请求体 {tier, systemName, logstore, keyPrefix}，返回 {removed}
+ */
+public class HttpPeerTransport implements PeerTransport {
+
+    public static final String PATH = "/internal/cache/peer";
+    public static final String INVALIDATE_PATH = "/invalidate";
+    public static final String TOKEN_HEADER = "X-Sls-Peer-Token";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String token;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public HttpPeerTransport(String token, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.token = token;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public SlsCache.Timed<Object> get(String peer, String tier, String key) throws IOException {
+        String url = peer + PATH + "?tier=" + URLEncoder.encode(tier, "UTF-8") + "&key=" + URLEncoder.encode(key, "UTF-8");
+        HttpURLConnection conn = open(url, "GET");
+        try {
+            Map<String, Object> body = objectMapper.readValue(readBody(conn), Map.class);
+            if (!Boolean.TRUE.equals(body.get("hit"))) {
+                return null;
+            }
+            Object ttl = body.get("ttlMillis");
+            return new SlsCache.Timed<>(body.get("value"), ttl instanceof Number ? ((Number) ttl).longValue() : 0L);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Override
+    public void put(String peer, String tier, String key, String systemName, String logstore,
+                    Object value, long ttlMillis) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tier", tier);
+        body.put("key", key);
+        body.put("systemName", systemName);
+        body.put("logstore", logstore);
+        body.put("value", value);
+        body.put("ttlMillis", ttlMillis);
+        post(peer + PATH, body);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int invalidate(String peer, String tier, String systemName, String logstore, String keyPrefix) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tier", tier);
+        body.put("systemName", systemName);
+        body.put("logstore", logstore);
+        body.put("keyPrefix", keyPrefix);
+        Map<String, Object> result = objectMapper.readValue(post(peer + PATH + INVALIDATE_PATH, body), Map.class);
+        Object removed = result.get("removed");
+        return removed instanceof Number ? ((Number) removed).intValue() : 0;
+    }
+
+    private byte[] post(String url, Map<String, Object> body) throws IOException {
+        HttpURLConnection conn = open(url, "POST");
+        try {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = conn.getOutputStream()) {
+                objectMapper.writeValue(out, body);
+            }
+            return readBody(conn);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        if (token != null && !token.isEmpty()) {
+            conn.setRequestProperty(TOKEN_HEADER, token);
+        }
+        return conn;
+    }
+
+    private static byte[] readBody(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        if (status < 200 || status >= 300) {
+            throw new IOException("副本响应状态码 " + status);
+        }
+        try (InputStream in = conn.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.anker.sls.cache;
+
+import cn.hutool.core.map.MapUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 副本间缓存协议的服务端，见 {@link HttpPeerTransport}
+ * 放在cache包而不是controller包，副本间的内部请求不经过 ServiceLogAspect 记录调用日志。
+ */
+@RestController
+@RequestMapping(HttpPeerTransport.PATH)
+public class PeerCacheController {
+
+    @Autowired
+    private SlsCacheManager cacheManager;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> get(@RequestParam String tier, @RequestParam String key,
+                                                   @RequestHeader(value = HttpPeerTransport.TOKEN_HEADER, required = false) String token) {
+        if (!accept(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        SlsCache.Timed<Object> cached = cacheManager.peerGet(tier, key);
+        result.put("hit", cached != null);
+        if (cached != null) {
+            result.put("value", cached.getValue());
+            result.put("ttlMillis", cached.getTtlMillis());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> put(@RequestBody Map<String, Object> body,
+                                                   @RequestHeader(value = HttpPeerTransport.TOKEN_HEADER, required = false) String token) {
+        if (!accept(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        cacheManager.peerPut(MapUtil.getStr(body, "tier"), MapUtil.getStr(body, "key"), MapUtil.getStr(body, "systemName"),
+                MapUtil.getStr(body, "logstore"), body.get("value"), MapUtil.getLong(body, "ttlMillis", 0L));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stored", true);
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping(HttpPeerTransport.INVALIDATE_PATH)
+    public ResponseEntity<Map<String, Object>> invalidate(@RequestBody Map<String, Object> body,
+                                                          @RequestHeader(value = HttpPeerTransport.TOKEN_HEADER, required = false) String token) {
+        if (!accept(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Map<String, Object> removed = cacheManager.peerInvalidate(MapUtil.getStr(body, "tier"), MapUtil.getStr(body, "systemName"),
+                MapUtil.getStr(body, "logstore"), MapUtil.getStr(body, "keyPrefix"));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("removed", removed.get("total"));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 未启用共享缓存、未配置令牌或令牌不一致时拒绝请求
+     */
+    private boolean accept(String token) {
+        if (!cacheManager.isPeerEnabled()) {
+            return false;
+        }
+        String expected = cacheManager.getPeerToken();
+        if (expected == null || expected.trim().isEmpty() || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,196 @@
+package com.anker.sls.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 副本间共享缓存层
+ * 每个key按一致性哈希归属一个副本，归属副本的本地缓存层保存权威副本；其他副本本地未命中时
+ * 先向归属副本读取，读不到再自行访问SLS并把结果异步回写给归属副本。
+ * 副本请求失败时在 downMillis 内视其为不可用，其负责的key由哈希环上的下一个副本接管，
+ * 全部副本不可用时退化为只使用本地缓存。
+ * 失效操作广播给所有副本，各副本清除本地保存的权威副本和近端副本，避免之后的读取又从归属副本取回旧值。
+ */
+@Slf4j
+public class PeerCacheTier {
+
+    private final String self;
+    private final ConsistentHashRing ring;
+    private final PeerTransport transport;
+    private final long downMillis;
+    private final long nearTtlMillis;
+    private final Executor pushExecutor;
+    private final Map<String, PeerState> states = new ConcurrentHashMap<>();
+
+    public PeerCacheTier(String self, Collection<String> peers, int virtualNodes, PeerTransport transport,
+                         long downMillis, long nearTtlMillis, Executor pushExecutor) {
+        this.self = normalize(self);
+        Set<String> nodes = new LinkedHashSet<>();
+        nodes.add(this.self);
+        for (String peer : peers) {
+            if (peer != null && !peer.trim().isEmpty()) {
+                nodes.add(normalize(peer));
+            }
+        }
+        this.ring = new ConsistentHashRing(nodes, virtualNodes);
+        this.transport = transport;
+        this.downMillis = downMillis;
+        this.nearTtlMillis = nearTtlMillis;
+        this.pushExecutor = pushExecutor;
+        for (String node : nodes) {
+            if (!node.equals(this.self)) {
+                states.put(node, new PeerState());
+            }
+        }
+    }
+
+    /**
+     * 本地缓存未命中时的加载逻辑，返回值及其在本地缓存中的存活时间
+     */
+    @SuppressWarnings("unchecked")
+    public <T> SlsCache.Timed<T> load(String tier, String key, String systemName, String logstore, long ttlMillis,
+                                      Supplier<T> loader, Predicate<Object> cacheable) {
+        String owner = ring.owner(key, this::isAlive);
+        if (owner == null || owner.equals(self)) {
+            return new SlsCache.Timed<>(loader.get(), ttlMillis);
+        }
+        PeerState state = states.get(owner);
+        try {
+            SlsCache.Timed<Object> remote = transport.get(owner, tier, key);
+            state.markUp();
+            if (remote != null && remote.getValue() != null && remote.getTtlMillis() > 0) {
+                state.hits.incrementAndGet();
+                return new SlsCache.Timed<>((T) remote.getValue(), Math.min(remote.getTtlMillis(), nearTtlMillis));
+            }
+            state.misses.incrementAndGet();
+        } catch (Exception e) {
+            markDown(owner, state, e);
+        }
+        T value = loader.get();
+        if (value != null && ttlMillis > 0 && (cacheable == null || cacheable.test(value)) && isAlive(owner)) {
+            push(owner, state, tier, key, systemName, logstore, value, ttlMillis);
+        }
+        return new SlsCache.Timed<>(value, ttlMillis);
+    }
+
+    /**
+     * 使其他副本本地缓存中符合条件的条目失效，本副本的本地缓存由调用方清除
+     *
+     * @return 每个副本失效的条目数，请求失败的副本记录失败原因并标记为不可用
+     */
+    public Map<String, Object> invalidate(String tier, String systemName, String logstore, String keyPrefix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, PeerState> e : states.entrySet()) {
+            try {
+                result.put(e.getKey(), transport.invalidate(e.getKey(), tier, systemName, logstore, keyPrefix));
+            } catch (Exception ex) {
+                // 失效失败的副本在恢复前不再作为归属副本，其保存的旧值只会在过期后消失
+                markDown(e.getKey(), e.getValue(), ex);
+                result.put(e.getKey(), "failed: " + ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 判断节点是否可用，本副本始终可用
+     */
+    public boolean isAlive(String node) {
+        if (node.equals(self)) {
+            return true;
+        }
+        PeerState state = states.get(node);
+        return state != null && state.downUntil <= System.currentTimeMillis();
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * 获取key当前的归属副本
+     */
+    public String ownerOf(String key) {
+        return ring.owner(key, this::isAlive);
+    }
+
+    /**
+     * 输出各副本状态和计数
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("self", self);
+        List<Map<String, Object>> peers = new ArrayList<>();
+        for (Map.Entry<String, PeerState> e : states.entrySet()) {
+            PeerState state = e.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("peer", e.getKey());
+            item.put("alive", isAlive(e.getKey()));
+            item.put("hits", state.hits.get());
+            item.put("misses", state.misses.get());
+            item.put("pushes", state.pushes.get());
+            item.put("failures", state.failures.get());
+            peers.add(item);
+        }
+        result.put("peers", peers);
+        return result;
+    }
+
+    private void push(String owner, PeerState state, String tier, String key, String systemName, String logstore,
+                      Object value, long ttlMillis) {
+        try {
+            pushExecutor.execute(() -> {
+                try {
+                    transport.put(owner, tier, key, systemName, logstore, value, ttlMillis);
+                    state.pushes.incrementAndGet();
+                } catch (Exception e) {
+                    markDown(owner, state, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("[PeerCacheTier] 回写队列已满，丢弃 key={}", key);
+        }
+    }
+
+    private void markDown(String peer, PeerState state, Exception e) {
+        state.failures.incrementAndGet();
+        state.downUntil = System.currentTimeMillis() + downMillis;
+        log.warn("[PeerCacheTier] 状态=副本不可用 副本={} 恢复检查={}ms后 原因={}", peer, downMillis, e.getMessage());
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url == null ? "" : url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    /**
+     * 单个副本的状态
+     */
+    static class PeerState {
+        volatile long downUntil;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong pushes = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        void markUp() {
+            downUntil = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.anker.sls.cache;
+
+import java.io.IOException;
+
+/**
+ * 副本间缓存协议
+ * 生产环境使用 {@link HttpPeerTransport}，测试时可以用进程内实现把多个节点连在一起。
+ */
+public interface PeerTransport {
+
+    /**
+     * 从归属副本读取缓存值
+     *
+     * @return 值及剩余存活时间，未命中时返回null
+     * @throws IOException 副本不可达或响应异常
+     */
+    SlsCache.Timed<Object> get(String peer, String tier, String key) throws IOException;
+
+    /**
+     * 把本副本加载的值写入归属副本
+     */
+    void put(String peer, String tier, String key, String systemName, String logstore,
+             Object value, long ttlMillis) throws IOException;
+
+    /**
+     * 使对端副本本地缓存中符合条件的条目失效，条件为空时不限
+     *
+     * @return 对端失效的条目数
+     */
+    int invalidate(String peer, String tier, String systemName, String logstore, String keyPrefix) throws IOException;
+}
@@ -0,0 +1,184 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.util.CommUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果句柄
+ * getLogsPro 返回的日志列表按查询参数登记一个 resultId，后续的本地聚合等分析直接读取这份结果，不再请求SLS。
+ * 相同参数的查询得到相同的 resultId；句柄数和总行数受上限约束（最久未使用的先淘汰），超过过期时间后失效。
+ * 登记的日志列表与结果缓存共用，不可修改。
+ */
+@Slf4j
+@Component
+public class ResultHandleStore {
+
+    public static final String TIER_HANDLE = "handle";
+
+    @Autowired
+    private SlsCacheConfig cacheConfig;
+
+    private final LinkedHashMap<String, Handle> handles = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalRows;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 登记查询结果
+     *
+     * @param key  查询参数组成的key，相同key得到相同的 resultId
+     * @param rows 日志列表
+     * @return resultId，日志列表超过行数上限时返回null
+     */
+    public synchronized String register(String systemName, String logstore, String key, List<?> rows) {
+        if (rows == null || rows.size() > cacheConfig.getHandleMaxRows()) {
+            return null;
+        }
+        String id = idOf(key);
+        Handle old = handles.remove(id);
+        if (old != null) {
+            totalRows -= old.rows.size();
+        }
+        handles.put(id, new Handle(systemName, logstore, rows, System.currentTimeMillis()));
+        totalRows += rows.size();
+        evict();
+        return id;
+    }
+
+    /**
+     * 读取句柄，不存在或已过期时返回null
+     */
+    public synchronized Handle get(String id) {
+        Handle handle = id == null ? null : handles.get(id.trim());
+        if (handle != null && isExpired(handle, System.currentTimeMillis())) {
+            handles.remove(id.trim());
+            totalRows -= handle.rows.size();
+            handle = null;
+        }
+        if (handle == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return handle;
+    }
+
+    /**
+     * 按系统、日志库、resultId前缀使句柄失效
+     *
+     * @return 失效的句柄数
+     */
+    public synchronized int invalidate(String systemName, String logstore, String keyPrefix) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Handle>> it = handles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Handle> e = it.next();
+            Handle handle = e.getValue();
+            if ((isBlank(systemName) || systemName.equals(handle.systemName))
+                    && (isBlank(logstore) || logstore.equals(handle.logstore))
+                    && (isBlank(keyPrefix) || e.getKey().startsWith(keyPrefix))) {
+                it.remove();
+                totalRows -= handle.rows.size();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 输出句柄统计
+     */
+    public synchronized Map<String, Object> snapshot(String systemName) {
+        long rows = 0;
+        int count = 0;
+        for (Handle handle : handles.values()) {
+            if (isBlank(systemName) || systemName.equals(handle.systemName)) {
+                count++;
+                rows += handle.rows.size();
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tier", TIER_HANDLE);
+        result.put("maxHandles", cacheConfig.getHandleMaxEntries());
+        result.put("maxRows", cacheConfig.getHandleMaxRows());
+        result.put("handles", count);
+        result.put("rows", rows);
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        return result;
+    }
+
+    /**
+     * 淘汰过期句柄，再按最久未使用淘汰到数量和行数上限以内
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Handle> it = handles.values().iterator();
+        while (it.hasNext()) {
+            Handle handle = it.next();
+            if (isExpired(handle, now) || handles.size() > cacheConfig.getHandleMaxEntries()
+                    || totalRows > cacheConfig.getHandleMaxRows()) {
+                it.remove();
+                totalRows -= handle.rows.size();
+            }
+        }
+    }
+
+    private boolean isExpired(Handle handle, long now) {
+        return now - handle.createdMillis > cacheConfig.getHandleTtlSeconds() * 1000L;
+    }
+
+    /**
+     * 64位 FNV-1a 的十六进制形式
+     */
+    static String idOf(String key) {
+        return CommUtil.fnv1aHex(key);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    /**
+     * 登记的查询结果
+     */
+    public static final class Handle {
+        private final String systemName;
+        private final String logstore;
+        private final List<?> rows;
+        private final long createdMillis;
+
+        Handle(String systemName, String logstore, List<?> rows, long createdMillis) {
+            this.systemName = systemName;
+            this.logstore = logstore;
+            this.rows = rows;
+            this.createdMillis = createdMillis;
+        }
+
+        public String getSystemName() {
+            return systemName;
+        }
+
+        public String getLogstore() {
+            return logstore;
+        }
+
+        public List<?> getRows() {
+            return rows;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+    }
+}
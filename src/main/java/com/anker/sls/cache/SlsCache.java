@@ -0,0 +1,404 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.util.CommUtil;
+import com.anker.sls.util.LogUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 单层本地缓存（LRU + TTL）
+ * 同一key的并发加载只会真正访问SLS一次，其余调用等待同一次加载结果（single-flight）。
+ * 缓存的值在多个调用之间共享，调用方不得修改返回的对象。
+ */
+@Slf4j
+public class SlsCache {
+
+    private static final String UNKNOWN_SYSTEM = "-";
+
+    /** 估算列表大小时抽样的元素数 */
+    private static final int SIZE_SAMPLES = 16;
+
+    private final String name;
+    private final int maxEntries;
+
+    /** 按访问顺序排列的条目，读写统一在 this 上加锁 */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** 正在加载中的key */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    private final CacheStats stats = new CacheStats();
+    private final ConcurrentHashMap<String, CacheStats> systemStats = new ConcurrentHashMap<>();
+    private long estimatedBytes;
+
+    public SlsCache(String name, int maxEntries) {
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 从缓存获取，不存在或已过期时调用loader加载
+     *
+     * @param key 缓存key
+     * @param systemName 所属系统，用于统计和按系统失效
+     * @param logstore 所属日志库，可为空
+     * @param ttlMillis 本次加载结果的存活时间
+     * @param loader 加载函数
+     * @param cacheable 判断加载结果是否可以缓存（如错误结果不缓存）
+     * @return 缓存值或新加载的值
+     */
+    public <T> T getOrLoad(String key, String systemName, String logstore, long ttlMillis,
+                           Supplier<T> loader, Predicate<Object> cacheable) {
+        return getOrLoadTimed(key, systemName, logstore, () -> new Timed<>(loader.get(), ttlMillis), cacheable);
+    }
+
+    /**
+     * 与 {@link #getOrLoad} 相同，但存活时间由加载函数随值一起返回（如从其他副本取回的值只保留剩余时间）
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoadTimed(String key, String systemName, String logstore,
+                                Supplier<Timed<T>> loader, Predicate<Object> cacheable) {
+        Object cached = getIfPresent(key, systemName);
+        if (cached != null) {
+            return (T) cached;
+        }
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, mine);
+        if (existing != null) {
+            log.debug("[缓存={}] 等待进行中的加载 key={}", name, key);
+            return (T) CommUtil.await(existing, "等待缓存加载被中断");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Timed<T> loaded;
+            boolean success = false;
+            try {
+                loaded = loader.get();
+                success = true;
+            } finally {
+                long cost = System.currentTimeMillis() - start;
+                stats.recordLoad(cost, success);
+                statsOf(systemName).recordLoad(cost, success);
+            }
+            T value = loaded.value;
+            if (value != null && loaded.ttlMillis > 0 && (cacheable == null || cacheable.test(value))) {
+                put(key, systemName, logstore, value, loaded.ttlMillis);
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            // 等待同一次加载的调用方都会收到这个异常
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 读取未过期的缓存值及剩余存活时间，不计入统计，不存在时返回null
+     */
+    public synchronized Timed<Object> peek(String key) {
+        CacheEntry entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry == null || entry.isExpired(now)) {
+            return null;
+        }
+        return new Timed<>(entry.value, entry.expireAt - now);
+    }
+
+    /**
+     * 获取未过期的缓存值，并计入命中/未命中
+     */
+    public Object getIfPresent(String key, String systemName) {
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+                entry.hits++;
+                stats.recordHit();
+                statsOf(systemName).recordHit();
+                return entry.value;
+            }
+            if (entry != null) {
+                removeEntry(key);
+            }
+        }
+        stats.recordMiss();
+        statsOf(systemName).recordMiss();
+        return null;
+    }
+
+    /**
+     * 写入缓存，超过容量时淘汰最久未访问的条目
+     */
+    public void put(String key, String systemName, String logstore, Object value, long ttlMillis) {
+        long bytes = estimateBytes(value);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            removeEntry(key);
+            entries.put(key, new CacheEntry(value, systemName, logstore, now + ttlMillis, bytes));
+            estimatedBytes += bytes;
+            Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                CacheEntry eldest = it.next().getValue();
+                estimatedBytes -= eldest.bytes;
+                it.remove();
+                stats.recordEviction();
+                statsOf(eldest.systemName).recordEviction();
+            }
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        removeEntry(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        estimatedBytes = 0;
+    }
+
+    /**
+     * 按系统、日志库、key前缀使条目失效，条件为空表示不限制，三个条件同时满足才会失效
+     *
+     * @return 失效的条目数
+     */
+    public synchronized int invalidate(String systemName, String logstore, String keyPrefix) {
+        int removed = 0;
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CacheEntry> e = it.next();
+            CacheEntry entry = e.getValue();
+            if (matches(systemName, entry.systemName) && matches(logstore, entry.logstore)
+                    && (isBlank(keyPrefix) || e.getKey().startsWith(keyPrefix))) {
+                estimatedBytes -= entry.bytes;
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            log.info("[缓存={}] 状态=失效 系统={} 日志库={} 前缀={} 条目数={}", name, systemName, logstore, keyPrefix, removed);
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 输出缓存层统计：总体计数、按系统计数和热点key
+     *
+     * @param systemName 只统计该系统，为空时统计全部系统
+     * @param topKeys 返回的热点key数量
+     */
+    public Map<String, Object> snapshot(String systemName, int topKeys) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, long[]> usage = new TreeMap<>();
+        List<Map.Entry<String, CacheEntry>> candidates = new ArrayList<>();
+        int totalEntries;
+        long totalBytes;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            totalEntries = entries.size();
+            totalBytes = estimatedBytes;
+            for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+                CacheEntry entry = e.getValue();
+                if (!isBlank(systemName) && !systemName.equals(entry.systemName)) {
+                    continue;
+                }
+                long[] u = usage.computeIfAbsent(systemKey(entry.systemName), k -> new long[2]);
+                u[0]++;
+                u[1] += entry.bytes;
+                if (!entry.isExpired(now)) {
+                    candidates.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), entry.copyForStats()));
+                }
+            }
+        }
+        result.put("tier", name);
+        result.put("maxEntries", maxEntries);
+        result.put("entries", totalEntries);
+        result.put("bytes", totalBytes);
+        result.putAll(stats.snapshot());
+
+        Map<String, Object> systems = new TreeMap<>();
+        for (Map.Entry<String, CacheStats> e : systemStats.entrySet()) {
+            if (!isBlank(systemName) && !systemName.equals(e.getKey())) {
+                continue;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            long[] u = usage.getOrDefault(e.getKey(), new long[2]);
+            item.put("entries", u[0]);
+            item.put("bytes", u[1]);
+            item.putAll(e.getValue().snapshot());
+            systems.put(e.getKey(), item);
+        }
+        result.put("systems", systems);
+
+        candidates.sort(Comparator.comparingLong((Map.Entry<String, CacheEntry> e) -> e.getValue().hits).reversed());
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < topKeys; i++) {
+            Map.Entry<String, CacheEntry> e = candidates.get(i);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", e.getKey());
+            item.put("hits", e.getValue().hits);
+            item.put("bytes", e.getValue().bytes);
+            item.put("ttlRemainingMs", e.getValue().expireAt - now);
+            top.add(item);
+        }
+        result.put("topKeys", top);
+        return result;
+    }
+
+    private CacheStats statsOf(String systemName) {
+        return systemStats.computeIfAbsent(systemKey(systemName), k -> new CacheStats());
+    }
+
+    private void removeEntry(String key) {
+        CacheEntry removed = entries.remove(key);
+        if (removed != null) {
+            estimatedBytes -= removed.bytes;
+        }
+    }
+
+    private static String systemKey(String systemName) {
+        return isBlank(systemName) ? UNKNOWN_SYSTEM : systemName;
+    }
+
+    private static boolean matches(String expected, String actual) {
+        return isBlank(expected) || expected.equals(actual);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * 按结构估算值序列化为JSON后的字节数。长列表只抽样 {@link #SIZE_SAMPLES} 个元素，按平均大小乘以元素数，
+     * 写入时不必把整个结果序列化一遍；无法识别的类型才退回到序列化
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence) {
+            return utf8Length((CharSequence) value) + 2;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value).length();
+        }
+        // 括号加逗号，n 个元素有 n - 1 个逗号
+        if (value instanceof Map) {
+            long bytes = ((Map<?, ?>) value).isEmpty() ? 2 : 1;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += utf8Length(String.valueOf(entry.getKey())) + 4 + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            int size = list.size();
+            int samples = Math.min(size, SIZE_SAMPLES);
+            long sampled = 0;
+            for (int i = 0; i < samples; i++) {
+                sampled += estimateBytes(list.get((int) ((long) i * size / samples)));
+            }
+            return Math.max(2, 1 + size) + (samples == 0 ? 0 : sampled * size / samples);
+        }
+        if (value instanceof Collection) {
+            long bytes = ((Collection<?>) value).isEmpty() ? 2 : 1;
+            for (Object item : (Collection<?>) value) {
+                bytes += estimateBytes(item) + 1;
+            }
+            return bytes;
+        }
+        return LogUtil.toJson(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * 带存活时间的值
+     */
+    public static final class Timed<T> {
+        private final T value;
+        private final long ttlMillis;
+
+        public Timed(T value, long ttlMillis) {
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    static class CacheEntry {
+        final Object value;
+        final String systemName;
+        final String logstore;
+        final long expireAt;
+        final long bytes;
+        long hits;
+
+        CacheEntry(Object value, String systemName, String logstore, long expireAt, long bytes) {
+            this.value = value;
+            this.systemName = systemName;
+            this.logstore = logstore;
+            this.expireAt = expireAt;
+            this.bytes = bytes;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+
+        /** 复制一份不含值的条目，用于在锁外排序 */
+        CacheEntry copyForStats() {
+            CacheEntry copy = new CacheEntry(null, systemName, logstore, expireAt, bytes);
+            copy.hits = hits;
+            return copy;
+        }
+    }
+}
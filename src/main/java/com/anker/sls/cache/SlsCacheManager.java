@@ -0,0 +1,306 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.config.SlsPeerCacheConfig;
+import com.anker.sls.exception.BusinessException;
+import com.anker.sls.executor.ProgressPoller;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SLS缓存管理器
+ * metadata：索引配置、日志库列表、项目信息等变化很少的元数据
+ * result：日志查询、直方图、上下文等查询结果
+ * 启用 sls.cache.peer 时，两层缓存前面再加一层副本间共享缓存，本地缓存层作为近端缓存。
+ */
+@Slf4j
+@Component
+public class SlsCacheManager {
+
+    public static final String TIER_METADATA = "metadata";
+    public static final String TIER_RESULT = "result";
+
+    private static final String KEY_SEPARATOR = "|";
+
+    @Autowired
+    private SlsCacheConfig cacheConfig;
+
+    @Autowired
+    private SlsPeerCacheConfig peerConfig;
+
+    private SlsCache metadataCache;
+    private SlsCache resultCache;
+
+    /** 副本间共享缓存，未启用时为null */
+    private PeerCacheTier peerTier;
+    private ThreadPoolExecutor peerPushExecutor;
+
+    public SlsCacheManager() {
+    }
+
+    SlsCacheManager(SlsCacheConfig cacheConfig, SlsPeerCacheConfig peerConfig) {
+        this.cacheConfig = cacheConfig;
+        this.peerConfig = peerConfig;
+    }
+
+    @PostConstruct
+    public void init() {
+        metadataCache = new SlsCache(TIER_METADATA, cacheConfig.getMetadataMaxEntries());
+        resultCache = new SlsCache(TIER_RESULT, cacheConfig.getResultMaxEntries());
+        log.info("[SlsCacheManager] 状态=初始化 enabled={} metadataMaxEntries={} resultMaxEntries={}",
+                cacheConfig.isEnabled(), cacheConfig.getMetadataMaxEntries(), cacheConfig.getResultMaxEntries());
+        if (peerConfig.isEnabled()) {
+            initPeerTier();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (peerPushExecutor != null) {
+            peerPushExecutor.shutdownNow();
+        }
+    }
+
+    private void initPeerTier() {
+        if (peerConfig.getSelfUrl() == null || peerConfig.getSelfUrl().trim().isEmpty()) {
+            log.warn("[SlsCacheManager] 状态=跳过 描述=未配置 sls.cache.peer.self-url，副本间共享缓存不启用");
+            return;
+        }
+        if (peerConfig.getToken() == null || peerConfig.getToken().trim().isEmpty()) {
+            // 没有令牌时任何客户端都能读取或写入共享缓存，不启用
+            log.warn("[SlsCacheManager] 状态=跳过 描述=未配置 sls.cache.peer.token，副本间共享缓存不启用");
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        peerPushExecutor = new ThreadPoolExecutor(Math.max(1, peerConfig.getPushThreads()), Math.max(1, peerConfig.getPushThreads()),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, peerConfig.getPushQueueSize())), r -> {
+                    Thread thread = new Thread(r, "sls-cache-peer-push-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        HttpPeerTransport transport = new HttpPeerTransport(peerConfig.getToken(),
+                peerConfig.getConnectTimeoutMillis(), peerConfig.getReadTimeoutMillis());
+        peerTier = new PeerCacheTier(peerConfig.getSelfUrl(), peerConfig.getPeers(), peerConfig.getVirtualNodes(), transport,
+                peerConfig.getDownSeconds() * 1000L, peerConfig.getNearTtlSeconds() * 1000L, peerPushExecutor);
+        log.info("[SlsCacheManager] 状态=启用副本间共享缓存 self={} peers={}", peerConfig.getSelfUrl(), peerConfig.getPeers());
+    }
+
+    public boolean isEnabled() {
+        return cacheConfig.isEnabled();
+    }
+
+    public SlsCache metadata() {
+        return metadataCache;
+    }
+
+    public SlsCache result() {
+        return resultCache;
+    }
+
+    /**
+     * 通过元数据缓存获取
+     */
+    public <T> T getMetadata(String key, String systemName, String logstore, Supplier<T> loader) {
+        if (!cacheConfig.isEnabled()) {
+            return loader.get();
+        }
+        return load(metadataCache, key, systemName, logstore, cacheConfig.getMetadataTtlSeconds() * 1000L, loader);
+    }
+
+    /**
+     * 通过结果缓存获取，过期时间由查询结束时间决定
+     *
+     * @param toSeconds 查询结束时间（秒），为空时按未定型处理
+     */
+    public <T> T getResult(String key, String systemName, String logstore, Long toSeconds, Supplier<T> loader) {
+        if (!cacheConfig.isEnabled()) {
+            return loader.get();
+        }
+        return load(resultCache, key, systemName, logstore, resultTtlMillis(toSeconds), loader);
+    }
+
+    /**
+     * 通过结果缓存获取不会再变化的结果（如按pack_id定位的上下文日志），使用已定型过期时间
+     */
+    public <T> T getImmutableResult(String key, String systemName, String logstore, Supplier<T> loader) {
+        if (!cacheConfig.isEnabled()) {
+            return loader.get();
+        }
+        return load(resultCache, key, systemName, logstore, cacheConfig.getFinalizedResultTtlSeconds() * 1000L, loader);
+    }
+
+    /**
+     * 本地缓存未命中时，启用了共享缓存则先从归属副本读取
+     */
+    private <T> T load(SlsCache cache, String key, String systemName, String logstore, long ttlMillis, Supplier<T> loader) {
+        PeerCacheTier peer = peerTier;
+        if (peer == null) {
+            return cache.getOrLoad(key, systemName, logstore, ttlMillis, loader, SlsCacheManager::isCacheable);
+        }
+        return cache.getOrLoadTimed(key, systemName, logstore,
+                () -> peer.load(cache.getName(), key, systemName, logstore, ttlMillis, loader, SlsCacheManager::isCacheable),
+                SlsCacheManager::isCacheable);
+    }
+
+    /**
+     * 处理其他副本的读取请求，只读本地缓存，不触发加载
+     */
+    public SlsCache.Timed<Object> peerGet(String tier, String key) {
+        return tierOf(tier).peek(key);
+    }
+
+    /**
+     * 处理其他副本的回写请求
+     */
+    public void peerPut(String tier, String key, String systemName, String logstore, Object value, long ttlMillis) {
+        if (value != null && ttlMillis > 0 && isCacheable(value)) {
+            tierOf(tier).put(key, systemName, logstore, value, ttlMillis);
+        }
+    }
+
+    public boolean isPeerEnabled() {
+        return peerTier != null;
+    }
+
+    public String getPeerToken() {
+        return peerConfig.getToken();
+    }
+
+    private SlsCache tierOf(String tier) {
+        for (SlsCache cache : tiers()) {
+            if (cache.getName().equals(tier)) {
+                return cache;
+            }
+        }
+        throw new BusinessException("不支持的缓存层: " + tier, 400);
+    }
+
+    /**
+     * 查询结束时间早于 now - finalizeDelay 的结果视为已定型，使用较长的过期时间
+     */
+    public long resultTtlMillis(Long toSeconds) {
+        if (isFinalized(toSeconds)) {
+            return cacheConfig.getFinalizedResultTtlSeconds() * 1000L;
+        }
+        return cacheConfig.getResultTtlSeconds() * 1000L;
+    }
+
+    /**
+     * 判断结束时间为toSeconds的查询结果是否已定型
+     */
+    public boolean isFinalized(Long toSeconds) {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        return toSeconds != null && toSeconds > 0 && toSeconds <= nowSeconds - cacheConfig.getFinalizeDelaySeconds();
+    }
+
+    /**
+     * 输出各缓存层统计
+     *
+     * @param systemName 只统计该系统，为空时统计全部系统
+     * @param topKeys 每层返回的热点key数量
+     */
+    public Map<String, Object> getStats(String systemName, int topKeys) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", cacheConfig.isEnabled());
+        List<Map<String, Object>> tiers = new ArrayList<>();
+        for (SlsCache cache : tiers()) {
+            tiers.add(cache.snapshot(systemName, topKeys));
+        }
+        result.put("tiers", tiers);
+        if (peerTier != null) {
+            result.put("peer", peerTier.snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * 按系统、日志库、key前缀使缓存失效；启用共享缓存时同时使其他副本的缓存失效
+     *
+     * @param tier 缓存层名称，为空时作用于全部缓存层
+     * @return 每层失效的条目数，启用共享缓存时 peers 为各副本失效的条目数
+     */
+    public Map<String, Object> invalidate(String tier, String systemName, String logstore, String keyPrefix) {
+        Map<String, Object> result = invalidateLocal(tier, systemName, logstore, keyPrefix);
+        PeerCacheTier peer = peerTier;
+        if (peer != null && (tier == null || tier.trim().isEmpty() || TIER_METADATA.equals(tier.trim())
+                || TIER_RESULT.equals(tier.trim()))) {
+            result.put("peers", peer.invalidate(tier, systemName, logstore, keyPrefix));
+        }
+        return result;
+    }
+
+    /**
+     * 处理其他副本广播的失效请求，只清除本地缓存，不再转发
+     */
+    public Map<String, Object> peerInvalidate(String tier, String systemName, String logstore, String keyPrefix) {
+        return invalidateLocal(tier, systemName, logstore, keyPrefix);
+    }
+
+    private Map<String, Object> invalidateLocal(String tier, String systemName, String logstore, String keyPrefix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        int total = 0;
+        for (SlsCache cache : tiers()) {
+            if (tier != null && !tier.trim().isEmpty() && !tier.trim().equals(cache.getName())) {
+                continue;
+            }
+            int removed = cache.invalidate(systemName, logstore, keyPrefix);
+            result.put(cache.getName(), removed);
+            total += removed;
+        }
+        result.put("total", total);
+        return result;
+    }
+
+    private List<SlsCache> tiers() {
+        return Arrays.asList(metadataCache, resultCache);
+    }
+
+    /**
+     * 构建缓存key：系统|日志库|方法|参数...
+     */
+    public static String buildKey(String systemName, String logstore, String method, Object... params) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(systemName == null ? "" : systemName.trim()).append(KEY_SEPARATOR)
+          .append(logstore == null ? "" : logstore.trim()).append(KEY_SEPARATOR)
+          .append(method);
+        if (params != null) {
+            for (Object param : params) {
+                sb.append(KEY_SEPARATOR).append(param == null ? "" : param);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 错误结果、空结果（列表接口失败时返回空列表）和未完成的查询结果不缓存
+     */
+    static boolean isCacheable(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            // 未完成的查询结果只是部分数据，不缓存
+            return !map.containsKey("error") && !ProgressPoller.INCOMPLETE.equals(map.get(ProgressPoller.PROGRESS_FIELD));
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        return true;
+    }
+}
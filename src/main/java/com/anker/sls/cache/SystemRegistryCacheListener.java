@@ -0,0 +1,81 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheWarmUpConfig;
+import com.anker.sls.registry.SystemRegistryChangedEvent;
+import com.anker.sls.service.SlsLogService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 系统注册表变更监听
+ * 系统被删除或 endpoint/project 等配置变化时，使该系统在各缓存层的数据失效；
+ * 新增或变更的系统在启用预热时后台预先加载日志库列表。
+ */
+@Slf4j
+@Component
+public class SystemRegistryCacheListener {
+
+    @Autowired
+    private SlsCacheManager cacheManager;
+
+    @Autowired
+    private HistogramStore histogramStore;
+
+    @Autowired
+    private ContextWindowCache contextWindowCache;
+
+    @Autowired
+    private SlsCacheWarmUpConfig warmUpConfig;
+
+    @Autowired
+    @Qualifier("SlsLogServiceImpl")
+    private SlsLogService logService;
+
+    public SystemRegistryCacheListener() {
+    }
+
+    SystemRegistryCacheListener(SlsCacheManager cacheManager, HistogramStore histogramStore,
+                                ContextWindowCache contextWindowCache, SlsCacheWarmUpConfig warmUpConfig,
+                                SlsLogService logService) {
+        this.cacheManager = cacheManager;
+        this.histogramStore = histogramStore;
+        this.contextWindowCache = contextWindowCache;
+        this.warmUpConfig = warmUpConfig;
+        this.logService = logService;
+    }
+
+    @EventListener
+    public void onSystemRegistryChanged(SystemRegistryChangedEvent event) {
+        for (String systemName : event.getStaleNames()) {
+            int removed = (Integer) cacheManager.invalidate(null, systemName, null, null).get("total")
+                    + histogramStore.invalidate(systemName, null, null)
+                    + contextWindowCache.invalidate(systemName, null, null);
+            if (removed > 0) {
+                log.info("[SystemRegistryCacheListener] 状态=失效 系统={} 条目数={}", systemName, removed);
+            }
+        }
+
+        Set<String> fresh = new LinkedHashSet<>(event.getAdded());
+        fresh.addAll(event.getChanged());
+        if (fresh.isEmpty() || !cacheManager.isEnabled() || !warmUpConfig.isEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            for (String systemName : fresh) {
+                try {
+                    logService.getLogstoreList(systemName);
+                } catch (Exception e) {
+                    log.warn("[SystemRegistryCacheListener] 状态=预热失败 系统={} 原因={}", systemName, e.getMessage());
+                }
+            }
+        }, "sls-registry-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
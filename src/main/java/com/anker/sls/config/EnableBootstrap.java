@@ -2,8 +2,10 @@ package com.anker.sls.config;
 
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
 @EnableConfigurationProperties
+@EnableScheduling
 public class EnableBootstrap {
-} 
\ No newline at end of file
+} 
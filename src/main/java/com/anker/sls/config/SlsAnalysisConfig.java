@@ -0,0 +1,111 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 日志分析配置类
+ * 控制日志模板挖掘：解析树参数、每个日志库的模板/指纹上限，以及模板的本地持久化；
+ * 以及异常堆栈分组：业务包前缀、计入指纹的帧数和分组上限；以及时间窗口对比的拉取上限和判定阈值
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.analysis")
+public class SlsAnalysisConfig {
+
+    /**
+     * 是否对 getLogsPro 返回的日志增量挖掘模板
+     */
+    private boolean templateEnabled = true;
+
+    /**
+     * 解析树深度（含分词数一层和叶子一层），至少为3
+     */
+    private int templateDepth = 4;
+
+    /**
+     * 日志并入已有模板的最低相似度（相同分词占比）
+     */
+    private double templateSimilarity = 0.4;
+
+    /**
+     * 解析树每个节点的子节点数上限，超过后新分词走 &lt;*&gt; 分支
+     */
+    private int templateMaxChildren = 100;
+
+    /**
+     * 每个日志库的模板数上限
+     */
+    private int templateMaxTemplates = 1000;
+
+    /**
+     * 每个模板保留的小时统计数
+     */
+    private int templateMaxHours = 720;
+
+    /**
+     * 每个日志库记录的已计入日志指纹数，用于跳过重复拉取的日志
+     */
+    private int templateMaxFingerprints = 50000;
+
+    /**
+     * 同时保留模板的日志库数上限
+     */
+    private int templateMaxLogstores = 100;
+
+    /**
+     * 作为日志内容的字段，按顺序取第一个存在的字段；都不存在时拼接所有非系统字段
+     */
+    private String templateMessageFields = "content,message,msg";
+
+    /**
+     * 模板持久化目录，为空时只保存在内存中
+     */
+    private String templateDir = "data/templates";
+
+    /**
+     * 持久化有变化的模板的间隔（秒）
+     */
+    private long templateSaveIntervalSeconds = 60;
+
+    /**
+     * 业务包前缀（逗号分隔），异常指纹优先取这些包下的帧；为空时取除常见框架外的帧
+     */
+    private String stackAppPackages = "com.anker";
+
+    /**
+     * 计入异常指纹的帧数
+     */
+    private int stackMaxFrames = 5;
+
+    /**
+     * 每次统计的异常分组数上限
+     */
+    private int stackMaxGroups = 500;
+
+    /**
+     * 每个异常分组保留的示例日志位置数
+     */
+    private int stackExamples = 3;
+
+    /**
+     * 本地聚合的分组数上限，超过后新出现的分组不再统计
+     */
+    private int aggregateMaxGroups = 10000;
+
+    /**
+     * 窗口对比时每个窗口最多拉取的日志行数
+     */
+    private int diffMaxLines = 200000;
+
+    /**
+     * 窗口对比判定显著增长的最低倍数，按窗口时长（或拉取行数）归一化后比较
+     */
+    private double diffMinRatio = 2.0;
+
+    /**
+     * 窗口对比计入新增、消失、增长的最低条数，过滤偶发日志
+     */
+    private long diffMinCount = 5;
+}
@@ -0,0 +1,90 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SLS查询缓存配置类
+ * 元数据缓存（索引、日志库、项目等）与结果缓存（日志、直方图、上下文等）分层配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.cache")
+public class SlsCacheConfig {
+
+    /**
+     * 是否启用缓存
+     */
+    private boolean enabled = true;
+
+    /**
+     * 元数据缓存最大条目数
+     */
+    private int metadataMaxEntries = 2000;
+
+    /**
+     * 元数据缓存过期时间（秒）
+     */
+    private long metadataTtlSeconds = 600;
+
+    /**
+     * 结果缓存最大条目数
+     */
+    private int resultMaxEntries = 5000;
+
+    /**
+     * 结果缓存过期时间（秒），用于结束时间接近当前时间、数据仍可能变化的查询
+     */
+    private long resultTtlSeconds = 60;
+
+    /**
+     * 已定型结果的缓存过期时间（秒），用于结束时间早于当前时间一段时间的查询
+     */
+    private long finalizedResultTtlSeconds = 3600;
+
+    /**
+     * 查询结束时间早于当前时间多少秒后视为已定型
+     */
+    private long finalizeDelaySeconds = 300;
+
+    /**
+     * 增量直方图缓存保存的序列（日志库+查询+主题）数量上限
+     */
+    private int histogramMaxSeries = 500;
+
+    /**
+     * 每个直方图序列保存的桶数量上限
+     */
+    private int histogramMaxBucketsPerSeries = 5000;
+
+    /**
+     * 单次直方图查询最多补拉的区间数，超过时整段重新拉取
+     */
+    private int histogramMaxSegments = 3;
+
+    /**
+     * 上下文窗口缓存保存的窗口（pack_id+pack_meta）数量上限
+     */
+    private int contextMaxWindows = 1000;
+
+    /**
+     * 每个上下文窗口保存的日志行数上限
+     */
+    private int contextMaxLinesPerWindow = 2000;
+
+    /**
+     * 查询结果句柄（resultId）数量上限
+     */
+    private int handleMaxEntries = 200;
+
+    /**
+     * 所有查询结果句柄合计保存的日志行数上限，单个结果超过该行数时不登记句柄
+     */
+    private int handleMaxRows = 200000;
+
+    /**
+     * 查询结果句柄的过期时间（秒）
+     */
+    private long handleTtlSeconds = 1800;
+}
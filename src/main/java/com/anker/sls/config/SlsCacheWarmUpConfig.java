@@ -0,0 +1,60 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存预热任务配置类
+ * 预热任务根据 mcp_service_log 中的历史调用记录，提前加载高频查询的元数据和结果
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.cache.warm-up")
+public class SlsCacheWarmUpConfig {
+
+    /**
+     * 是否启用预热
+     */
+    private boolean enabled = true;
+
+    /**
+     * 启动完成后是否预热一次
+     */
+    private boolean onStartup = true;
+
+    /**
+     * 启动预热延迟（秒），避开启动高峰
+     */
+    private long startupDelaySeconds = 60;
+
+    /**
+     * 定时预热cron表达式（由 CacheWarmUpJob 的 @Scheduled 读取）
+     */
+    private String cron = "0 30 1 * * ?";
+
+    /**
+     * 低峰期开始时间（HH:mm），定时预热只在低峰期内执行
+     */
+    private String offPeakStart = "01:00";
+
+    /**
+     * 低峰期结束时间（HH:mm）
+     */
+    private String offPeakEnd = "06:00";
+
+    /**
+     * 统计调用记录的回溯天数
+     */
+    private int lookbackDays = 7;
+
+    /**
+     * 预热调用组合数量上限（按调用次数取前N）
+     */
+    private int topN = 50;
+
+    /**
+     * 预热期间访问SLS的每秒请求上限
+     */
+    private double maxQps = 2.0;
+}
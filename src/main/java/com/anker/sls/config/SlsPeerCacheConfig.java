@@ -0,0 +1,73 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 副本间共享缓存配置类
+ * 多个MCP服务副本按一致性哈希划分缓存key的归属，本地缓存层作为近端缓存
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.cache.peer")
+public class SlsPeerCacheConfig {
+
+    /**
+     * 是否启用副本间共享缓存，关闭时只使用本地缓存
+     */
+    private boolean enabled = false;
+
+    /**
+     * 本副本的访问地址，如 http://10.0.0.1:9080，必须与peers中的写法一致
+     */
+    private String selfUrl = "";
+
+    /**
+     * 全部副本的访问地址（可包含本副本）
+     */
+    private List<String> peers = new ArrayList<>();
+
+    /**
+     * 副本间请求携带的令牌，必须配置，为空时不启用副本间共享缓存
+     */
+    private String token = "";
+
+    /**
+     * 每个副本在哈希环上的虚拟节点数
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * 连接超时（毫秒）
+     */
+    private int connectTimeoutMillis = 300;
+
+    /**
+     * 读取超时（毫秒）
+     */
+    private int readTimeoutMillis = 2000;
+
+    /**
+     * 副本请求失败后被视为不可用的时长（秒），期间其负责的key改由哈希环上的下一个副本负责
+     */
+    private long downSeconds = 30;
+
+    /**
+     * 从其他副本取回的值在本地近端缓存中的最长存活时间（秒）
+     */
+    private long nearTtlSeconds = 30;
+
+    /**
+     * 向归属副本回写结果的线程数
+     */
+    private int pushThreads = 2;
+
+    /**
+     * 回写队列长度，队列满时丢弃回写
+     */
+    private int pushQueueSize = 256;
+}
@@ -0,0 +1,211 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * SLS查询执行器配置类
+ * 控制并发查询线程池、每个project的并发/QPS上限、长时间范围查询的分片并发、ID类查询的直方图定位、未完成查询的自动补全、分页预取、计数查询的执行路径规划、批量查询、跨系统 traceId 查询，以及大结果集的分层抽样
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.query.executor")
+public class SlsQueryExecutorConfig {
+
+    /**
+     * 查询线程池大小
+     */
+    private int threads = 16;
+
+    /**
+     * 每个project同时进行的请求数上限
+     */
+    private int perProjectConcurrency = 4;
+
+    /**
+     * 每个project每秒请求数上限，小于等于0表示不限
+     */
+    private double perProjectQps = 20;
+
+    /**
+     * 等待project许可的超时时间（秒）
+     */
+    private long acquireTimeoutSeconds = 30;
+
+    /**
+     * 是否对长时间范围的 getLogsPro 分片并发查询
+     */
+    private boolean fanOutEnabled = true;
+
+    /**
+     * 时间范围超过多少秒才分片
+     */
+    private long fanOutMinRangeSeconds = 6 * 3600;
+
+    /**
+     * 最多切分的分片数
+     */
+    private int fanOutMaxSlices = 8;
+
+    /**
+     * 单个分片的最小时长（秒）
+     */
+    private long fanOutMinSliceSeconds = 900;
+
+    /**
+     * 单次请求SLS可返回的最大行数，offset+line 超过该值时不分片
+     */
+    private int fanOutMaxLines = 100;
+
+    /**
+     * 是否对ID类查询先用直方图定位有命中的时间段，再只在这些时间段上拉取日志
+     */
+    private boolean locateEnabled = true;
+
+    /**
+     * 时间范围超过多少秒才使用直方图定位
+     */
+    private long locateMinRangeSeconds = 7 * 86400;
+
+    /**
+     * 非空桶宽度不超过该值（秒）时不再细化
+     */
+    private long locateTargetSliceSeconds = 3600;
+
+    /**
+     * 直方图最多细化的层数
+     */
+    private int locateMaxDepth = 3;
+
+    /**
+     * 最多保留的非空时间段数，超过时停止细化
+     */
+    private int locateMaxRanges = 16;
+
+    /**
+     * 判断ID关键字的正则：检索语句只有关键字（AND连接），且至少一个关键字匹配该正则时视为ID类查询
+     */
+    private String locateIdPattern = "(?=.*\\d)[0-9A-Za-z_\\-.:]{12,}";
+
+    /**
+     * SLS返回 Incomplete 时重新请求的最长等待时间（毫秒），小于等于0表示不重试
+     */
+    private long progressTimeoutMillis = 10000;
+
+    /**
+     * 首次重试前的等待时间（毫秒），之后每次翻倍
+     */
+    private long progressInitialBackoffMillis = 200;
+
+    /**
+     * 重试间隔上限（毫秒）
+     */
+    private long progressMaxBackoffMillis = 2000;
+
+    /**
+     * 返回一页后在后台预取的后续页数，0表示不预取
+     */
+    private int prefetchPages = 1;
+
+    /**
+     * 分页会话多久未访问后丢弃预取结果（秒）
+     */
+    private long prefetchTtlSeconds = 120;
+
+    /**
+     * 同时保留的分页会话数上限
+     */
+    private int prefetchMaxSessions = 200;
+
+    /**
+     * 指定返回字段时是否先尝试下推为分析语句 select，需要这些字段已开启统计；
+     * 下推的结果不含 __pack_meta__，失败时退回检索语句并在解析时跳过其余字段
+     */
+    private boolean projectionPushdownEnabled = false;
+
+    /**
+     * 不为空时把检索语句中的关键字限定到该字段（如 content），字段查询、比较和范围不受影响
+     */
+    private String searchScopeField = "";
+
+    /**
+     * 执行路径规划：一次直方图请求的估算耗时（毫秒）
+     */
+    private double plannerHistogramMillis = 150;
+
+    /**
+     * 直方图不能直接合并为输出时间桶时，按时间桶分别请求直方图的次数上限
+     */
+    private int plannerHistogramMaxRequests = 48;
+
+    /**
+     * 一次分析语句请求的固定耗时（毫秒）
+     */
+    private double plannerSqlBaseMillis = 500;
+
+    /**
+     * 分析语句每扫描一百万行增加的耗时（毫秒）
+     */
+    private double plannerSqlMillisPerMillionRows = 200;
+
+    /**
+     * 分析语句返回的行数上限（时间桶数 × 分组数）
+     */
+    private int plannerSqlMaxRows = 10000;
+
+    /**
+     * 拉取一页日志的估算耗时（毫秒），每页行数为 fanOutMaxLines
+     */
+    private double plannerSearchPageMillis = 200;
+
+    /**
+     * 拉取日志后本地统计的行数上限
+     */
+    private int plannerSearchMaxRows = 5000;
+
+    /**
+     * 一次批量查询最多包含的查询数
+     */
+    private int batchMaxQueries = 10;
+
+    /**
+     * 批量查询的等待上限（秒），到期未完成的查询被取消
+     */
+    private long batchTimeoutSeconds = 60;
+
+    /**
+     * 跨系统 traceId 查询最多查询的（系统, 日志库）数
+     */
+    private int traceMaxTargets = 50;
+
+    /**
+     * 跨系统 traceId 查询的等待上限（秒），到期未完成的日志库记录为超时
+     */
+    private long traceTimeoutSeconds = 30;
+
+    /**
+     * 分层抽样的样本数上限
+     */
+    private int sampleMaxSize = 1000;
+
+    /**
+     * 分层抽样的默认层数，相邻的直方图桶合并为一层
+     */
+    private int sampleStrata = 12;
+
+    /**
+     * 分层抽样每次在随机偏移处拉取的行数，越小样本越分散、请求越多
+     */
+    private int sampleClusterSize = 10;
+
+    /**
+     * 一次分层抽样的拉取请求数上限，超过时加大每次拉取的行数
+     */
+    private int sampleMaxRequests = 64;
+
+    /**
+     * 分层抽样的等待上限（秒），到期未返回的请求被取消，所在层按已拉取的行估算
+     */
+    private long sampleTimeoutSeconds = 30;
+}
@@ -0,0 +1,65 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 查询结果处理配置类
+ * 控制返回给调用方之前对日志结果的加工，如折叠重复日志、按字节/token预算裁剪结果
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.result")
+public class SlsResultConfig {
+
+    /**
+     * 折叠时最多保留的分组数，超过后新出现的日志不再折叠，原样返回
+     */
+    private int foldMaxGroups = 200;
+
+    /**
+     * 每个分组保留的 pack_id 示例数，可用于 getContextLogs 查看上下文
+     */
+    private int foldExamples = 3;
+
+    /**
+     * 分组key（脱敏后的日志内容）的最大长度，超出部分不参与分组
+     */
+    private int foldMaxKeyLength = 512;
+
+    /**
+     * 调用方未指定 maxTokens 时是否按默认预算裁剪 getLogsPro / getContextLogs 的结果；指定了 maxTokens 时总是裁剪
+     */
+    private boolean shapeEnabled = false;
+
+    /**
+     * 开启默认裁剪时的估算token预算，调用方未指定时使用；不大于0时不限
+     */
+    private long shapeMaxTokens = 16000;
+
+    /**
+     * 字节预算，不大于0时不限
+     */
+    private long shapeMaxBytes = 0;
+
+    /**
+     * 单个字段值的最大字符数，超出部分截断并标注原长度
+     */
+    private int shapeMaxValueLength = 2000;
+
+    /**
+     * 保留的 __tag__ 字段（逗号分隔），其余 __tag__ 字段不返回
+     */
+    private String shapeKeepTags = "__tag__:__pack_id__,__tag__:__hostname__,__tag__:__path__";
+
+    /**
+     * 额外不返回的字段（逗号分隔）
+     */
+    private String shapeDropFields = "";
+
+    /**
+     * 判断日志级别的字段（逗号分隔），按顺序取第一个存在的字段，超出预算时 FATAL/ERROR 优先保留
+     */
+    private String shapeLevelFields = "level,severity,__level__,content,message,msg";
+}
@@ -0,0 +1,26 @@
+package com.anker.sls.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 系统注册表配置类
+ * 系统注册表启动时从 aliyun.sls.sls-prompts 构建，配置了外部文件时按间隔检查文件变化并热加载
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sls.registry")
+public class SystemRegistryConfig {
+
+    /**
+     * 热加载监听的配置文件路径（yml），为空时不热加载
+     * 文件中读取 aliyun.sls.sls-prompts 节点，格式与 application.yml 相同
+     */
+    private String configFile = "";
+
+    /**
+     * 检查配置文件变化的间隔（秒）
+     */
+    private long reloadIntervalSeconds = 10;
+}
@@ -20,6 +20,8 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 
 
 
@@ -47,6 +49,24 @@ public class SlsLogController {
         return logService.getMcpServiceLog(page, size);
     }
     
+    @GetMapping("/getCacheStats")
+    @ToolMapping(description = "查看SLS查询缓存状态：按缓存层和系统统计条目数、占用字节、命中/未命中/淘汰次数、加载耗时分位数及热点key。")
+    public Map<String, Object> getCacheStats(
+            @Param(description = "系统名称（为空时统计全部系统）", required = false) @RequestParam(required = false) String systemName,
+            @Param(description = "每层返回的热点key数量", defaultValue = "10", required = false) @RequestParam(defaultValue = "10") Integer topKeys) {
+        return logService.getCacheStats(systemName, topKeys);
+    }
+
+    @PostMapping("/invalidateCache")
+    @ToolMapping(description = "按系统、日志库或缓存key前缀使缓存失效，无需重启服务；条件均为空时清空指定缓存层；启用副本间共享缓存时同时使其他副本的缓存失效。")
+    public Map<String, Object> invalidateCache(
+            @Param(description = "缓存层（metadata/result/histogram/context/handle，为空时全部）", required = false) @RequestParam(required = false) String tier,
+            @Param(description = "系统名称", required = false) @RequestParam(required = false) String systemName,
+            @Param(description = "日志库名称", required = false) @RequestParam(required = false) String logstore,
+            @Param(description = "缓存key前缀（格式：系统|日志库|方法|参数）", required = false) @RequestParam(required = false) String keyPrefix) {
+        return logService.invalidateCache(tier, systemName, logstore, keyPrefix);
+    }
+
     @GetMapping("/getLogstoreList")
     @ToolMapping(description = "获取指定系统的日志库(Logstore)列表，支持系统别名自动识别，便于日志查询分支选择。")
     public List<Map<String, Object>> getLogstoreList(
@@ -55,15 +75,19 @@ public class SlsLogController {
     }
 
     @GetMapping("/getLogsPro")
-    @ToolMapping(description = "日志关键字/traceId/ID/时间范围查询：自动分支，traceId/ID时仅用ID参数，其余按异常关键字或用户关键词/时间查询，严格遵循参数补全和分析规则。")
+    @ToolMapping(description = "日志关键字/traceId/ID/时间范围查询：自动分支，traceId/ID时仅用ID参数，其余按异常关键字或用户关键词/时间查询，严格遵循参数补全和分析规则。返回的 resultId 可交给 aggregateLogs 做本地分组统计；整页返回时附带 nextPageToken，翻页时传入它代替增大 offset。")
     public Map<String, Object> getLogsPro(
-            @Param(description = "日志库名称") String logstore,
+            @Param(description = "日志库名称（多个用逗号分隔，* 表示该系统全部日志库，结果按时间合并并以 __logstore__ 标注来源）") String logstore,
             @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）",required = false) String from,
             @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
             @Param(description = "查询条件（例如：\"Exception\" 或 \"ERROR\"）") String query,
             @Param(description = "返回行数", defaultValue = DEFAULT_LINE_COUNT) Integer line,
-            @Param(description = "偏移量", defaultValue = DEFAULT_OFFSET) Integer offset,
-            @Param(description = "系统名称") String systemName) {
+            @Param(description = "偏移量；翻页请优先使用 pageToken", defaultValue = DEFAULT_OFFSET) Integer offset,
+            @Param(description = "系统名称") String systemName,
+            @Param(description = "是否折叠重复日志：按脱敏后的内容分组，每组返回一行及条数、首末时间和pack_id示例", defaultValue = "false", required = false) Boolean fold,
+            @Param(description = "结果的估算token预算，超出时优先保留ERROR和最新的日志并说明省略了什么；不填时默认不裁剪", required = false) Integer maxTokens,
+            @Param(description = "只返回的字段（逗号分隔，如 level,traceId,message），时间和pack字段总是返回；为空时返回全部字段", required = false) String fields,
+            @Param(description = "上一页返回的 nextPageToken，传入时按令牌中收窄的时间窗口查询下一页，忽略from、to、offset；其余条件须与上一页相同", required = false) String pageToken) {
         
         // 使用工具类处理时间参数和默认值
         long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
@@ -71,7 +95,7 @@ public class SlsLogController {
         Boolean powerSql = ParamValidationUtil.getBooleanWithDefault(null, false);
         String topic = ParamValidationUtil.getStringWithDefault(null, "");
         
-        return logService.getLogsPro(logstore, timeRange[0], timeRange[1], query, line, offset, reverse, powerSql, topic, systemName);
+        return logService.getLogsPro(logstore, timeRange[0], timeRange[1], query, line, offset, reverse, powerSql, topic, systemName, fold, maxTokens, fields, pageToken);
     }
     
     @GetMapping("/context")
@@ -82,8 +106,126 @@ public class SlsLogController {
             @Param(description = "日志库名称") String logstore,
             @Param(description = "查询开始行", defaultValue = DEFAULT_BACK_LINES) Integer backLines,
             @Param(description = "查询结束行", defaultValue = DEFAULT_FORWARD_LINES) Integer forwardLines,
+            @Param(description = "系统名称") String systemName,
+            @Param(description = "结果的估算token预算，不填时默认不裁剪", required = false) Integer maxTokens) {
+        return logService.getContextLogs(logstore, packId, packMeta, backLines, forwardLines, systemName, maxTokens);    
+    }
+
+    @GetMapping("/getLogTemplates")
+    @ToolMapping(description = "日志模板分析：拉取时间范围内的日志并按结构聚类为模板（变量部分显示为<*>），返回各模板条数及变量取值示例，便于快速定位主要错误类型。模板按日志库累积，重复调用只解析新日志。")
+    public Map<String, Object> getLogTemplates(
+            @Param(description = "日志库名称") String logstore,
+            @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String from,
+            @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
+            @Param(description = "查询条件（例如：\"ERROR\"），为空时分析全部日志", required = false) String query,
+            @Param(description = "本次最多拉取的日志行数", defaultValue = "1000", required = false) Integer maxLines,
+            @Param(description = "返回的模板数", defaultValue = "20", required = false) Integer top,
+            @Param(description = "系统名称") String systemName) {
+        long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
+        return logService.getLogTemplates(logstore, timeRange[0], timeRange[1], query, maxLines, top, systemName);
+    }
+
+    @GetMapping("/getExceptionGroups")
+    @ToolMapping(description = "异常堆栈分组：拉取时间范围内的异常日志，解析异常类、消息和调用栈，按业务代码位置（忽略行号、lambda、代理类）计算指纹并合并同一种失败，返回按次数排序的异常列表，含根因异常、首次/末次出现时间和示例日志位置。排查报错时优先使用，代替逐条查看原始堆栈。")
+    public Map<String, Object> getExceptionGroups(
+            @Param(description = "日志库名称") String logstore,
+            @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String from,
+            @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
+            @Param(description = "查询条件，为空时查询 \"Exception\"", required = false) String query,
+            @Param(description = "本次最多拉取的日志行数", defaultValue = "1000", required = false) Integer maxLines,
+            @Param(description = "返回的异常分组数", defaultValue = "20", required = false) Integer top,
+            @Param(description = "系统名称") String systemName) {
+        long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
+        return logService.getExceptionGroups(logstore, timeRange[0], timeRange[1], query, maxLines, top, systemName);
+    }
+
+    @GetMapping("/compareWindows")
+    @ToolMapping(description = "时间窗口对比：并发拉取基准窗口和对比窗口（如发布前/发布后、本周/上周同一时段）的日志，分别按日志模板或异常指纹聚合，返回对比窗口中新增、消失和显著增长的模板/异常及倍数（按窗口时长归一化）。排查“发布后哪里变了”时优先使用，代替多次查询后人工比较。")
+    public Map<String, Object> compareWindows(
+            @Param(description = "日志库名称") String logstore,
+            @Param(description = "基准窗口起始时间（格式：yyyy-MM-dd HH:mm:ss）") String baseFrom,
+            @Param(description = "基准窗口结束时间（格式：yyyy-MM-dd HH:mm:ss）") String baseTo,
+            @Param(description = "对比窗口起始时间（格式：yyyy-MM-dd HH:mm:ss）") String targetFrom,
+            @Param(description = "对比窗口结束时间（格式：yyyy-MM-dd HH:mm:ss）") String targetTo,
+            @Param(description = "查询条件（例如：\"ERROR\"），为空时对比全部日志；异常模式为空时查询 \"Exception\"", required = false) String query,
+            @Param(description = "聚合方式：template 按日志模板，exception 按异常指纹", defaultValue = "template", required = false) String mode,
+            @Param(description = "每个窗口最多拉取的日志行数", defaultValue = "100000", required = false) Integer maxLines,
+            @Param(description = "新增、消失、增长各返回的分组数", defaultValue = "20", required = false) Integer top,
             @Param(description = "系统名称") String systemName) {
-        return logService.getContextLogs(logstore, packId, packMeta, backLines, forwardLines, systemName);    
+        long[] baseRange = ParamValidationUtil.processTimeParams(baseFrom, baseTo);
+        long[] targetRange = ParamValidationUtil.processTimeParams(targetFrom, targetTo);
+        return logService.compareWindows(logstore, baseRange[0], baseRange[1], targetRange[0], targetRange[1], query, mode,
+                maxLines, top, systemName);
+    }
+
+    @GetMapping("/searchTrace")
+    @ToolMapping(description = "跨系统 traceId 查询：在所有已配置系统（或指定系统）的全部日志库中并发查询同一个 traceId，按时间合并为一条跨系统调用时间线，"
+            + "每行以 __system__、__logstore__ 标注来源，systems 按首次出现时间列出经过的系统。不确定 traceId 属于哪个系统时使用，代替逐个系统尝试。")
+    public Map<String, Object> searchTrace(
+            @Param(description = "traceId 或其他请求ID") String traceId,
+            @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String from,
+            @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
+            @Param(description = "时间线最多返回的行数（取最早的行）", defaultValue = DEFAULT_LINE_COUNT, required = false) Integer line,
+            @Param(description = "只查询这些系统（多个用逗号分隔），为空时查询全部系统", required = false) String systemNames,
+            @Param(description = "结果的估算token预算，不填时默认不裁剪", required = false) Integer maxTokens) {
+        long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
+        return logService.searchTrace(traceId, timeRange[0], timeRange[1], line, systemNames, maxTokens);
+    }
+
+    @GetMapping("/sampleLogs")
+    @ToolMapping(description = "分层随机抽样：命中行数很多（几十万到几百万行）时，按时间分层、按各层命中数分配样本，在各层随机位置并发拉取日志，"
+            + "返回覆盖整个时间范围、近似均匀的样本，以及估算的命中总数和各层权重。需要了解大量日志的整体情况时使用，代替只看最新的一页。")
+    public Map<String, Object> sampleLogs(
+            @Param(description = "日志库名称") String logstore,
+            @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String from,
+            @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
+            @Param(description = "检索语句（例如：\"ERROR\"），不支持分析语句", required = false) String query,
+            @Param(description = "样本行数", defaultValue = "200", required = false) Integer sampleSize,
+            @Param(description = "时间分层数，不填时使用默认层数", required = false) Integer strata,
+            @Param(description = "随机种子，不填时同一查询每次抽到相同的样本", required = false) Long seed,
+            @Param(description = "系统名称") String systemName,
+            @Param(description = "结果的估算token预算，不填时默认不裁剪", required = false) Integer maxTokens) {
+        long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
+        return logService.sampleLogs(logstore, timeRange[0], timeRange[1], query, sampleSize, strata, seed, systemName, maxTokens);
+    }
+
+    @PostMapping("/batchQuery")
+    @ToolMapping(description = "批量查询：一次提交多条相互独立的查询并发执行，按提交顺序返回每条的状态（ok/failed/timeout）、耗时和结果，整批视为一次查询。"
+            + "需要同时查看多个日志库、多个时间段，或同时需要日志和直方图/计数时使用，避免逐条调用。")
+    public Map<String, Object> batchQuery(
+            @Param(description = "查询列表，每项为一个对象：type 为 logs（参数同 getLogsPro：logstore、from、to、query、line、offset、fold、fields、maxTokens）、"
+                    + "histogram（logstore、from、to、query、topic）、context（logstore、packId、packMeta、backLines、forwardLines）、"
+                    + "sql（query、powerSql）或 count（参数同 countLogs）；可选 id 用于标识结果，可选 systemName 覆盖整批的系统名称")
+            @RequestBody List<Map<String, Object>> queries,
+            @Param(description = "系统名称") @RequestParam(required = false) String systemName) {
+        return logService.batchQuery(queries, systemName);
+    }
+
+    @GetMapping("/countLogs")
+    @ToolMapping(description = "计数查询：统计时间范围内命中检索语句的日志数，按时间桶（默认每小时）输出，可再按一个字段分组，如“昨天每小时多少条 NullPointerException”“各主机每小时的错误数”。"
+            + "先用直方图估算行数，自动在直方图、分析语句（SQL）和拉取日志本地统计之间选择代价最低的方式，返回结果中 plan 记录所选方式及估算/实际耗时；超过行数上限时 truncated 为 true：分析语句方式下 truncatedFrom 及之后的时间桶未统计，拉取日志方式下 truncatedBefore 之前的时间桶未统计，应增大 interval 或缩小时间范围；结果中 complete 为 false 时计数不精确（被截断、统计未完成或拉取失败）。只需要数量时优先使用，不要用大 line 拉取日志再计数。")
+    public Map<String, Object> countLogs(
+            @Param(description = "日志库名称") String logstore,
+            @Param(description = "起始时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String from,
+            @Param(description = "结束时间（格式：yyyy-MM-dd HH:mm:ss）", required = false) String to,
+            @Param(description = "检索语句（不含 | 之后的分析语句），为空时统计全部", required = false) String query,
+            @Param(description = "时间桶宽度（秒）", defaultValue = "3600", required = false) Integer interval,
+            @Param(description = "分组字段（一个），为空时只按时间统计", required = false) String groupBy,
+            @Param(description = "系统名称") String systemName) {
+        long[] timeRange = ParamValidationUtil.processTimeParams(from, to);
+        return logService.countLogs(logstore, timeRange[0], timeRange[1], query, interval, groupBy, systemName);
+    }
+
+    @GetMapping("/aggregateLogs")
+    @ToolMapping(description = "本地聚合：对 getLogsPro 已返回的结果（按 resultId）做分组统计，不再请求SLS。支持按字段分组计数、统计不同取值个数、按次数取前N组及每组首末时间，"
+            + "可用虚拟字段 __exception__ 按异常类分组。适用于“按级别计数”“出现最多的10种异常”“各主机的错误数”等问题，代替手工逐条统计或再次查询。")
+    public Map<String, Object> aggregateLogs(
+            @Param(description = "getLogsPro 返回的 resultId") String resultId,
+            @Param(description = "分组字段（多个用逗号分隔，如 level 或 __tag__:__hostname__,level；__exception__ 表示异常类），为空时统计全部", required = false) String groupBy,
+            @Param(description = "每组统计不同取值个数的字段（多个用逗号分隔）", required = false) String distinct,
+            @Param(description = "过滤条件（多个用逗号分隔，形如 level=ERROR 或 level!=INFO）", required = false) String filter,
+            @Param(description = "返回的分组数，按行数倒序", defaultValue = "20", required = false) Integer top) {
+        return logService.aggregateLogs(resultId, groupBy, distinct, filter, top);
     }
 
     @GetMapping("/getIndex")
@@ -0,0 +1,108 @@
+package com.anker.sls.executor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 批量查询
+ * 一次调用中的多条相互独立的查询并发执行，按提交顺序返回每条的状态、排队和执行耗时。
+ * 单条失败或超时只记录在该条的状态中；整批共用一个截止时间，到期未完成的查询被取消。
+ */
+public final class BatchQuery {
+
+    public static final String OK = "ok";
+    public static final String FAILED = "failed";
+    public static final String TIMEOUT = "timeout";
+
+    /**
+     * 提交第 index 条查询，由调用方决定在查询线程池（占用project许可）还是编排线程池中执行
+     */
+    public interface ItemSubmitter {
+        Future<Map<String, Object>> submit(int index, Callable<Map<String, Object>> task);
+    }
+
+    private BatchQuery() {
+    }
+
+    /**
+     * 并发执行并按顺序收集结果
+     *
+     * @param timeoutMillis 整批的等待上限
+     * @return 与 tasks 顺序一致的状态列表：index、status、waitMillis、elapsedMillis，以及 result 或 error
+     */
+    public static List<Map<String, Object>> execute(List<Callable<Map<String, Object>>> tasks, ItemSubmitter submitter,
+                                                    long timeoutMillis) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int n = tasks.size();
+        long[] started = new long[n];
+        long[] finished = new long[n];
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            Callable<Map<String, Object>> task = tasks.get(i);
+            futures.add(submitter.submit(index, () -> {
+                started[index] = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    finished[index] = System.nanoTime();
+                }
+            }));
+        }
+
+        List<Map<String, Object>> statuses = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("index", i);
+            Object result = null;
+            String error = null;
+            String state;
+            try {
+                result = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                state = result instanceof Map && ((Map<?, ?>) result).containsKey("error") ? FAILED : OK;
+                if (FAILED.equals(state)) {
+                    error = String.valueOf(((Map<?, ?>) result).get("error"));
+                }
+            } catch (TimeoutException | CancellationException e) {
+                futures.get(i).cancel(true);
+                state = TIMEOUT;
+                error = "超过批量查询等待上限 " + timeoutMillis + "ms";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                state = FAILED;
+                error = "批量查询被中断";
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                state = FAILED;
+                error = cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+            }
+            status.put("status", state);
+            if (started[i] > 0) {
+                status.put("waitMillis", TimeUnit.NANOSECONDS.toMillis(started[i] - start));
+                if (finished[i] > 0) {
+                    status.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(finished[i] - started[i]));
+                }
+            }
+            if (error != null) {
+                status.put("error", error);
+            }
+            if (OK.equals(state)) {
+                status.put("result", result);
+            }
+            statuses.add(status);
+        }
+        return statuses;
+    }
+}
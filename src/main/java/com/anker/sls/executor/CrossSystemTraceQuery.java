@@ -0,0 +1,217 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 跨系统 traceId 查询
+ * 一个 traceId 往往跨越多个系统的服务，按（系统, 日志库）并发查询，各自的结果已按时间升序，
+ * 按 __time__ 做k路归并为一条跨系统时间线，每行以 {@link #SYSTEM_FIELD}、{@link MultiLogstoreQuery#SOURCE_FIELD} 标注来源。
+ * 整体共用一个截止时间，到期未完成的查询被取消并记录为超时，不影响已返回的结果。
+ */
+public final class CrossSystemTraceQuery {
+
+    /** 标注来源系统的字段 */
+    public static final String SYSTEM_FIELD = "__system__";
+
+    /**
+     * 一个查询目标
+     */
+    public static final class Target {
+        final String systemName;
+        final String logstore;
+
+        public Target(String systemName, String logstore) {
+            this.systemName = systemName;
+            this.logstore = logstore;
+        }
+
+        public String getSystemName() {
+            return systemName;
+        }
+
+        public String getLogstore() {
+            return logstore;
+        }
+    }
+
+    /**
+     * 查询一个目标，返回与 getLogsPro 相同的结构
+     */
+    public interface TargetFetcher {
+        Map<String, Object> fetch(Target target);
+    }
+
+    /**
+     * 提交一个目标的查询任务
+     */
+    public interface TargetSubmitter {
+        Future<Map<String, Object>> submit(Target target, Callable<Map<String, Object>> task);
+    }
+
+    private CrossSystemTraceQuery() {
+    }
+
+    /**
+     * 并发查询各目标并按时间归并
+     *
+     * @param line          时间线最多返回的行数，取最早的 line 行
+     * @param timeoutMillis 等待上限
+     * @return data 为归并后的时间线，systems 为按系统汇总的命中情况，targets 为各目标的执行状态；全部目标失败时含 error
+     */
+    public static Map<String, Object> execute(List<Target> targets, int line, long timeoutMillis, TargetFetcher fetcher,
+                                              TargetSubmitter submitter) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        for (Target target : targets) {
+            futures.add(submitter.submit(target, () -> fetcher.fetch(target)));
+        }
+
+        List<List<?>> parts = new ArrayList<>();
+        List<Map<String, Object>> statuses = new ArrayList<>();
+        int failed = 0;
+        boolean incomplete = false;
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("systemName", target.systemName);
+            status.put("logstore", target.logstore);
+            List<?> rows = null;
+            try {
+                Map<String, Object> part = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                Object data = part == null ? null : part.get("data");
+                if (data instanceof List) {
+                    rows = (List<?>) data;
+                    status.put("status", "ok");
+                    status.put("rows", rows.size());
+                    if (ProgressPoller.INCOMPLETE.equals(part.get(ProgressPoller.PROGRESS_FIELD))) {
+                        status.put(ProgressPoller.PROGRESS_FIELD, ProgressPoller.INCOMPLETE);
+                        incomplete = true;
+                    }
+                } else {
+                    status.put("status", "failed");
+                    status.put("error", part == null ? "查询返回为空"
+                            : part.containsKey("error") ? part.get("error") : part.get("raw"));
+                }
+            } catch (TimeoutException | CancellationException e) {
+                futures.get(i).cancel(true);
+                status.put("status", "timeout");
+                incomplete = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                status.put("status", "failed");
+                status.put("error", "查询被中断");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                status.put("status", "failed");
+                status.put("error", cause.getMessage());
+            }
+            if (rows == null) {
+                failed++;
+                rows = Collections.emptyList();
+            }
+            parts.add(rows);
+            statuses.add(status);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (failed == targets.size() && !targets.isEmpty()) {
+            result.put("error", "所有系统的查询均失败");
+        } else {
+            List<Object> timeline = merge(targets, parts, line);
+            result.put("data", timeline);
+            result.put("systems", summarize(targets, parts));
+            int total = 0;
+            for (List<?> part : parts) {
+                total += part.size();
+            }
+            result.put("matchedRows", total);
+            result.put("truncated", total > timeline.size());
+            result.put(ProgressPoller.PROGRESS_FIELD, incomplete ? ProgressPoller.INCOMPLETE : ProgressPoller.COMPLETE);
+        }
+        result.put("targets", statuses);
+        return result;
+    }
+
+    /**
+     * k路归并取最早的 line 行；时间相同时按目标顺序
+     */
+    static List<Object> merge(List<Target> targets, List<List<?>> parts, int line) {
+        PriorityQueue<int[]> heap = new PriorityQueue<>((a, b) -> {
+            int cmp = Long.compare(CommUtil.timeOf(parts.get(a[0]).get(a[1])),
+                    CommUtil.timeOf(parts.get(b[0]).get(b[1])));
+            return cmp != 0 ? cmp : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+        List<Object> rows = new ArrayList<>();
+        while (!heap.isEmpty() && rows.size() < line) {
+            int[] cursor = heap.poll();
+            rows.add(tag(parts.get(cursor[0]).get(cursor[1]), targets.get(cursor[0])));
+            if (++cursor[1] < parts.get(cursor[0]).size()) {
+                heap.add(cursor);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 按系统汇总命中行数和首末时间，按首次出现时间排序，即调用链经过各系统的顺序
+     */
+    private static List<Map<String, Object>> summarize(List<Target> targets, List<List<?>> parts) {
+        Map<String, long[]> bySystem = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            for (Object row : parts.get(i)) {
+                long time = CommUtil.timeOf(row);
+                long[] stats = bySystem.computeIfAbsent(targets.get(i).systemName,
+                        k -> new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE});
+                stats[0]++;
+                stats[1] = Math.min(stats[1], time);
+                stats[2] = Math.max(stats[2], time);
+            }
+        }
+        List<Map<String, Object>> systems = new ArrayList<>();
+        for (Map.Entry<String, long[]> e : bySystem.entrySet()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("systemName", e.getKey());
+            item.put("rows", e.getValue()[0]);
+            item.put("firstTime", e.getValue()[1]);
+            item.put("lastTime", e.getValue()[2]);
+            systems.add(item);
+        }
+        systems.sort((a, b) -> Long.compare((Long) a.get("firstTime"), (Long) b.get("firstTime")));
+        return systems;
+    }
+
+    /**
+     * 复制一行并标注来源系统和日志库，各目标的结果可能来自缓存，不能直接修改
+     */
+    @SuppressWarnings("unchecked")
+    private static Object tag(Object row, Target target) {
+        if (!(row instanceof Map)) {
+            return row;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>((Map<String, Object>) row);
+        copy.put(SYSTEM_FIELD, target.systemName);
+        copy.put(MultiLogstoreQuery.SOURCE_FIELD, target.logstore);
+        return copy;
+    }
+}
@@ -0,0 +1,198 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * 直方图定位 + 分段拉取
+ * 对 traceId/ID 这类命中很少、时间范围很大的查询，先用代价很低的直方图找到有命中的时间段，
+ * 对过宽的非空桶再次请求直方图逐层细化，最后只在非空时间段上拉取日志。
+ * 直方图全部为空且已完成时直接返回空结果，不再扫描日志。
+ */
+public final class HistogramGuidedQuery {
+
+    /**
+     * 查询[from, to)的直方图桶，返回SLS原始桶列表（from、to、count、progress）
+     */
+    public interface HistogramFetcher {
+        List<Map<String, Object>> fetch(long from, long to);
+    }
+
+    /**
+     * 提交直方图任务，生产环境由 {@link QueryExecutor} 在project许可下执行
+     */
+    public interface HistogramSubmitter {
+        Future<List<Map<String, Object>>> submit(Callable<List<Map<String, Object>>> task);
+    }
+
+    /**
+     * 定位参数
+     */
+    public static final class Options {
+        /** 非空桶宽度不超过该值（秒）时不再细化 */
+        final long targetSliceSeconds;
+        /** 最多细化的层数 */
+        final int maxDepth;
+        /** 最多保留的非空时间段数，超过时停止细化 */
+        final int maxLeaves;
+
+        public Options(long targetSliceSeconds, int maxDepth, int maxLeaves) {
+            this.targetSliceSeconds = targetSliceSeconds;
+            this.maxDepth = maxDepth;
+            this.maxLeaves = maxLeaves;
+        }
+    }
+
+    private HistogramGuidedQuery() {
+    }
+
+    /**
+     * 定位有命中的时间段
+     *
+     * @return 按时间升序、相邻段已合并的非空时间段，每段为 [from, to, count]，count 为-1表示数量未知（直方图未完成）
+     */
+    public static Locate locate(long from, long to, Options options, HistogramFetcher fetcher, HistogramSubmitter submitter) {
+        Locate locate = new Locate();
+        List<long[]> level = Collections.singletonList(new long[]{from, to, -1});
+        for (int depth = 0; depth <= options.maxDepth; depth++) {
+            List<long[]> refine = new ArrayList<>();
+            List<long[]> next = new ArrayList<>();
+            for (long[] range : level) {
+                // 第一层总是请求直方图；之后只细化过宽的段，并且细化后的段数不能超过上限
+                boolean wide = range[1] - range[0] > options.targetSliceSeconds;
+                if (depth == 0 || (wide && depth < options.maxDepth && level.size() < options.maxLeaves)) {
+                    refine.add(range);
+                } else {
+                    next.add(range);
+                }
+            }
+            if (refine.isEmpty()) {
+                break;
+            }
+            List<Future<List<Map<String, Object>>>> futures = new ArrayList<>();
+            for (long[] range : refine) {
+                futures.add(submitter.submit(() -> fetcher.fetch(range[0], range[1])));
+            }
+            for (int i = 0; i < refine.size(); i++) {
+                long[] range = refine.get(i);
+                locate.histogramCalls++;
+                next.addAll(nonEmpty(range, CommUtil.await(futures.get(i), "直方图定位被中断")));
+            }
+            next.sort((a, b) -> Long.compare(a[0], b[0]));
+            level = next;
+            locate.depth = depth;
+            if (level.isEmpty() || level.size() > options.maxLeaves) {
+                break;
+            }
+        }
+        locate.ranges = merge(level);
+        return locate;
+    }
+
+    /**
+     * 定位后只在非空时间段上拉取日志，跨段执行 offset/line
+     */
+    public static Map<String, Object> execute(long from, long to, boolean reverse, int line, int offset, Options options,
+                                              HistogramFetcher histogramFetcher, HistogramSubmitter histogramSubmitter,
+                                              TimeSlicedQuery.LogSliceFetcher logFetcher,
+                                              TimeSlicedQuery.SliceSubmitter logSubmitter) {
+        Locate locate = locate(from, to, options, histogramFetcher, histogramSubmitter);
+        Map<String, Object> result;
+        if (locate.ranges.isEmpty()) {
+            result = new LinkedHashMap<>();
+            result.put("data", new ArrayList<>());
+        } else {
+            List<long[]> slices = new ArrayList<>();
+            for (long[] range : locate.ranges) {
+                slices.add(new long[]{range[0], range[1]});
+            }
+            result = TimeSlicedQuery.execute(slices, reverse, line, offset, logFetcher, logSubmitter);
+        }
+        result.put("locate", locate.toMap(to - from));
+        return result;
+    }
+
+    /**
+     * 取出落在range内的非空桶，桶边界裁剪到range内；progress未完成的桶无法确定为空，按非空处理
+     */
+    private static List<long[]> nonEmpty(long[] range, List<Map<String, Object>> buckets) {
+        List<long[]> result = new ArrayList<>();
+        if (buckets == null) {
+            result.add(new long[]{range[0], range[1], -1});
+            return result;
+        }
+        for (Map<String, Object> bucket : buckets) {
+            long bFrom = Math.max(range[0], CommUtil.toLong(bucket.get("from")));
+            long bTo = Math.min(range[1], CommUtil.toLong(bucket.get("to")));
+            if (bTo <= bFrom) {
+                continue;
+            }
+            long count = CommUtil.toLong(bucket.get("count"));
+            boolean complete = "Complete".equals(bucket.get("progress"));
+            if (count > 0 || !complete) {
+                result.add(new long[]{bFrom, bTo, complete ? count : -1});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 合并首尾相接的时间段，减少拉取日志的请求数
+     */
+    private static List<long[]> merge(List<long[]> ranges) {
+        List<long[]> result = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && last[1] >= range[0]) {
+                last[1] = Math.max(last[1], range[1]);
+                last[2] = last[2] < 0 || range[2] < 0 ? -1 : last[2] + range[2];
+            } else {
+                result.add(new long[]{range[0], range[1], range[2]});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 定位结果
+     */
+    public static final class Locate {
+        List<long[]> ranges = new ArrayList<>();
+        int histogramCalls;
+        int depth;
+
+        public List<long[]> getRanges() {
+            return ranges;
+        }
+
+        public int getHistogramCalls() {
+            return histogramCalls;
+        }
+
+        Map<String, Object> toMap(long totalSeconds) {
+            long covered = 0;
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (long[] range : ranges) {
+                covered += range[1] - range[0];
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("from", range[0]);
+                item.put("to", range[1]);
+                item.put("count", range[2]);
+                items.add(item);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("histogramCalls", histogramCalls);
+            result.put("depth", depth);
+            result.put("ranges", items);
+            result.put("scannedRatio", totalSeconds <= 0 ? 1.0 : (double) covered / totalSeconds);
+            return result;
+        }
+    }
+}
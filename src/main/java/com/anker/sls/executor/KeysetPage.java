@@ -0,0 +1,125 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 按时间的键集分页
+ * 用 offset 深翻页时 SLS 每次都要重新扫描并跳过前面的行，耗时随页数线性增长，新写入的日志还会让结果错位。
+ * 每页返回一个续页令牌，记录本页最后一行的 __time__、该秒内已返回的行数（同一秒内的顺序用行数区分），
+ * 以及收窄后的时间窗口：正序时窗口起点移到该秒，倒序时窗口终点移到该秒之后。
+ * 下一页在收窄的窗口内查询，offset 只需跳过该秒内已返回的行。令牌带有查询条件的摘要，不能用于其他查询。
+ */
+public final class KeysetPage {
+
+    private static final String VERSION = "k1";
+
+    /**
+     * 续页位置
+     */
+    public static final class Token {
+        final long from;
+        final long to;
+        final long time;
+        final int skip;
+
+        Token(long from, long to, long time, int skip) {
+            this.from = from;
+            this.to = to;
+            this.time = time;
+            this.skip = skip;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * 下一页在收窄窗口内的偏移：该秒内已返回的行数
+         */
+        public int getSkip() {
+            return skip;
+        }
+    }
+
+    private KeysetPage() {
+    }
+
+    /**
+     * 根据本页结果计算下一页的令牌
+     *
+     * @param rows     本页日志，按时间排序（正序或倒序）
+     * @param line     本页请求的行数，不足一页时已是最后一页
+     * @param from     本页的查询窗口起点
+     * @param to       本页的查询窗口终点（不含）
+     * @param offset   本页在窗口内的偏移
+     * @param previous 本页使用的令牌，首页为null
+     * @param scope    查询条件（不含时间窗口和偏移）的摘要来源
+     * @return 令牌；已是最后一页，或本页全部落在同一秒且无法确定该秒之前已跳过的行数时返回null
+     */
+    public static String next(List<?> rows, int line, long from, long to, int offset, Token previous, boolean reverse,
+                              String scope) {
+        if (rows == null || rows.isEmpty() || line <= 0 || rows.size() < line) {
+            return null;
+        }
+        long last = CommUtil.timeOf(rows.get(rows.size() - 1));
+        if (last <= 0) {
+            return null;
+        }
+        int sameSecond = 0;
+        for (int i = rows.size() - 1; i >= 0 && CommUtil.timeOf(rows.get(i)) == last; i--) {
+            sameSecond++;
+        }
+        int before;
+        if (sameSecond < rows.size()) {
+            // 本页中有更早（倒序时更晚）的行，该秒的行都在本页内
+            before = 0;
+        } else if (previous != null) {
+            // 整页都在同一秒：仍是令牌所在的秒时，之前已跳过 skip 行；否则令牌所在的秒已读完
+            before = previous.time == last ? previous.skip : 0;
+        } else if (offset == 0) {
+            before = 0;
+        } else {
+            return null;
+        }
+        long nextFrom = reverse ? from : last;
+        long nextTo = reverse ? last + 1 : to;
+        return encode(new Token(nextFrom, nextTo, last, before + sameSecond), scope);
+    }
+
+    /**
+     * 解析令牌
+     *
+     * @return 令牌格式错误或与查询条件不一致时返回null
+     */
+    public static Token decode(String token, String scope) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            String[] parts = text.split(":");
+            if (parts.length != 6 || !VERSION.equals(parts[0]) || !CommUtil.fnv1aHex(scope).equals(parts[5])) {
+                return null;
+            }
+            Token decoded = new Token(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                    Integer.parseInt(parts[4]));
+            return decoded.from < decoded.to && decoded.skip >= 0 ? decoded : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String encode(Token token, String scope) {
+        String text = VERSION + ":" + token.from + ":" + token.to + ":" + token.time + ":" + token.skip + ":"
+                + CommUtil.fnv1aHex(scope);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,182 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * 多日志库并发查询
+ * 同一系统的多个日志库并发查询，各日志库结果已按时间排序，按 __time__ 做k路归并后跨日志库执行 offset/line，
+ * 每行以 {@link #SOURCE_FIELD} 标注来源日志库。单个日志库失败只记录在该日志库的状态中，不影响其他日志库的结果；
+ * 任一日志库未完成（progress=Incomplete）时合并结果也标记为未完成。
+ */
+public final class MultiLogstoreQuery {
+
+    /** 标注来源日志库的字段 */
+    public static final String SOURCE_FIELD = "__logstore__";
+
+    /** 表示系统全部日志库 */
+    public static final String ALL = "*";
+
+    /**
+     * 查询单个日志库的前line行，返回与 getLogsPro 相同的结构
+     */
+    public interface LogstoreFetcher {
+        Map<String, Object> fetch(String logstore, int line);
+    }
+
+    /**
+     * 提交单个日志库的查询任务
+     */
+    public interface LogstoreSubmitter {
+        Future<Map<String, Object>> submit(Callable<Map<String, Object>> task);
+    }
+
+    private MultiLogstoreQuery() {
+    }
+
+    /**
+     * 展开日志库参数："*" 为系统配置的全部日志库，逗号分隔为日志库列表（去重、保持顺序），其余为单个日志库
+     */
+    public static List<String> expand(String logstore, List<String> configured) {
+        if (logstore == null) {
+            return Collections.emptyList();
+        }
+        String trimmed = logstore.trim();
+        if (ALL.equals(trimmed)) {
+            return new ArrayList<>(configured);
+        }
+        if (trimmed.indexOf(',') < 0) {
+            return Collections.singletonList(trimmed);
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String part : trimmed.split(",")) {
+            if (!part.trim().isEmpty()) {
+                result.add(part.trim());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * 并发查询各日志库并按时间归并
+     *
+     * @param reverse 为true时结果从新到旧，各日志库返回的顺序须与之一致
+     * @return data 为归并后的日志，logstores 为各日志库的执行状态；全部日志库失败时含 error
+     */
+    public static Map<String, Object> execute(List<String> logstores, boolean reverse, int line, int offset,
+                                              LogstoreFetcher fetcher, LogstoreSubmitter submitter) {
+        int need = offset + line;
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        for (String logstore : logstores) {
+            futures.add(submitter.submit(() -> fetcher.fetch(logstore, need)));
+        }
+
+        List<List<?>> parts = new ArrayList<>();
+        List<Map<String, Object>> statuses = new ArrayList<>();
+        int failed = 0;
+        String progress = null;
+        for (int i = 0; i < logstores.size(); i++) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("logstore", logstores.get(i));
+            List<?> rows = null;
+            try {
+                Map<String, Object> part = CommUtil.await(futures.get(i), "多日志库查询被中断");
+                Object data = part == null ? null : part.get("data");
+                if (data instanceof List) {
+                    rows = (List<?>) data;
+                    status.put("status", "ok");
+                    status.put("rows", rows.size());
+                    Object partProgress = part.get(ProgressPoller.PROGRESS_FIELD);
+                    if (partProgress != null) {
+                        status.put(ProgressPoller.PROGRESS_FIELD, partProgress);
+                        if (ProgressPoller.INCOMPLETE.equals(partProgress)) {
+                            progress = ProgressPoller.INCOMPLETE;
+                        } else if (progress == null) {
+                            progress = ProgressPoller.COMPLETE;
+                        }
+                    }
+                } else {
+                    status.put("status", "failed");
+                    status.put("error", part == null ? "查询返回为空"
+                            : part.containsKey("error") ? part.get("error") : part.get("raw"));
+                }
+            } catch (RuntimeException e) {
+                status.put("status", "failed");
+                status.put("error", e.getMessage());
+            }
+            if (rows == null) {
+                failed++;
+                rows = Collections.emptyList();
+            }
+            parts.add(rows);
+            statuses.add(status);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (failed == logstores.size()) {
+            result.put("error", "所有日志库查询失败");
+        } else {
+            result.put("data", merge(logstores, parts, reverse, line, offset));
+            if (progress != null) {
+                result.put(ProgressPoller.PROGRESS_FIELD, progress);
+            }
+        }
+        result.put("logstores", statuses);
+        return result;
+    }
+
+    /**
+     * k路归并：每个日志库一个游标，按 __time__ 取最早（reverse 时最晚）的一行；时间相同时按日志库顺序
+     */
+    static List<Object> merge(List<String> logstores, List<List<?>> parts, boolean reverse, int line, int offset) {
+        PriorityQueue<int[]> heap = new PriorityQueue<>((a, b) -> {
+            long ta = CommUtil.timeOf(parts.get(a[0]).get(a[1]));
+            long tb = CommUtil.timeOf(parts.get(b[0]).get(b[1]));
+            int cmp = reverse ? Long.compare(tb, ta) : Long.compare(ta, tb);
+            return cmp != 0 ? cmp : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+        List<Object> rows = new ArrayList<>();
+        int skipped = 0;
+        while (!heap.isEmpty() && rows.size() < line) {
+            int[] cursor = heap.poll();
+            Object row = parts.get(cursor[0]).get(cursor[1]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                rows.add(tag(row, logstores.get(cursor[0])));
+            }
+            if (++cursor[1] < parts.get(cursor[0]).size()) {
+                heap.add(cursor);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 复制一行并标注来源，各日志库的结果可能来自缓存，不能直接修改
+     */
+    @SuppressWarnings("unchecked")
+    private static Object tag(Object row, String logstore) {
+        if (!(row instanceof Map)) {
+            return row;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>((Map<String, Object>) row);
+        copy.put(SOURCE_FIELD, logstore);
+        return copy;
+    }
+}
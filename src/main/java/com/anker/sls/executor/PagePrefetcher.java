@@ -0,0 +1,208 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import com.anker.sls.util.CommUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * 分页预取
+ * 以去掉offset的查询条件为会话key，返回第N页后在后台预取后续 prefetchPages 页放入短期缓冲区，
+ * 调用方读完当前页再请求下一页时直接取缓冲区中的结果。会话超过 prefetchTtlSeconds 未访问即丢弃，
+ * 未被取走的预取任务随会话一起取消。预取的页与普通查询一样受所属project的并发和QPS限制。
+ */
+@Slf4j
+@Component
+public class PagePrefetcher {
+
+    @Autowired
+    private SlsQueryExecutorConfig executorConfig;
+
+    @Autowired
+    private QueryExecutor queryExecutor;
+
+    /** 会话key → 会话，按访问顺序排列，最久未访问的在前 */
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    public PagePrefetcher() {
+    }
+
+    PagePrefetcher(SlsQueryExecutorConfig executorConfig, QueryExecutor queryExecutor) {
+        this.executorConfig = executorConfig;
+        this.queryExecutor = queryExecutor;
+    }
+
+    /**
+     * 获取一页结果，优先使用已预取的结果，返回后预取后续页
+     *
+     * @param sessionKey 除offset外的查询条件
+     * @param project    查询所属的project，预取时获取该project的许可
+     * @param fansOut    该offset的查询是否会拆分为内部各自获取许可的并发请求，此时预取任务本身不占用许可
+     * @param loader     按offset查询一页
+     * @return 该页结果的副本，page 中记录是否命中预取
+     */
+    public Map<String, Object> page(String sessionKey, String project, int offset, int line, IntPredicate fansOut,
+                                    IntFunction<Map<String, Object>> loader) {
+        if (executorConfig.getPrefetchPages() <= 0 || line <= 0) {
+            return loader.apply(offset);
+        }
+        Future<Map<String, Object>> buffered = take(sessionKey, offset);
+        Map<String, Object> result = buffered == null ? null : await(buffered);
+        boolean hit = isComplete(result);
+        if (hit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            result = loader.apply(offset);
+        }
+        if (isFullPage(result, line)) {
+            prefetch(sessionKey, project, offset, line, fansOut, loader);
+        }
+        if (result == null) {
+            return null;
+        }
+        // 结果可能来自结果缓存，复制后再附加分页信息
+        Map<String, Object> copy = new LinkedHashMap<>(result);
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("offset", offset);
+        page.put("line", line);
+        page.put("prefetchHit", hit);
+        copy.put("page", page);
+        return copy;
+    }
+
+    /**
+     * 输出预取统计
+     */
+    public synchronized Map<String, Object> snapshot() {
+        int buffered = 0;
+        for (Session session : sessions.values()) {
+            buffered += session.pages.size();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("prefetchPages", executorConfig.getPrefetchPages());
+        result.put("sessions", sessions.size());
+        result.put("bufferedPages", buffered);
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        result.put("prefetched", prefetched.get());
+        result.put("discarded", discarded.get());
+        return result;
+    }
+
+    private synchronized Future<Map<String, Object>> take(String sessionKey, int offset) {
+        expire();
+        Session session = sessions.get(sessionKey);
+        if (session == null) {
+            return null;
+        }
+        session.touch();
+        return session.pages.remove(offset);
+    }
+
+    /**
+     * 预取后续页，已在缓冲区中的页不重复预取；单次请求的页在获取project许可后执行，
+     * 会拆分的页在编排线程池执行，避免嵌套占用许可
+     */
+    private synchronized void prefetch(String sessionKey, String project, int offset, int line, IntPredicate fansOut,
+                                       IntFunction<Map<String, Object>> loader) {
+        Session session = sessions.get(sessionKey);
+        if (session == null) {
+            session = new Session();
+            sessions.put(sessionKey, session);
+            evict();
+        }
+        session.touch();
+        for (int i = 1; i <= executorConfig.getPrefetchPages(); i++) {
+            int next = offset + line * i;
+            if (!session.pages.containsKey(next)) {
+                session.pages.put(next, fansOut.test(next)
+                        ? queryExecutor.fork(() -> loader.apply(next))
+                        : queryExecutor.submit(project, () -> loader.apply(next)));
+                prefetched.incrementAndGet();
+            }
+        }
+    }
+
+    private void expire() {
+        long deadline = System.currentTimeMillis() - executorConfig.getPrefetchTtlSeconds() * 1000L;
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (session.lastAccess >= deadline) {
+                // 按访问顺序排列，之后的会话都未过期
+                break;
+            }
+            discard(session);
+            it.remove();
+        }
+    }
+
+    private void evict() {
+        Iterator<Session> it = sessions.values().iterator();
+        while (sessions.size() > Math.max(1, executorConfig.getPrefetchMaxSessions()) && it.hasNext()) {
+            discard(it.next());
+            it.remove();
+        }
+    }
+
+    private void discard(Session session) {
+        List<Future<Map<String, Object>>> pages = new ArrayList<>(session.pages.values());
+        for (Future<Map<String, Object>> page : pages) {
+            page.cancel(true);
+        }
+        discarded.addAndGet(pages.size());
+        session.pages.clear();
+    }
+
+    private static Map<String, Object> await(Future<Map<String, Object>> future) {
+        try {
+            return CommUtil.await(future, "预取被中断");
+        } catch (RuntimeException e) {
+            // 预取失败、被取消或被中断时由调用方重新查询
+            log.debug("[PagePrefetcher] 预取结果不可用: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 失败或未完成的预取结果不直接返回
+     */
+    private static boolean isComplete(Map<String, Object> result) {
+        return result != null && result.get("data") instanceof List
+                && !ProgressPoller.INCOMPLETE.equals(result.get(ProgressPoller.PROGRESS_FIELD));
+    }
+
+    /**
+     * 返回满页时才可能还有下一页
+     */
+    private static boolean isFullPage(Map<String, Object> result, int line) {
+        return isComplete(result) && ((List<?>) result.get("data")).size() >= line;
+    }
+
+    private static final class Session {
+        final Map<Integer, Future<Map<String, Object>>> pages = new HashMap<>();
+        long lastAccess;
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
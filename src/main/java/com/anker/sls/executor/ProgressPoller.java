@@ -0,0 +1,81 @@
+package com.anker.sls.executor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 未完成查询的自动补全
+ * SLS在扫描未完成时通过响应头 x-log-progress 返回 Incomplete，此时结果只是部分数据。
+ * 对这类响应按指数退避重复发送同一请求，直到返回 Complete 或超过截止时间，
+ * 最终结果中以 progress 标明进度状态，并在 completion 中记录轮询次数和等待时长。
+ */
+public final class ProgressPoller {
+
+    public static final String COMPLETE = "Complete";
+    public static final String INCOMPLETE = "Incomplete";
+
+    /** 结果中的进度字段 */
+    public static final String PROGRESS_FIELD = "progress";
+
+    private ProgressPoller() {
+    }
+
+    /**
+     * 发送请求，结果未完成时退避后重新请求
+     *
+     * @param request 发送一次请求，返回的结果中 progress 为该次响应的进度；没有 progress 的结果（如失败）不再重试
+     * @param timeoutMillis 从第一次请求开始的最长等待时间
+     * @return 最后一次请求的结果，附带 progress 和 completion
+     */
+    public static Map<String, Object> poll(Supplier<Map<String, Object>> request, long timeoutMillis,
+                                           long initialBackoffMillis, long maxBackoffMillis) {
+        long start = System.currentTimeMillis();
+        long deadline = start + Math.max(0, timeoutMillis);
+        long backoff = Math.max(1, initialBackoffMillis);
+        int polls = 0;
+        Map<String, Object> result;
+        while (true) {
+            result = request.get();
+            polls++;
+            if (result == null || !INCOMPLETE.equals(result.get(PROGRESS_FIELD))
+                    || System.currentTimeMillis() + backoff > deadline) {
+                break;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // 被取消（如分片查询已取够行数）时直接返回当前结果
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoff = Math.min(Math.max(backoff, maxBackoffMillis), backoff * 2);
+        }
+        if (result == null) {
+            return null;
+        }
+        Map<String, Object> completion = new LinkedHashMap<>();
+        completion.put("state", result.containsKey(PROGRESS_FIELD) ? result.get(PROGRESS_FIELD) : "Unknown");
+        completion.put("polls", polls);
+        completion.put("waitedMillis", System.currentTimeMillis() - start);
+        result.put("completion", completion);
+        return result;
+    }
+
+    /**
+     * 从响应头中读取进度，响应头名称不区分大小写
+     *
+     * @return Complete/Incomplete，响应中没有进度头时返回null
+     */
+    public static String progressOf(Object headers) {
+        if (!(headers instanceof Map)) {
+            return null;
+        }
+        for (Map.Entry<?, ?> e : ((Map<?, ?>) headers).entrySet()) {
+            if (e.getKey() != null && "x-log-progress".equalsIgnoreCase(e.getKey().toString()) && e.getValue() != null) {
+                return e.getValue().toString().trim();
+            }
+        }
+        return null;
+    }
+}
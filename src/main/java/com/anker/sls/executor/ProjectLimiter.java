@@ -0,0 +1,79 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import com.anker.sls.exception.BusinessException;
+import com.anker.sls.util.QpsLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按project限制访问SLS的并发数和QPS
+ * SLS的查询配额按project计算，同一project的并发分片、批量查询共用一组许可。
+ */
+@Component
+public class ProjectLimiter {
+
+    @Autowired
+    private SlsQueryExecutorConfig executorConfig;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public ProjectLimiter() {
+    }
+
+    ProjectLimiter(SlsQueryExecutorConfig executorConfig) {
+        this.executorConfig = executorConfig;
+    }
+
+    /**
+     * 获取许可，返回的许可使用完毕后必须关闭
+     *
+     * @throws InterruptedException 等待期间被中断（如分片被取消）
+     * @throws BusinessException 等待超时
+     */
+    public Permit acquire(String project) throws InterruptedException {
+        Limit limit = limits.computeIfAbsent(project, k -> new Limit(
+                Math.max(1, executorConfig.getPerProjectConcurrency()), executorConfig.getPerProjectQps()));
+        if (!limit.semaphore.tryAcquire(executorConfig.getAcquireTimeoutSeconds(), TimeUnit.SECONDS)) {
+            throw new BusinessException("project " + project + " 查询繁忙，请稍后重试", 429);
+        }
+        try {
+            limit.qps.acquire();
+        } catch (InterruptedException e) {
+            limit.semaphore.release();
+            throw e;
+        }
+        return limit.semaphore::release;
+    }
+
+    /**
+     * 当前正在进行的请求数
+     */
+    public int inUse(String project) {
+        Limit limit = limits.get(project);
+        return limit == null ? 0 : Math.max(1, executorConfig.getPerProjectConcurrency()) - limit.semaphore.availablePermits();
+    }
+
+    /**
+     * 许可，关闭时归还
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Limit {
+        final Semaphore semaphore;
+        final QpsLimiter qps;
+
+        Limit(int concurrency, double qps) {
+            this.semaphore = new Semaphore(concurrency, true);
+            this.qps = new QpsLimiter(qps);
+        }
+    }
+}
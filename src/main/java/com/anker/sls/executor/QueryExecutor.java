@@ -0,0 +1,88 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SLS并发查询执行器
+ * 提交的任务在线程池中执行，执行前先获取所属project的许可，取消任务时正在等待许可的任务不会访问SLS。
+ */
+@Slf4j
+@Component
+public class QueryExecutor {
+
+    @Autowired
+    private SlsQueryExecutorConfig executorConfig;
+
+    @Autowired
+    private ProjectLimiter projectLimiter;
+
+    private ExecutorService pool;
+
+    /** 编排任务线程池，任务本身不访问SLS */
+    private ExecutorService coordinator;
+
+    public QueryExecutor() {
+    }
+
+    QueryExecutor(SlsQueryExecutorConfig executorConfig, ProjectLimiter projectLimiter) {
+        this.executorConfig = executorConfig;
+        this.projectLimiter = projectLimiter;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Math.max(1, executorConfig.getThreads()), r -> {
+            Thread thread = new Thread(r, "sls-query-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger coordinatorIndex = new AtomicInteger();
+        coordinator = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "sls-coordinator-" + coordinatorIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("[QueryExecutor] 状态=初始化 threads={} perProjectConcurrency={} perProjectQps={}",
+                executorConfig.getThreads(), executorConfig.getPerProjectConcurrency(), executorConfig.getPerProjectQps());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pool.shutdownNow();
+        coordinator.shutdownNow();
+    }
+
+    /**
+     * 提交一个访问指定project的任务
+     */
+    public <T> Future<T> submit(String project, Callable<T> task) {
+        return pool.submit(() -> {
+            ProjectLimiter.Permit permit = projectLimiter.acquire(project);
+            try {
+                return task.call();
+            } finally {
+                permit.close();
+            }
+        });
+    }
+
+    /**
+     * 提交一个只负责编排的任务：任务内部再通过 {@link #submit} 访问SLS并等待结果。
+     * 编排任务在独立线程池执行且不占用project许可，避免嵌套等待耗尽查询线程或许可。
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        return coordinator.submit(task);
+    }
+}
@@ -0,0 +1,276 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 计数类查询的执行路径规划
+ * “某类日志每小时多少条”可以由直方图、分析语句（SQL）或拉取日志后本地统计得到，代价相差几个数量级。
+ * 先用直方图估算命中行数，再按代价模型估算各路径的耗时，选择可行路径中代价最低的一个；
+ * 执行后记录估算与实际耗时，按路径累计，用于调整代价参数。
+ */
+@Slf4j
+@Component
+public class QueryPlanner {
+
+    public enum Path {
+        /** 直方图：按时间统计命中数，不能按字段分组 */
+        HISTOGRAM,
+        /** 分析语句：服务端 group by，需要分组字段开启统计 */
+        SQL,
+        /** 拉取日志后本地统计，代价与行数成正比 */
+        SEARCH
+    }
+
+    /**
+     * 规划输入：问题本身和从直方图、元数据缓存得到的估算
+     */
+    public static final class Estimate {
+        final long slots;
+        final boolean grouped;
+        final long estimatedRows;
+        final boolean histogramComplete;
+        final boolean histogramAligned;
+        final Boolean groupFieldAnalytic;
+
+        /**
+         * @param slots              输出的时间桶数
+         * @param grouped            是否按字段分组
+         * @param estimatedRows      直方图统计的命中行数
+         * @param histogramComplete  直方图是否全部为 Complete
+         * @param histogramAligned   直方图的每个桶是否都落在一个输出时间桶内（可直接合并）
+         * @param groupFieldAnalytic 分组字段是否开启统计，未知时为null
+         */
+        public Estimate(long slots, boolean grouped, long estimatedRows, boolean histogramComplete,
+                        boolean histogramAligned, Boolean groupFieldAnalytic) {
+            this.slots = slots;
+            this.grouped = grouped;
+            this.estimatedRows = estimatedRows;
+            this.histogramComplete = histogramComplete;
+            this.histogramAligned = histogramAligned;
+            this.groupFieldAnalytic = groupFieldAnalytic;
+        }
+    }
+
+    /**
+     * 代价参数（毫秒）
+     */
+    static final class CostModel {
+        final double histogramMillis;
+        final int histogramMaxRequests;
+        final int concurrency;
+        final double sqlBaseMillis;
+        final double sqlMillisPerMillionRows;
+        final long sqlMaxRows;
+        final double searchPageMillis;
+        final int searchPageSize;
+        final long searchMaxRows;
+
+        CostModel(double histogramMillis, int histogramMaxRequests, int concurrency, double sqlBaseMillis,
+                  double sqlMillisPerMillionRows, long sqlMaxRows, double searchPageMillis, int searchPageSize,
+                  long searchMaxRows) {
+            this.histogramMillis = histogramMillis;
+            this.histogramMaxRequests = histogramMaxRequests;
+            this.concurrency = Math.max(1, concurrency);
+            this.sqlBaseMillis = sqlBaseMillis;
+            this.sqlMillisPerMillionRows = sqlMillisPerMillionRows;
+            this.sqlMaxRows = sqlMaxRows;
+            this.searchPageMillis = searchPageMillis;
+            this.searchPageSize = Math.max(1, searchPageSize);
+            this.searchMaxRows = searchMaxRows;
+        }
+    }
+
+    /**
+     * 一条候选路径
+     */
+    public static final class Candidate {
+        final Path path;
+        final boolean feasible;
+        final double costMillis;
+        final String reason;
+
+        Candidate(Path path, boolean feasible, double costMillis, String reason) {
+            this.path = path;
+            this.feasible = feasible;
+            this.costMillis = costMillis;
+            this.reason = reason;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("path", path.name());
+            map.put("feasible", feasible);
+            if (feasible) {
+                map.put("estimatedCostMillis", Math.round(costMillis));
+            }
+            map.put("reason", reason);
+            return map;
+        }
+    }
+
+    /**
+     * 规划结果
+     */
+    public static final class Plan {
+        final Path path;
+        final boolean splitHistogram;
+        final long estimatedRows;
+        final double estimatedCostMillis;
+        final List<Candidate> candidates;
+
+        Plan(Path path, boolean splitHistogram, long estimatedRows, double estimatedCostMillis, List<Candidate> candidates) {
+            this.path = path;
+            this.splitHistogram = splitHistogram;
+            this.estimatedRows = estimatedRows;
+            this.estimatedCostMillis = estimatedCostMillis;
+            this.candidates = candidates;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /** 直方图路径是否需要按输出时间桶分别请求直方图 */
+        public boolean isSplitHistogram() {
+            return splitHistogram;
+        }
+
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        public double getEstimatedCostMillis() {
+            return estimatedCostMillis;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("path", path.name());
+            map.put("estimatedRows", estimatedRows);
+            map.put("estimatedCostMillis", Math.round(estimatedCostMillis));
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                items.add(candidate.toMap());
+            }
+            map.put("candidates", items);
+            return map;
+        }
+    }
+
+    @Autowired
+    private SlsQueryExecutorConfig executorConfig;
+
+    /** 按路径累计的规划次数和估算/实际耗时，用于调整代价参数 */
+    private final Map<Path, long[]> totals = new EnumMap<>(Path.class);
+
+    public Plan plan(Estimate estimate) {
+        return choose(estimate, new CostModel(executorConfig.getPlannerHistogramMillis(),
+                executorConfig.getPlannerHistogramMaxRequests(), executorConfig.getPerProjectConcurrency(),
+                executorConfig.getPlannerSqlBaseMillis(), executorConfig.getPlannerSqlMillisPerMillionRows(),
+                executorConfig.getPlannerSqlMaxRows(), executorConfig.getPlannerSearchPageMillis(),
+                executorConfig.getFanOutMaxLines(), executorConfig.getPlannerSearchMaxRows()));
+    }
+
+    /**
+     * 估算各路径代价，选择可行路径中代价最低的；都不可行时使用分析语句
+     */
+    static Plan choose(Estimate e, CostModel m) {
+        List<Candidate> candidates = new ArrayList<>();
+        candidates.add(histogram(e, m));
+        candidates.add(sql(e, m));
+        candidates.add(search(e, m));
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            if (candidate.feasible && (best == null || candidate.costMillis < best.costMillis)) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            best = candidates.get(1);
+        }
+        boolean split = best.path == Path.HISTOGRAM && !e.histogramAligned;
+        return new Plan(best.path, split, e.estimatedRows, best.feasible ? best.costMillis : 0, candidates);
+    }
+
+    private static Candidate histogram(Estimate e, CostModel m) {
+        if (e.grouped) {
+            return new Candidate(Path.HISTOGRAM, false, 0, "直方图不能按字段分组");
+        }
+        if (e.histogramAligned && e.histogramComplete) {
+            return new Candidate(Path.HISTOGRAM, true, 0, "估算时已获取的直方图可直接合并为输出时间桶");
+        }
+        if (e.slots > m.histogramMaxRequests) {
+            return new Candidate(Path.HISTOGRAM, false, 0, "需要按时间桶请求 " + e.slots + " 次直方图，超过上限 "
+                    + m.histogramMaxRequests);
+        }
+        double cost = Math.ceil(e.slots / (double) m.concurrency) * m.histogramMillis;
+        return new Candidate(Path.HISTOGRAM, true, cost, "按输出时间桶分别请求 " + e.slots + " 次直方图");
+    }
+
+    private static Candidate sql(Estimate e, CostModel m) {
+        if (e.grouped && Boolean.FALSE.equals(e.groupFieldAnalytic)) {
+            return new Candidate(Path.SQL, false, 0, "分组字段未开启统计");
+        }
+        if (e.slots > m.sqlMaxRows) {
+            return new Candidate(Path.SQL, false, 0, "时间桶数超过分析语句返回行数上限 " + m.sqlMaxRows);
+        }
+        double cost = m.sqlBaseMillis + e.estimatedRows / 1e6 * m.sqlMillisPerMillionRows;
+        String reason = "服务端扫描约 " + e.estimatedRows + " 行后 group by";
+        if (e.grouped && e.groupFieldAnalytic == null) {
+            reason += "，分组字段是否开启统计未知";
+        }
+        return new Candidate(Path.SQL, true, cost, reason);
+    }
+
+    private static Candidate search(Estimate e, CostModel m) {
+        if (!e.histogramComplete) {
+            return new Candidate(Path.SEARCH, false, 0, "直方图未完成，行数无法估算");
+        }
+        if (e.estimatedRows > m.searchMaxRows) {
+            return new Candidate(Path.SEARCH, false, 0, "估算行数超过本地统计上限 " + m.searchMaxRows);
+        }
+        long pages = Math.max(1, (e.estimatedRows + m.searchPageSize - 1) / m.searchPageSize);
+        return new Candidate(Path.SEARCH, true, pages * m.searchPageMillis, "分 " + pages + " 页拉取后本地统计");
+    }
+
+    /**
+     * 记录一次执行的实际耗时
+     */
+    public void record(Plan plan, long actualMillis, long actualRows) {
+        synchronized (totals) {
+            long[] total = totals.computeIfAbsent(plan.path, k -> new long[3]);
+            total[0]++;
+            total[1] += Math.round(plan.estimatedCostMillis);
+            total[2] += actualMillis;
+        }
+        log.info("[QueryPlanner] 路径={} 估算行数={} 实际行数={} 估算耗时={}ms 实际耗时={}ms", plan.path, plan.estimatedRows,
+                actualRows, Math.round(plan.estimatedCostMillis), actualMillis);
+    }
+
+    /**
+     * 输出按路径累计的估算/实际耗时
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (totals) {
+            for (Map.Entry<Path, long[]> e : totals.entrySet()) {
+                long[] total = e.getValue();
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("plans", total[0]);
+                item.put("avgEstimatedMillis", total[1] / total[0]);
+                item.put("avgActualMillis", total[2] / total[0]);
+                result.put(e.getKey().name(), item);
+            }
+        }
+        return result;
+    }
+}
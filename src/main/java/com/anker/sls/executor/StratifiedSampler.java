@@ -0,0 +1,250 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按时间分层的随机抽样
+ * 命中几百万行时只看最新的一页有偏差，全部拉取又不可行。先用直方图得到各时间段的命中数，
+ * 把时间范围按直方图桶分成若干层，按命中数比例分配样本量；每层在随机偏移处拉取若干小段，
+ * 再在层内做蓄水池抽样保留分配的行数，合并后每行被抽中的概率近似相同，并按层估算总数。
+ */
+public final class StratifiedSampler {
+
+    /**
+     * 在一层内按偏移拉取一小段日志，返回与 getLogsPro 相同的结构
+     */
+    public interface ClusterSubmitter {
+        Future<Map<String, Object>> submit(Stratum stratum, int offset, int size);
+    }
+
+    /**
+     * 一层：时间范围、命中数、分配的样本数和要拉取的小段
+     */
+    public static final class Stratum {
+        final long from;
+        final long to;
+        final long matched;
+        int keep;
+        /** 每段为 [offset, size] */
+        final List<int[]> clusters = new ArrayList<>();
+
+        Stratum(long from, long to, long matched) {
+            this.from = from;
+            this.to = to;
+            this.matched = matched;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+    }
+
+    private StratifiedSampler() {
+    }
+
+    /**
+     * 规划各层的样本数和拉取的小段
+     *
+     * @param buckets     按时间升序的直方图桶（from、to、count）
+     * @param strata      层数上限，相邻的桶合并为一层
+     * @param sampleSize  总样本数
+     * @param clusterSize 每段拉取的行数
+     * @param maxRequests 拉取请求数上限，超过时加大每段的行数
+     */
+    public static List<Stratum> plan(List<? extends Map<?, ?>> buckets, int strata, int sampleSize, int clusterSize,
+                                     int maxRequests, Random random) {
+        int n = buckets.size();
+        int layers = Math.max(1, Math.min(strata, n));
+        List<Stratum> result = new ArrayList<>();
+        long total = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            int first = (int) ((long) layer * n / layers);
+            int last = (int) ((long) (layer + 1) * n / layers) - 1;
+            long matched = 0;
+            for (int i = first; i <= last; i++) {
+                matched += Math.max(0, CommUtil.toLong(buckets.get(i).get("count")));
+            }
+            total += matched;
+            result.add(new Stratum(CommUtil.toLong(buckets.get(first).get("from")), CommUtil.toLong(buckets.get(last).get("to")),
+                    matched));
+        }
+        allocate(result, (int) Math.min(Math.max(0, sampleSize), total), total);
+
+        int size = Math.max(1, clusterSize);
+        int requests = 0;
+        for (Stratum stratum : result) {
+            requests += (stratum.keep + size - 1) / size;
+        }
+        if (requests > maxRequests && maxRequests > 0) {
+            size = (int) Math.ceil((double) size * requests / maxRequests);
+        }
+        for (Stratum stratum : result) {
+            clusters(stratum, size, random);
+        }
+        return result;
+    }
+
+    /**
+     * 按命中数比例分配样本数（最大余数法），合计恰好为 sampleSize
+     */
+    static void allocate(List<Stratum> strata, int sampleSize, long total) {
+        if (total <= 0) {
+            return;
+        }
+        double[] remainders = new double[strata.size()];
+        int assigned = 0;
+        for (int i = 0; i < strata.size(); i++) {
+            double quota = (double) sampleSize * strata.get(i).matched / total;
+            strata.get(i).keep = (int) quota;
+            remainders[i] = quota - (int) quota;
+            assigned += strata.get(i).keep;
+        }
+        while (assigned < sampleSize) {
+            int best = -1;
+            for (int i = 0; i < remainders.length; i++) {
+                if (strata.get(i).keep < strata.get(i).matched && (best < 0 || remainders[i] > remainders[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            strata.get(best).keep++;
+            remainders[best] = -1;
+            assigned++;
+        }
+    }
+
+    /**
+     * 把层内的命中行分成等长的区段，每个区段内随机取一个起点拉取一小段，小段之间不重叠
+     */
+    private static void clusters(Stratum stratum, int size, Random random) {
+        if (stratum.keep <= 0) {
+            return;
+        }
+        long matched = stratum.matched;
+        int count = (stratum.keep + size - 1) / size;
+        if ((long) count * size >= matched) {
+            // 样本数接近命中数时整层拉取
+            for (long offset = 0; offset < matched; offset += size) {
+                stratum.clusters.add(new int[]{(int) offset, (int) Math.min(size, matched - offset)});
+            }
+            return;
+        }
+        double segment = (double) matched / count;
+        for (int i = 0; i < count; i++) {
+            long start = (long) (i * segment);
+            long slack = Math.max(0, (long) ((i + 1) * segment) - start - size);
+            long offset = start + (slack == 0 ? 0 : (long) (random.nextDouble() * (slack + 1)));
+            stratum.clusters.add(new int[]{(int) offset, size});
+        }
+    }
+
+    /**
+     * 并发拉取各层的小段，层内蓄水池抽样后合并
+     *
+     * @param timeoutMillis 等待上限，到期未返回的小段被取消，所在层按已拉取的行估算
+     * @return data 为按时间升序的样本，strata 为各层的命中数、样本数和权重，estimatedTotal 为估算的命中总数
+     */
+    public static Map<String, Object> execute(List<Stratum> strata, long timeoutMillis, Random random,
+                                              ClusterSubmitter submitter) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<List<Future<Map<String, Object>>>> futures = new ArrayList<>();
+        for (Stratum stratum : strata) {
+            List<Future<Map<String, Object>>> layer = new ArrayList<>();
+            for (int[] cluster : stratum.clusters) {
+                layer.add(submitter.submit(stratum, cluster[0], cluster[1]));
+            }
+            futures.add(layer);
+        }
+
+        List<Object> sample = new ArrayList<>();
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        long total = 0;
+        int failed = 0;
+        Object error = null;
+        boolean incomplete = false;
+        for (int s = 0; s < strata.size(); s++) {
+            Stratum stratum = strata.get(s);
+            List<Object> reservoir = new ArrayList<>();
+            long seen = 0;
+            for (Future<Map<String, Object>> future : futures.get(s)) {
+                List<?> rows = Collections.emptyList();
+                try {
+                    Map<String, Object> part = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    Object data = part == null ? null : part.get("data");
+                    if (data instanceof List) {
+                        rows = (List<?>) data;
+                    } else {
+                        failed++;
+                        error = part == null ? "查询返回为空" : part.containsKey("error") ? part.get("error") : part.get("raw");
+                    }
+                } catch (TimeoutException | CancellationException e) {
+                    future.cancel(true);
+                    incomplete = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(layer -> layer.forEach(f -> f.cancel(true)));
+                    incomplete = true;
+                } catch (ExecutionException e) {
+                    failed++;
+                    error = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+                }
+                // 层内蓄水池抽样：小段的行数之和超过分配数时随机保留 keep 行
+                for (Object row : rows) {
+                    seen++;
+                    if (reservoir.size() < stratum.keep) {
+                        reservoir.add(row);
+                    } else {
+                        long j = (long) (random.nextDouble() * seen);
+                        if (j < stratum.keep) {
+                            reservoir.set((int) j, row);
+                        }
+                    }
+                }
+            }
+            total += stratum.matched;
+            sample.addAll(reservoir);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("from", stratum.from);
+            summary.put("to", stratum.to);
+            summary.put("matched", stratum.matched);
+            summary.put("sampled", reservoir.size());
+            if (!reservoir.isEmpty()) {
+                // 每个样本代表的命中行数
+                summary.put("weight", Math.round((double) stratum.matched / reservoir.size() * 100) / 100.0);
+            }
+            summaries.add(summary);
+        }
+        sample.sort((a, b) -> Long.compare(CommUtil.timeOf(a), CommUtil.timeOf(b)));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", sample);
+        result.put("sampleSize", sample.size());
+        result.put("estimatedTotal", total);
+        result.put("samplingRate", total == 0 ? 0.0 : Math.round((double) sample.size() / total * 1e6) / 1e6);
+        result.put("strata", summaries);
+        if (failed > 0) {
+            result.put("failedRequests", failed);
+            result.put("lastError", error);
+        }
+        result.put(ProgressPoller.PROGRESS_FIELD, incomplete || failed > 0 ? ProgressPoller.INCOMPLETE : ProgressPoller.COMPLETE);
+        return result;
+    }
+}
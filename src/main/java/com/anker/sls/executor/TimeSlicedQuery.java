@@ -0,0 +1,148 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * 时间分片并发查询
+ * 把[from, to)切成互不重叠的时间片并发查询，再按时间顺序（reverse=true时从新到旧）依次消费各分片，
+ * 跨分片执行 offset/line：跳过前offset行、取line行，取够后取消剩余分片。
+ * 每个分片请求 offset+line 行，因此按顺序消费时结果与整段查询一致。
+ * 已消费的分片中任一分片未完成（progress=Incomplete）时，合并结果也标记为未完成。
+ */
+public final class TimeSlicedQuery {
+
+    /**
+     * 查询单个分片，返回与 getLogsPro 相同的结构（data 为日志列表，失败时含 error）
+     */
+    public interface LogSliceFetcher {
+        Map<String, Object> fetch(long from, long to, int line);
+    }
+
+    /**
+     * 提交分片任务，生产环境由 {@link QueryExecutor} 在project许可下执行
+     */
+    public interface SliceSubmitter {
+        Future<Map<String, Object>> submit(Callable<Map<String, Object>> task);
+    }
+
+    private TimeSlicedQuery() {
+    }
+
+    /**
+     * 切分时间范围
+     * 分片均匀分布在有数据的区间 [max(from, dataFrom), min(to, dataTo)) 上，
+     * 第一个分片从from开始、最后一个分片到to结束，保证不遗漏区间外的数据。
+     *
+     * @param dataFrom 最早可能有数据的时间（如按日志库保存天数推算），未知时传from
+     * @param dataTo 最晚可能有数据的时间，未知时传to
+     * @return 按时间升序的分片 [from, to)，不需要切分时只有一个分片
+     */
+    public static List<long[]> slices(long from, long to, long dataFrom, long dataTo, int maxSlices, long minSliceSeconds) {
+        long start = Math.max(from, dataFrom);
+        long end = Math.min(to, dataTo);
+        List<long[]> result = new ArrayList<>();
+        long span = end - start;
+        int count = span <= 0 ? 1 : (int) Math.min(Math.max(1, maxSlices), Math.max(1, span / Math.max(1, minSliceSeconds)));
+        if (count <= 1) {
+            result.add(new long[]{from, to});
+            return result;
+        }
+        long step = span / count;
+        long cursor = from;
+        for (int i = 1; i < count; i++) {
+            long boundary = start + step * i;
+            result.add(new long[]{cursor, boundary});
+            cursor = boundary;
+        }
+        result.add(new long[]{cursor, to});
+        return result;
+    }
+
+    /**
+     * 并发查询各分片并按时间顺序合并
+     *
+     * @param slices 按时间升序的分片
+     * @param reverse 为true时结果从新到旧
+     * @return data 为合并后的日志，fanOut 为分片执行情况；某个分片失败时返回该分片的错误
+     */
+    public static Map<String, Object> execute(List<long[]> slices, boolean reverse, int line, int offset,
+                                              LogSliceFetcher fetcher, SliceSubmitter submitter) {
+        int need = offset + line;
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            long[] slice = slices.get(reverse ? slices.size() - 1 - i : i);
+            futures.add(submitter.submit(() -> fetcher.fetch(slice[0], slice[1], need)));
+        }
+
+        List<Object> rows = new ArrayList<>();
+        int skipped = 0;
+        int completed = 0;
+        int cancelled = 0;
+        int incomplete = 0;
+        String progress = null;
+        Map<String, Object> failure = null;
+        try {
+            for (Future<Map<String, Object>> future : futures) {
+                if (rows.size() >= line) {
+                    break;
+                }
+                Map<String, Object> part = CommUtil.await(future, "分片查询被中断");
+                completed++;
+                Object data = part == null ? null : part.get("data");
+                if (!(data instanceof List)) {
+                    failure = part;
+                    break;
+                }
+                Object partProgress = part.get(ProgressPoller.PROGRESS_FIELD);
+                if (ProgressPoller.INCOMPLETE.equals(partProgress)) {
+                    incomplete++;
+                    progress = ProgressPoller.INCOMPLETE;
+                } else if (partProgress != null && progress == null) {
+                    progress = ProgressPoller.COMPLETE;
+                }
+                for (Object row : (List<?>) data) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else if (rows.size() < line) {
+                        rows.add(row);
+                    } else {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            for (Future<Map<String, Object>> future : futures) {
+                if (future.cancel(true)) {
+                    cancelled++;
+                }
+            }
+        }
+
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("slices", slices.size());
+        meta.put("completedSlices", completed);
+        meta.put("cancelledSlices", cancelled);
+        meta.put("incompleteSlices", incomplete);
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (failure != null) {
+            result.putAll(failure);
+            if (!result.containsKey("error") && !result.containsKey("raw")) {
+                result.put("error", "分片查询返回为空");
+            }
+        } else {
+            result.put("data", rows);
+            if (progress != null) {
+                result.put(ProgressPoller.PROGRESS_FIELD, progress);
+            }
+        }
+        result.put("fanOut", meta);
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package com.anker.sls.query;
+
+/**
+ * 解析后的SLS查询语句：检索部分的语法树 + 管道符之后的分析语句
+ * 不可修改，由 {@link QueryParser} 缓存复用。
+ */
+public final class ParsedQuery {
+
+    public static final String WITH_PACK_META = "with_pack_meta";
+
+    private final String raw;
+    private final String searchText;
+    private final QueryNode search;
+    private final SqlStatement sql;
+    private final String pipe;
+    /** 不限定字段时发给SLS的语句，首次使用时生成 */
+    private volatile String request;
+
+    ParsedQuery(String raw, String searchText, QueryNode search, SqlStatement sql, String pipe) {
+        this.raw = raw;
+        this.searchText = searchText;
+        this.search = search;
+        this.sql = sql;
+        this.pipe = pipe;
+    }
+
+    /** 原始查询语句 */
+    public String getRaw() {
+        return raw;
+    }
+
+    /** 检索部分的语法树，解析失败时为null */
+    public QueryNode getSearch() {
+        return search;
+    }
+
+    /** 分析语句，没有或无法解析时为null */
+    public SqlStatement getSql() {
+        return sql;
+    }
+
+    /** 管道符之后的分析语句（规范形式），没有时为null；单独的 with_pack_meta 不计入 */
+    public String getPipe() {
+        return pipe;
+    }
+
+    public boolean isParsed() {
+        return search != null;
+    }
+
+    /**
+     * 发给SLS的检索部分：按原有顺序输出，关键字加引号、字段查询和范围保持原语义
+     *
+     * @param scopeField 不为空时把关键字限定到该字段
+     */
+    public String toSearch(String scopeField) {
+        if (search == null) {
+            // 无法解析时原样发送，去掉末尾多余的 *
+            String text = searchText.trim();
+            if (text.endsWith(" " + QueryNode.Term.MATCH_ALL)) {
+                text = text.substring(0, text.length() - 1).trim();
+            }
+            return text.isEmpty() ? QueryNode.Term.MATCH_ALL : text;
+        }
+        QueryNode node = scopeField == null || scopeField.trim().isEmpty() ? search : search.scope(scopeField.trim());
+        return node.render();
+    }
+
+    /**
+     * 发给SLS的完整语句：没有分析语句时追加 with_pack_meta 以返回 pack 信息，有分析语句时原样保留
+     */
+    public String toRequest(String scopeField) {
+        boolean scoped = scopeField != null && !scopeField.trim().isEmpty();
+        if (!scoped && request != null) {
+            return request;
+        }
+        String searchPart = toSearch(scopeField);
+        String result;
+        if (pipe == null) {
+            result = searchPart + " | " + WITH_PACK_META;
+        } else {
+            result = searchPart + " | " + (sql != null ? sql.getText() : pipe);
+        }
+        if (!scoped) {
+            request = result;
+        }
+        return result;
+    }
+
+    /**
+     * 规范形式：检索部分按 {@link QueryNode#canonical()} 输出，分析语句按 {@link SqlStatement#canonical()} 输出
+     * 解析失败时退化为合并空白后的原始语句
+     */
+    public String canonical() {
+        if (search == null) {
+            return QueryParser.collapseWhitespace(raw);
+        }
+        String canonical = search.canonical();
+        return pipe == null ? canonical : canonical + " | " + pipe;
+    }
+}
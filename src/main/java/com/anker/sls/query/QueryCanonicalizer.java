@@ -0,0 +1,114 @@
+package com.anker.sls.query;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询语句规范化
+ * 将书写形式不同但语义相同的查询（空白、引号、运算符大小写、OR/AND操作数顺序、
+ * 是否带 with_pack_meta 后缀）归一为同一个规范形式，用作缓存key和合并并发请求的key。
+ * 同时统计每个规范形式对应了多少种原始写法。
+ */
+@Slf4j
+@Component
+public class QueryCanonicalizer {
+
+    /** 统计的规范形式数量上限，超过后不再记录新的规范形式 */
+    private static final int MAX_FORMS = 2000;
+    /** 每个规范形式记录的原始写法数量上限 */
+    private static final int MAX_VARIANTS = 32;
+
+    private final Map<String, Variants> forms = new ConcurrentHashMap<>();
+    private final AtomicLong rawCount = new AtomicLong();
+
+    /**
+     * 输出查询语句的规范形式并计入统计
+     */
+    public String canonicalize(String query) {
+        String canonical = QueryParser.parse(query).canonical();
+        rawCount.incrementAndGet();
+        Variants variants = forms.get(canonical);
+        if (variants == null && forms.size() < MAX_FORMS) {
+            variants = forms.computeIfAbsent(canonical, k -> new Variants());
+        }
+        if (variants != null) {
+            variants.record(query == null ? "" : query);
+        }
+        return canonical;
+    }
+
+    /**
+     * 输出规范化统计，按原始写法数量倒序
+     *
+     * @param top 返回的规范形式数量
+     */
+    public Map<String, Object> snapshot(int top) {
+        List<Map.Entry<String, Variants>> entries = new ArrayList<>(forms.entrySet());
+        entries.sort((a, b) -> {
+            int byVariants = Integer.compare(b.getValue().size(), a.getValue().size());
+            return byVariants != 0 ? byVariants : Long.compare(b.getValue().hits.get(), a.getValue().hits.get());
+        });
+        int rawForms = 0;
+        for (Map.Entry<String, Variants> e : entries) {
+            rawForms += e.getValue().size();
+        }
+        List<Map<String, Object>> collapsed = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < top; i++) {
+            Map.Entry<String, Variants> e = entries.get(i);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("canonical", e.getKey());
+            item.put("variants", e.getValue().size());
+            item.put("hits", e.getValue().hits.get());
+            item.put("examples", e.getValue().examples(5));
+            collapsed.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queries", rawCount.get());
+        result.put("canonicalForms", entries.size());
+        result.put("rawForms", rawForms);
+        result.put("collapsed", collapsed);
+        return result;
+    }
+
+    /**
+     * 某个规范形式的原始写法
+     */
+    private static final class Variants {
+        private final Set<String> raws = Collections.synchronizedSet(new LinkedHashSet<>());
+        private final AtomicLong hits = new AtomicLong();
+
+        void record(String raw) {
+            hits.incrementAndGet();
+            if (raws.size() < MAX_VARIANTS) {
+                raws.add(raw);
+            }
+        }
+
+        int size() {
+            return raws.size();
+        }
+
+        List<String> examples(int limit) {
+            List<String> result = new ArrayList<>();
+            synchronized (raws) {
+                for (String raw : raws) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    result.add(raw);
+                }
+            }
+            return result;
+        }
+    }
+}
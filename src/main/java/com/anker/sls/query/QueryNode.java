@@ -0,0 +1,337 @@
+package com.anker.sls.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * SLS查询语句中检索部分（管道符之前）的语法树节点
+ * 节点构建后不可修改，{@link #canonical()} 输出与书写形式无关的规范形式：
+ * 关键字统一加引号、运算符统一大写、AND/OR 的操作数去重并排序、嵌套的同类运算展开。
+ * {@link #render()} 按原有顺序输出发给SLS的语句，{@link #scope(String)} 把关键字限定到指定字段。
+ */
+public abstract class QueryNode {
+
+    /**
+     * 输出规范形式
+     */
+    public abstract String canonical();
+
+    /**
+     * 按原有顺序输出发给SLS的语句：关键字加引号，模糊匹配的关键字保持不加引号
+     */
+    public abstract String render();
+
+    /**
+     * 把关键字限定到指定字段，其余节点不变
+     */
+    public QueryNode scope(String field) {
+        return this;
+    }
+
+    /**
+     * 作为AND/OR/NOT的操作数输出时，复合节点需要加括号
+     */
+    String operand() {
+        return canonical();
+    }
+
+    String renderOperand() {
+        return render();
+    }
+
+    /**
+     * 加引号输出值；模糊匹配（不带引号且含 * 或 ?）的值原样输出，加引号后 * 会被当作普通字符
+     */
+    static String quote(String value, boolean fuzzy) {
+        return fuzzy ? value : "\"" + value + "\"";
+    }
+
+    /**
+     * 不带引号的值中含 * 或 ? 时为模糊匹配
+     */
+    static boolean isFuzzy(String value) {
+        return value.indexOf('*') >= 0 || value.indexOf('?') >= 0;
+    }
+
+    /**
+     * 关键字或短语，text 为去掉引号后的内容，"*" 表示匹配全部；fuzzy 为不带引号且含 * 或 ? 的模糊匹配
+     */
+    public static final class Term extends QueryNode {
+        public static final String MATCH_ALL = "*";
+
+        private final String text;
+        private final boolean fuzzy;
+
+        public Term(String text) {
+            this(text, false);
+        }
+
+        public Term(String text, boolean fuzzy) {
+            this.text = text;
+            this.fuzzy = fuzzy;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isFuzzy() {
+            return fuzzy;
+        }
+
+        public boolean isMatchAll() {
+            return MATCH_ALL.equals(text);
+        }
+
+        @Override
+        public String canonical() {
+            return isMatchAll() ? MATCH_ALL : quote(text, fuzzy);
+        }
+
+        @Override
+        public String render() {
+            return canonical();
+        }
+
+        @Override
+        public QueryNode scope(String field) {
+            return isMatchAll() ? this : new Field(field, text, fuzzy);
+        }
+    }
+
+    /**
+     * 字段查询 key:value，如 level:ERROR、__tag__:__path__:"/var/log/app.log"
+     */
+    public static final class Field extends QueryNode {
+        private final String key;
+        private final String value;
+        private final boolean fuzzy;
+
+        public Field(String key, String value, boolean fuzzy) {
+            this.key = key;
+            this.value = value;
+            this.fuzzy = fuzzy;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isFuzzy() {
+            return fuzzy;
+        }
+
+        @Override
+        public String canonical() {
+            return key + ":" + quote(value, fuzzy);
+        }
+
+        @Override
+        public String render() {
+            return canonical();
+        }
+    }
+
+    /**
+     * 数值比较 key op value，op 为 &gt; &gt;= &lt; &lt;= 之一
+     */
+    public static final class Compare extends QueryNode {
+        private final String key;
+        private final String operator;
+        private final String value;
+
+        public Compare(String key, String operator, String value) {
+            this.key = key;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String canonical() {
+            return key + " " + operator + " " + value;
+        }
+
+        @Override
+        public String render() {
+            return canonical();
+        }
+    }
+
+    /**
+     * 数值范围 key in [low high)，方括号包含端点、圆括号不包含，端点为 * 表示不限
+     */
+    public static final class Range extends QueryNode {
+        private final String key;
+        private final boolean lowInclusive;
+        private final String low;
+        private final String high;
+        private final boolean highInclusive;
+
+        public Range(String key, boolean lowInclusive, String low, String high, boolean highInclusive) {
+            this.key = key;
+            this.lowInclusive = lowInclusive;
+            this.low = low;
+            this.high = high;
+            this.highInclusive = highInclusive;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getLow() {
+            return low;
+        }
+
+        public String getHigh() {
+            return high;
+        }
+
+        @Override
+        public String canonical() {
+            return key + " in " + (lowInclusive ? "[" : "(") + low + " " + high + (highInclusive ? "]" : ")");
+        }
+
+        @Override
+        public String render() {
+            return canonical();
+        }
+    }
+
+    /**
+     * AND / OR 运算，操作数至少两个
+     */
+    public static final class Junction extends QueryNode {
+        private final String operator;
+        private final List<QueryNode> operands;
+
+        private Junction(String operator, List<QueryNode> operands) {
+            this.operator = operator;
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public List<QueryNode> getOperands() {
+            return operands;
+        }
+
+        /**
+         * 构建AND/OR节点：展开同类子节点，AND中去掉匹配全部的操作数，OR中有匹配全部时整体即匹配全部
+         */
+        public static QueryNode of(String operator, List<QueryNode> children) {
+            List<QueryNode> flat = new ArrayList<>();
+            for (QueryNode child : children) {
+                if (child instanceof Junction && ((Junction) child).operator.equals(operator)) {
+                    flat.addAll(((Junction) child).operands);
+                } else {
+                    flat.add(child);
+                }
+            }
+            Map<String, QueryNode> unique = new LinkedHashMap<>();
+            for (QueryNode node : flat) {
+                boolean matchAll = node instanceof Term && ((Term) node).isMatchAll();
+                if (matchAll && "OR".equals(operator)) {
+                    return node;
+                }
+                if (!matchAll) {
+                    unique.putIfAbsent(node.canonical(), node);
+                }
+            }
+            List<QueryNode> operands = new ArrayList<>(unique.values());
+            if (operands.isEmpty()) {
+                return new Term(Term.MATCH_ALL);
+            }
+            return operands.size() == 1 ? operands.get(0) : new Junction(operator, operands);
+        }
+
+        @Override
+        public String canonical() {
+            TreeSet<String> parts = new TreeSet<>();
+            for (QueryNode operand : operands) {
+                parts.add(operand.operand());
+            }
+            return String.join(" " + operator + " ", parts);
+        }
+
+        @Override
+        String operand() {
+            return "(" + canonical() + ")";
+        }
+
+        @Override
+        public String render() {
+            List<String> parts = new ArrayList<>();
+            for (QueryNode operand : operands) {
+                parts.add(operand.renderOperand());
+            }
+            return String.join(" " + operator + " ", parts);
+        }
+
+        @Override
+        String renderOperand() {
+            return "(" + render() + ")";
+        }
+
+        @Override
+        public QueryNode scope(String field) {
+            List<QueryNode> scoped = new ArrayList<>();
+            for (QueryNode operand : operands) {
+                scoped.add(operand.scope(field));
+            }
+            return of(operator, scoped);
+        }
+    }
+
+    /**
+     * NOT 运算
+     */
+    public static final class Not extends QueryNode {
+        private final QueryNode operand;
+
+        public Not(QueryNode operand) {
+            this.operand = operand;
+        }
+
+        public QueryNode getOperand() {
+            return operand;
+        }
+
+        @Override
+        public String canonical() {
+            return "NOT " + operand.operand();
+        }
+
+        @Override
+        public String render() {
+            return "NOT " + operand.renderOperand();
+        }
+
+        @Override
+        public QueryNode scope(String field) {
+            return new Not(operand.scope(field));
+        }
+    }
+}
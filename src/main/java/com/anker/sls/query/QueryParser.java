@@ -0,0 +1,341 @@
+package com.anker.sls.query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SLS查询语句解析器
+ * 检索部分支持：关键字、双引号短语、模糊匹配（abc*）、字段查询（level:ERROR、__tag__:__path__:"x"）、
+ * 数值比较（status &gt;= 500）、范围（latency in [100 500)）、AND/OR/NOT（大小写不敏感）、括号、相邻条件的隐式AND；
+ * 管道符之后的分析语句解析为 {@link SqlStatement}。
+ * 无法解析的语句（如括号不匹配）返回 search 为空的结果，调用方按原始语句处理。
+ * 解析结果不可修改，按原始语句缓存最近使用的 {@value #CACHE_SIZE} 条。
+ */
+public final class QueryParser {
+
+    static final int CACHE_SIZE = 2048;
+
+    private static final String TAG_PREFIX = "__tag__:";
+
+    private static final Map<String, ParsedQuery> CACHE = new LinkedHashMap<String, ParsedQuery>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParsedQuery> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private QueryParser() {
+    }
+
+    public static ParsedQuery parse(String query) {
+        String raw = query == null ? "" : query;
+        ParsedQuery parsed;
+        synchronized (CACHE) {
+            parsed = CACHE.get(raw);
+        }
+        if (parsed != null) {
+            HITS.incrementAndGet();
+            return parsed;
+        }
+        MISSES.incrementAndGet();
+        parsed = parseUncached(raw);
+        synchronized (CACHE) {
+            CACHE.put(raw, parsed);
+        }
+        return parsed;
+    }
+
+    static ParsedQuery parseUncached(String raw) {
+        int pipeAt = indexOfPipe(raw);
+        String searchText = pipeAt < 0 ? raw : raw.substring(0, pipeAt);
+        SqlStatement sql = null;
+        String pipe = null;
+        if (pipeAt >= 0) {
+            try {
+                sql = SqlStatement.parse(raw.substring(pipeAt + 1));
+                pipe = sql.isEmpty() || sql.isWithPackMeta() ? null : sql.canonical();
+                if (pipe == null) {
+                    sql = null;
+                }
+            } catch (IllegalArgumentException e) {
+                pipe = collapseWhitespace(raw.substring(pipeAt + 1));
+            }
+        }
+        QueryNode search;
+        try {
+            search = new Parser(tokenize(searchText)).parse();
+        } catch (IllegalArgumentException e) {
+            search = null;
+        }
+        return new ParsedQuery(raw, searchText, search, sql, pipe);
+    }
+
+    /**
+     * 解析缓存统计
+     */
+    public static Map<String, Object> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (CACHE) {
+            stats.put("entries", CACHE.size());
+        }
+        stats.put("capacity", CACHE_SIZE);
+        stats.put("hits", HITS.get());
+        stats.put("misses", MISSES.get());
+        return stats;
+    }
+
+    /**
+     * 引号外第一个管道符的位置，没有时返回-1
+     */
+    static int indexOfPipe(String query) {
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\' && quoted) {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '|' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String collapseWhitespace(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 切分为 ( ) [ ] 比较运算符 关键字 短语；短语token保留首尾引号以便与同名运算符区分
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == '[' || c == ']') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '>' || c == '<') {
+                boolean equal = i + 1 < n && text.charAt(i + 1) == '=';
+                tokens.add(equal ? c + "=" : String.valueOf(c));
+                i += equal ? 2 : 1;
+            } else if (c == '"') {
+                int end = i + 1;
+                while (end < n && text.charAt(end) != '"') {
+                    end += text.charAt(end) == '\\' ? 2 : 1;
+                }
+                if (end >= n) {
+                    throw new IllegalArgumentException("引号不匹配");
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < n && !Character.isWhitespace(text.charAt(end)) && "()[]<>\"".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 字段查询的字段名长度：普通字段到第一个冒号，__tag__: 标签字段到前缀之后的第一个冒号；
+     * 不是字段查询时返回-1
+     */
+    static int fieldKeyLength(String token) {
+        int from = token.startsWith(TAG_PREFIX) ? TAG_PREFIX.length() : 0;
+        int colon = token.indexOf(':', from);
+        if (colon <= 0) {
+            return -1;
+        }
+        return isFieldName(token, from, colon) ? colon : -1;
+    }
+
+    /**
+     * 字段名：字母或下划线开头，可含字母、数字、_ . -
+     */
+    static boolean isFieldName(String text, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        char first = text.charAt(from);
+        if (!(first == '_' || (first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z'))) {
+            return false;
+        }
+        for (int i = from + 1; i < to; i++) {
+            char c = text.charAt(i);
+            if (!(c == '_' || c == '.' || c == '-' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 递归下降：or := and (OR and)* ；and := not ([AND] not)* ；not := NOT not | primary ；
+     * primary := ( or ) | 短语 | key:value | key op value | key in [low high] | 关键字
+     */
+    private static final class Parser {
+        private final List<String> tokens;
+        private int pos;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        QueryNode parse() {
+            if (tokens.isEmpty()) {
+                return new QueryNode.Term(QueryNode.Term.MATCH_ALL);
+            }
+            QueryNode node = or();
+            if (pos < tokens.size()) {
+                throw new IllegalArgumentException("多余的token: " + tokens.get(pos));
+            }
+            return node;
+        }
+
+        private QueryNode or() {
+            List<QueryNode> operands = new ArrayList<>();
+            operands.add(and());
+            while (isOperator("OR")) {
+                pos++;
+                operands.add(and());
+            }
+            return QueryNode.Junction.of("OR", operands);
+        }
+
+        private QueryNode and() {
+            List<QueryNode> operands = new ArrayList<>();
+            operands.add(not());
+            while (pos < tokens.size() && !isOperator("OR") && !")".equals(tokens.get(pos))) {
+                if (isOperator("AND")) {
+                    pos++;
+                }
+                operands.add(not());
+            }
+            return QueryNode.Junction.of("AND", operands);
+        }
+
+        private QueryNode not() {
+            if (isOperator("NOT")) {
+                pos++;
+                return new QueryNode.Not(not());
+            }
+            return primary();
+        }
+
+        private QueryNode primary() {
+            if (pos >= tokens.size()) {
+                throw new IllegalArgumentException("查询语句不完整");
+            }
+            String token = tokens.get(pos++);
+            if ("(".equals(token)) {
+                QueryNode node = or();
+                if (pos >= tokens.size() || !")".equals(tokens.get(pos))) {
+                    throw new IllegalArgumentException("括号不匹配");
+                }
+                pos++;
+                return node;
+            }
+            if (")".equals(token) || "[".equals(token) || "]".equals(token) || isComparison(token) || isOperatorWord(token)) {
+                throw new IllegalArgumentException("意外的token: " + token);
+            }
+            if (isPhrase(token)) {
+                return new QueryNode.Term(unquote(token));
+            }
+            if (pos < tokens.size() && isComparison(tokens.get(pos))) {
+                String operator = tokens.get(pos++);
+                return new QueryNode.Compare(fieldName(token), operator, value());
+            }
+            if (isOperator("IN") && pos + 1 < tokens.size()
+                    && ("[".equals(tokens.get(pos + 1)) || "(".equals(tokens.get(pos + 1)))) {
+                pos++;
+                return range(fieldName(token));
+            }
+            int keyLength = fieldKeyLength(token);
+            if (keyLength > 0) {
+                String key = token.substring(0, keyLength);
+                String value = token.substring(keyLength + 1);
+                if (!value.isEmpty()) {
+                    return new QueryNode.Field(key, value, QueryNode.isFuzzy(value));
+                }
+                // key: 之后是短语或另一个token（level: ERROR、level:"ERROR"）
+                if (pos < tokens.size() && isPhrase(tokens.get(pos))) {
+                    return new QueryNode.Field(key, unquote(tokens.get(pos++)), false);
+                }
+                String next = value();
+                return new QueryNode.Field(key, next, QueryNode.isFuzzy(next));
+            }
+            return new QueryNode.Term(token, !QueryNode.Term.MATCH_ALL.equals(token) && QueryNode.isFuzzy(token));
+        }
+
+        /**
+         * 范围：[ 或 ( 之后两个端点，以 ] 或 ) 结束
+         */
+        private QueryNode range(String key) {
+            boolean lowInclusive = "[".equals(tokens.get(pos++));
+            String low = value();
+            String high = value();
+            if (pos >= tokens.size() || !("]".equals(tokens.get(pos)) || ")".equals(tokens.get(pos)))) {
+                throw new IllegalArgumentException("范围不完整");
+            }
+            boolean highInclusive = "]".equals(tokens.get(pos++));
+            return new QueryNode.Range(key, lowInclusive, low, high, highInclusive);
+        }
+
+        /**
+         * 比较、范围和字段查询的值：普通token或短语
+         */
+        private String value() {
+            if (pos >= tokens.size()) {
+                throw new IllegalArgumentException("查询语句不完整");
+            }
+            String token = tokens.get(pos++);
+            if ("(".equals(token) || ")".equals(token) || "[".equals(token) || "]".equals(token)
+                    || isComparison(token) || isOperatorWord(token)) {
+                throw new IllegalArgumentException("意外的token: " + token);
+            }
+            return isPhrase(token) ? unquote(token) : token;
+        }
+
+        private static String fieldName(String token) {
+            if (!isFieldName(token, 0, token.length()) && !token.startsWith(TAG_PREFIX)) {
+                throw new IllegalArgumentException("无效的字段名: " + token);
+            }
+            return token;
+        }
+
+        private static boolean isPhrase(String token) {
+            return token.length() >= 2 && token.startsWith("\"") && token.endsWith("\"");
+        }
+
+        private static String unquote(String token) {
+            return token.substring(1, token.length() - 1);
+        }
+
+        private static boolean isComparison(String token) {
+            return ">".equals(token) || ">=".equals(token) || "<".equals(token) || "<=".equals(token);
+        }
+
+        private boolean isOperator(String operator) {
+            return pos < tokens.size() && operator.equalsIgnoreCase(tokens.get(pos));
+        }
+
+        private static boolean isOperatorWord(String token) {
+            return "AND".equalsIgnoreCase(token) || "OR".equalsIgnoreCase(token) || "NOT".equalsIgnoreCase(token);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.anker.sls.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 管道符之后的分析语句
+ * 切分为 token（单引号字符串、双引号标识符、数字、标识符、运算符）后按顶层子句拆分：
+ * SELECT / FROM / WHERE / GROUP BY / HAVING / ORDER BY / LIMIT。
+ * {@link #canonical()} 以单个空格连接 token、关键字统一大写，字符串和标识符的内容保持不变。
+ */
+public final class SqlStatement {
+
+    /** 顶层子句，按 SQL 中的顺序 */
+    private static final List<String> CLAUSES = Arrays.asList("SELECT", "FROM", "WHERE", "GROUP BY", "HAVING", "ORDER BY", "LIMIT");
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "SELECT", "FROM", "WHERE", "GROUP", "BY", "HAVING", "ORDER", "LIMIT", "OFFSET", "AS", "AND", "OR", "NOT",
+            "IN", "IS", "NULL", "LIKE", "BETWEEN", "ASC", "DESC", "DISTINCT", "CASE", "WHEN", "THEN", "ELSE", "END",
+            "ON", "JOIN", "LEFT", "RIGHT", "INNER", "OUTER", "UNION", "ALL", "WITH", "OVER", "PARTITION", "TRUE", "FALSE"));
+
+    /** 多字符运算符，按长度优先匹配 */
+    private static final String[] OPERATORS = {"<>", "!=", ">=", "<=", "||", "->"};
+
+    private final String text;
+    private final List<String> tokens;
+    private final Map<String, List<String>> clauses;
+
+    private SqlStatement(String text, List<String> tokens, Map<String, List<String>> clauses) {
+        this.text = text;
+        this.tokens = tokens;
+        this.clauses = clauses;
+    }
+
+    /**
+     * 解析分析语句
+     *
+     * @throws IllegalArgumentException 字符串或标识符的引号不匹配
+     */
+    public static SqlStatement parse(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        List<String> tokens = tokenize(trimmed);
+        Map<String, List<String>> clauses = new LinkedHashMap<>();
+        String current = null;
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token)) {
+                depth--;
+            }
+            String clause = depth == 0 ? clauseAt(tokens, i) : null;
+            if (clause != null && !clauses.containsKey(clause)) {
+                current = clause;
+                clauses.put(clause, new ArrayList<>());
+                i += clause.indexOf(' ') > 0 ? 1 : 0;
+                continue;
+            }
+            if (current != null) {
+                clauses.get(current).add(token);
+            }
+        }
+        return new SqlStatement(trimmed, Collections.unmodifiableList(tokens), clauses);
+    }
+
+    private static String clauseAt(List<String> tokens, int i) {
+        String token = tokens.get(i).toUpperCase(Locale.ROOT);
+        if (("GROUP".equals(token) || "ORDER".equals(token)) && i + 1 < tokens.size()
+                && "BY".equalsIgnoreCase(tokens.get(i + 1))) {
+            return token + " BY";
+        }
+        return CLAUSES.contains(token) ? token : null;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                // 字符串中两个连续的引号表示引号本身
+                int end = i + 1;
+                while (true) {
+                    if (end >= n) {
+                        throw new IllegalArgumentException("引号不匹配");
+                    }
+                    if (text.charAt(end) == c) {
+                        if (end + 1 < n && text.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$' || c == '@') {
+                int end = i;
+                while (end < n && (Character.isLetterOrDigit(text.charAt(end)) || "_.$@:".indexOf(text.charAt(end)) >= 0)) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                String operator = String.valueOf(c);
+                for (String candidate : OPERATORS) {
+                    if (text.startsWith(candidate, i)) {
+                        operator = candidate;
+                        break;
+                    }
+                }
+                tokens.add(operator);
+                i += operator.length();
+            }
+        }
+        return tokens;
+    }
+
+    /** 原始语句（去掉首尾空白） */
+    public String getText() {
+        return text;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * 顶层子句的内容
+     *
+     * @param clause SELECT、FROM、WHERE、GROUP BY、HAVING、ORDER BY、LIMIT 之一
+     * @return 子句内容（不含子句关键字）的规范形式，没有该子句时返回null
+     */
+    public String getClause(String clause) {
+        List<String> clauseTokens = clauses.get(clause.toUpperCase(Locale.ROOT));
+        return clauseTokens == null ? null : join(clauseTokens);
+    }
+
+    /**
+     * SELECT 子句按顶层逗号拆分后的各项
+     */
+    public List<String> getSelectItems() {
+        List<String> select = clauses.get("SELECT");
+        if (select == null) {
+            return Collections.emptyList();
+        }
+        List<String> items = new ArrayList<>();
+        List<String> item = new ArrayList<>();
+        int depth = 0;
+        for (String token : select) {
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token)) {
+                depth--;
+            }
+            if (",".equals(token) && depth == 0) {
+                items.add(join(item));
+                item.clear();
+            } else {
+                item.add(token);
+            }
+        }
+        if (!item.isEmpty()) {
+            items.add(join(item));
+        }
+        return items;
+    }
+
+    /**
+     * LIMIT 的行数，LIMIT offset, n 时取 n；没有或无法解析时返回null
+     */
+    public Integer getLimit() {
+        List<String> limit = clauses.get("LIMIT");
+        if (limit == null || limit.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(limit.get(limit.size() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否只是 with_pack_meta（getLogsPro 用于返回 pack 信息的后缀，不是分析语句）
+     */
+    public boolean isWithPackMeta() {
+        return tokens.size() == 1 && ParsedQuery.WITH_PACK_META.equalsIgnoreCase(tokens.get(0));
+    }
+
+    public boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    /**
+     * 规范形式：token 以单个空格连接，关键字大写
+     */
+    public String canonical() {
+        return join(tokens);
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : parts) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            String upper = token.toUpperCase(Locale.ROOT);
+            sb.append(KEYWORDS.contains(upper) ? upper : token);
+        }
+        return sb.toString();
+    }
+}
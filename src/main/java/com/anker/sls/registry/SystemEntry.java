@@ -0,0 +1,70 @@
+package com.anker.sls.registry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 系统注册表条目，对应 sls-prompts 中的一项配置，构建后不可修改
+ */
+public final class SystemEntry {
+
+    private final String keyword;
+    private final String endpoint;
+    private final String project;
+    private final List<String> logstores;
+    private final List<String> aliases;
+
+    public SystemEntry(String keyword, String endpoint, String project, List<String> logstores, List<String> aliases) {
+        this.keyword = keyword;
+        this.endpoint = endpoint;
+        this.project = project;
+        this.logstores = Collections.unmodifiableList(logstores);
+        this.aliases = Collections.unmodifiableList(aliases);
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public List<String> getLogstores() {
+        return logstores;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SystemEntry)) {
+            return false;
+        }
+        SystemEntry that = (SystemEntry) o;
+        return Objects.equals(keyword, that.keyword) && Objects.equals(endpoint, that.endpoint)
+                && Objects.equals(project, that.project) && logstores.equals(that.logstores)
+                && aliases.equals(that.aliases);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keyword, endpoint, project, logstores, aliases);
+    }
+
+    @Override
+    public String toString() {
+        return "SystemEntry{keyword=" + keyword + ", endpoint=" + endpoint + ", project=" + project
+                + ", logstores=" + logstores + ", aliases=" + aliases + "}";
+    }
+}
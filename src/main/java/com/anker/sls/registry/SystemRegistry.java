@@ -0,0 +1,333 @@
+package com.anker.sls.registry;
+
+import com.anker.sls.config.AliyunSLSConfig;
+import com.anker.sls.config.SystemRegistryConfig;
+import com.anker.sls.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 系统注册表
+ * 启动时将 sls-prompts 配置构建为不可变的哈希索引（系统名/别名 → endpoint、project、日志库列表），
+ * 每次调用只做一次哈希查找。配置了外部文件时定期检查文件变化，重新构建索引后原子替换，
+ * 并发布 {@link SystemRegistryChangedEvent} 通知缓存等组件。
+ */
+@Slf4j
+@Component
+public class SystemRegistry {
+
+    @Autowired
+    private AliyunSLSConfig aliyunSLSConfig;
+
+    @Autowired
+    private SystemRegistryConfig registryConfig;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    private ScheduledExecutorService watcher;
+    private long lastModified;
+    private long lastLength;
+
+    public SystemRegistry() {
+    }
+
+    SystemRegistry(AliyunSLSConfig aliyunSLSConfig, SystemRegistryConfig registryConfig,
+                   ApplicationEventPublisher eventPublisher) {
+        this.aliyunSLSConfig = aliyunSLSConfig;
+        this.registryConfig = registryConfig;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        current.set(Snapshot.build(toStringMaps(aliyunSLSConfig.getSlsPrompts())));
+        log.info("[SystemRegistry] 状态=初始化 系统数={}", current.get().entries.size());
+        String configFile = registryConfig.getConfigFile();
+        if (configFile == null || configFile.trim().isEmpty()) {
+            return;
+        }
+        File file = new File(configFile.trim());
+        lastModified = file.lastModified();
+        lastLength = file.length();
+        if (file.isFile()) {
+            // 外部文件可能覆盖了 application.yml 中的配置，启动时先加载一次
+            reloadFromFile(file);
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sls-registry-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, registryConfig.getReloadIntervalSeconds());
+        watcher.scheduleWithFixedDelay(() -> checkFile(file), interval, interval, TimeUnit.SECONDS);
+        log.info("[SystemRegistry] 状态=监听 文件={} 间隔={}s", file.getAbsolutePath(), interval);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+
+    /**
+     * 根据系统名称或别名获取系统配置，并校验endpoint、project
+     *
+     * @throws BusinessException 系统不存在或配置不完整时抛出
+     */
+    public SystemEntry resolve(String systemName) {
+        if (systemName == null || systemName.trim().isEmpty()) {
+            throw new BusinessException("系统名称不能为空", 400);
+        }
+        Snapshot snapshot = current.get();
+        if (snapshot.entries.isEmpty()) {
+            log.error("SLS配置未初始化或配置为空");
+            throw new BusinessException("SLS配置未初始化，请检查配置文件", 500);
+        }
+        SystemEntry entry = snapshot.lookup(systemName);
+        if (entry == null) {
+            log.error("不支持的系统名称: {}", systemName);
+            throw new BusinessException("不支持的系统名称: " + systemName + "，请检查系统名称是否正确", 400);
+        }
+        if (entry.getEndpoint() == null) {
+            log.error("系统 {} 的endpoint配置为空", systemName);
+            throw new BusinessException("系统" + systemName + "的endpoint配置为空", 500);
+        }
+        if (entry.getProject() == null) {
+            log.error("系统 {} 的project配置为空", systemName);
+            throw new BusinessException("系统" + systemName + "的project配置为空", 500);
+        }
+        return entry;
+    }
+
+    /**
+     * 根据系统名称获取endpoint和project
+     *
+     * @return [endpoint, project]
+     */
+    public String[] resolveEndpointAndProject(String systemName) {
+        SystemEntry entry = resolve(systemName);
+        return new String[]{entry.getEndpoint(), entry.getProject()};
+    }
+
+    /**
+     * 查找系统配置，不存在时返回null，不做校验
+     */
+    public SystemEntry find(String systemName) {
+        return systemName == null ? null : current.get().lookup(systemName);
+    }
+
+    /**
+     * 当前注册的全部系统，按配置顺序排列
+     */
+    public Collection<SystemEntry> getSystems() {
+        return current.get().entries.values();
+    }
+
+    /**
+     * 用新的 sls-prompts 配置重建索引并原子替换，有变化时发布变更事件
+     *
+     * @return 变更事件，没有变化时事件为空
+     */
+    public synchronized SystemRegistryChangedEvent reload(List<Map<String, String>> prompts) {
+        Snapshot next = Snapshot.build(prompts);
+        Snapshot previous = current.getAndSet(next);
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, SystemEntry> e : next.entries.entrySet()) {
+            SystemEntry old = previous.entries.get(e.getKey());
+            if (old == null) {
+                added.add(e.getKey());
+            } else if (!old.equals(e.getValue())) {
+                changed.add(e.getKey());
+            }
+        }
+        for (String keyword : previous.entries.keySet()) {
+            if (!next.entries.containsKey(keyword)) {
+                removed.add(keyword);
+            }
+        }
+        Set<String> staleNames = new LinkedHashSet<>();
+        for (String keyword : previous.entries.keySet()) {
+            if (removed.contains(keyword) || changed.contains(keyword)) {
+                staleNames.add(keyword);
+                staleNames.addAll(previous.entries.get(keyword).getAliases());
+            }
+        }
+        SystemRegistryChangedEvent event = new SystemRegistryChangedEvent(this, added, removed, changed, staleNames);
+        if (!event.isEmpty()) {
+            log.info("[SystemRegistry] 状态=重新加载 新增={} 删除={} 变更={}", added, removed, changed);
+            eventPublisher.publishEvent(event);
+        }
+        return event;
+    }
+
+    /**
+     * 文件的修改时间或大小变化时重新加载，由定时任务调用
+     */
+    void checkFile(File file) {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == lastModified && length == lastLength) {
+            return;
+        }
+        lastModified = modified;
+        lastLength = length;
+        if (file.isFile()) {
+            reloadFromFile(file);
+        }
+    }
+
+    /**
+     * 从yml文件读取 aliyun.sls.sls-prompts 并重建索引，读取失败时保留当前索引
+     */
+    private void reloadFromFile(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Object root = new Yaml().load(in);
+            Object prompts = path(root, "aliyun", "sls", "sls-prompts");
+            if (prompts == null) {
+                prompts = path(root, "aliyun", "sls", "slsPrompts");
+            }
+            if (!(prompts instanceof List)) {
+                log.warn("[SystemRegistry] 状态=跳过 文件={} 描述=未找到 aliyun.sls.sls-prompts 配置", file);
+                return;
+            }
+            reload(toStringMaps((List<?>) prompts));
+        } catch (Exception e) {
+            log.error("[SystemRegistry] 状态=失败 文件={} 原因={}", file, e.getMessage(), e);
+        }
+    }
+
+    private static Object path(Object node, String... keys) {
+        for (String key : keys) {
+            if (!(node instanceof Map)) {
+                return null;
+            }
+            node = ((Map<?, ?>) node).get(key);
+        }
+        return node;
+    }
+
+    private static List<Map<String, String>> toStringMaps(List<?> items) {
+        if (items == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, String>> result = new ArrayList<>();
+        for (Object item : items) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<String, String> map = new HashMap<>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) item).entrySet()) {
+                if (e.getKey() != null && e.getValue() != null) {
+                    map.put(e.getKey().toString(), e.getValue().toString());
+                }
+            }
+            result.add(map);
+        }
+        return result;
+    }
+
+    /**
+     * 某一时刻的不可变索引
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+
+        /** 系统名 → 条目，保持配置顺序 */
+        final Map<String, SystemEntry> entries;
+        /** 系统名及别名 → 条目 */
+        final Map<String, SystemEntry> index;
+
+        private Snapshot(Map<String, SystemEntry> entries, Map<String, SystemEntry> index) {
+            this.entries = entries;
+            this.index = index;
+        }
+
+        SystemEntry lookup(String name) {
+            SystemEntry entry = index.get(name);
+            return entry != null ? entry : index.get(name.trim());
+        }
+
+        static Snapshot build(List<Map<String, String>> prompts) {
+            Map<String, SystemEntry> entries = new LinkedHashMap<>();
+            Map<String, SystemEntry> index = new HashMap<>();
+            if (prompts == null) {
+                return new Snapshot(entries, index);
+            }
+            for (Map<String, String> item : prompts) {
+                String keyword = trimToNull(item == null ? null : item.get("keyword"));
+                if (keyword == null) {
+                    continue;
+                }
+                if (entries.containsKey(keyword)) {
+                    log.warn("[SystemRegistry] 系统名称重复，使用第一项配置: {}", keyword);
+                    continue;
+                }
+                SystemEntry entry = new SystemEntry(keyword, trimToNull(item.get("endpoint")),
+                        trimToNull(item.get("project")), split(item.get("logstore")), split(item.get("aliases")));
+                entries.put(keyword, entry);
+                index.put(keyword, entry);
+            }
+            // 别名在系统名之后登记，避免别名覆盖其他系统的正式名称
+            for (SystemEntry entry : entries.values()) {
+                for (String alias : entry.getAliases()) {
+                    SystemEntry existing = index.putIfAbsent(alias, entry);
+                    if (existing != null && existing != entry) {
+                        log.warn("[SystemRegistry] 别名冲突，别名={} 已指向系统={}，忽略系统={}的别名",
+                                alias, existing.getKeyword(), entry.getKeyword());
+                    }
+                }
+            }
+            return new Snapshot(Collections.unmodifiableMap(entries), Collections.unmodifiableMap(index));
+        }
+
+        private static List<String> split(String value) {
+            List<String> result = new ArrayList<>();
+            if (value == null) {
+                return result;
+            }
+            for (String part : value.split(",")) {
+                String trimmed = part.trim();
+                if (!trimmed.isEmpty()) {
+                    result.add(trimmed);
+                }
+            }
+            return result;
+        }
+
+        private static String trimToNull(String value) {
+            if (value == null) {
+                return null;
+            }
+            String trimmed = value.trim();
+            return trimmed.isEmpty() ? null : trimmed;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.anker.sls.registry;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 系统注册表变更事件，热加载后发布
+ * 监听方可据此使对应系统的缓存失效或提前预热新系统
+ */
+public class SystemRegistryChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Set<String> changed;
+    private final Set<String> staleNames;
+
+    public SystemRegistryChangedEvent(Object source, Set<String> added, Set<String> removed, Set<String> changed,
+                                      Set<String> staleNames) {
+        super(source);
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+        this.changed = Collections.unmodifiableSet(changed);
+        this.staleNames = Collections.unmodifiableSet(staleNames);
+    }
+
+    /** 新增的系统 */
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    /** 删除的系统 */
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /** endpoint、project、日志库或别名发生变化的系统 */
+    public Set<String> getChanged() {
+        return changed;
+    }
+
+    /** 删除和变更的系统在变更前的系统名及别名，调用方可能以其中任一名称写入过缓存 */
+    public Set<String> getStaleNames() {
+        return staleNames;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+}
@@ -0,0 +1,155 @@
+package com.anker.sls.result;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * 日志字段投影
+ * 调用方只需要部分字段时，解析响应体时逐字段流式读取，不需要的字段直接跳过，不会生成对应的对象；
+ * 也可以把投影下推为 SLS 分析语句的 select，由服务端只返回这些字段。
+ * 时间和 pack 字段总是保留，保证时间归并、上下文查询和折叠示例可用。
+ */
+public final class FieldProjection {
+
+    /** 总是保留的字段 */
+    public static final String[] REQUIRED = {"__time__", "__tag__:__pack_id__", "__pack_meta__"};
+
+    /** 上下文查询响应中的日志列表字段 */
+    private static final String LOGS_FIELD = "logs";
+
+    /** 可以直接写进 select 的字段名 */
+    private static final Pattern SQL_FIELD = Pattern.compile("[A-Za-z0-9_:.@\\-]+");
+
+    /** pack_meta 只能通过 with_pack_meta 返回，分析语句中无法选择 */
+    private static final String PACK_META_FIELD = "__pack_meta__";
+
+    private FieldProjection() {
+    }
+
+    /**
+     * 解析调用方传入的字段列表（逗号分隔）
+     *
+     * @return 含必需字段的字段集合；为空或 * 时返回null，表示不投影
+     */
+    public static Set<String> of(String fields) {
+        if (fields == null || fields.trim().isEmpty() || "*".equals(fields.trim())) {
+            return null;
+        }
+        Set<String> projection = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                projection.add(field.trim());
+            }
+        }
+        if (projection.isEmpty()) {
+            return null;
+        }
+        for (String field : REQUIRED) {
+            projection.add(field);
+        }
+        return projection;
+    }
+
+    /**
+     * 用于缓存key：字段排序后拼接，不投影时为 *
+     */
+    public static String canonical(Set<String> fields) {
+        return fields == null ? "*" : String.join(",", new TreeSet<>(fields));
+    }
+
+    /**
+     * 流式解析响应体：顶层为日志数组时投影每条日志，顶层为对象时投影其中的 logs 数组，其余内容原样读取
+     *
+     * @param fields 保留的字段，为null时完整解析
+     */
+    public static Object parse(ObjectMapper objectMapper, String body, Set<String> fields) throws IOException {
+        if (fields == null) {
+            return objectMapper.readValue(body, Object.class);
+        }
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                return readRows(objectMapper, parser, fields);
+            }
+            if (token != JsonToken.START_OBJECT) {
+                return objectMapper.readValue(parser, Object.class);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && LOGS_FIELD.equals(name)) {
+                    result.put(name, readRows(objectMapper, parser, fields));
+                } else {
+                    result.put(name, objectMapper.readValue(parser, Object.class));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 读取日志数组，解析器位于 START_ARRAY；不需要的字段调用 skipChildren 跳过
+     */
+    private static List<Object> readRows(ObjectMapper objectMapper, JsonParser parser, Set<String> fields) throws IOException {
+        List<Object> rows = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                rows.add(objectMapper.readValue(parser, Object.class));
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!fields.contains(name)) {
+                    parser.skipChildren();
+                } else if (value == JsonToken.VALUE_STRING) {
+                    row.put(name, parser.getText());
+                } else {
+                    row.put(name, objectMapper.readValue(parser, Object.class));
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 下推为分析语句：select 投影字段，按时间排序并用 limit 分页
+     *
+     * @param reverse 是否按时间倒序
+     * @return 追加在检索语句 | 之后的分析语句；有字段无法写进 select 时返回null
+     */
+    public static String select(Set<String> fields, int line, int offset, boolean reverse) {
+        StringBuilder sb = new StringBuilder("select ");
+        boolean first = true;
+        for (String field : fields) {
+            if (PACK_META_FIELD.equals(field)) {
+                continue;
+            }
+            if (!SQL_FIELD.matcher(field).matches()) {
+                return null;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            sb.append('"').append(field).append('"');
+            first = false;
+        }
+        sb.append(" order by __time__ ").append(reverse ? "desc" : "asc");
+        sb.append(" limit ").append(Math.max(0, offset)).append(", ").append(Math.max(0, line));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.anker.sls.result;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重复日志折叠
+ * 按脱敏后的日志内容（含数字的词如时间、ID、数值替换为 &lt;*&gt;）对结果分组，每组只输出第一行作为代表，
+ * 并在 {@link #FOLD_FIELD} 中附带条数、最早/最晚 __time__ 和若干 pack_id 示例。
+ * 单次顺序遍历完成；分组数达到上限后新出现的日志原样输出，占用内存只与分组数有关。
+ */
+public final class LogFolder {
+
+    /** 折叠信息字段 */
+    public static final String FOLD_FIELD = "__fold__";
+
+    /** 脱敏占位符 */
+    public static final String MASK = "<*>";
+
+    private static final String TIME_FIELD = "__time__";
+    private static final String PACK_ID_FIELD = "__tag__:__pack_id__";
+    private static final String PACK_META_FIELD = "__pack_meta__";
+
+    private LogFolder() {
+    }
+
+    /**
+     * 折叠结果中的 data
+     *
+     * @return 新的结果，data 为折叠后的日志，folding 为折叠统计；data 不是列表时原样返回
+     */
+    public static Map<String, Object> fold(Map<String, Object> result, int maxGroups, int examples, int maxKeyLength) {
+        if (result == null || !(result.get("data") instanceof List)) {
+            return result;
+        }
+        List<?> rows = (List<?>) result.get("data");
+        Map<String, Group> groups = new HashMap<>();
+        // 按首次出现的顺序输出，元素为 Group 或原样输出的行
+        List<Object> output = new ArrayList<>();
+        int overflow = 0;
+        for (Object row : rows) {
+            if (!(row instanceof Map)) {
+                output.add(row);
+                continue;
+            }
+            Map<?, ?> map = (Map<?, ?>) row;
+            String key = normalize(map, maxKeyLength);
+            Group group = groups.get(key);
+            if (group == null) {
+                if (groups.size() >= Math.max(0, maxGroups)) {
+                    overflow++;
+                    output.add(row);
+                    continue;
+                }
+                group = new Group(map);
+                groups.put(key, group);
+                output.add(group);
+            }
+            group.add(map, examples);
+        }
+
+        List<Object> data = new ArrayList<>(output.size());
+        for (Object item : output) {
+            data.add(item instanceof Group ? ((Group) item).toRow() : item);
+        }
+        Map<String, Object> folding = new LinkedHashMap<>();
+        folding.put("rows", rows.size());
+        folding.put("groups", groups.size());
+        folding.put("returnedRows", data.size());
+        folding.put("overflowRows", overflow);
+        Map<String, Object> folded = new LinkedHashMap<>(result);
+        folded.put("data", data);
+        folded.put("folding", folding);
+        return folded;
+    }
+
+    /**
+     * 生成分组key：依次拼接非系统字段（不以 __ 开头）的脱敏内容，超过maxKeyLength后截断
+     */
+    static String normalize(Map<?, ?> row, int maxKeyLength) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<?, ?> e : row.entrySet()) {
+            String name = String.valueOf(e.getKey());
+            if (name.startsWith("__")) {
+                continue;
+            }
+            if (sb.length() >= maxKeyLength) {
+                break;
+            }
+            sb.append(name).append('=');
+            mask(String.valueOf(e.getValue()), sb, maxKeyLength);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把含数字的词（以及16位以上的十六进制串）替换为占位符，
+     * 只由 - : . 隔开的连续占位符（如日期、时间、IP）合并为一个
+     */
+    public static void mask(String text, StringBuilder sb, int maxLength) {
+        int lastMaskEnd = -1;
+        int i = 0;
+        int n = text.length();
+        while (i < n && sb.length() < maxLength) {
+            char c = text.charAt(i);
+            if (!isWordChar(c)) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean digit = false;
+            boolean hex = true;
+            while (i < n && isWordChar(text.charAt(i))) {
+                char w = text.charAt(i);
+                digit |= Character.isDigit(w);
+                hex &= Character.digit(w, 16) >= 0;
+                i++;
+            }
+            if (digit || (hex && i - start >= 16)) {
+                if (lastMaskEnd >= 0 && onlySeparators(sb, lastMaskEnd)) {
+                    sb.setLength(lastMaskEnd);
+                } else {
+                    sb.append(MASK);
+                }
+                lastMaskEnd = sb.length();
+            } else {
+                sb.append(text, start, i);
+                lastMaskEnd = -1;
+            }
+        }
+    }
+
+    private static boolean onlySeparators(StringBuilder sb, int from) {
+        for (int i = from; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c != '-' && c != ':' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * 一组内容相同的日志
+     */
+    private static final class Group {
+        final Map<?, ?> representative;
+        final List<Map<String, Object>> examples = new ArrayList<>();
+        int count;
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+
+        Group(Map<?, ?> representative) {
+            this.representative = representative;
+        }
+
+        void add(Map<?, ?> row, int maxExamples) {
+            count++;
+            Object time = row.get(TIME_FIELD);
+            if (time != null) {
+                long t = CommUtil.toLong(time);
+                firstTime = Math.min(firstTime, t);
+                lastTime = Math.max(lastTime, t);
+            }
+            Object packId = row.get(PACK_ID_FIELD);
+            if (packId != null && examples.size() < maxExamples) {
+                Map<String, Object> example = new LinkedHashMap<>();
+                example.put("pack_id", packId);
+                example.put("pack_meta", row.get(PACK_META_FIELD));
+                examples.add(example);
+            }
+        }
+
+        Object toRow() {
+            if (count == 1) {
+                return representative;
+            }
+            Map<Object, Object> row = new LinkedHashMap<>(representative);
+            Map<String, Object> fold = new LinkedHashMap<>();
+            fold.put("count", count);
+            if (firstTime <= lastTime) {
+                fold.put("firstTime", String.valueOf(firstTime));
+                fold.put("lastTime", String.valueOf(lastTime));
+            }
+            fold.put("examples", examples);
+            row.put(FOLD_FIELD, fold);
+            return row;
+        }
+    }
+}
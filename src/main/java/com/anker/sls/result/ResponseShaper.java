@@ -0,0 +1,304 @@
+package com.anker.sls.result;
+
+import com.anker.sls.util.CommUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 按预算裁剪返回给模型的日志结果
+ * 去掉低价值字段（未保留的 __tag__ 字段、配置的字段、值为空的系统字段），时间和 pack 字段总是保留，超长的值截断并标注原长度，
+ * 再按级别（FATAL/ERROR 优先）和时间（新的优先）选择放得进字节/token预算的行，选中的行保持原有顺序，
+ * 并在 {@link #SHAPING_FIELD} 中说明省略了什么。
+ * 第一遍只逐字段估算大小和优先级，不序列化也不复制日志；第二遍只为选中的行生成裁剪后的副本。
+ */
+public final class ResponseShaper {
+
+    /** 裁剪信息字段 */
+    public static final String SHAPING_FIELD = "shaping";
+
+    private static final String TIME_FIELD = "__time__";
+    private static final String TAG_PREFIX = "__tag__:";
+
+    /** 不会去掉的字段，与字段投影的必需字段相同 */
+    private static final Set<String> REQUIRED = new HashSet<>(Arrays.asList(FieldProjection.REQUIRED));
+
+    /** 裁剪信息本身预留的大小 */
+    private static final int RESERVED_BYTES = 512;
+    private static final int RESERVED_TOKENS = 160;
+
+    /** 判断级别时只看值的前若干字符 */
+    private static final int LEVEL_SCAN_LENGTH = 200;
+
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    private static final int DEFAULT_LEVEL = 2;
+
+    /**
+     * 裁剪参数
+     */
+    public static final class Options {
+        /** 字节预算，不大于0时不限 */
+        final long maxBytes;
+        /** 估算token预算，不大于0时不限 */
+        final long maxTokens;
+        /** 单个值的最大字符数，超出部分截断 */
+        final int maxValueLength;
+        /** 保留的 __tag__ 字段，其余 __tag__ 字段去掉 */
+        final Set<String> keepTags;
+        /** 去掉的字段 */
+        final Set<String> dropFields;
+        /** 判断级别的字段，按顺序取第一个存在的字段 */
+        final List<String> levelFields;
+
+        public Options(long maxBytes, long maxTokens, int maxValueLength, String keepTags, String dropFields, String levelFields) {
+            this.maxBytes = maxBytes;
+            this.maxTokens = maxTokens;
+            this.maxValueLength = maxValueLength;
+            this.keepTags = new HashSet<>(split(keepTags));
+            this.dropFields = new HashSet<>(split(dropFields));
+            this.levelFields = split(levelFields);
+        }
+
+        private static List<String> split(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<String> items = new ArrayList<>();
+            for (String item : text.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    items.add(item.trim());
+                }
+            }
+            return items;
+        }
+    }
+
+    private ResponseShaper() {
+    }
+
+    /**
+     * 裁剪结果中的日志列表
+     *
+     * @param rowsKey 日志列表所在的字段，如 getLogsPro 的 data、上下文查询的 logs
+     * @return 新的结果，日志列表为裁剪后的副本；日志列表不存在时原样返回
+     */
+    public static Map<String, Object> shape(Map<String, Object> result, String rowsKey, Options options) {
+        if (result == null || !(result.get(rowsKey) instanceof List)) {
+            return result;
+        }
+        List<?> rows = (List<?>) result.get(rowsKey);
+        Estimate used = new Estimate();
+        for (Map.Entry<String, Object> e : result.entrySet()) {
+            if (!rowsKey.equals(e.getKey())) {
+                used.addField(e.getKey(), e.getValue(), Integer.MAX_VALUE);
+            }
+        }
+        used.bytes += RESERVED_BYTES;
+        used.tokens += RESERVED_TOKENS;
+
+        // 第一遍：估算每行裁剪后的大小和优先级
+        int n = rows.size();
+        long[] bytes = new long[n];
+        long[] tokens = new long[n];
+        int[] levels = new int[n];
+        long[] times = new long[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            Object row = rows.get(i);
+            Estimate estimate = new Estimate();
+            if (row instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) row;
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    String name = String.valueOf(e.getKey());
+                    if (!dropped(name, e.getValue(), options)) {
+                        estimate.addField(name, e.getValue(), options.maxValueLength);
+                    }
+                }
+                levels[i] = level(map, options.levelFields);
+                times[i] = CommUtil.toLong(map.get(TIME_FIELD));
+            } else {
+                estimate.addValue(row, options.maxValueLength);
+                levels[i] = DEFAULT_LEVEL;
+            }
+            bytes[i] = estimate.bytes + 2;
+            tokens[i] = estimate.tokens + 1;
+        }
+        Arrays.sort(order, (a, b) -> levels[a] != levels[b] ? Integer.compare(levels[b], levels[a])
+                : times[a] != times[b] ? Long.compare(times[b], times[a]) : Integer.compare(a, b));
+
+        // 按优先级选择放得进预算的行，第一行放不下时停止，保证保留的总是优先级最高的一批
+        boolean[] kept = new boolean[n];
+        int keptRows = 0;
+        for (Integer i : order) {
+            if (exceeds(used.bytes + bytes[i], options.maxBytes) || exceeds(used.tokens + tokens[i], options.maxTokens)) {
+                break;
+            }
+            used.bytes += bytes[i];
+            used.tokens += tokens[i];
+            kept[i] = true;
+            keptRows++;
+        }
+
+        // 第二遍：只为选中的行生成裁剪后的副本
+        Map<String, Integer> droppedFields = new TreeMap<>();
+        Map<String, Integer> omittedLevels = new LinkedHashMap<>();
+        long omittedFirst = Long.MAX_VALUE;
+        long omittedLast = Long.MIN_VALUE;
+        int truncated = 0;
+        List<Object> shaped = new ArrayList<>(keptRows);
+        for (int i = 0; i < n; i++) {
+            Object row = rows.get(i);
+            if (!kept[i]) {
+                omittedLevels.merge(LEVELS[levels[i]], 1, Integer::sum);
+                if (times[i] > 0) {
+                    omittedFirst = Math.min(omittedFirst, times[i]);
+                    omittedLast = Math.max(omittedLast, times[i]);
+                }
+                continue;
+            }
+            if (!(row instanceof Map)) {
+                shaped.add(row);
+                continue;
+            }
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) row).entrySet()) {
+                String name = String.valueOf(e.getKey());
+                Object value = e.getValue();
+                if (dropped(name, value, options)) {
+                    droppedFields.merge(name, 1, Integer::sum);
+                    continue;
+                }
+                if (value instanceof String && ((String) value).length() > options.maxValueLength) {
+                    value = truncate((String) value, options.maxValueLength);
+                    truncated++;
+                }
+                copy.put(name, value);
+            }
+            shaped.add(copy);
+        }
+
+        Map<String, Object> shaping = new LinkedHashMap<>();
+        shaping.put("budgetBytes", options.maxBytes);
+        shaping.put("budgetTokens", options.maxTokens);
+        shaping.put("estimatedBytes", used.bytes - RESERVED_BYTES);
+        shaping.put("estimatedTokens", used.tokens - RESERVED_TOKENS);
+        shaping.put("rows", n);
+        shaping.put("returnedRows", keptRows);
+        shaping.put("omittedRows", n - keptRows);
+        if (keptRows < n) {
+            shaping.put("omittedLevels", omittedLevels);
+            if (omittedFirst != Long.MAX_VALUE) {
+                shaping.put("omittedFirstTime", omittedFirst);
+                shaping.put("omittedLastTime", omittedLast);
+            }
+            shaping.put("hint", "超出预算的日志已省略，可缩小时间范围、增加查询条件、使用 fold 折叠重复日志或调大 maxTokens");
+        }
+        shaping.put("truncatedValues", truncated);
+        shaping.put("droppedFields", droppedFields);
+        Map<String, Object> output = new LinkedHashMap<>(result);
+        output.put(rowsKey, shaped);
+        output.put(SHAPING_FIELD, shaping);
+        return output;
+    }
+
+    private static boolean exceeds(long value, long budget) {
+        return budget > 0 && value > budget;
+    }
+
+    /**
+     * 低价值字段：配置去掉的字段、未保留的 __tag__ 字段、值为空的系统字段；必需字段不会去掉
+     */
+    static boolean dropped(String name, Object value, Options options) {
+        if (REQUIRED.contains(name)) {
+            return false;
+        }
+        if (options.dropFields.contains(name)) {
+            return true;
+        }
+        if (name.startsWith(TAG_PREFIX)) {
+            return !options.keepTags.contains(name);
+        }
+        return name.startsWith("__") && (value == null || "".equals(value));
+    }
+
+    static String truncate(String value, int maxLength) {
+        return value.substring(0, Math.max(0, maxLength)) + "…[已截断，共" + value.length() + "字符]";
+    }
+
+    /**
+     * 取第一个存在的级别字段，在其前 {@value #LEVEL_SCAN_LENGTH} 个字符中找级别关键字，找不到时按 INFO 处理
+     */
+    static int level(Map<?, ?> row, List<String> levelFields) {
+        for (String field : levelFields) {
+            Object value = row.get(field);
+            if (value == null) {
+                continue;
+            }
+            String text = value.toString();
+            if (text.length() > LEVEL_SCAN_LENGTH) {
+                text = text.substring(0, LEVEL_SCAN_LENGTH);
+            }
+            text = text.toUpperCase(Locale.ROOT);
+            for (int level = LEVELS.length - 1; level >= 0; level--) {
+                if (text.contains(LEVELS[level])) {
+                    return level;
+                }
+            }
+            return DEFAULT_LEVEL;
+        }
+        return DEFAULT_LEVEL;
+    }
+
+    /**
+     * JSON 大小估算：UTF-8 字节数（含引号、转义和分隔符）；token 按 ASCII 每4字符1个、其他字符每字符1个估算
+     */
+    private static final class Estimate {
+        long bytes;
+        long tokens;
+
+        void addField(String name, Object value, int maxValueLength) {
+            addText(name);
+            bytes += 1;
+            addValue(value, maxValueLength);
+            bytes += 1;
+        }
+
+        void addValue(Object value, int maxValueLength) {
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                addText(String.valueOf(value));
+                bytes -= 2;
+                return;
+            }
+            String text = value.toString();
+            if (value instanceof String && text.length() > maxValueLength) {
+                text = truncate(text, maxValueLength);
+            }
+            addText(text);
+        }
+
+        private void addText(String text) {
+            bytes += 2;
+            int ascii = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes += c == '"' || c == '\\' || c == '\n' || c == '\t' || c == '\r' ? 2 : 1;
+                    ascii++;
+                } else {
+                    bytes += c < 0x800 ? 2 : 3;
+                    tokens++;
+                }
+            }
+            tokens += (ascii + 3) / 4;
+        }
+    }
+}
@@ -12,19 +12,22 @@ import java.util.Collection;
 
 public interface SlsLogService {
     List<Map<String, Object>> getLogstoreList(String systemName);
-    Map<String, Object> getLogs(String logstore, String query, int from, int to, int line, boolean reverse, String systemName);
+    Map<String, Object> getLogs(String logstore, String query, int from, int to, int line, boolean reverse, String systemName, String fields);
     Map<String, Object> getIndex(String logstore, String systemName);
     Map<String, Object> getProject(String systemName);
     Map<String, Object> getHistograms(String logstore, long from, long to, String topic, String query, String systemName);
+    boolean warmHistograms(String logstore, long from, long to, String topic, String query, String systemName, Runnable beforeRequest);
     Map<String, Object> diagnoseSLSConnection(String logstore, String systemName);
     Map<String, Object> getLogstore(String logstore, String systemName);
     Map<String, Object> listProject(String projectName, Integer offset, Integer size, String resourceGroupId, String systemName);
     Map<String, Object> queryLogsBySql(String query, Boolean powerSql, String systemName);
     Map<String, Object> getLogging(String systemName);
     List<Map<String, Object>> listShards(String logstore, String systemName);
-    Map<String, Object> getLogsPro(String logstore, Long from, Long to, String query, Integer line, Integer offset, Boolean reverse, Boolean powerSql, String topic, String systemName);
+    Map<String, Object> getLogsPro(String logstore, Long from, Long to, String query, Integer line, Integer offset, Boolean reverse, Boolean powerSql, String topic, String systemName, Boolean fold, Integer maxTokens, String fields, String pageToken);
+    boolean warmLogsPro(String logstore, Long from, Long to, String query, Integer line, Integer offset, String systemName, String fields);
     Map<String, Object> getCursor(String logstore, int shardId, String from, String systemName);
-    Map<String, Object> getContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines, String systemName);
+    Map<String, Object> getContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines, String systemName, Integer maxTokens);
+    boolean warmContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines, String systemName, Runnable beforeRequest);
     Map<String, Object> getCursorTime(String logstore, int shardId, String cursor, String systemName);
     Map<String, Object> getRawLogs(String logstore, String acceptEncoding, Map<String, Object> body, String systemName);
     Map<String, Object> getLogstoreMeteringMode(String logstore, String systemName);
@@ -34,4 +37,16 @@ public interface SlsLogService {
     Map<String, Object> getAppliedConfigs(String machineGroup, String systemName);
     Map<String, Object> getAppliedMachineGroups(String configName, String systemName);
     IPage<McpServiceLog> getMcpServiceLog(Integer page, Integer size);
+    Map<String, Object> getCacheStats(String systemName, Integer topKeys);
+    Map<String, Object> getLogTemplates(String logstore, Long from, Long to, String query, Integer maxLines, Integer top, String systemName);
+    Map<String, Object> getExceptionGroups(String logstore, Long from, Long to, String query, Integer maxLines, Integer top, String systemName);
+    Map<String, Object> compareWindows(String logstore, Long baseFrom, Long baseTo, Long targetFrom, Long targetTo, String query,
+                                       String mode, Integer maxLines, Integer top, String systemName);
+    Map<String, Object> countLogs(String logstore, Long from, Long to, String query, Integer interval, String groupBy, String systemName);
+    Map<String, Object> searchTrace(String traceId, Long from, Long to, Integer line, String systemNames, Integer maxTokens);
+    Map<String, Object> sampleLogs(String logstore, Long from, Long to, String query, Integer sampleSize, Integer strata, Long seed,
+                                   String systemName, Integer maxTokens);
+    Map<String, Object> batchQuery(List<Map<String, Object>> queries, String systemName);
+    Map<String, Object> aggregateLogs(String resultId, String groupBy, String distinct, String filter, Integer top);
+    Map<String, Object> invalidateCache(String tier, String systemName, String logstore, String keyPrefix);
 } 
\ No newline at end of file
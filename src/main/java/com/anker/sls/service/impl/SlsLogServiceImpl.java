@@ -1,10 +1,44 @@
 package com.anker.sls.service.impl;
 
+import com.anker.sls.analysis.DrainMiner;
+import com.anker.sls.analysis.LogAggregator;
+import com.anker.sls.analysis.StackTraceGrouper;
+import com.anker.sls.analysis.TemplateStore;
+import com.anker.sls.analysis.WindowDiff;
+import com.anker.sls.cache.ContextWindowCache;
+import com.anker.sls.cache.HistogramStore;
+import com.anker.sls.cache.ResultHandleStore;
+import com.anker.sls.cache.SlsCacheManager;
+import com.anker.sls.config.SlsAnalysisConfig;
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import com.anker.sls.config.SlsResultConfig;
+import com.anker.sls.executor.BatchQuery;
+import com.anker.sls.executor.CrossSystemTraceQuery;
+import com.anker.sls.executor.HistogramGuidedQuery;
+import com.anker.sls.executor.KeysetPage;
+import com.anker.sls.executor.MultiLogstoreQuery;
+import com.anker.sls.executor.PagePrefetcher;
+import com.anker.sls.executor.ProgressPoller;
+import com.anker.sls.executor.QueryExecutor;
+import com.anker.sls.executor.QueryPlanner;
+import com.anker.sls.executor.StratifiedSampler;
+import com.anker.sls.executor.TimeSlicedQuery;
+import com.anker.sls.query.ParsedQuery;
+import com.anker.sls.query.QueryCanonicalizer;
+import com.anker.sls.query.QueryNode;
+import com.anker.sls.query.QueryParser;
+import com.anker.sls.result.FieldProjection;
+import com.anker.sls.result.LogFolder;
+import com.anker.sls.result.ResponseShaper;
+import com.anker.sls.registry.SystemEntry;
+import com.anker.sls.registry.SystemRegistry;
 import com.anker.sls.service.SlsLogService;
+import com.anker.sls.util.CommUtil;
 import com.anker.sls.util.JavaHttpUtil;
+import com.anker.sls.util.ParamValidationUtil;
 import com.anker.sls.util.ResponseUtil;
 import com.anker.sls.util.SafeMapUtil;
-import com.anker.sls.util.SlsConfigUtil;
+import cn.hutool.core.map.MapUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -12,9 +46,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import com.anker.sls.exception.BusinessException;
 import com.anker.sls.mapper.ServiceLogMapper;
-import com.anker.sls.config.AliyunSLSConfig;
 import com.anker.sls.config.SlsPromptsConfig;
 import org.noear.solon.ai.chat.message.ChatMessage;
 import lombok.extern.slf4j.Slf4j;
@@ -34,10 +70,55 @@ public class SlsLogServiceImpl implements SlsLogService {
     private JavaHttpUtil httpUtil;
 
     @Autowired
-    private AliyunSLSConfig aliyunSLSConfig;
+    private SystemRegistry systemRegistry;
 
     @Autowired
     private ServiceLogMapper mcpServiceLogMapper;
+
+    @Autowired
+    private SlsCacheManager cacheManager;
+
+    @Autowired
+    private HistogramStore histogramStore;
+
+    @Autowired
+    private ContextWindowCache contextWindowCache;
+
+    @Autowired
+    private QueryCanonicalizer queryCanonicalizer;
+
+    @Autowired
+    private QueryExecutor queryExecutor;
+
+    @Autowired
+    private SlsQueryExecutorConfig executorConfig;
+
+    @Autowired
+    private PagePrefetcher pagePrefetcher;
+
+    @Autowired
+    private SlsResultConfig resultConfig;
+
+    @Autowired
+    private TemplateStore templateStore;
+
+    @Autowired
+    private SlsAnalysisConfig analysisConfig;
+
+    @Autowired
+    private ResultHandleStore resultHandleStore;
+
+    @Autowired
+    private QueryPlanner queryPlanner;
+
+    /** 按配置编译的ID关键字正则，配置变化时重新编译 */
+    private volatile java.util.regex.Pattern idPattern;
+
+    /** 可以直接写进分析语句的字段名 */
+    private static final java.util.regex.Pattern SQL_FIELD = java.util.regex.Pattern.compile("[A-Za-z0-9_:.@\\-]+");
+
+    /** 内部拉取的续页令牌只在本次拉取内使用，不需要与查询条件绑定 */
+    private static final String PULL_SCOPE = "pullLogs";
     
     // 私有方法：验证基础参数
     private void validateBasicParams(String logstore, String endpoint, String project) {
@@ -59,9 +140,14 @@ public class SlsLogServiceImpl implements SlsLogService {
      */
     @Override
     public List<Map<String, Object>> getLogstoreList(String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        return cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, null, "getLogstoreList"),
+                systemName, null, () -> loadLogstoreList(endpoint, project));
+    }
+
+    private List<Map<String, Object>> loadLogstoreList(String endpoint, String project) {
         try {
             String path = "/logstores";
             
@@ -109,14 +195,25 @@ public class SlsLogServiceImpl implements SlsLogService {
      * @param to 结束时间，毫秒数
      * @param line 返回行数
      * @param reverse 是否倒序
+     * @param fields 返回的字段（逗号分隔），为空时返回全部字段
      * @return 日志结果
      * @throws BusinessException 查询失败时抛出
      */
     @Override
-    public Map<String, Object> getLogs(String logstore, String query, int from, int to, int line, boolean reverse, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+    public Map<String, Object> getLogs(String logstore, String query, int from, int to, int line, boolean reverse, String systemName,
+                                       String fields) {
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        Set<String> projection = FieldProjection.of(fields);
+        String cacheKey = SlsCacheManager.buildKey(systemName, logstore, "getLogs", query, from, to, line, reverse,
+                FieldProjection.canonical(projection));
+        return cacheManager.getResult(cacheKey, systemName, logstore, (long) to,
+                () -> loadLogs(logstore, query, from, to, line, reverse, endpoint, project, projection));
+    }
+
+    private Map<String, Object> loadLogs(String logstore, String query, int from, int to, int line, boolean reverse,
+                                         String endpoint, String project, Set<String> fields) {
         try {
             // 参数验证
             if (logstore == null || logstore.trim().isEmpty()) {
@@ -164,13 +261,17 @@ public class SlsLogServiceImpl implements SlsLogService {
                 String responseBody = SafeMapUtil.getResponseBody(response);
                 if (SafeMapUtil.isSuccessResponse(response)) {
                     try {
-                        // 解析响应体
-                        Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-                        
-                        // 检查并处理logs数组
-                        if (responseMap.containsKey("logs")) {
+                        // 解析响应体，指定了投影字段时只保留这些字段
+                        Object parsed = FieldProjection.parse(objectMapper, responseBody, fields);
+                        if (parsed instanceof List) {
+                            // List<Map>格式
+                            List<?> logs = (List<?>) parsed;
+                            result.put("count", logs.size());
+                            result.put("logs", logs);
+                            result.put("progress", "Complete");
+                        } else if (parsed instanceof Map && ((Map<?, ?>) parsed).containsKey("logs")) {
                             // 将原始信息直接放入结果
-                            result.putAll(responseMap);
+                            result.putAll((Map<String, Object>) parsed);
                         } else {
                             // 构建兼容格式
                             result.put("count", 0);
@@ -178,15 +279,7 @@ public class SlsLogServiceImpl implements SlsLogService {
                             result.put("progress", "Complete");
                         }
                     } catch (Exception e) {
-                        // 尝试作为List<Map>格式解析
-                        try {
-                            List<Map<String, Object>> logs = objectMapper.readValue(responseBody, List.class);
-                            result.put("count", logs.size());
-                            result.put("logs", logs);
-                            result.put("progress", "Complete");
-                        } catch (Exception ex) {
-                            result.put("error", "解析日志响应失败: " + e.getMessage() + "，原始响应: " + responseBody);
-                        }
+                        result.put("error", "解析日志响应失败: " + e.getMessage() + "，原始响应: " + responseBody);
                     }
                 } else {
                     result.put("error", responseBody);
@@ -213,9 +306,14 @@ public class SlsLogServiceImpl implements SlsLogService {
      */
     @Override
     public Map<String, Object> getIndex(String logstore, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        return cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, logstore, "getIndex"),
+                systemName, logstore, () -> loadIndex(logstore, endpoint, project));
+    }
+
+    private Map<String, Object> loadIndex(String logstore, String endpoint, String project) {
         try {
             validateBasicParams(logstore, endpoint, project);
             String path = "/logstores/" + logstore.trim() + "/index";
@@ -233,10 +331,14 @@ public class SlsLogServiceImpl implements SlsLogService {
      */
     @Override
     public Map<String, Object> getProject(String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
-        
+        return cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, null, "getProject"),
+                systemName, null, () -> loadProject(endpoint, project));
+    }
+
+    private Map<String, Object> loadProject(String endpoint, String project) {
         try {
             String path = "";  // 获取项目信息的路径是根路径
             
@@ -283,9 +385,52 @@ public class SlsLogServiceImpl implements SlsLogService {
      */
     @Override
     public Map<String, Object> getHistograms(String logstore, long from, long to, String topic, String query, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        if (!cacheManager.isEnabled()) {
+            return loadHistograms(logstore, from, to, topic, query, endpoint, project);
+        }
+        return histogramStore.query(systemName, logstore, query, topic, from, to,
+                (segmentFrom, segmentTo) -> loadHistogramBuckets(logstore, segmentFrom, segmentTo, topic, query, endpoint, project));
+    }
+
+    /**
+     * 缓存预热：填充增量直方图缓存。补齐缺失区间时一次调用可能请求SLS多次，每次请求前调用 beforeRequest
+     *
+     * @return 是否预热，未启用缓存时不预热
+     */
+    @Override
+    public boolean warmHistograms(String logstore, long from, long to, String topic, String query, String systemName,
+                                  Runnable beforeRequest) {
+        if (!cacheManager.isEnabled()) {
+            return false;
+        }
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        histogramStore.query(systemName, logstore, query, topic, from, to, (segmentFrom, segmentTo) -> {
+            beforeRequest.run();
+            return loadHistogramBuckets(logstore, segmentFrom, segmentTo, topic, query, ep[0], ep[1]);
+        });
+        return true;
+    }
+
+    /**
+     * 拉取一个区间的直方图桶，供增量直方图缓存补齐缺失区间
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> loadHistogramBuckets(String logstore, long from, long to, String topic, String query,
+                                                           String endpoint, String project) {
+        Map<String, Object> response = loadHistograms(logstore, from, to, topic, query, endpoint, project);
+        Object data = response.get("data");
+        if (!(data instanceof List)) {
+            Object error = response.containsKey("error") ? response.get("error") : response.get("raw");
+            throw new BusinessException("获取直方图数据失败: " + error, 500);
+        }
+        return (List<Map<String, Object>>) data;
+    }
+
+    private Map<String, Object> loadHistograms(String logstore, long from, long to, String topic, String query,
+                                               String endpoint, String project) {
         try {
             String path = "/logstores/" + logstore + "/index";
             Map<String, String> params = new HashMap<>();
@@ -342,7 +487,7 @@ public class SlsLogServiceImpl implements SlsLogService {
 
     @Override
     public Map<String, Object> listProject(String projectName, Integer offset, Integer size, String resourceGroupId, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         
@@ -374,7 +519,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> queryLogsBySql(String query, Boolean powerSql, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         
@@ -407,7 +552,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getLogging(String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         
@@ -437,8 +582,9 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getLogstore(String logstore, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
-        return getLogstore(logstore, ep[0], ep[1]);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        return cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, logstore, "getLogstore"),
+                systemName, logstore, () -> getLogstore(logstore, ep[0], ep[1]));
     }
     private Map<String, Object> getLogstore(String logstore, String endpoint, String project) {
         try {
@@ -452,9 +598,14 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public List<Map<String, Object>> listShards(String logstore, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        return cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, logstore, "listShards"),
+                systemName, logstore, () -> loadShards(logstore, endpoint, project));
+    }
+
+    private List<Map<String, Object>> loadShards(String logstore, String endpoint, String project) {
         try {
             String path = "/logstores/" + logstore + "/shards";
             Map<String, Object> response = httpUtil.doGet(path, null, endpoint, project);
@@ -475,11 +626,405 @@ public class SlsLogServiceImpl implements SlsLogService {
             Boolean reverse,
             Boolean powerSql,
             String topic,
-            String systemName
+            String systemName,
+            Boolean fold,
+            Integer maxTokens,
+            String fields,
+            String pageToken
     ) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        Set<String> projection = FieldProjection.of(fields);
+        String pageScope = keysetScope(systemName, logstore, query, line, reverse, powerSql, topic, projection);
+        KeysetPage.Token token = null;
+        if (pageToken != null && !pageToken.trim().isEmpty()) {
+            token = pageScope == null ? null : KeysetPage.decode(pageToken, pageScope);
+            if (token == null) {
+                throw new BusinessException("pageToken无效或与当前查询条件不一致，请去掉pageToken重新查询第一页", 400);
+            }
+            // 在令牌收窄的时间窗口内查询，只跳过该秒内已返回的行
+            from = token.getFrom();
+            to = token.getTo();
+            offset = token.getSkip();
+        }
+        Map<String, Object> result = queryLogsPro(logstore, from, to, query, line, offset, reverse, powerSql, topic, systemName,
+                projection, token == null);
+        result = withPageToken(result, line, from, to, offset, token, reverse, pageScope);
+        // 增量计入日志模板，已计入过的行按指纹跳过；投影后的日志内容不完整，不计入
+        if (projection == null) {
+            templateStore.observe(systemName, logstore, result);
+        }
+        result = withResultHandle(systemName, logstore, from, to, query, line, offset, reverse, powerSql, topic, projection, result);
+        if (Boolean.TRUE.equals(fold)) {
+            // 在缓存之后折叠，折叠与不折叠的请求共用同一份缓存结果
+            result = LogFolder.fold(result, resultConfig.getFoldMaxGroups(), resultConfig.getFoldExamples(),
+                    resultConfig.getFoldMaxKeyLength());
+            log.info("[SlsLogServiceImpl] 折叠重复日志 logstore={} 折叠={}", logstore, result == null ? null : result.get("folding"));
+        }
+        return shapeResult(result, "data", maxTokens);
+    }
+
+    /**
+     * 缓存预热：按 getLogsPro 的缓存key把结果写入结果缓存。每次调用只向SLS发一次请求：
+     * 不预取后续页、不分片、不做直方图定位、不下推投影，也不轮询未完成的结果（未完成的结果不缓存）
+     *
+     * @return 是否发起了请求，多日志库查询不预热
+     */
+    @Override
+    public boolean warmLogsPro(String logstore, Long from, Long to, String query, Integer line, Integer offset,
+                               String systemName, String fields) {
+        List<String> logstores = MultiLogstoreQuery.expand(logstore, systemRegistry.resolve(systemName).getLogstores());
+        if (logstores.size() != 1) {
+            return false;
+        }
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        String target = logstores.get(0);
+        Set<String> projection = FieldProjection.of(fields);
+        String cacheKey = logsProKey(systemName, target, queryCanonicalizer.canonicalize(query), from, to, line, offset,
+                false, false, "", projection);
+        cacheManager.getResult(cacheKey, systemName, target, to,
+                () -> requestLogsPro(target, from, to, query, line, offset, false, false, "", ep[0], ep[1], projection, null));
+        return true;
+    }
+
+    /**
+     * 键集分页的查询条件摘要来源：只有单个日志库的检索语句支持续页令牌，否则返回null
+     */
+    private String keysetScope(String systemName, String logstore, String query, Integer line, Boolean reverse,
+                               Boolean powerSql, String topic, Set<String> fields) {
+        if (line == null || line <= 0 || Boolean.TRUE.equals(powerSql) || logstore == null
+                || QueryParser.parse(query).getPipe() != null) {
+            return null;
+        }
+        List<String> logstores = MultiLogstoreQuery.expand(logstore, systemRegistry.resolve(systemName).getLogstores());
+        if (logstores.size() != 1) {
+            return null;
+        }
+        return SlsCacheManager.buildKey(systemName, logstores.get(0), "getLogsPro", queryCanonicalizer.canonicalize(query),
+                Boolean.TRUE.equals(reverse), topic, FieldProjection.canonical(fields));
+    }
+
+    /**
+     * 整页返回时附带下一页的续页令牌，返回副本，缓存中的结果不修改
+     */
+    private Map<String, Object> withPageToken(Map<String, Object> result, Integer line, Long from, Long to, Integer offset,
+                                              KeysetPage.Token token, Boolean reverse, String scope) {
+        Object data = result == null ? null : result.get("data");
+        if (scope == null || from == null || to == null || !(data instanceof List)) {
+            return result;
+        }
+        String next = KeysetPage.next((List<?>) data, line, from, to, offset == null ? 0 : offset, token,
+                Boolean.TRUE.equals(reverse), scope);
+        if (next == null) {
+            return result;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>(result);
+        copy.put("nextPageToken", next);
+        return copy;
+    }
+
+    /**
+     * 为日志列表登记结果句柄，返回带 resultId 的副本，缓存中的结果不修改；折叠和裁剪不影响句柄中的日志
+     */
+    private Map<String, Object> withResultHandle(String systemName, String logstore, Long from, Long to, String query,
+                                                 Integer line, Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                                 Set<String> fields, Map<String, Object> result) {
+        Object data = result == null ? null : result.get("data");
+        if (!(data instanceof List)) {
+            return result;
+        }
+        // 与结果缓存使用同一个key（规范化的查询、展开后的日志库），按前缀失效时句柄与缓存一起失效
+        List<String> logstores = MultiLogstoreQuery.expand(logstore, systemRegistry.resolve(systemName).getLogstores());
+        String target = logstores.size() == 1 ? logstores.get(0) : logstore;
+        String key = logsProKey(systemName, target, queryCanonicalizer.canonicalize(query), from, to, line, offset, reverse,
+                powerSql, topic, fields);
+        String resultId = resultHandleStore.register(systemName, target, key, (List<?>) data);
+        if (resultId == null) {
+            return result;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>(result);
+        copy.put("resultId", resultId);
+        return copy;
+    }
+
+    /**
+     * 按预算裁剪返回给调用方的结果，在缓存之后进行，不同预算的请求共用同一份缓存结果
+     *
+     * @param maxTokens 估算token预算，为空或不大于0时只在开启默认裁剪时按配置的默认预算裁剪
+     */
+    private Map<String, Object> shapeResult(Map<String, Object> result, String rowsKey, Integer maxTokens) {
+        boolean requested = maxTokens != null && maxTokens > 0;
+        if (!requested && !resultConfig.isShapeEnabled()) {
+            return result;
+        }
+        long budget = requested ? maxTokens : resultConfig.getShapeMaxTokens();
+        Map<String, Object> shaped = ResponseShaper.shape(result, rowsKey, new ResponseShaper.Options(resultConfig.getShapeMaxBytes(),
+                budget, resultConfig.getShapeMaxValueLength(), resultConfig.getShapeKeepTags(), resultConfig.getShapeDropFields(),
+                resultConfig.getShapeLevelFields()));
+        Object shaping = shaped == null ? null : shaped.get(ResponseShaper.SHAPING_FIELD);
+        if (shaping instanceof Map && !Integer.valueOf(0).equals(((Map<?, ?>) shaping).get("omittedRows"))) {
+            log.info("[SlsLogServiceImpl] 按预算裁剪结果 预算={} 裁剪={}", budget, shaping);
+        }
+        return shaped;
+    }
+
+    /**
+     * @param prefetch 是否按offset预取后续页；键集分页的下一页窗口和偏移都会变化，预取的页用不上
+     */
+    private Map<String, Object> queryLogsPro(String logstore, Long from, Long to, String query, Integer line, Integer offset,
+                                             Boolean reverse, Boolean powerSql, String topic, String systemName,
+                                             Set<String> fields, boolean prefetch) {
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        List<String> logstores = MultiLogstoreQuery.expand(logstore, systemRegistry.resolve(systemName).getLogstores());
+        if (logstore != null && logstores.isEmpty()) {
+            throw new BusinessException("系统" + systemName + "未配置日志库", 400);
+        }
+        if (logstores.size() > 1) {
+            return getLogsProMulti(logstores, from, to, query, line, offset, reverse, powerSql, topic, systemName,
+                    endpoint, project, fields);
+        }
+        String target = logstores.isEmpty() ? logstore : logstores.get(0);
+        String canonicalQuery = queryCanonicalizer.canonicalize(query);
+        if (offset == null || line == null || !prefetch) {
+            return cachedLogsPro(systemName, target, from, to, query, canonicalQuery, line, offset, reverse, powerSql, topic,
+                    endpoint, project, fields);
+        }
+        // 同一查询按offset翻页时，返回当前页后在后台预取下一页
+        String sessionKey = SlsCacheManager.buildKey(systemName, target, "getLogsPro",
+                canonicalQuery, from, to, line, reverse, powerSql, topic, FieldProjection.canonical(fields));
+        return pagePrefetcher.page(sessionKey, project, offset, line,
+                pageOffset -> fansOut(systemName, target, from, to, query, line, pageOffset, powerSql),
+                pageOffset -> cachedLogsPro(systemName, target, from, to, query, canonicalQuery, line, pageOffset,
+                        reverse, powerSql, topic, endpoint, project, fields));
+    }
+
+    /**
+     * 通过结果缓存查询单个日志库
+     */
+    private Map<String, Object> cachedLogsPro(String systemName, String logstore, Long from, Long to, String query,
+                                              String canonicalQuery, Integer line, Integer offset, Boolean reverse,
+                                              Boolean powerSql, String topic, String endpoint, String project,
+                                              Set<String> fields) {
+        String cacheKey = logsProKey(systemName, logstore, canonicalQuery, from, to, line, offset, reverse, powerSql, topic,
+                fields);
+        return cacheManager.getResult(cacheKey, systemName, logstore, to,
+                () -> fetchLogsPro(systemName, logstore, from, to, query, line, offset, reverse, powerSql, topic, endpoint, project,
+                        fields));
+    }
+
+    /**
+     * 单日志库查询的结果缓存key：语义相同的不同写法共用一个缓存key，同时合并并发请求；投影不同的结果分别缓存
+     *
+     * @param logstore 展开后的单个日志库
+     */
+    private static String logsProKey(String systemName, String logstore, String canonicalQuery, Long from, Long to,
+                                     Integer line, Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                     Set<String> fields) {
+        return SlsCacheManager.buildKey(systemName, logstore, "getLogsPro",
+                canonicalQuery, from, to, line, offset, reverse, powerSql, topic, FieldProjection.canonical(fields));
+    }
+
+    /**
+     * 多日志库查询：各日志库按单日志库路径（含缓存、分片、直方图定位）并发查询，再按时间归并
+     */
+    private Map<String, Object> getLogsProMulti(List<String> logstores, Long from, Long to, String query, Integer line,
+                                                Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                                String systemName, String endpoint, String project, Set<String> fields) {
+        int rows = line == null ? 0 : line;
+        int skip = offset == null ? 0 : offset;
+        if (skip + rows > executorConfig.getFanOutMaxLines()) {
+            throw new BusinessException("多日志库查询时 offset+line 不能超过" + executorConfig.getFanOutMaxLines(), 400);
+        }
+        String canonicalQuery = queryCanonicalizer.canonicalize(query);
+        long start = System.currentTimeMillis();
+        // 每个日志库的查询内部还会提交分片任务，因此在编排线程池中执行，避免嵌套占用查询线程和project许可
+        Map<String, Object> result = MultiLogstoreQuery.execute(logstores, Boolean.TRUE.equals(reverse), rows, skip,
+                (logstore, need) -> cachedLogsPro(systemName, logstore, from, to, query, canonicalQuery, need, 0,
+                        reverse, powerSql, topic, endpoint, project, fields),
+                queryExecutor::fork);
+        log.info("[SlsLogServiceImpl] 多日志库查询 system={} logstores={} 状态={} 耗时={}ms", systemName, logstores,
+                result.get("logstores"), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * ID类查询先用直方图定位再拉取，长时间范围的检索按时间分片并发查询，其余情况单次查询
+     */
+    private Map<String, Object> fetchLogsPro(String systemName, String logstore, Long from, Long to, String query,
+                                             Integer line, Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                             String endpoint, String project, Set<String> fields) {
+        String locateQuery = planLocate(from, to, query, line, offset, powerSql);
+        if (locateQuery != null) {
+            long start = System.currentTimeMillis();
+            try {
+                Map<String, Object> result = HistogramGuidedQuery.execute(from, to, Boolean.TRUE.equals(reverse), line,
+                        offset == null ? 0 : offset,
+                        new HistogramGuidedQuery.Options(executorConfig.getLocateTargetSliceSeconds(),
+                                executorConfig.getLocateMaxDepth(), executorConfig.getLocateMaxRanges()),
+                        (rangeFrom, rangeTo) -> loadHistogramBuckets(logstore, rangeFrom, rangeTo, topic, locateQuery,
+                                endpoint, project),
+                        task -> queryExecutor.submit(project, task),
+                        (sliceFrom, sliceTo, sliceLine) -> loadLogsPro(logstore, sliceFrom, sliceTo, query, sliceLine, 0,
+                                reverse, powerSql, topic, endpoint, project, fields),
+                        task -> queryExecutor.submit(project, task));
+                log.info("[SlsLogServiceImpl] 直方图定位查询 logstore={} 定位={} 耗时={}ms", logstore,
+                        result.get("locate"), System.currentTimeMillis() - start);
+                return result;
+            } catch (BusinessException e) {
+                // 直方图不可用时不影响查询结果，退回普通路径
+                log.warn("[SlsLogServiceImpl] 直方图定位失败，改为普通查询 logstore={} 原因={}", logstore, e.getMessage());
+            }
+        }
+        List<long[]> slices = planSlices(systemName, logstore, from, to, query, line, offset, powerSql);
+        if (slices.size() <= 1) {
+            return loadLogsPro(logstore, from, to, query, line, offset, reverse, powerSql, topic, endpoint, project, fields);
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = TimeSlicedQuery.execute(slices, Boolean.TRUE.equals(reverse), line,
+                offset == null ? 0 : offset,
+                (sliceFrom, sliceTo, sliceLine) -> loadLogsPro(logstore, sliceFrom, sliceTo, query, sliceLine, 0,
+                        reverse, powerSql, topic, endpoint, project, fields),
+                task -> queryExecutor.submit(project, task));
+        log.info("[SlsLogServiceImpl] 分片查询 logstore={} 分片={} 耗时={}ms", logstore, result.get("fanOut"),
+                System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * 判断是否使用直方图定位：时间范围足够长、行数在单次请求上限内、检索语句只由关键字AND组成且包含ID关键字
+     *
+     * @return 用于请求直方图的检索语句（与拉取日志时相同的限定字段），不使用定位时返回null
+     */
+    private String planLocate(Long from, Long to, String query, Integer line, Integer offset, Boolean powerSql) {
+        if (!executorConfig.isLocateEnabled() || from == null || to == null || line == null || line <= 0
+                || Boolean.TRUE.equals(powerSql)
+                || (offset == null ? 0 : offset) + line > executorConfig.getFanOutMaxLines()
+                || to - from < executorConfig.getLocateMinRangeSeconds()) {
+            return null;
+        }
+        ParsedQuery parsed = QueryParser.parse(query);
+        if (!parsed.isParsed() || parsed.getPipe() != null) {
+            return null;
+        }
+        QueryNode search = parsed.getSearch();
+        List<QueryNode> terms;
+        if (search instanceof QueryNode.Term) {
+            terms = Collections.singletonList(search);
+        } else if (search instanceof QueryNode.Junction && "AND".equals(((QueryNode.Junction) search).getOperator())) {
+            terms = ((QueryNode.Junction) search).getOperands();
+        } else {
+            return null;
+        }
+        java.util.regex.Pattern pattern = idPattern();
+        boolean hasId = false;
+        for (QueryNode term : terms) {
+            if (!(term instanceof QueryNode.Term)) {
+                return null;
+            }
+            hasId |= pattern.matcher(((QueryNode.Term) term).getText()).matches();
+        }
+        // 直方图统计的范围须与拉取日志的检索条件一致，否则定位到的时间段会漏掉或多出日志
+        return hasId ? parsed.toSearch(executorConfig.getSearchScopeField()) : null;
+    }
+
+    private java.util.regex.Pattern idPattern() {
+        java.util.regex.Pattern pattern = idPattern;
+        String source = executorConfig.getLocateIdPattern();
+        if (pattern == null || !pattern.pattern().equals(source)) {
+            pattern = java.util.regex.Pattern.compile(source);
+            idPattern = pattern;
+        }
+        return pattern;
+    }
+
+    /**
+     * 规划时间分片：只对时间范围足够长、行数在单次请求上限内的纯检索语句分片，
+     * 分片集中在日志库保存期内（更早的时间没有数据）
+     */
+    private List<long[]> planSlices(String systemName, String logstore, Long from, Long to, String query,
+                                    Integer line, Integer offset, Boolean powerSql) {
+        if (from == null || to == null || line == null || line <= 0) {
+            return Collections.emptyList();
+        }
+        List<long[]> single = Collections.singletonList(new long[]{from, to});
+        int skip = offset == null ? 0 : offset;
+        if (!executorConfig.isFanOutEnabled() || Boolean.TRUE.equals(powerSql)
+                || skip + line > executorConfig.getFanOutMaxLines()
+                || to - from < executorConfig.getFanOutMinRangeSeconds()
+                || QueryParser.parse(query).getPipe() != null) {
+            return single;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        long dataFrom = from;
+        try {
+            Object ttl = getLogstore(logstore, systemName).get("ttl");
+            int ttlDays = ttl == null ? 0 : Integer.parseInt(ttl.toString());
+            // 3650天表示永久保存
+            if (ttlDays > 0 && ttlDays < 3650) {
+                dataFrom = now - ttlDays * 86400L;
+            }
+        } catch (Exception e) {
+            log.debug("[SlsLogServiceImpl] 获取日志库保存天数失败，按完整范围分片: {}", e.getMessage());
+        }
+        // 允许少量客户端时钟偏差
+        long dataTo = now + 300;
+        return TimeSlicedQuery.slices(from, to, dataFrom, dataTo,
+                executorConfig.getFanOutMaxSlices(), executorConfig.getFanOutMinSliceSeconds());
+    }
+
+    /**
+     * 查询是否会拆分为多个各自获取project许可的请求（直方图定位或时间分片）；
+     * 会拆分的查询在编排线程池执行，单次请求的查询在获取许可后执行
+     */
+    private boolean fansOut(String systemName, String logstore, Long from, Long to, String query, Integer line,
+                            Integer offset, Boolean powerSql) {
+        return planLocate(from, to, query, line, offset, powerSql) != null
+                || planSlices(systemName, logstore, from, to, query, line, offset, powerSql).size() > 1;
+    }
+
+    /**
+     * 查询日志，SLS返回 Incomplete 时按退避重新请求，直到 Complete 或超过等待上限
+     */
+    private Map<String, Object> loadLogsPro(String logstore, Long from, Long to, String query, Integer line,
+                                            Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                            String endpoint, String project, Set<String> fields) {
+        Map<String, Object> result = ProgressPoller.poll(
+                () -> requestLogsPro(logstore, from, to, query, line, offset, reverse, powerSql, topic, endpoint, project, fields),
+                executorConfig.getProgressTimeoutMillis(), executorConfig.getProgressInitialBackoffMillis(),
+                executorConfig.getProgressMaxBackoffMillis());
+        if (ProgressPoller.INCOMPLETE.equals(result.get(ProgressPoller.PROGRESS_FIELD))) {
+            log.warn("[SlsLogServiceImpl] 查询未完成 logstore={} 轮询={}", logstore, result.get("completion"));
+        }
+        return result;
+    }
+
+    /**
+     * 请求一次日志；指定了投影字段时流式解析只保留这些字段，开启下推时先尝试用分析语句 select 这些字段，
+     * 分析语句失败（如字段未开启统计）时退回检索语句
+     */
+    private Map<String, Object> requestLogsPro(String logstore, Long from, Long to, String query, Integer line,
+                                               Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                               String endpoint, String project, Set<String> fields) {
+        String select = fields == null || !executorConfig.isProjectionPushdownEnabled() || line == null
+                || QueryParser.parse(query).getPipe() != null
+                ? null : FieldProjection.select(fields, line, offset == null ? 0 : offset, Boolean.TRUE.equals(reverse));
+        if (select != null) {
+            Map<String, Object> result = requestLogsPro(logstore, from, to, query, line, offset, reverse, powerSql, topic,
+                    endpoint, project, fields, select);
+            if (!result.containsKey("error")) {
+                return result;
+            }
+            log.warn("[SlsLogServiceImpl] 字段投影下推失败，改为检索语句 logstore={} 原因={}", logstore, result.get("error"));
+        }
+        return requestLogsPro(logstore, from, to, query, line, offset, reverse, powerSql, topic, endpoint, project, fields, null);
+    }
+
+    /**
+     * @param select 下推的分析语句，为null时使用检索语句加 with_pack_meta
+     */
+    private Map<String, Object> requestLogsPro(String logstore, Long from, Long to, String query, Integer line,
+                                               Integer offset, Boolean reverse, Boolean powerSql, String topic,
+                                               String endpoint, String project, Set<String> fields, String select) {
         try {
             String path = "/logstores/" + logstore;
             Map<String, String> params = new HashMap<>();
@@ -487,18 +1032,11 @@ public class SlsLogServiceImpl implements SlsLogService {
             params.put("from", String.valueOf(from));
             params.put("to", String.valueOf(to));
 
-            // 新增：对 query 进行条件自动加引号处理
-            query = quoteConditions(query);
-
-            // 自动拼接 * | with_pack_meta
-            String finalQuery;
-            if (query == null || query.trim().isEmpty()) {
-                finalQuery = "* | with_pack_meta";
-            } else if (query.contains(" * | with_pack_meta")) {
-                finalQuery = query;
-            } else {
-                finalQuery = query + "   * | with_pack_meta";
-            }
+            // 按语法树重新输出：关键字加引号，字段查询、范围、模糊匹配保持原语义；
+            // 调用方自带的 * | with_pack_meta 在解析时去掉，没有分析语句时统一追加，带与不带后缀的写法发出相同的查询
+            ParsedQuery parsed = QueryParser.parse(query);
+            String scopeField = executorConfig.getSearchScopeField();
+            String finalQuery = select != null ? parsed.toSearch(scopeField) + " | " + select : parsed.toRequest(scopeField);
 
             if (finalQuery != null && !finalQuery.isEmpty()) params.put("query", finalQuery);
             if (line != null) params.put("line", String.valueOf(line));
@@ -514,8 +1052,12 @@ public class SlsLogServiceImpl implements SlsLogService {
                 String responseBody = (String) response.get("body");
                 if (response.containsKey("statusCode") && (int)response.get("statusCode") >= 200 && (int)response.get("statusCode") < 300) {
                     try {
-                        Object bodyObj = objectMapper.readValue(responseBody, Object.class);
+                        Object bodyObj = FieldProjection.parse(objectMapper, responseBody, fields);
                         result.put("data", bodyObj);
+                        String progress = ProgressPoller.progressOf(response.get("headers"));
+                        if (progress != null) {
+                            result.put(ProgressPoller.PROGRESS_FIELD, progress);
+                        }
                     } catch (Exception e) {
                         result.put("raw", responseBody);
                     }
@@ -529,35 +1071,9 @@ public class SlsLogServiceImpl implements SlsLogService {
         }
     }
     
-    // 新增：条件自动加引号方法
-    private String quoteConditions(String query) {
-        if (query == null || query.trim().isEmpty()) return query;
-        // 匹配括号、AND、OR、NOT、已加引号内容、普通单词
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
-            "\"[^\"]*\"|\\(|\\)|\\bAND\\b|\\bOR\\b|\\bNOT\\b|[^\\s()]+"
-        );
-        java.util.regex.Matcher matcher = pattern.matcher(query);
-        StringBuilder sb = new StringBuilder();
-        while (matcher.find()) {
-            String token = matcher.group();
-            if (token.equals("(") || token.equals(")") ||
-                token.equalsIgnoreCase("AND") ||
-                token.equalsIgnoreCase("OR") ||
-                token.equalsIgnoreCase("NOT")) {
-                sb.append(token);
-            } else if (token.startsWith("\"") && token.endsWith("\"")) {
-                sb.append(token);
-            } else {
-                sb.append("\"").append(token).append("\"");
-            }
-            sb.append(" ");
-        }
-        return sb.toString().trim();
-    }
-    
     @Override
     public Map<String, Object> getCursor(String logstore, int shardId, String from, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -590,7 +1106,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getCursorTime(String logstore, int shardId, String cursor, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -622,10 +1138,41 @@ public class SlsLogServiceImpl implements SlsLogService {
     }
     
     @Override
-    public Map<String, Object> getContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+    public Map<String, Object> getContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines,
+                                              String systemName, Integer maxTokens) {
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
+        if (!cacheManager.isEnabled()) {
+            return shapeResult(loadContextLogs(logstore, packId, packMeta, backLines, forwardLines, endpoint, project), "logs", maxTokens);
+        }
+        return shapeResult(contextWindowCache.query(systemName, logstore, packId, packMeta, backLines, forwardLines,
+                (anchorPackId, anchorPackMeta, back, forward) ->
+                        loadContextLogs(logstore, anchorPackId, anchorPackMeta, back, forward, endpoint, project)), "logs", maxTokens);
+    }
+
+    /**
+     * 缓存预热：填充上下文窗口缓存。扩展已缓存的窗口时一次调用可能请求SLS多次，每次请求前调用 beforeRequest
+     *
+     * @return 是否预热，未启用缓存时不预热
+     */
+    @Override
+    public boolean warmContextLogs(String logstore, String packId, String packMeta, int backLines, int forwardLines,
+                                   String systemName, Runnable beforeRequest) {
+        if (!cacheManager.isEnabled()) {
+            return false;
+        }
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        contextWindowCache.query(systemName, logstore, packId, packMeta, backLines, forwardLines,
+                (anchorPackId, anchorPackMeta, back, forward) -> {
+                    beforeRequest.run();
+                    return loadContextLogs(logstore, anchorPackId, anchorPackMeta, back, forward, ep[0], ep[1]);
+                });
+        return true;
+    }
+
+    private Map<String, Object> loadContextLogs(String logstore, String packId, String packMeta, int backLines,
+                                                int forwardLines, String endpoint, String project) {
         try {
             // 直接使用传入的packId和packMeta查询上下文日志
             String path = "/logstores/" + logstore;
@@ -667,7 +1214,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getRawLogs(String logstore, String acceptEncoding, Map<String, Object> body, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -698,7 +1245,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getLogstoreMeteringMode(String logstore, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -727,7 +1274,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> listMachineGroups(Integer offset, Integer size, String groupName, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -761,7 +1308,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> listMachines(String machineGroup, Integer offset, Integer size, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -794,7 +1341,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getMachineGroup(String machineGroup, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -823,7 +1370,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getAppliedConfigs(String machineGroup,  String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         String endpoint = ep[0];
         String project = ep[1];
         try {
@@ -852,7 +1399,7 @@ public class SlsLogServiceImpl implements SlsLogService {
     
     @Override
     public Map<String, Object> getAppliedMachineGroups(String configName, String systemName) {
-        String[] ep = SlsConfigUtil.resolveEndpointAndProject(systemName, aliyunSLSConfig);
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
         return getAppliedMachineGroups(configName, ep[0], ep[1]);
     }
     private Map<String, Object> getAppliedMachineGroups(String configName, String endpoint, String project) {
@@ -894,4 +1441,770 @@ public class SlsLogServiceImpl implements SlsLogService {
         
         return result;
     }
+
+    @Override
+    public Map<String, Object> getCacheStats(String systemName, Integer topKeys) {
+        Map<String, Object> stats = cacheManager.getStats(systemName, topKeys == null ? 10 : Math.max(0, topKeys));
+        stats.put("histogram", histogramStore.snapshot(systemName));
+        stats.put("context", contextWindowCache.snapshot(systemName));
+        stats.put("handle", resultHandleStore.snapshot(systemName));
+        stats.put("queryCanonicalization", queryCanonicalizer.snapshot(topKeys == null ? 10 : Math.max(0, topKeys)));
+        stats.put("queryParser", QueryParser.cacheStats());
+        stats.put("pagePrefetch", pagePrefetcher.snapshot());
+        stats.put("planner", queryPlanner.snapshot());
+        return stats;
+    }
+
+    /**
+     * 日志模板：按页拉取时间范围内最多maxLines行计入模板（已计入的行跳过），再输出该范围内的模板
+     */
+    @Override
+    public Map<String, Object> getLogTemplates(String logstore, Long from, Long to, String query, Integer maxLines,
+                                               Integer top, String systemName) {
+        requireSingleLogstore(logstore, "日志模板按单个日志库统计，请指定一个日志库");
+        int[] added = new int[1];
+        long start = System.currentTimeMillis();
+        Map<String, Object> pull = pullLogs(logstore, from, to, query, maxLines, systemName,
+                rows -> added[0] += templateStore.ingest(systemName, logstore, rows));
+        Map<String, Object> result = templateStore.templates(systemName, logstore, from, to, top == null ? 20 : top);
+        result.put("newLines", added[0]);
+        result.putAll(pull);
+        log.info("[SlsLogServiceImpl] 日志模板 logstore={} 拉取={} 新计入={} 模板数={} 耗时={}ms", logstore, pull.get("pulledLines"),
+                added[0], result.get("templateCount"), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> getExceptionGroups(String logstore, Long from, Long to, String query, Integer maxLines,
+                                                  Integer top, String systemName) {
+        requireSingleLogstore(logstore, "异常分组按单个日志库统计，请指定一个日志库");
+        List<String> appPackages = appPackages();
+        String[] messageFields = messageFields();
+        StackTraceGrouper grouper = new StackTraceGrouper(appPackages, analysisConfig.getStackMaxFrames(),
+                analysisConfig.getStackMaxGroups(), analysisConfig.getStackExamples());
+        long start = System.currentTimeMillis();
+        Map<String, Object> pull = pullLogs(logstore, from, to, query == null || query.trim().isEmpty() ? "Exception" : query,
+                maxLines, systemName, rows -> {
+                    for (Map<?, ?> row : rows) {
+                        grouper.add(row, messageFields);
+                    }
+                });
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("logstore", logstore);
+        result.putAll(grouper.toMap(top == null ? 20 : top));
+        result.putAll(pull);
+        log.info("[SlsLogServiceImpl] 异常分组 logstore={} 拉取={} 异常={} 分组数={} 耗时={}ms", logstore, pull.get("pulledLines"),
+                grouper.getTraces(), grouper.getGroupCount(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * 时间窗口对比：并发逐页拉取两个窗口的日志，边拉取边聚合为模板或异常指纹，返回新增、消失和显著增长的分组。
+     * 两个窗口的拉取在编排线程池中执行，由内部的分页请求各自获取许可；只保留分组计数，不保留日志行。
+     */
+    @Override
+    public Map<String, Object> compareWindows(String logstore, Long baseFrom, Long baseTo, Long targetFrom, Long targetTo,
+                                              String query, String mode, Integer maxLines, Integer top, String systemName) {
+        requireSingleLogstore(logstore, "窗口对比按单个日志库统计，请指定一个日志库");
+        String diffMode = mode == null || mode.trim().isEmpty() ? WindowDiff.MODE_TEMPLATE : mode.trim().toLowerCase();
+        if (!WindowDiff.MODE_TEMPLATE.equals(diffMode) && !WindowDiff.MODE_EXCEPTION.equals(diffMode)) {
+            throw new BusinessException("mode 只支持 template 或 exception", 400);
+        }
+        String search = query == null || query.trim().isEmpty()
+                ? (WindowDiff.MODE_EXCEPTION.equals(diffMode) ? "Exception" : "") : query;
+        int budget = Math.min(maxLines == null ? 100000 : Math.max(1, maxLines), analysisConfig.getDiffMaxLines());
+        DrainMiner miner = WindowDiff.MODE_TEMPLATE.equals(diffMode)
+                ? new DrainMiner(analysisConfig.getTemplateDepth(), analysisConfig.getTemplateSimilarity(),
+                analysisConfig.getTemplateMaxChildren(), analysisConfig.getTemplateMaxTemplates(),
+                analysisConfig.getTemplateMaxHours(), 0)
+                : null;
+        WindowDiff diff = new WindowDiff(diffMode, miner, appPackages(), analysisConfig.getStackMaxFrames(), messageFields(),
+                analysisConfig.getAggregateMaxGroups());
+
+        long start = System.currentTimeMillis();
+        long[][] windows = {{baseFrom, baseTo}, {targetFrom, targetTo}};
+        List<java.util.concurrent.Future<Map<String, Object>>> futures = new ArrayList<>();
+        for (int i = 0; i < windows.length; i++) {
+            int window = i;
+            futures.add(queryExecutor.fork(() -> pullLogs(logstore, windows[window][0], windows[window][1], search, budget,
+                    systemName, rows -> {
+                        synchronized (diff) {
+                            diff.addAll(window, rows);
+                        }
+                    })));
+        }
+        List<Map<String, Object>> pulls = new ArrayList<>();
+        try {
+            for (java.util.concurrent.Future<Map<String, Object>> future : futures) {
+                pulls.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new BusinessException("窗口对比被中断", 500);
+        } catch (java.util.concurrent.ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof BusinessException ? (BusinessException) cause
+                    : new BusinessException("窗口对比拉取日志失败: " + cause.getMessage(), 500);
+        }
+
+        // 达到行数上限时窗口只拉取了一部分，单位时间条数不可比，改为按占拉取行数的比例比较
+        boolean sampled = false;
+        for (Map<String, Object> pull : pulls) {
+            sampled |= CommUtil.toLong(pull.get("pulledLines")) >= budget;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("logstore", logstore);
+        Map<String, Object> compared;
+        synchronized (diff) {
+            compared = sampled
+                    ? diff.toMap(diff.getLines(WindowDiff.BASE), diff.getLines(WindowDiff.TARGET),
+                    analysisConfig.getDiffMinRatio(), analysisConfig.getDiffMinCount(), top == null ? 20 : top)
+                    : diff.toMap(Math.max(1, baseTo - baseFrom), Math.max(1, targetTo - targetFrom),
+                    analysisConfig.getDiffMinRatio(), analysisConfig.getDiffMinCount(), top == null ? 20 : top);
+        }
+        result.putAll(compared);
+        result.put("normalizedBy", sampled ? "share" : "rate");
+        result.put("base", windowOf(baseFrom, baseTo, pulls.get(WindowDiff.BASE)));
+        result.put("target", windowOf(targetFrom, targetTo, pulls.get(WindowDiff.TARGET)));
+        log.info("[SlsLogServiceImpl] 窗口对比 logstore={} mode={} 基准={} 对比={} 新增={} 消失={} 增长={} 耗时={}ms", logstore,
+                diffMode, diff.getLines(WindowDiff.BASE), diff.getLines(WindowDiff.TARGET), compared.get("newCount"),
+                compared.get("disappearedCount"), compared.get("increasedCount"), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private static Map<String, Object> windowOf(long from, long to, Map<String, Object> pull) {
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("from", from);
+        window.put("to", to);
+        window.putAll(pull);
+        return window;
+    }
+
+    /**
+     * 异常指纹优先取的业务包前缀
+     */
+    private List<String> appPackages() {
+        List<String> appPackages = new ArrayList<>();
+        String packages = analysisConfig.getStackAppPackages();
+        for (String prefix : packages == null ? new String[0] : packages.split("\\s*,\\s*")) {
+            if (!prefix.trim().isEmpty()) {
+                appPackages.add(prefix.trim());
+            }
+        }
+        return appPackages;
+    }
+
+    private String[] messageFields() {
+        String fields = analysisConfig.getTemplateMessageFields();
+        return fields == null ? new String[0] : fields.split("\\s*,\\s*");
+    }
+
+    /**
+     * 跨系统 traceId 查询：在所有（或指定的）系统的全部日志库中并发查询，按时间归并为一条跨系统时间线。
+     * 同一 project 下的同一日志库只查询一次；不会再分片的查询在查询线程池中占用所属project的许可执行，
+     * 会按直方图定位或时间分片的查询在编排线程池中执行，由内部请求各自获取许可。
+     */
+    @Override
+    public Map<String, Object> searchTrace(String traceId, Long from, Long to, Integer line, String systemNames,
+                                           Integer maxTokens) {
+        if (traceId == null || traceId.trim().isEmpty()) {
+            throw new BusinessException("traceId不能为空", 400);
+        }
+        String query = traceId.trim();
+        Set<SystemEntry> selected = null;
+        if (systemNames != null && !systemNames.trim().isEmpty()) {
+            selected = new HashSet<>();
+            for (String name : systemNames.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    selected.add(systemRegistry.resolve(name.trim()));
+                }
+            }
+        }
+        List<CrossSystemTraceQuery.Target> targets = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (SystemEntry entry : systemRegistry.getSystems()) {
+            if ((selected != null && !selected.contains(entry)) || entry.getEndpoint() == null || entry.getProject() == null) {
+                continue;
+            }
+            for (String logstore : entry.getLogstores()) {
+                if (seen.add(entry.getEndpoint() + "|" + entry.getProject() + "|" + logstore)) {
+                    targets.add(new CrossSystemTraceQuery.Target(entry.getKeyword(), logstore));
+                }
+            }
+        }
+        if (targets.isEmpty()) {
+            throw new BusinessException("没有配置日志库的系统可供查询", 400);
+        }
+        if (targets.size() > executorConfig.getTraceMaxTargets()) {
+            throw new BusinessException("需要查询的日志库数 " + targets.size() + " 超过上限 " + executorConfig.getTraceMaxTargets()
+                    + "，请用 systemNames 指定系统", 400);
+        }
+        int rows = line == null || line <= 0 ? 100 : line;
+        String canonicalQuery = queryCanonicalizer.canonicalize(query);
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = CrossSystemTraceQuery.execute(targets, rows, executorConfig.getTraceTimeoutSeconds() * 1000,
+                target -> {
+                    String[] ep = systemRegistry.resolveEndpointAndProject(target.getSystemName());
+                    return cachedLogsPro(target.getSystemName(), target.getLogstore(), from, to, query, canonicalQuery, rows, 0,
+                            false, false, "", ep[0], ep[1], null);
+                },
+                (target, task) -> {
+                    return fansOut(target.getSystemName(), target.getLogstore(), from, to, query, rows, 0, false)
+                            ? queryExecutor.fork(task)
+                            : queryExecutor.submit(systemRegistry.resolveEndpointAndProject(target.getSystemName())[1], task);
+                });
+        log.info("[SlsLogServiceImpl] 跨系统trace查询 traceId={} 日志库数={} 命中={} 系统={} 耗时={}ms", query, targets.size(),
+                result.get("matchedRows"), result.get("systems"), System.currentTimeMillis() - start);
+        result.put("traceId", query);
+        return shapeResult(result, "data", maxTokens);
+    }
+
+    /**
+     * 分层抽样：按（缓存的）直方图把时间范围分层并按命中数分配样本，各层在随机偏移处并发拉取小段日志，
+     * 层内蓄水池抽样后合并为近似均匀的样本，并返回估算的命中总数。
+     * 未指定随机种子时按查询条件生成，同一查询重复调用抽到相同的偏移，可以命中结果缓存。
+     */
+    @Override
+    public Map<String, Object> sampleLogs(String logstore, Long from, Long to, String query, Integer sampleSize, Integer strata,
+                                          Long seed, String systemName, Integer maxTokens) {
+        requireSingleLogstore(logstore, "抽样按单个日志库进行，请指定一个日志库");
+        String search = query == null ? "" : query;
+        if (QueryParser.parse(search).getPipe() != null) {
+            throw new BusinessException("抽样只支持检索语句，不支持分析语句", 400);
+        }
+        int size = Math.min(sampleSize == null || sampleSize <= 0 ? 200 : sampleSize, executorConfig.getSampleMaxSize());
+        int layers = strata == null || strata <= 0 ? executorConfig.getSampleStrata() : strata;
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        long start = System.currentTimeMillis();
+
+        Map<String, Object> histogram = getHistograms(logstore, from, to, "", search, systemName);
+        Object buckets = histogram == null ? null : histogram.get("data");
+        if (!(buckets instanceof List)) {
+            throw new BusinessException("获取直方图数据失败: " + (histogram == null ? "查询返回为空"
+                    : histogram.containsKey("error") ? histogram.get("error") : histogram.get("raw")), 500);
+        }
+        List<Map<?, ?>> sorted = new ArrayList<>();
+        boolean histogramComplete = true;
+        for (Object bucket : (List<?>) buckets) {
+            if (bucket instanceof Map) {
+                sorted.add((Map<?, ?>) bucket);
+                histogramComplete &= "Complete".equals(((Map<?, ?>) bucket).get("progress"));
+            }
+        }
+        sorted.sort(Comparator.comparingLong(bucket -> CommUtil.toLong(bucket.get("from"))));
+        if (sorted.isEmpty()) {
+            throw new BusinessException("直方图为空，无法分层抽样", 500);
+        }
+
+        String canonicalQuery = queryCanonicalizer.canonicalize(search);
+        Random random = new Random(seed != null ? seed
+                : Objects.hash(systemName, logstore, canonicalQuery, from, to, size, layers));
+        List<StratifiedSampler.Stratum> plan = StratifiedSampler.plan(sorted, layers, size,
+                executorConfig.getSampleClusterSize(), executorConfig.getSampleMaxRequests(), random);
+        Map<String, Object> result = StratifiedSampler.execute(plan, executorConfig.getSampleTimeoutSeconds() * 1000, random,
+                (stratum, offset, line) -> {
+                    Callable<Map<String, Object>> task = () -> cachedLogsPro(systemName, logstore, stratum.getFrom(),
+                            stratum.getTo(), search, canonicalQuery, line, offset, false, false, "", ep[0], ep[1], null);
+                    return fansOut(systemName, logstore, stratum.getFrom(), stratum.getTo(), search, line, offset, false)
+                            ? queryExecutor.fork(task) : queryExecutor.submit(ep[1], task);
+                });
+        result.put("logstore", logstore);
+        // 直方图未完成时命中数只是下限
+        result.put("histogramComplete", histogramComplete);
+        log.info("[SlsLogServiceImpl] 分层抽样 logstore={} 层数={} 样本={} 估算总数={} 耗时={}ms", logstore, plan.size(),
+                result.get("sampleSize"), result.get("estimatedTotal"), System.currentTimeMillis() - start);
+        return shapeResult(result, "data", maxTokens);
+    }
+
+    /**
+     * 批量查询：多条相互独立的查询并发执行，按顺序返回每条的状态和耗时。
+     * 单次请求的查询在查询线程池中占用project许可执行；会拆分为多个请求的查询（分片或定位的日志查询、
+     * 多日志库查询、计数查询）在编排线程池中执行，由内部请求各自获取许可。
+     */
+    @Override
+    public Map<String, Object> batchQuery(List<Map<String, Object>> queries, String systemName) {
+        if (queries == null || queries.isEmpty()) {
+            throw new BusinessException("批量查询不能为空", 400);
+        }
+        if (queries.size() > executorConfig.getBatchMaxQueries()) {
+            throw new BusinessException("批量查询最多包含" + executorConfig.getBatchMaxQueries() + "条查询", 400);
+        }
+        // 开启默认裁剪时，未指定预算的查询整批共用默认token预算
+        Integer defaultTokens = resultConfig.isShapeEnabled()
+                ? (int) Math.max(1000, resultConfig.getShapeMaxTokens() / queries.size()) : null;
+        List<java.util.concurrent.Callable<Map<String, Object>>> tasks = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<String> systems = new ArrayList<>();
+        for (Map<String, Object> spec : queries) {
+            String type = MapUtil.getStr(spec, "type", "logs").trim();
+            String system = MapUtil.getStr(spec, "systemName", systemName);
+            types.add(type);
+            systems.add(system);
+            tasks.add(() -> runBatchItem(type, spec, system, defaultTokens));
+        }
+        long start = System.currentTimeMillis();
+        List<Map<String, Object>> statuses = BatchQuery.execute(tasks, (index, task) -> {
+            String project;
+            boolean fansOut;
+            try {
+                project = systemRegistry.resolveEndpointAndProject(systems.get(index))[1];
+                fansOut = batchItemFansOut(types.get(index), queries.get(index), systems.get(index));
+            } catch (RuntimeException e) {
+                // 系统名或参数错误时由查询本身报错
+                return queryExecutor.fork(task);
+            }
+            return fansOut ? queryExecutor.fork(task) : queryExecutor.submit(project, task);
+        }, executorConfig.getBatchTimeoutSeconds() * 1000);
+
+        int succeeded = 0;
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < statuses.size(); i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("type", types.get(i));
+            Object id = queries.get(i).get("id");
+            if (id != null) {
+                item.put("id", id);
+            }
+            item.putAll(statuses.get(i));
+            succeeded += BatchQuery.OK.equals(item.get("status")) ? 1 : 0;
+            results.add(item);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("[SlsLogServiceImpl] 批量查询 条数={} 成功={} 耗时={}ms", queries.size(), succeeded, elapsed);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", queries.size());
+        result.put("succeeded", succeeded);
+        result.put("failed", queries.size() - succeeded);
+        result.put("elapsedMillis", elapsed);
+        result.put("results", results);
+        return result;
+    }
+
+    /**
+     * 批量查询中的一条是否会拆分为内部各自获取许可的请求
+     */
+    private boolean batchItemFansOut(String type, Map<String, Object> spec, String systemName) {
+        if ("count".equals(type)) {
+            return true;
+        }
+        if (!"logs".equals(type)) {
+            return false;
+        }
+        String logstore = MapUtil.getStr(spec, "logstore");
+        List<String> logstores = MultiLogstoreQuery.expand(logstore, systemRegistry.resolve(systemName).getLogstores());
+        if (logstores.size() > 1) {
+            return true;
+        }
+        long[] range = ParamValidationUtil.processTimeParams(MapUtil.getStr(spec, "from"), MapUtil.getStr(spec, "to"));
+        return fansOut(systemName, logstores.isEmpty() ? logstore : logstores.get(0), range[0], range[1],
+                MapUtil.getStr(spec, "query"), MapUtil.getInt(spec, "line", 100), MapUtil.getInt(spec, "offset", 0), false);
+    }
+
+    /**
+     * 执行批量查询中的一条，参数名与对应工具相同
+     */
+    private Map<String, Object> runBatchItem(String type, Map<String, Object> spec, String systemName, Integer defaultTokens) {
+        String logstore = MapUtil.getStr(spec, "logstore");
+        String query = MapUtil.getStr(spec, "query");
+        Integer maxTokens = MapUtil.getInt(spec, "maxTokens", defaultTokens);
+        switch (type) {
+            case "logs": {
+                long[] range = ParamValidationUtil.processTimeParams(MapUtil.getStr(spec, "from"), MapUtil.getStr(spec, "to"));
+                return getLogsPro(logstore, range[0], range[1], query, MapUtil.getInt(spec, "line", 100),
+                        MapUtil.getInt(spec, "offset", 0), MapUtil.getBool(spec, "reverse", false), false,
+                        MapUtil.getStr(spec, "topic", ""), systemName, MapUtil.getBool(spec, "fold", false), maxTokens,
+                        MapUtil.getStr(spec, "fields"), MapUtil.getStr(spec, "pageToken"));
+            }
+            case "histogram": {
+                long[] range = ParamValidationUtil.processTimeParams(MapUtil.getStr(spec, "from"), MapUtil.getStr(spec, "to"));
+                return getHistograms(logstore, range[0], range[1], MapUtil.getStr(spec, "topic", ""), query, systemName);
+            }
+            case "context":
+                return getContextLogs(logstore, MapUtil.getStr(spec, "packId"), MapUtil.getStr(spec, "packMeta"),
+                        MapUtil.getInt(spec, "backLines", 70), MapUtil.getInt(spec, "forwardLines", 30), systemName, maxTokens);
+            case "sql":
+                return queryLogsBySql(query, MapUtil.getBool(spec, "powerSql", false), systemName);
+            case "count": {
+                long[] range = ParamValidationUtil.processTimeParams(MapUtil.getStr(spec, "from"), MapUtil.getStr(spec, "to"));
+                return countLogs(logstore, range[0], range[1], query, MapUtil.getInt(spec, "interval"),
+                        MapUtil.getStr(spec, "groupBy"), systemName);
+            }
+            default:
+                throw new BusinessException("不支持的查询类型: " + type + "，可选值: logs、histogram、context、sql、count", 400);
+        }
+    }
+
+    /**
+     * 本地聚合：读取 getLogsPro 登记的结果句柄做分组统计，不请求SLS
+     */
+    @Override
+    public Map<String, Object> aggregateLogs(String resultId, String groupBy, String distinct, String filter, Integer top) {
+        ResultHandleStore.Handle handle = resultHandleStore.get(resultId);
+        if (handle == null) {
+            throw new BusinessException("结果句柄不存在或已过期，请重新调用 getLogsPro 获取 resultId", 404);
+        }
+        String fields = analysisConfig.getTemplateMessageFields();
+        String[] messageFields = fields == null ? new String[0] : fields.split("\\s*,\\s*");
+        LogAggregator aggregator;
+        try {
+            aggregator = new LogAggregator(LogAggregator.fields(groupBy), LogAggregator.fields(distinct), filter,
+                    messageFields, analysisConfig.getAggregateMaxGroups());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(e.getMessage(), 400);
+        }
+        long start = System.nanoTime();
+        aggregator.addAll(handle.getRows());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("resultId", resultId.trim());
+        result.put("logstore", handle.getLogstore());
+        result.putAll(aggregator.toMap(top == null ? 20 : top));
+        log.info("[SlsLogServiceImpl] 本地聚合 resultId={} 行数={} 分组数={} 耗时={}us", resultId, aggregator.getRows(),
+                aggregator.getGroupCount(), (System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /**
+     * 计数查询：按时间桶（可再按一个字段分组）统计命中行数。
+     * 先请求直方图估算行数，由 {@link QueryPlanner} 在直方图、分析语句和拉取日志本地统计之间选择代价最低的路径。
+     * 各路径都返回 truncated；计数被截断、直方图未完成统计或拉取失败时 complete 为 false
+     */
+    @Override
+    public Map<String, Object> countLogs(String logstore, Long from, Long to, String query, Integer interval, String groupBy,
+                                         String systemName) {
+        requireSingleLogstore(logstore, "计数查询按单个日志库统计，请指定一个日志库");
+        ParsedQuery parsed = QueryParser.parse(query);
+        if (parsed.getPipe() != null) {
+            throw new BusinessException("countLogs 只接受检索语句，分析语句请使用 getLogsPro", 400);
+        }
+        if (from == null || to == null || to <= from) {
+            throw new BusinessException("结束时间必须晚于起始时间", 400);
+        }
+        long step = interval == null || interval <= 0 ? 3600 : interval;
+        long firstSlot = from - Math.floorMod(from, step);
+        long slots = (to - firstSlot + step - 1) / step;
+        if (slots > executorConfig.getPlannerSqlMaxRows()) {
+            throw new BusinessException("时间桶数 " + slots + " 超过上限 " + executorConfig.getPlannerSqlMaxRows() + "，请增大 interval", 400);
+        }
+        String field = groupBy == null || groupBy.trim().isEmpty() ? null : groupBy.trim();
+        if (field != null && !SQL_FIELD.matcher(field).matches()) {
+            throw new BusinessException("不支持的分组字段: " + field, 400);
+        }
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        String endpoint = ep[0];
+        String project = ep[1];
+        String search = parsed.toSearch(executorConfig.getSearchScopeField());
+        long start = System.currentTimeMillis();
+
+        // 直方图同时用于估算行数，能直接合并为输出时间桶时就是结果；单次请求在获取project许可后执行
+        List<Map<?, ?>> buckets = new ArrayList<>();
+        Object data = CommUtil.await(queryExecutor.submit(project,
+                () -> getHistograms(logstore, from, to, "", search, systemName)), "计数查询被中断").get("data");
+        for (Object bucket : data instanceof List ? (List<?>) data : Collections.emptyList()) {
+            if (bucket instanceof Map) {
+                buckets.add((Map<?, ?>) bucket);
+            }
+        }
+        long estimatedRows = 0;
+        boolean complete = !buckets.isEmpty();
+        boolean aligned = true;
+        for (Map<?, ?> bucket : buckets) {
+            estimatedRows += CommUtil.toLong(bucket.get("count"));
+            complete &= "Complete".equals(bucket.get("progress"));
+            long bucketFrom = CommUtil.toLong(bucket.get("from"));
+            long bucketTo = CommUtil.toLong(bucket.get("to"));
+            aligned &= slotOf(bucketFrom, step) == slotOf(Math.max(bucketFrom, bucketTo - 1), step);
+        }
+        QueryPlanner.Plan plan = queryPlanner.plan(new QueryPlanner.Estimate(slots, field != null, estimatedRows, complete,
+                aligned, field == null ? null : analyticOf(logstore, field, systemName)));
+
+        TreeMap<Long, Map<String, Long>> counts = new TreeMap<>();
+        Map<String, Object> result = new LinkedHashMap<>();
+        boolean exact;
+        switch (plan.getPath()) {
+            case HISTOGRAM:
+                if (plan.isSplitHistogram()) {
+                    buckets = splitHistograms(logstore, from, to, step, search, endpoint, project);
+                    complete = !buckets.isEmpty();
+                    for (Map<?, ?> bucket : buckets) {
+                        complete &= "Complete".equals(bucket.get("progress"));
+                    }
+                }
+                for (Map<?, ?> bucket : buckets) {
+                    counts.computeIfAbsent(slotOf(CommUtil.toLong(bucket.get("from")), step), k -> new HashMap<>())
+                            .merge(null, CommUtil.toLong(bucket.get("count")), Long::sum);
+                }
+                // 未完成统计的桶计数偏少，不截断
+                result.put("truncated", false);
+                exact = complete;
+                break;
+            case SQL:
+                // 分组时行数是时间桶数×分组数，多取一行用于判断是否超过上限
+                int maxRows = executorConfig.getPlannerSqlMaxRows();
+                String sql = search + " | select __time__ - __time__ % " + step + " as t, "
+                        + (field == null ? "" : "\"" + field + "\" as g, ") + "count(1) as n group by t"
+                        + (field == null ? "" : ", g") + " order by t limit " + (maxRows + 1);
+                Map<String, Object> response = CommUtil.await(queryExecutor.submit(project,
+                        () -> cachedLogsPro(systemName, logstore, from, to, sql, QueryParser.parse(sql).canonical(),
+                                null, null, null, null, "", endpoint, project, null)), "计数查询被中断");
+                Object sqlRows = response == null ? null : response.get("data");
+                if (!(sqlRows instanceof List)) {
+                    throw new BusinessException("计数查询失败: " + (response == null ? "查询返回为空"
+                            : response.containsKey("error") ? response.get("error") : response.get("raw")), 500);
+                }
+                List<?> sqlList = (List<?>) sqlRows;
+                // 超过上限时结果按时间排序截断，最后一个时间桶可能只有部分分组：丢弃该桶及之后的行，标记截断位置
+                Long truncatedFrom = sqlList.size() > maxRows && sqlList.get(maxRows) instanceof Map
+                        ? CommUtil.toLong(((Map<?, ?>) sqlList.get(maxRows)).get("t")) : null;
+                for (Object row : sqlList) {
+                    if (row instanceof Map) {
+                        Map<?, ?> map = (Map<?, ?>) row;
+                        long slot = CommUtil.toLong(map.get("t"));
+                        if (truncatedFrom != null && slot >= truncatedFrom) {
+                            continue;
+                        }
+                        Object group = map.get("g");
+                        counts.computeIfAbsent(slot, k -> new HashMap<>())
+                                .merge(field == null || group == null ? null : group.toString(), CommUtil.toLong(map.get("n")),
+                                        Long::sum);
+                    }
+                }
+                result.put("truncated", truncatedFrom != null);
+                if (truncatedFrom != null) {
+                    result.put("truncatedFrom", truncatedFrom);
+                    log.warn("[SlsLogServiceImpl] 计数结果超过 {} 行被截断 logstore={} groupBy={} 截断时间={}", maxRows, logstore,
+                            field, truncatedFrom);
+                }
+                exact = truncatedFrom == null && !ProgressPoller.INCOMPLETE.equals(response.get(ProgressPoller.PROGRESS_FIELD));
+                break;
+            default:
+                int maxLines = executorConfig.getPlannerSearchMaxRows();
+                long[] oldest = {Long.MAX_VALUE};
+                Map<String, Object> pull = pullLogs(logstore, from, to, query, maxLines, systemName,
+                        page -> {
+                            for (Map<?, ?> row : page) {
+                                Object group = field == null ? null : row.get(field);
+                                long time = CommUtil.timeOf(row);
+                                oldest[0] = Math.min(oldest[0], time);
+                                counts.computeIfAbsent(slotOf(time, step), k -> new HashMap<>())
+                                        .merge(group == null ? null : group.toString(), 1L, Long::sum);
+                            }
+                        });
+                result.putAll(pull);
+                // 从新到旧拉取到上限时，更早的行未计入：丢弃最早的（不完整的）时间桶，标记之前的时间桶缺失
+                boolean truncated = Boolean.TRUE.equals(pull.get("truncated")) && oldest[0] != Long.MAX_VALUE;
+                if (truncated) {
+                    long truncatedBefore = slotOf(oldest[0], step) + step;
+                    counts.headMap(truncatedBefore).clear();
+                    result.put("truncatedBefore", truncatedBefore);
+                    log.warn("[SlsLogServiceImpl] 计数拉取超过 {} 行被截断 logstore={} groupBy={} 截断时间={}", maxLines, logstore,
+                            field, truncatedBefore);
+                }
+                exact = !truncated && !pull.containsKey("error");
+                break;
+        }
+        result.put("complete", exact);
+
+        long total = 0;
+        List<Map<String, Object>> series = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Long>> slot : counts.entrySet()) {
+            List<Map.Entry<String, Long>> groups = new ArrayList<>(slot.getValue().entrySet());
+            groups.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            for (Map.Entry<String, Long> group : groups) {
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("time", slot.getKey());
+                if (field != null) {
+                    point.put("group", group.getKey());
+                }
+                point.put("count", group.getValue());
+                series.add(point);
+                total += group.getValue();
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        queryPlanner.record(plan, elapsed, total);
+        Map<String, Object> planMap = plan.toMap();
+        planMap.put("actualRows", total);
+        planMap.put("actualCostMillis", elapsed);
+        result.put("logstore", logstore);
+        result.put("interval", step);
+        result.put("groupBy", field);
+        result.put("total", total);
+        result.put("series", series);
+        result.put("plan", planMap);
+        return result;
+    }
+
+    /**
+     * 按输出时间桶分别请求直方图，每个时间桶合并为一个桶，子桶都完成统计时 progress 为 Complete
+     */
+    private List<Map<?, ?>> splitHistograms(String logstore, long from, long to, long step, String search, String endpoint,
+                                            String project) {
+        List<java.util.concurrent.Future<List<Map<String, Object>>>> futures = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        for (long slot = slotOf(from, step); slot < to; slot += step) {
+            long rangeFrom = Math.max(from, slot);
+            long rangeTo = Math.min(to, slot + step);
+            ranges.add(new long[]{rangeFrom, rangeTo});
+            futures.add(queryExecutor.submit(project,
+                    () -> loadHistogramBuckets(logstore, rangeFrom, rangeTo, "", search, endpoint, project)));
+        }
+        List<Map<?, ?>> merged = new ArrayList<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                long count = 0;
+                boolean complete = true;
+                for (Map<String, Object> bucket : futures.get(i).get()) {
+                    count += CommUtil.toLong(bucket.get("count"));
+                    complete &= "Complete".equals(bucket.get("progress"));
+                }
+                Map<String, Object> bucket = new HashMap<>();
+                bucket.put("from", ranges.get(i)[0]);
+                bucket.put("count", count);
+                // 任一子桶未完成统计时，合并后的计数也只是下限
+                bucket.put("progress", complete ? "Complete" : ProgressPoller.INCOMPLETE);
+                merged.add(bucket);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new BusinessException("获取直方图数据被中断", 500);
+        } catch (java.util.concurrent.ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof BusinessException ? (BusinessException) cause
+                    : new BusinessException("获取直方图数据失败: " + cause.getMessage(), 500);
+        }
+        return merged;
+    }
+
+    /**
+     * 从（元数据缓存的）索引配置判断字段是否开启统计，无法判断时返回null
+     */
+    private Boolean analyticOf(String logstore, String field, String systemName) {
+        try {
+            Object keys = getIndex(logstore, systemName).get("keys");
+            if (!(keys instanceof Map)) {
+                return null;
+            }
+            Object config = ((Map<?, ?>) keys).get(field);
+            return config instanceof Map && Boolean.parseBoolean(String.valueOf(((Map<?, ?>) config).get("doc_value")));
+        } catch (Exception e) {
+            log.debug("[SlsLogServiceImpl] 获取索引配置失败，分组字段是否开启统计未知: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static long slotOf(long time, long step) {
+        return time - Math.floorMod(time, step);
+    }
+
+    private static void requireSingleLogstore(String logstore, String message) {
+        if (logstore == null || MultiLogstoreQuery.expand(logstore, Collections.emptyList()).size() != 1
+                || MultiLogstoreQuery.ALL.equals(logstore.trim())) {
+            throw new BusinessException(message, 400);
+        }
+    }
+
+    /**
+     * 按 fanOutMaxLines 分页拉取至多 maxLines 行日志交给 sink 处理。
+     * 内部批量拉取不经过结果缓存和分页预取，避免挤占用户查询的缓存；每页作为单次请求获取project许可后执行。
+     * 按键集分页逐页收窄时间窗口，offset 只跳过同一秒内已返回的行，不随拉取量增长。
+     *
+     * @return pulledLines，拉取到 maxLines 时可能还有未拉取的行 truncated，以及查询失败时的 error
+     */
+    private Map<String, Object> pullLogs(String logstore, Long from, Long to, String query, Integer maxLines, String systemName,
+                                         Consumer<List<Map<?, ?>>> sink) {
+        String[] ep = systemRegistry.resolveEndpointAndProject(systemName);
+        int budget = maxLines == null ? 1000 : Math.max(0, maxLines);
+        int pageSize = executorConfig.getFanOutMaxLines();
+        Long pageFrom = from;
+        Long pageTo = to;
+        int offset = 0;
+        KeysetPage.Token token = null;
+        int pulled = 0;
+        boolean exhausted = false;
+        Object error = null;
+        while (pulled < budget) {
+            int line = Math.min(pageSize, budget - pulled);
+            Long requestFrom = pageFrom;
+            Long requestTo = pageTo;
+            int requestOffset = offset;
+            Map<String, Object> page;
+            try {
+                page = queryExecutor.submit(ep[1], () -> loadLogsPro(logstore, requestFrom, requestTo, query, line,
+                        requestOffset, true, false, "", ep[0], ep[1], null)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "拉取被中断";
+                break;
+            } catch (ExecutionException e) {
+                error = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+                break;
+            }
+            Object data = page == null ? null : page.get("data");
+            if (!(data instanceof List)) {
+                error = page == null ? "查询返回为空" : page.containsKey("error") ? page.get("error") : page.get("raw");
+                break;
+            }
+            List<Map<?, ?>> rows = new ArrayList<>();
+            for (Object row : (List<?>) data) {
+                if (row instanceof Map) {
+                    rows.add((Map<?, ?>) row);
+                }
+            }
+            sink.accept(rows);
+            pulled += rows.size();
+            if (rows.size() < line) {
+                exhausted = true;
+                break;
+            }
+            String next = pageFrom == null || pageTo == null ? null
+                    : KeysetPage.next(rows, line, pageFrom, pageTo, offset, token, true, PULL_SCOPE);
+            token = next == null ? null : KeysetPage.decode(next, PULL_SCOPE);
+            if (token == null) {
+                // 缺少 __time__ 等无法计算续页位置时，在当前窗口内按offset继续
+                offset += rows.size();
+            } else {
+                pageFrom = token.getFrom();
+                pageTo = token.getTo();
+                offset = token.getSkip();
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pulledLines", pulled);
+        result.put("truncated", error == null && !exhausted);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> invalidateCache(String tier, String systemName, String logstore, String keyPrefix) {
+        if (tier != null && !tier.trim().isEmpty()
+                && !SlsCacheManager.TIER_METADATA.equals(tier.trim()) && !SlsCacheManager.TIER_RESULT.equals(tier.trim())
+                && !HistogramStore.TIER_HISTOGRAM.equals(tier.trim()) && !ContextWindowCache.TIER_CONTEXT.equals(tier.trim())
+                && !ResultHandleStore.TIER_HANDLE.equals(tier.trim())) {
+            throw new BusinessException("不支持的缓存层: " + tier + "，可选值: metadata、result、histogram、context、handle", 400);
+        }
+        Map<String, Object> result = cacheManager.invalidate(tier, systemName, logstore, keyPrefix);
+        if (tier == null || tier.trim().isEmpty() || HistogramStore.TIER_HISTOGRAM.equals(tier.trim())) {
+            int removed = histogramStore.invalidate(systemName, logstore, keyPrefix);
+            result.put(HistogramStore.TIER_HISTOGRAM, removed);
+            result.put("total", (Integer) result.get("total") + removed);
+        }
+        if (tier == null || tier.trim().isEmpty() || ContextWindowCache.TIER_CONTEXT.equals(tier.trim())) {
+            int removed = contextWindowCache.invalidate(systemName, logstore, keyPrefix);
+            result.put(ContextWindowCache.TIER_CONTEXT, removed);
+            result.put("total", (Integer) result.get("total") + removed);
+        }
+        if (tier == null || tier.trim().isEmpty() || ResultHandleStore.TIER_HANDLE.equals(tier.trim())) {
+            int removed = resultHandleStore.invalidate(systemName, logstore, keyPrefix);
+            result.put(ResultHandleStore.TIER_HANDLE, removed);
+            result.put("total", (Integer) result.get("total") + removed);
+        }
+        return result;
+    }
 } 
\ No newline at end of file
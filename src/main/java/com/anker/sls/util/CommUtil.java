@@ -1,7 +1,98 @@
 package com.anker.sls.util;
 
-import com.anker.sls.exception.BusinessException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+/**
+ * 通用工具类
+ * 日志行取值、64位 FNV-1a 哈希、等待并发任务结果等各模块共用的方法
+ */
 public class CommUtil {
-    
+
+    /** 日志行的时间字段（秒） */
+    public static final String TIME_FIELD = "__time__";
+
+    /** 64位 FNV-1a 的初始值 */
+    public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private CommUtil() {
+    }
+
+    /**
+     * 把数字或数字字符串转为long，小数取整，为空或无法解析时返回0
+     */
+    public static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value == null) {
+            return 0L;
+        }
+        String text = value.toString().trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            try {
+                // SLS 分析语句的数值列可能以小数形式返回
+                return (long) Double.parseDouble(text);
+            } catch (NumberFormatException ignored) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * 日志行的 __time__，不是日志行或无法解析时返回0
+     */
+    public static long timeOf(Object row) {
+        return row instanceof Map ? toLong(((Map<?, ?>) row).get(TIME_FIELD)) : 0L;
+    }
+
+    /**
+     * 把文本的每个字符依次混入 FNV-1a 哈希
+     */
+    public static long fnv1a(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 把一个值混入 FNV-1a 哈希，用于下标、分隔符等
+     */
+    public static long fnv1a(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /**
+     * 文本的64位 FNV-1a 的十六进制形式
+     */
+    public static String fnv1aHex(String text) {
+        return String.format("%016x", fnv1a(FNV_OFFSET_BASIS, text == null ? "" : text));
+    }
+
+    /**
+     * 等待并发任务的结果：被中断时保留中断标记并抛出 {@link CancellationException}，任务抛出的运行时异常原样抛出
+     *
+     * @param interruptedMessage 被中断时的异常信息
+     */
+    public static <T> T await(Future<T> future, String interruptedMessage) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(interruptedMessage);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package com.anker.sls.util;
+
+/**
+ * 简单的QPS限流器，按固定间隔发放许可，调用方在acquire中阻塞等待
+ */
+public class QpsLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond 每秒许可数，小于等于0表示不限流
+     */
+    public QpsLimiter(double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (1_000_000_000L / permitsPerSecond) : 0L;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个许可，必要时阻塞
+     *
+     * @throws InterruptedException 等待期间被中断
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now) {
+                nextFreeNanos = now;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += intervalNanos;
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+        }
+    }
+}
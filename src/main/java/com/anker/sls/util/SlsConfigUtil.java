@@ -15,7 +15,9 @@ public class SlsConfigUtil {
      * @param systemName 系统名称
      * @param aliyunSLSConfig 配置bean
      * @return [endpoint, project]
+     * @deprecated 每次调用线性扫描配置，请使用 {@link com.anker.sls.registry.SystemRegistry#resolveEndpointAndProject(String)}
      */
+    @Deprecated
     public static String[] resolveEndpointAndProject(String systemName, AliyunSLSConfig aliyunSLSConfig) {
         if (systemName == null || systemName.trim().isEmpty()) {
             throw new BusinessException("系统名称不能为空", 400);
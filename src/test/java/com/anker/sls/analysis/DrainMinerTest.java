@@ -0,0 +1,110 @@
+package com.anker.sls.analysis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 日志模板挖掘测试：聚类结果、去重、持久化恢复和大量日志的聚类
+ */
+public class DrainMinerTest {
+
+    private static DrainMiner newMiner() {
+        return new DrainMiner(4, 0.4, 100, 1000, 720, 50000);
+    }
+
+    private static final String[] USERS = {"alice", "bob", "carol", "dave"};
+
+    /**
+     * 生成四类日志，变量部分随机
+     */
+    private static List<String> corpus(int size, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    lines.add("INFO user " + USERS[random.nextInt(USERS.length)] + " login from 10.0.0." + random.nextInt(255));
+                    break;
+                case 1:
+                    lines.add("ERROR order " + random.nextInt(100000) + " payment failed: timeout after " + random.nextInt(5000) + " ms");
+                    break;
+                case 2:
+                    lines.add("WARN cache miss key=sku_" + random.nextInt(1000) + " region cn-" + (random.nextBoolean() ? "east" : "west"));
+                    break;
+                default:
+                    lines.add("INFO request GET /api/orders/" + random.nextInt(100000) + " status 200 cost " + random.nextInt(300) + "ms");
+                    break;
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void clustersLinesIntoTemplates() {
+        DrainMiner miner = newMiner();
+        for (String line : corpus(4000, 1)) {
+            miner.add(line, 1700000000L, 0);
+        }
+        List<String> templates = new ArrayList<>();
+        for (LogTemplate template : miner.getTemplates()) {
+            templates.add(template.getTemplate());
+            Assertions.assertEquals(1000, template.getCount(), template.getTemplate());
+        }
+        Assertions.assertEquals(4, templates.size(), templates.toString());
+        Assertions.assertTrue(templates.contains("INFO user <*> login from <*>"), templates.toString());
+        Assertions.assertTrue(templates.contains("ERROR order <*> payment failed: timeout after <*> ms"), templates.toString());
+        Assertions.assertTrue(templates.contains("WARN cache miss <*> region <*>"), templates.toString());
+    }
+
+    @Test
+    public void duplicateFingerprintsAreSkipped() {
+        DrainMiner miner = newMiner();
+        Assertions.assertNotNull(miner.add("ERROR disk full on /dev/sda1", 1700000000L, 42));
+        Assertions.assertNull(miner.add("ERROR disk full on /dev/sda1", 1700000000L, 42));
+        Assertions.assertEquals(1, miner.getLines());
+        Assertions.assertEquals(1, miner.getDuplicates());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void restoresFromPersistedState() throws Exception {
+        DrainMiner miner = newMiner();
+        List<String> lines = corpus(400, 2);
+        for (int i = 0; i < lines.size(); i++) {
+            miner.add(lines.get(i), 1700000000L + i * 60, i + 1);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Object> state = objectMapper.readValue(objectMapper.writeValueAsBytes(miner.toState()), Map.class);
+
+        DrainMiner restored = newMiner();
+        restored.restore(state);
+        Assertions.assertEquals(miner.getTemplates().size(), restored.getTemplates().size());
+        // 已计入的行不再重复计数，新的行并入已有模板
+        Assertions.assertNull(restored.add(lines.get(0), 1700000000L, 1));
+        Assertions.assertNotNull(restored.add("INFO user alice login from 10.0.0.7", 1700100000L, 100000));
+        Assertions.assertEquals(miner.getTemplates().size(), restored.getTemplates().size());
+        Assertions.assertEquals(401, restored.getLines());
+    }
+
+    @Test
+    public void largeCorpusStaysOnFourTemplates() {
+        List<String> lines = corpus(200000, 3);
+        DrainMiner miner = newMiner();
+        for (int i = 0; i < lines.size(); i++) {
+            miner.add(lines.get(i), 1700000000L + i, i + 1);
+        }
+        // 去重指纹超过上限后淘汰旧指纹，不影响计数和聚类
+        Assertions.assertEquals(200000, miner.getLines());
+        Assertions.assertEquals(0, miner.getDuplicates());
+        Assertions.assertEquals(4, miner.getTemplates().size());
+        for (LogTemplate template : miner.getTemplates()) {
+            Assertions.assertEquals(50000, template.getCount(), template.getTemplate());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.anker.sls.analysis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 本地聚合测试：与 HashMap 实现的结果对比、top-k 顺序、过滤和异常类分组，以及 10 万行的分组
+ */
+public class LogAggregatorTest {
+
+    private static final String[] MESSAGE_FIELDS = {"content"};
+
+    private static List<Map<String, Object>> rows(int n, long seed) {
+        Random random = new Random(seed);
+        String[] levels = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("__time__", String.valueOf(1700000000 + random.nextInt(3600)));
+            row.put("__tag__:__hostname__", "web-" + random.nextInt(40));
+            row.put("level", levels[random.nextInt(levels.length)]);
+            row.put("userId", "u" + random.nextInt(500));
+            row.put("content", "request " + i + " done");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void matchesHashMapAggregation() {
+        List<Map<String, Object>> rows = rows(20000, 7);
+        LogAggregator aggregator = new LogAggregator(Arrays.asList("__tag__:__hostname__", "level"),
+                Collections.singletonList("userId"), null, MESSAGE_FIELDS, 10000);
+        aggregator.addAll(rows);
+
+        Map<List<Object>, long[]> expected = new HashMap<>();
+        Map<List<Object>, Set<Object>> users = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            List<Object> key = Arrays.asList(row.get("__tag__:__hostname__"), row.get("level"));
+            long time = Long.parseLong((String) row.get("__time__"));
+            long[] stats = expected.computeIfAbsent(key, k -> new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE});
+            stats[0]++;
+            stats[1] = Math.min(stats[1], time);
+            stats[2] = Math.max(stats[2], time);
+            users.computeIfAbsent(key, k -> new HashSet<>()).add(row.get("userId"));
+        }
+
+        Map<String, Object> result = aggregator.toMap(Integer.MAX_VALUE);
+        Assertions.assertEquals(expected.size(), result.get("groupCount"));
+        List<?> groups = (List<?>) result.get("groups");
+        Assertions.assertEquals(expected.size(), groups.size());
+        long previous = Long.MAX_VALUE;
+        for (Object item : groups) {
+            Map<?, ?> group = (Map<?, ?>) item;
+            Map<?, ?> key = (Map<?, ?>) group.get("key");
+            List<Object> k = Arrays.asList(key.get("__tag__:__hostname__"), key.get("level"));
+            long[] stats = expected.get(k);
+            Assertions.assertEquals(stats[0], group.get("count"), k.toString());
+            Assertions.assertEquals(stats[1], group.get("firstTime"));
+            Assertions.assertEquals(stats[2], group.get("lastTime"));
+            Assertions.assertEquals((long) users.get(k).size(), ((Map<?, ?>) group.get("distinct")).get("userId"));
+            Assertions.assertTrue((Long) group.get("count") <= previous, "分组应按行数倒序");
+            previous = (Long) group.get("count");
+        }
+    }
+
+    @Test
+    public void topGroupsKeepFirstSeenOrderOnTies() {
+        LogAggregator aggregator = new LogAggregator(Collections.singletonList("k"), null, null, MESSAGE_FIELDS, 100);
+        for (String k : new String[]{"a", "b", "c", "b", "d", "c", "e"}) {
+            aggregator.add(Collections.singletonMap("k", k));
+        }
+        aggregator.add(Collections.singletonMap("other", "x"));
+        List<Object> keys = new ArrayList<>();
+        for (Object item : (List<?>) aggregator.toMap(4).get("groups")) {
+            keys.add(((Map<?, ?>) ((Map<?, ?>) item).get("key")).get("k"));
+        }
+        Assertions.assertEquals(Arrays.asList("b", "c", "a", "d"), keys);
+        Assertions.assertEquals(6, aggregator.getGroupCount());
+        Assertions.assertEquals(0, ((List<?>) aggregator.toMap(0).get("groups")).size());
+    }
+
+    @Test
+    public void filtersAndGroupsByException() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        String[] contents = {
+                "java.lang.NullPointerException: x\n\tat com.anker.A.run(A.java:1)",
+                "java.net.SocketTimeoutException: Read timed out\n\tat com.anker.B.call(B.java:2)",
+                "java.lang.NullPointerException\n\tat com.anker.C.go(C.java:3)",
+                "order created"};
+        String[] levels = {"ERROR", "ERROR", "ERROR", "INFO"};
+        for (int i = 0; i < contents.length; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("content", contents[i]);
+            row.put("level", levels[i]);
+            rows.add(row);
+        }
+        LogAggregator aggregator = new LogAggregator(Collections.singletonList(LogAggregator.EXCEPTION_FIELD), null,
+                "level=ERROR", MESSAGE_FIELDS, 100);
+        aggregator.addAll(rows);
+        Map<String, Object> result = aggregator.toMap(10);
+        Assertions.assertEquals(3L, result.get("matchedRows"));
+        Map<?, ?> top = (Map<?, ?>) ((List<?>) result.get("groups")).get(0);
+        Assertions.assertEquals("java.lang.NullPointerException", ((Map<?, ?>) top.get("key")).get(LogAggregator.EXCEPTION_FIELD));
+        Assertions.assertEquals(2L, top.get("count"));
+
+        LogAggregator notInfo = new LogAggregator(null, null, "level!=INFO", MESSAGE_FIELDS, 100);
+        notInfo.addAll(rows);
+        Assertions.assertEquals(3L, notInfo.getMatched());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new LogAggregator(null, null, "level", MESSAGE_FIELDS, 100));
+    }
+
+    @Test
+    public void stopsAddingGroupsAtLimit() {
+        LogAggregator aggregator = new LogAggregator(Collections.singletonList("userId"), null, null, MESSAGE_FIELDS, 10);
+        aggregator.addAll(rows(5000, 3));
+        Map<String, Object> result = aggregator.toMap(100);
+        Assertions.assertEquals(10, result.get("groupCount"));
+        Assertions.assertEquals(5000L, (Long) result.get("matchedRows") + (Long) result.get("overflowRows"));
+    }
+
+    @Test
+    public void aggregatesHundredThousandRows() {
+        List<Map<String, Object>> rows = rows(100000, 11);
+        LogAggregator aggregator = new LogAggregator(Arrays.asList("__tag__:__hostname__", "level"),
+                Collections.singletonList("userId"), "level!=INFO", MESSAGE_FIELDS, 10000);
+        aggregator.addAll(rows);
+        Map<String, Object> result = aggregator.toMap(10);
+        Assertions.assertEquals(80, result.get("groupCount"));
+        Assertions.assertEquals(10, ((List<?>) result.get("groups")).size());
+    }
+}
@@ -0,0 +1,144 @@
+package com.anker.sls.analysis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 异常堆栈分组测试：解析、指纹稳定性、分组结果和 10 万条堆栈的分组
+ */
+public class StackTraceGrouperTest {
+
+    private static final List<String> APP = Collections.singletonList("com.anker");
+
+    private static final String TRACE = "2024-10-19 10:00:00.123 ERROR [http-nio-8080-exec-3] c.a.o.OrderController - 下单失败\n"
+            + "java.lang.IllegalStateException: order 12345 payment failed\n"
+            + "\tat com.anker.order.PayService.lambda$pay$3(PayService.java:88)\n"
+            + "\tat com.anker.order.PayService$$EnhancerBySpringCGLIB$$5e1a2b3c.pay(<generated>)\n"
+            + "\tat sun.reflect.GeneratedMethodAccessor123.invoke(Unknown Source)\n"
+            + "\tat org.springframework.aop.framework.ReflectiveMethodInvocation.proceed(ReflectiveMethodInvocation.java:186)\n"
+            + "\tat com.sun.proxy.$Proxy87.pay(Unknown Source)\n"
+            + "\tat com.anker.order.OrderController$$Lambda$512/0x0000000800c4b840.apply(Unknown Source)\n"
+            + "\tat com.anker.order.OrderController.create(OrderController.java:41)\n"
+            + "\tat java.base/java.lang.Thread.run(Thread.java:833)\n"
+            + "Caused by: java.net.SocketTimeoutException: Read timed out\n"
+            + "\tat java.base/java.net.SocketInputStream.socketRead0(Native Method)\n"
+            + "\t... 12 more\n";
+
+    @Test
+    public void parsesExceptionFramesAndRootCause() {
+        StackTraceParser.Trace trace = StackTraceParser.parse(TRACE, APP, 5);
+        Assertions.assertNotNull(trace);
+        Assertions.assertEquals("java.lang.IllegalStateException", trace.getExceptionClass());
+        Assertions.assertEquals("order 12345 payment failed", trace.getMessage());
+        Assertions.assertEquals("java.net.SocketTimeoutException", trace.getRootCause());
+        Assertions.assertEquals(8, trace.getFrames().size());
+        Assertions.assertEquals("java.lang.Thread", trace.getFrames().get(7).getClassName());
+        Assertions.assertEquals("Thread.java:833", trace.getFrames().get(7).getLocation());
+        Assertions.assertEquals(java.util.Arrays.asList(
+                "com.anker.order.PayService.lambda$pay",
+                "com.anker.order.PayService.pay",
+                "com.anker.order.OrderController.apply",
+                "com.anker.order.OrderController.create"), trace.getTopFrames());
+        Assertions.assertNull(StackTraceParser.parse("INFO user alice login from 10.0.0.1", APP, 5));
+    }
+
+    @Test
+    public void fingerprintIgnoresLineNumbersAndGeneratedNames() {
+        String redeployed = TRACE.replace("PayService.java:88", "PayService.java:91")
+                .replace("lambda$pay$3", "lambda$pay$7")
+                .replace("5e1a2b3c", "77aa00ff")
+                .replace("GeneratedMethodAccessor123", "GeneratedMethodAccessor9")
+                .replace("$Proxy87", "$Proxy112")
+                .replace("$$Lambda$512/0x0000000800c4b840", "$$Lambda$601/0x0000000800d01000")
+                .replace("order 12345", "order 67890");
+        String a = StackTraceParser.parse(TRACE, APP, 5).getFingerprint();
+        Assertions.assertEquals(a, StackTraceParser.parse(redeployed, APP, 5).getFingerprint());
+        // 不同的根因、不同的业务方法是不同的失败
+        Assertions.assertNotEquals(a, StackTraceParser.parse(TRACE.replace("SocketTimeoutException", "ConnectException"), APP, 5).getFingerprint());
+        Assertions.assertNotEquals(a, StackTraceParser.parse(TRACE.replace("OrderController.create", "OrderController.cancel"), APP, 5).getFingerprint());
+        // 没有业务帧时取非框架帧
+        StackTraceParser.Trace framework = StackTraceParser.parse("java.lang.NullPointerException\n\tat java.util.Objects.requireNonNull(Objects.java:203)\n", APP, 5);
+        Assertions.assertEquals(Collections.singletonList("java.util.Objects.requireNonNull"), framework.getTopFrames());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void groupsByFingerprintWithCountsAndTimes() {
+        StackTraceGrouper grouper = new StackTraceGrouper(APP, 5, 100, 2);
+        for (int i = 0; i < 30; i++) {
+            Map<String, Object> row = new java.util.HashMap<>();
+            row.put("__tag__:__pack_id__", "pack-" + i);
+            row.put("__pack_meta__", "0|meta|" + i);
+            String content = i % 3 == 0 ? TRACE.replace("SocketTimeoutException", "ConnectException") : TRACE.replace(":88)", ":" + i + ")");
+            grouper.add(content, 1700000000L + i, row);
+        }
+        grouper.add("INFO nothing to see", 1700000100L, null);
+        Map<String, Object> result = grouper.toMap(10);
+        Assertions.assertEquals(31L, result.get("lines"));
+        Assertions.assertEquals(30L, result.get("traces"));
+        List<Map<String, Object>> groups = (List<Map<String, Object>>) result.get("groups");
+        Assertions.assertEquals(2, groups.size());
+        Assertions.assertEquals(20L, groups.get(0).get("count"));
+        Assertions.assertEquals("java.net.SocketTimeoutException", groups.get(0).get("rootCause"));
+        Assertions.assertEquals(1700000001L, groups.get(0).get("firstTime"));
+        Assertions.assertEquals(1700000029L, groups.get(0).get("lastTime"));
+        Assertions.assertEquals(2, ((List<?>) groups.get(0).get("examples")).size());
+        Assertions.assertEquals(10L, groups.get(1).get("count"));
+    }
+
+    /**
+     * 生成 size 条堆栈：kinds 种失败，行号、lambda 序号、代理类序号、消息中的ID随机
+     */
+    private static List<String> corpus(int size, int kinds, long seed) {
+        Random random = new Random(seed);
+        List<String> traces = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int kind = random.nextInt(kinds);
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("2024-10-19 10:00:00 ERROR [exec-").append(random.nextInt(200)).append("] c.a.Svc - failed\n");
+            sb.append("com.anker.biz.Biz").append(kind % 7).append("Exception: request ").append(random.nextInt(1000000)).append(" failed\n");
+            sb.append("\tat com.anker.svc.Module").append(kind).append(".lambda$handle$").append(random.nextInt(20))
+                    .append("(Module").append(kind).append(".java:").append(random.nextInt(500)).append(")\n");
+            sb.append("\tat com.anker.svc.Module").append(kind).append("$$EnhancerBySpringCGLIB$$").append(Integer.toHexString(random.nextInt()))
+                    .append(".handle(<generated>)\n");
+            sb.append("\tat sun.reflect.GeneratedMethodAccessor").append(random.nextInt(300)).append(".invoke(Unknown Source)\n");
+            for (int f = 0; f < 20; f++) {
+                sb.append("\tat org.springframework.web.servlet.FrameworkServlet").append(f).append(".service(FrameworkServlet.java:")
+                        .append(random.nextInt(900)).append(")\n");
+            }
+            sb.append("\tat com.anker.web.Controller").append(kind / 7).append(".entry(Controller.java:").append(random.nextInt(100)).append(")\n");
+            sb.append("\tat java.base/java.lang.Thread.run(Thread.java:833)\n");
+            if (kind % 2 == 0) {
+                sb.append("Caused by: java.sql.SQLTimeoutException: timeout after ").append(random.nextInt(5000)).append("ms\n");
+                sb.append("\tat com.mysql.cj.jdbc.ClientPreparedStatement.execute(ClientPreparedStatement.java:370)\n\t... 24 more\n");
+            }
+            traces.add(sb.toString());
+        }
+        return traces;
+    }
+
+    @Test
+    public void groups100kTracesByKind() {
+        List<String> traces = corpus(100000, 50, 7);
+        StackTraceGrouper grouper = new StackTraceGrouper(APP, 5, 500, 3);
+        for (int i = 0; i < traces.size(); i++) {
+            grouper.add(traces.get(i), 1700000000L + i, null);
+        }
+        Assertions.assertEquals(100000L, grouper.getTraces());
+        // 行号、消息中的数字和框架帧不同的堆栈按异常类型和应用帧归为同一组
+        Assertions.assertEquals(50, grouper.getGroupCount());
+        Map<String, Object> result = grouper.toMap(50);
+        Assertions.assertEquals(0L, result.get("overflowTraces"));
+        long total = 0;
+        for (Object group : (List<?>) result.get("groups")) {
+            total += ((Number) ((Map<?, ?>) group).get("count")).longValue();
+        }
+        Assertions.assertEquals(100000L, total);
+    }
+}
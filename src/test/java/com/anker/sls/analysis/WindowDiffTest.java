@@ -0,0 +1,120 @@
+package com.anker.sls.analysis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 时间窗口对比测试：新增、消失、按时长归一化的增长判定、异常指纹模式和 40 万行的流式聚合
+ */
+public class WindowDiffTest {
+
+    private static final String[] FIELDS = {"content"};
+
+    private static WindowDiff templates() {
+        return new WindowDiff(WindowDiff.MODE_TEMPLATE, new DrainMiner(4, 0.4, 100, 1000, 720, 0),
+                Collections.emptyList(), 5, FIELDS, 10000);
+    }
+
+    private static Map<String, Object> row(String content, long time) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("content", content);
+        row.put("__time__", String.valueOf(time));
+        return row;
+    }
+
+    private static void add(WindowDiff diff, int window, String format, int count, long time) {
+        for (int i = 0; i < count; i++) {
+            diff.add(window, row(String.format(format, i), time + i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> items(Map<String, Object> result, String key) {
+        return (List<Map<String, Object>>) result.get(key);
+    }
+
+    @Test
+    public void findsNewDisappearedAndIncreasedTemplates() {
+        WindowDiff diff = templates();
+        // 基准窗口 1 小时，对比窗口 30 分钟
+        add(diff, WindowDiff.BASE, "request done cost %d ms", 1000, 1000);
+        add(diff, WindowDiff.BASE, "cache refresh finished in %d ms", 40, 1000);
+        add(diff, WindowDiff.BASE, "redis timeout after %d ms", 20, 1000);
+        add(diff, WindowDiff.BASE, "rare warning %d", 2, 1000);
+        add(diff, WindowDiff.TARGET, "request done cost %d ms", 520, 5000);
+        add(diff, WindowDiff.TARGET, "redis timeout after %d ms", 30, 5000);
+        add(diff, WindowDiff.TARGET, "payment callback failed for order %d", 12, 5100);
+        add(diff, WindowDiff.TARGET, "rare warning %d", 3, 5000);
+
+        Map<String, Object> result = diff.toMap(3600, 1800, 2.0, 5, 20);
+        Assertions.assertEquals(0.5, result.get("scale"));
+
+        List<Map<String, Object>> added = items(result, "new");
+        Assertions.assertEquals(1, added.size());
+        Assertions.assertEquals("payment callback failed for order <*>", added.get(0).get("template"));
+        Assertions.assertEquals(12L, added.get(0).get("targetCount"));
+        Assertions.assertEquals(5100L, added.get(0).get("firstTime"));
+
+        List<Map<String, Object>> removed = items(result, "disappeared");
+        Assertions.assertEquals(1, removed.size());
+        Assertions.assertEquals("cache refresh finished in <*> ms", removed.get(0).get("template"));
+
+        // redis 超时 20 → 30，时长减半后为 3 倍；请求日志 1000 → 520 持平；偶发警告低于最低条数
+        List<Map<String, Object>> increased = items(result, "increased");
+        Assertions.assertEquals(1, increased.size());
+        Assertions.assertEquals("redis timeout after <*> ms", increased.get(0).get("template"));
+        Assertions.assertEquals(3.0, increased.get(0).get("ratio"));
+    }
+
+    @Test
+    public void groupsExceptionsByFingerprint() {
+        WindowDiff diff = new WindowDiff(WindowDiff.MODE_EXCEPTION, null, Collections.singletonList("com.anker"), 5, FIELDS, 100);
+        String npe = "java.lang.NullPointerException: user %d\n\tat com.anker.user.UserService.load(UserService.java:%d)\n";
+        String timeout = "java.net.SocketTimeoutException: Read timed out\n\tat com.anker.pay.PayClient.call(PayClient.java:30)\n";
+        for (int i = 0; i < 10; i++) {
+            diff.add(WindowDiff.BASE, row(String.format(npe, i, 40 + i % 2), 100));
+            diff.add(WindowDiff.TARGET, row(String.format(npe, i, 40), 200));
+            diff.add(WindowDiff.TARGET, row(timeout, 200));
+        }
+        diff.add(WindowDiff.TARGET, row("INFO no exception here", 200));
+        Map<String, Object> result = diff.toMap(60, 60, 2.0, 5, 20);
+        Assertions.assertEquals(2, result.get("groupCount"));
+        Assertions.assertEquals(21L, result.get("targetLines"));
+        Assertions.assertEquals(20L, result.get("targetMatched"));
+        List<Map<String, Object>> added = items(result, "new");
+        Assertions.assertEquals(1, added.size());
+        Assertions.assertEquals("java.net.SocketTimeoutException", added.get(0).get("exception"));
+        Assertions.assertTrue(items(result, "increased").isEmpty());
+    }
+
+    @Test
+    public void aggregatesLargeWindowsPageByPage() {
+        WindowDiff diff = templates();
+        String[] formats = {"GET /api/order/%d 200 cost %d ms", "user %d login from 10.0.%d.1",
+                "consume message %d from topic order-%d", "slow sql took %d ms on shard %d"};
+        for (int window = 0; window < 2; window++) {
+            for (int page = 0; page < 200; page++) {
+                List<Map<String, Object>> rows = new ArrayList<>(1000);
+                for (int i = 0; i < 1000; i++) {
+                    int n = page * 1000 + i;
+                    // 对比窗口中 30% 的日志换成新出现的慢SQL
+                    int format = window == WindowDiff.TARGET && n % 10 < 3 ? 3 : n % 3;
+                    rows.add(row(String.format(formats[format], n, n % 7), n));
+                }
+                diff.addAll(window, rows);
+            }
+        }
+        Map<String, Object> result = diff.toMap(diff.getLines(WindowDiff.BASE), diff.getLines(WindowDiff.TARGET), 2.0, 5, 20);
+        Assertions.assertEquals(4, diff.getGroupCount());
+        List<Map<String, Object>> added = items(result, "new");
+        Assertions.assertEquals(1, added.size());
+        Assertions.assertEquals("slow sql took <*> ms on shard <*>", added.get(0).get("template"));
+        Assertions.assertEquals(60000L, added.get(0).get("targetCount"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 上下文窗口缓存测试：扩大范围时只补拉缺失的行，重新编号不修改已返回或加载函数共享的行
+ */
+public class ContextWindowCacheTest {
+
+    private static final String PACK_ID = "pack-1";
+
+    /** 模拟一个 pack 内的 100 行日志，行对象不可修改，加载函数每次返回同一批对象 */
+    private static List<Map<String, Object>> store() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("__tag__:__pack_id__", PACK_ID);
+            row.put("__pack_meta__", "meta-" + i);
+            row.put("seq", i);
+            rows.add(Collections.unmodifiableMap(row));
+        }
+        return rows;
+    }
+
+    /**
+     * 按锚点返回上下文，与 SLS 一样在边界处截断
+     */
+    private static ContextWindowCache.ContextLoader loader(List<Map<String, Object>> store, AtomicInteger loads) {
+        return (packId, packMeta, back, forward) -> {
+            loads.incrementAndGet();
+            int anchor = Integer.parseInt(packMeta.substring("meta-".length()));
+            int top = Math.max(0, anchor - back);
+            int bottom = Math.min(store.size() - 1, anchor + forward);
+            Map<String, Object> response = new HashMap<>();
+            response.put("logs", new ArrayList<>(store.subList(top, bottom + 1)));
+            response.put("back_lines", anchor - top);
+            response.put("forward_lines", bottom - anchor);
+            return response;
+        };
+    }
+
+    private static void assertWindow(Map<String, Object> result, int anchor, int back, int forward) {
+        List<?> logs = (List<?>) result.get("logs");
+        Assertions.assertEquals(back + forward + 1, logs.size());
+        Assertions.assertEquals(back, result.get("back_lines"));
+        Assertions.assertEquals(forward, result.get("forward_lines"));
+        for (int i = 0; i < logs.size(); i++) {
+            Map<?, ?> row = (Map<?, ?>) logs.get(i);
+            Assertions.assertEquals(anchor - back + i, row.get("seq"));
+            Assertions.assertEquals(String.valueOf(i - back), row.get("__index_number__"));
+        }
+    }
+
+    @Test
+    public void widensWindowWithoutTouchingSharedRows() {
+        SlsCacheConfig config = new SlsCacheConfig();
+        ContextWindowCache cache = new ContextWindowCache(config);
+        List<Map<String, Object>> store = store();
+        AtomicInteger loads = new AtomicInteger();
+        ContextWindowCache.ContextLoader loader = loader(store, loads);
+
+        Map<String, Object> first = cache.query("sys", "ls", PACK_ID, "meta-50", 3, 3, loader);
+        assertWindow(first, 50, 3, 3);
+        Assertions.assertEquals(1, loads.get());
+
+        // 扩大范围：以窗口两端的行为锚点各补拉一次，已返回的结果不变
+        Map<String, Object> wider = cache.query("sys", "ls", PACK_ID, "meta-50", 8, 6, loader);
+        assertWindow(wider, 50, 8, 6);
+        Assertions.assertEquals(3, loads.get());
+        Map<?, ?> fetched = (Map<?, ?>) wider.get("contextCache");
+        Assertions.assertEquals(5, fetched.get("fetchedBackLines"));
+        Assertions.assertEquals(3, fetched.get("fetchedForwardLines"));
+        assertWindow(first, 50, 3, 3);
+        Assertions.assertNotSame(((List<?>) first.get("logs")).get(0), ((List<?>) wider.get("logs")).get(5));
+
+        // 落在窗口内的范围直接返回
+        Map<String, Object> reread = cache.query("sys", "ls", PACK_ID, "meta-50", 5, 2, loader);
+        assertWindow(reread, 50, 5, 2);
+        Assertions.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void stopsAtPackBoundary() {
+        ContextWindowCache cache = new ContextWindowCache(new SlsCacheConfig());
+        AtomicInteger loads = new AtomicInteger();
+        ContextWindowCache.ContextLoader loader = loader(store(), loads);
+
+        assertWindow(cache.query("sys", "ls", PACK_ID, "meta-2", 1, 1, loader), 2, 1, 1);
+        // 上文只剩 2 行，记录已到顶后不再补拉上文
+        assertWindow(cache.query("sys", "ls", PACK_ID, "meta-2", 5, 1, loader), 2, 2, 1);
+        Assertions.assertEquals(2, loads.get());
+        assertWindow(cache.query("sys", "ls", PACK_ID, "meta-2", 10, 1, loader), 2, 2, 1);
+        Assertions.assertEquals(2, loads.get());
+    }
+}
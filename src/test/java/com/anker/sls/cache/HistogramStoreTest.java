@@ -0,0 +1,147 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.config.SlsPeerCacheConfig;
+import com.anker.sls.util.CommUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 增量直方图测试：补拉的细桶合并到缓存的桶宽后，拼接结果与整段冷查询一致；不同区间长度的桶宽互不混用
+ */
+public class HistogramStoreTest {
+
+    /** 已定型的整点时间 */
+    private static final long BASE = 1_599_998_400L;
+
+    private static final long[] WIDTHS = {1, 5, 10, 30, 60, 300, 600, 1800, 3600};
+
+    /**
+     * 模拟 SLS：按区间长度选择桶数不超过100的最小桶宽，桶起点按桶宽对齐，首尾按区间截断；每秒 t%7+1 条
+     */
+    private static List<Map<String, Object>> sls(long from, long to, AtomicInteger requests) {
+        requests.incrementAndGet();
+        long width = WIDTHS[WIDTHS.length - 1];
+        for (long candidate : WIDTHS) {
+            if ((to - from + candidate - 1) / candidate <= 100) {
+                width = candidate;
+                break;
+            }
+        }
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (long start = Math.floorDiv(from, width) * width; start < to; start += width) {
+            long bFrom = Math.max(start, from);
+            long bTo = Math.min(start + width, to);
+            long count = 0;
+            for (long t = bFrom; t < bTo; t++) {
+                count += t % 7 + 1;
+            }
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("from", bFrom);
+            bucket.put("to", bTo);
+            bucket.put("count", count);
+            bucket.put("progress", "Complete");
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    private static HistogramStore store() {
+        SlsCacheConfig config = new SlsCacheConfig();
+        return new HistogramStore(config, new SlsCacheManager(config, new SlsPeerCacheConfig()));
+    }
+
+    private static List<String> shape(List<?> buckets) {
+        List<String> result = new ArrayList<>();
+        for (Object item : buckets) {
+            Map<?, ?> bucket = (Map<?, ?>) item;
+            result.add(bucket.get("from") + "-" + bucket.get("to") + ":" + CommUtil.toLong(bucket.get("count"))
+                    + ":" + bucket.get("progress"));
+        }
+        return result;
+    }
+
+    private static List<?> query(HistogramStore store, long from, long to, AtomicInteger requests) {
+        return (List<?>) store.query("sys", "ls", "ERROR", "", from, to, (f, t) -> sls(f, t, requests)).get("data");
+    }
+
+    @Test
+    public void stitchedRangeMatchesColdFetch() {
+        HistogramStore store = store();
+        AtomicInteger requests = new AtomicInteger();
+        Assertions.assertEquals(60, query(store, BASE, BASE + 3600, requests).size());
+
+        // 同样长度的窗口后移 300 秒：只补拉尾部，SLS 返回 5 秒的桶，合并为 60 秒的桶后与冷查询相同
+        List<?> warm = query(store, BASE + 300, BASE + 3900, requests);
+        Assertions.assertEquals(2, requests.get());
+        List<String> cold = shape(sls(BASE + 300, BASE + 3900, new AtomicInteger()));
+        Assertions.assertEquals(60, cold.size());
+        Assertions.assertEquals(cold, shape(warm));
+
+        // 保存的序列桶宽一致，再次查询全部来自缓存
+        Map<String, Object> again = store.query("sys", "ls", "ERROR", "", BASE + 300, BASE + 3900,
+                (f, t) -> sls(f, t, requests));
+        Assertions.assertEquals(2, requests.get());
+        Assertions.assertEquals(cold, shape((List<?>) again.get("data")));
+        Assertions.assertEquals(60, ((Map<?, ?>) again.get("histogramCache")).get("cachedBuckets"));
+    }
+
+    @Test
+    public void narrowQueryAfterWideKeepsItsResolution() {
+        HistogramStore store = store();
+        AtomicInteger requests = new AtomicInteger();
+        // 4 天的直方图为 96 个 1 小时的桶
+        Assertions.assertEquals(96, query(store, BASE, BASE + 4 * 86400, requests).size());
+
+        // 其中 15 分钟的直方图不能用 1 小时的桶拼接，按冷查询的 10 秒桶返回
+        long from = BASE + 2 * 3600;
+        List<String> cold = shape(sls(from, from + 900, new AtomicInteger()));
+        Assertions.assertEquals(90, cold.size());
+        Assertions.assertEquals(cold, shape(query(store, from, from + 900, requests)));
+        Assertions.assertEquals(2, requests.get());
+
+        // 两种桶宽分别缓存，再次查询都不请求 SLS
+        Assertions.assertEquals(cold, shape(query(store, from, from + 900, requests)));
+        Assertions.assertEquals(shape(sls(BASE, BASE + 4 * 86400, new AtomicInteger())),
+                shape(query(store, BASE, BASE + 4 * 86400, requests)));
+        Assertions.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void wideQueryAfterNarrowFetchesItsOwnGrid() {
+        HistogramStore store = store();
+        AtomicInteger requests = new AtomicInteger();
+        // 先缓存 10 分钟的 10 秒桶
+        Assertions.assertEquals(60, query(store, BASE + 3000, BASE + 3600, requests).size());
+
+        // 1 小时的桶宽为 60 秒，不与 10 秒的序列拼接，整段拉取
+        List<?> warm = query(store, BASE, BASE + 3600, requests);
+        Assertions.assertEquals(2, requests.get());
+        List<String> cold = shape(sls(BASE, BASE + 3600, new AtomicInteger()));
+        Assertions.assertEquals(cold, shape(warm));
+
+        Assertions.assertEquals(cold, shape(query(store, BASE, BASE + 3600, requests)));
+        Assertions.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void partialEdgeBucketsAreNotStored() {
+        HistogramStore store = store();
+        AtomicInteger requests = new AtomicInteger();
+        query(store, BASE, BASE + 3600, requests);
+        // 窗口后移 30 秒：首尾各补拉一段，尾部截断的桶不保存
+        List<?> shifted = query(store, BASE + 30, BASE + 3630, requests);
+        Assertions.assertEquals(3, requests.get());
+        Assertions.assertEquals(shape(sls(BASE + 30, BASE + 3630, new AtomicInteger())), shape(shifted));
+        // 再后移 30 秒时尾部重新补拉，合并为完整的 60 秒桶
+        List<?> warm = query(store, BASE + 60, BASE + 3660, requests);
+        Assertions.assertEquals(4, requests.get());
+        Assertions.assertEquals(shape(sls(BASE + 60, BASE + 3660, new AtomicInteger())), shape(warm));
+    }
+}
@@ -0,0 +1,205 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.config.SlsPeerCacheConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 副本间共享缓存测试：同一进程内的多个节点通过内存传输互相访问，失效操作广播到所有副本
+ */
+public class PeerCacheTierTest {
+
+    private static final List<String> NODES = Arrays.asList("http://node-a", "http://node-b", "http://node-c");
+
+    /**
+     * 进程内传输：按节点地址直接访问对应节点的本地缓存，可模拟节点不可达
+     */
+    static class InProcessTransport implements PeerTransport {
+        final Map<String, SlsCache> caches = new HashMap<>();
+        final Set<String> unreachable = new HashSet<>();
+
+        @Override
+        public SlsCache.Timed<Object> get(String peer, String tier, String key) throws IOException {
+            check(peer);
+            return caches.get(peer).peek(key);
+        }
+
+        @Override
+        public void put(String peer, String tier, String key, String systemName, String logstore,
+                        Object value, long ttlMillis) throws IOException {
+            check(peer);
+            caches.get(peer).put(key, systemName, logstore, value, ttlMillis);
+        }
+
+        @Override
+        public int invalidate(String peer, String tier, String systemName, String logstore, String keyPrefix)
+                throws IOException {
+            check(peer);
+            return caches.get(peer).invalidate(systemName, logstore, keyPrefix);
+        }
+
+        private void check(String peer) throws IOException {
+            if (unreachable.contains(peer)) {
+                throw new IOException("connection refused: " + peer);
+            }
+        }
+    }
+
+    static class Node {
+        final SlsCache local = new SlsCache(SlsCacheManager.TIER_RESULT, 100);
+        final PeerCacheTier peer;
+
+        Node(String self, InProcessTransport transport) {
+            peer = new PeerCacheTier(self, NODES, 64, transport, 60_000, 5_000, Runnable::run);
+            transport.caches.put(self, local);
+        }
+
+        /**
+         * 读取key，访问SLS时返回的值带上第几次加载
+         */
+        Object get(String key, AtomicInteger loads) {
+            return local.getOrLoadTimed(key, "sys", "ls",
+                    () -> peer.load(SlsCacheManager.TIER_RESULT, key, "sys", "ls", 60_000,
+                            () -> Collections.singletonMap("value", key + "#" + loads.incrementAndGet()),
+                            SlsCacheManager::isCacheable),
+                    SlsCacheManager::isCacheable);
+        }
+
+        /**
+         * 与 SlsCacheManager.invalidate 相同：清除本地缓存并广播给其他副本
+         */
+        Map<String, Object> invalidate(String systemName) {
+            local.invalidate(systemName, null, null);
+            return peer.invalidate(SlsCacheManager.TIER_RESULT, systemName, null, null);
+        }
+    }
+
+    @Test
+    public void sameKeyIsLoadedOnceAcrossNodes() {
+        InProcessTransport transport = new InProcessTransport();
+        Node a = new Node("http://node-a", transport);
+        Node b = new Node("http://node-b", transport);
+        Node c = new Node("http://node-c", transport);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 50; i++) {
+            String key = "sys|ls|getLogsPro|query-" + i;
+            Object first = a.get(key, loads);
+            Assertions.assertEquals(first, b.get(key, loads));
+            Assertions.assertEquals(first, c.get(key, loads));
+        }
+        Assertions.assertEquals(50, loads.get(), "每个key在所有副本中只应访问SLS一次");
+    }
+
+    @Test
+    public void ownersAreSpreadAcrossNodes() {
+        InProcessTransport transport = new InProcessTransport();
+        Node a = new Node("http://node-a", transport);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counts.merge(a.peer.ownerOf("key-" + i), 1, Integer::sum);
+        }
+        Assertions.assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            Assertions.assertTrue(count > 600, "节点分配过于不均: " + counts);
+        }
+    }
+
+    @Test
+    public void unreachablePeerDegradesToLocal() {
+        InProcessTransport transport = new InProcessTransport();
+        Node a = new Node("http://node-a", transport);
+        new Node("http://node-b", transport);
+        new Node("http://node-c", transport);
+        transport.unreachable.add("http://node-b");
+        transport.unreachable.add("http://node-c");
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertNotNull(a.get("key-" + i, loads));
+        }
+        Assertions.assertEquals(20, loads.get(), "副本不可达时应直接访问SLS");
+        Assertions.assertFalse(a.peer.isAlive("http://node-b"));
+        Assertions.assertFalse(a.peer.isAlive("http://node-c"));
+        // 其余副本都被标记为不可用后，所有key都归本副本负责
+        Assertions.assertEquals("http://node-a", a.peer.ownerOf("any-key"));
+    }
+
+    @Test
+    public void requiresTokenToEnable() {
+        SlsPeerCacheConfig peerConfig = new SlsPeerCacheConfig();
+        peerConfig.setEnabled(true);
+        peerConfig.setSelfUrl("http://node-a");
+        peerConfig.setPeers(NODES);
+        SlsCacheManager withoutToken = new SlsCacheManager(new SlsCacheConfig(), peerConfig);
+        withoutToken.init();
+        Assertions.assertFalse(withoutToken.isPeerEnabled(), "未配置令牌时不应启用共享缓存");
+
+        peerConfig.setToken("secret");
+        SlsCacheManager withToken = new SlsCacheManager(new SlsCacheConfig(), peerConfig);
+        withToken.init();
+        try {
+            Assertions.assertTrue(withToken.isPeerEnabled());
+        } finally {
+            withToken.destroy();
+        }
+    }
+
+    @Test
+    public void invalidationReachesOwner() {
+        InProcessTransport transport = new InProcessTransport();
+        Node a = new Node("http://node-a", transport);
+        Node b = new Node("http://node-b", transport);
+        Node c = new Node("http://node-c", transport);
+        String key = null;
+        for (int i = 0; key == null; i++) {
+            if ("http://node-b".equals(a.peer.ownerOf("sys|ls|getLogsPro|q-" + i))) {
+                key = "sys|ls|getLogsPro|q-" + i;
+            }
+        }
+        AtomicInteger loads = new AtomicInteger();
+        Object stale = a.get(key, loads);
+        Assertions.assertEquals(stale, c.get(key, loads));
+        Assertions.assertNotNull(b.local.peek(key), "值应回写到归属副本");
+
+        // 只清除本地缓存时，下次读取又从归属副本取回旧值
+        a.local.invalidate("sys", null, null);
+        Assertions.assertEquals(stale, a.get(key, loads));
+        Assertions.assertEquals(1, loads.get());
+
+        Map<String, Object> removed = a.invalidate("sys");
+        Assertions.assertEquals(1, removed.get("http://node-b"));
+        Assertions.assertEquals(1, removed.get("http://node-c"));
+        Assertions.assertNull(b.local.peek(key));
+        Object fresh = c.get(key, loads);
+        Assertions.assertNotEquals(stale, fresh);
+        Assertions.assertEquals(2, loads.get());
+        Assertions.assertEquals(fresh, a.get(key, loads));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void failedInvalidationMarksPeerDown() {
+        InProcessTransport transport = new InProcessTransport();
+        Node a = new Node("http://node-a", transport);
+        new Node("http://node-b", transport);
+        new Node("http://node-c", transport);
+        transport.unreachable.add("http://node-c");
+        Map<String, Object> removed = a.invalidate("sys");
+        Assertions.assertEquals(0, removed.get("http://node-b"));
+        Assertions.assertTrue(String.valueOf(removed.get("http://node-c")).startsWith("failed"));
+        // 失效失败的副本可能仍保存旧值，恢复前不再从它读取
+        Assertions.assertFalse(a.peer.isAlive("http://node-c"));
+    }
+}
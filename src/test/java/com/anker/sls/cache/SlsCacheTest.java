@@ -0,0 +1,60 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.util.LogUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地缓存测试：按结构估算的大小与序列化后的实际大小接近
+ */
+public class SlsCacheTest {
+
+    private static long jsonBytes(Object value) {
+        return LogUtil.toJson(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static Map<String, Object> row(int i) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("__time__", String.valueOf(1_700_000_000L + i));
+        row.put("level", i % 10 == 0 ? "ERROR" : "INFO");
+        row.put("content", "请求 " + i + " 处理完成 request finished");
+        row.put("latency", i * 1.5);
+        row.put("ok", i % 3 != 0);
+        return row;
+    }
+
+    @Test
+    public void smallValuesAreEstimatedExactly() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("logs", Arrays.asList(row(1), row(2)));
+        value.put("count", 2);
+        value.put("progress", "Complete");
+        value.put("error", null);
+        Assertions.assertEquals(jsonBytes(value), SlsCache.estimateBytes(value));
+    }
+
+    @Test
+    public void largeListsAreEstimatedFromSamples() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            rows.add(row(i));
+        }
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("data", rows);
+        long actual = jsonBytes(value);
+        long estimated = SlsCache.estimateBytes(value);
+        Assertions.assertTrue(Math.abs(estimated - actual) < actual / 20, "estimated=" + estimated + " actual=" + actual);
+
+        // 写入后统计中的大小即估算值
+        SlsCache cache = new SlsCache("test", 10);
+        cache.put("k", "sys", "store", value, 60_000);
+        Assertions.assertEquals(estimated, cache.getEstimatedBytes());
+    }
+}
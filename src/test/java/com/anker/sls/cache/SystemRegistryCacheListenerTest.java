@@ -0,0 +1,97 @@
+package com.anker.sls.cache;
+
+import com.anker.sls.config.SlsCacheConfig;
+import com.anker.sls.config.SlsCacheWarmUpConfig;
+import com.anker.sls.config.SlsPeerCacheConfig;
+import com.anker.sls.registry.SystemRegistryChangedEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 系统注册表变更监听测试：变更前的系统名及别名在元数据、直方图和上下文缓存中的数据失效，其他系统不受影响
+ */
+public class SystemRegistryCacheListenerTest {
+
+    /** 已定型的整点时间 */
+    private static final long BASE = 1_599_998_400L;
+
+    private final SlsCacheConfig config = new SlsCacheConfig();
+    private final SlsCacheManager cacheManager = new SlsCacheManager(config, new SlsPeerCacheConfig());
+    private final HistogramStore histogramStore = new HistogramStore(config, cacheManager);
+    private final ContextWindowCache contextWindowCache = new ContextWindowCache(config);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private static List<Map<String, Object>> buckets(long from, long to) {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (long start = from; start < to; start += 60) {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("from", start);
+            bucket.put("to", Math.min(to, start + 60));
+            bucket.put("count", 1L);
+            bucket.put("progress", "Complete");
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * 依次读取三层缓存，返回其中实际加载的次数
+     */
+    private int read(String systemName) {
+        int before = loads.get();
+        cacheManager.getMetadata(SlsCacheManager.buildKey(systemName, null, "getLogstoreList"), systemName, null,
+                () -> Collections.singletonMap("loads", loads.incrementAndGet()));
+        histogramStore.query(systemName, "ls", "ERROR", "", BASE, BASE + 3600, (from, to) -> {
+            loads.incrementAndGet();
+            return buckets(from, to);
+        });
+        contextWindowCache.query(systemName, "ls", "pack-1", "meta-5", 1, 1, (packId, packMeta, back, forward) -> {
+            loads.incrementAndGet();
+            List<Map<String, Object>> logs = new ArrayList<>();
+            for (int i = 5 - back; i <= 5 + forward; i++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("__tag__:__pack_id__", packId);
+                row.put("__pack_meta__", "meta-" + i);
+                logs.add(row);
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("logs", logs);
+            response.put("back_lines", back);
+            response.put("forward_lines", forward);
+            return response;
+        });
+        return loads.get() - before;
+    }
+
+    @Test
+    public void invalidatesStaleNamesInEveryTier() {
+        cacheManager.init();
+        SlsCacheWarmUpConfig warmUpConfig = new SlsCacheWarmUpConfig();
+        warmUpConfig.setEnabled(false);
+        SystemRegistryCacheListener listener = new SystemRegistryCacheListener(cacheManager, histogramStore,
+                contextWindowCache, warmUpConfig, null);
+
+        // 调用方分别以系统名和别名写入过缓存
+        for (String systemName : Arrays.asList("广告", "ads", "标签")) {
+            Assertions.assertEquals(3, read(systemName));
+            Assertions.assertEquals(0, read(systemName));
+        }
+
+        listener.onSystemRegistryChanged(new SystemRegistryChangedEvent(this, Collections.emptySet(),
+                Collections.emptySet(), Collections.singleton("广告"), new LinkedHashSet<>(Arrays.asList("广告", "ads"))));
+
+        Assertions.assertEquals(3, read("广告"));
+        Assertions.assertEquals(3, read("ads"));
+        Assertions.assertEquals(0, read("标签"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量查询测试：并发执行、顺序、单条失败隔离、整批超时和project并发许可
+ */
+public class BatchQueryTest {
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static Callable<Map<String, Object>> sleeping(long millis, String value) {
+        return () -> {
+            Thread.sleep(millis);
+            return Collections.singletonMap("data", value);
+        };
+    }
+
+    @Test
+    public void runsConcurrentlyAndKeepsOrder() {
+        // 每条查询都要等到 5 条全部开始才返回，串行执行时会等待超时
+        CountDownLatch started = new CountDownLatch(5);
+        List<Callable<Map<String, Object>>> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String value = "q" + i;
+            long millis = 50 - i * 10;
+            tasks.add(() -> {
+                started.countDown();
+                if (!started.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("未并发执行");
+                }
+                // 先提交的结束得更晚，结果仍按提交顺序返回
+                Thread.sleep(millis);
+                return Collections.singletonMap("data", value);
+            });
+        }
+        List<Map<String, Object>> statuses = BatchQuery.execute(tasks, (index, task) -> pool.submit(task), 10000);
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> status = statuses.get(i);
+            Assertions.assertEquals(i, status.get("index"));
+            Assertions.assertEquals(BatchQuery.OK, status.get("status"), String.valueOf(status.get("error")));
+            Assertions.assertEquals("q" + i, ((Map<?, ?>) status.get("result")).get("data"));
+            Assertions.assertTrue(status.containsKey("elapsedMillis"));
+        }
+    }
+
+    @Test
+    public void isolatesFailures() {
+        List<Callable<Map<String, Object>>> tasks = new ArrayList<>();
+        tasks.add(sleeping(10, "ok"));
+        tasks.add(() -> {
+            throw new IllegalStateException("日志库不存在");
+        });
+        tasks.add(() -> Collections.singletonMap("error", "权限不足"));
+        List<Map<String, Object>> statuses = BatchQuery.execute(tasks, (index, task) -> pool.submit(task), 5000);
+        Assertions.assertEquals(BatchQuery.OK, statuses.get(0).get("status"));
+        Assertions.assertEquals(BatchQuery.FAILED, statuses.get(1).get("status"));
+        Assertions.assertEquals("日志库不存在", statuses.get(1).get("error"));
+        Assertions.assertEquals(BatchQuery.FAILED, statuses.get(2).get("status"));
+        Assertions.assertEquals("权限不足", statuses.get(2).get("error"));
+        Assertions.assertFalse(statuses.get(2).containsKey("result"));
+    }
+
+    @Test
+    public void cancelsQueriesPastDeadline() throws InterruptedException {
+        List<Callable<Map<String, Object>>> tasks = new ArrayList<>();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        tasks.add(sleeping(10, "fast"));
+        tasks.add(() -> {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return Collections.singletonMap("data", "slow");
+        });
+        List<Map<String, Object>> statuses = BatchQuery.execute(tasks, (index, task) -> pool.submit(task), 300);
+        Assertions.assertEquals(BatchQuery.OK, statuses.get(0).get("status"));
+        Assertions.assertEquals(BatchQuery.TIMEOUT, statuses.get(1).get("status"));
+        // 超时的查询被取消，执行线程收到中断
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void singleRequestItemsShareProjectPermits() {
+        SlsQueryExecutorConfig config = new SlsQueryExecutorConfig();
+        config.setThreads(8);
+        config.setPerProjectConcurrency(2);
+        config.setPerProjectQps(0);
+        ProjectLimiter limiter = new ProjectLimiter(config);
+        QueryExecutor executor = new QueryExecutor(config, limiter);
+        executor.init();
+        try {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            CountDownLatch bothRunning = new CountDownLatch(2);
+            List<Callable<Map<String, Object>>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String value = "q" + i;
+                tasks.add(() -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    // 前两条互相等待，确认两个许可同时被占用
+                    bothRunning.countDown();
+                    bothRunning.await(5, TimeUnit.SECONDS);
+                    Thread.sleep(5);
+                    inFlight.decrementAndGet();
+                    return Collections.singletonMap("data", value);
+                });
+            }
+            List<Map<String, Object>> statuses = BatchQuery.execute(tasks, (index, task) -> executor.submit("p", task), 10000);
+            for (int i = 0; i < 8; i++) {
+                Assertions.assertEquals(BatchQuery.OK, statuses.get(i).get("status"));
+            }
+            Assertions.assertEquals(2, maxInFlight.get());
+            Assertions.assertEquals(0, limiter.inUse("p"));
+        } finally {
+            executor.destroy();
+        }
+    }
+}
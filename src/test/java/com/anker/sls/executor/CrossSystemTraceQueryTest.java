@@ -0,0 +1,120 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跨系统 traceId 查询测试：按时间归并、来源标注、系统顺序、失败和超时隔离
+ */
+public class CrossSystemTraceQueryTest {
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static Map<String, Object> logs(long... times) {
+        List<Object> rows = new ArrayList<>();
+        for (long time : times) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("__time__", String.valueOf(time));
+            row.put("content", "t" + time);
+            rows.add(row);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("data", rows);
+        return result;
+    }
+
+    @Test
+    public void mergesTargetsIntoOneTimeline() {
+        List<CrossSystemTraceQuery.Target> targets = Arrays.asList(
+                new CrossSystemTraceQuery.Target("标签", "tag-logstore-prod"),
+                new CrossSystemTraceQuery.Target("广告", "ads-center"),
+                new CrossSystemTraceQuery.Target("红旗", "redflag-server-prod"));
+        Map<String, Map<String, Object>> responses = new HashMap<>();
+        responses.put("tag-logstore-prod", logs(105, 106, 120));
+        responses.put("ads-center", logs(100, 106, 130));
+        responses.put("redflag-server-prod", logs());
+        Map<String, Object> result = CrossSystemTraceQuery.execute(targets, 5, 5000,
+                target -> responses.get(target.getLogstore()), (target, task) -> pool.submit(task));
+
+        List<?> data = (List<?>) result.get("data");
+        Assertions.assertEquals(5, data.size());
+        List<String> order = new ArrayList<>();
+        for (Object row : data) {
+            Map<?, ?> map = (Map<?, ?>) row;
+            order.add(map.get("__time__") + "@" + map.get(CrossSystemTraceQuery.SYSTEM_FIELD));
+        }
+        // 时间相同时按目标顺序
+        Assertions.assertEquals(Arrays.asList("100@广告", "105@标签", "106@标签", "106@广告", "120@标签"), order);
+        Assertions.assertEquals("ads-center", ((Map<?, ?>) data.get(0)).get(MultiLogstoreQuery.SOURCE_FIELD));
+        Assertions.assertEquals(6, result.get("matchedRows"));
+        Assertions.assertEquals(true, result.get("truncated"));
+
+        List<?> systems = (List<?>) result.get("systems");
+        Assertions.assertEquals("广告", ((Map<?, ?>) systems.get(0)).get("systemName"));
+        Assertions.assertEquals("标签", ((Map<?, ?>) systems.get(1)).get("systemName"));
+        Assertions.assertEquals(2, systems.size());
+        Assertions.assertFalse(((Map<?, ?>) ((List<?>) responses.get("ads-center").get("data")).get(0))
+                .containsKey(CrossSystemTraceQuery.SYSTEM_FIELD), "缓存中的结果不能被修改");
+    }
+
+    @Test
+    public void isolatesFailuresAndTimeouts() throws InterruptedException {
+        List<CrossSystemTraceQuery.Target> targets = Arrays.asList(
+                new CrossSystemTraceQuery.Target("广告", "ads-center"),
+                new CrossSystemTraceQuery.Target("标签", "tag-logstore-prod"),
+                new CrossSystemTraceQuery.Target("AMDP", "amdp-logstore-prod"));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Map<String, Object> result = CrossSystemTraceQuery.execute(targets, 100, 300, target -> {
+            switch (target.getSystemName()) {
+                case "标签":
+                    return Collections.singletonMap("error", "权限不足");
+                case "AMDP":
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        Thread.currentThread().interrupt();
+                    }
+                    return logs(1);
+                default:
+                    return logs(100, 101);
+            }
+        }, (target, task) -> pool.submit(task));
+        Assertions.assertEquals(2, ((List<?>) result.get("data")).size());
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+        List<?> statuses = (List<?>) result.get("targets");
+        Assertions.assertEquals("ok", ((Map<?, ?>) statuses.get(0)).get("status"));
+        Assertions.assertEquals("failed", ((Map<?, ?>) statuses.get(1)).get("status"));
+        Assertions.assertEquals("timeout", ((Map<?, ?>) statuses.get(2)).get("status"));
+        // 超时的目标被取消，执行线程收到中断
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+        Map<String, Object> allFailed = CrossSystemTraceQuery.execute(targets.subList(1, 2), 100, 300,
+                target -> Collections.singletonMap("error", "权限不足"), (target, task) -> pool.submit(task));
+        Assertions.assertTrue(allFailed.containsKey("error"));
+    }
+}
@@ -0,0 +1,174 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直方图定位查询测试：用进程内的SLS桩记录请求次数和扫描的时间范围，对比单次请求与先定位再拉取的结果和扫描量
+ */
+public class HistogramGuidedQueryTest {
+
+    private static final long FROM = 1262304000L;   // 2010-01-01
+    private static final long TO = 1924905600L;     // 2030-12-31
+    private static final HistogramGuidedQuery.Options OPTIONS = new HistogramGuidedQuery.Options(3600, 3, 16);
+
+    private ExecutorService pool;
+
+    /**
+     * SLS桩：记录日志查询的次数和扫描的秒数，直方图每次返回60个桶
+     */
+    static class StubSls {
+        final List<Long> hits;
+        final boolean incomplete;
+        final AtomicInteger logCalls = new AtomicInteger();
+        final AtomicLong scannedSeconds = new AtomicLong();
+        final AtomicInteger histogramCalls = new AtomicInteger();
+
+        StubSls(List<Long> hits, boolean incomplete) {
+            this.hits = new ArrayList<>(hits);
+            Collections.sort(this.hits);
+            this.incomplete = incomplete;
+        }
+
+        Map<String, Object> logs(long from, long to, int line, boolean reverse) {
+            logCalls.incrementAndGet();
+            scannedSeconds.addAndGet(to - from);
+            List<Object> rows = new ArrayList<>();
+            for (long time : hits) {
+                if (time >= from && time < to) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("__time__", String.valueOf(time));
+                    rows.add(row);
+                }
+            }
+            if (reverse) {
+                Collections.reverse(rows);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("data", new ArrayList<>(rows.subList(0, Math.min(line, rows.size()))));
+            return result;
+        }
+
+        List<Map<String, Object>> histogram(long from, long to) {
+            histogramCalls.incrementAndGet();
+            List<Map<String, Object>> buckets = new ArrayList<>();
+            long step = Math.max(1, (to - from + 59) / 60);
+            for (long start = from; start < to; start += step) {
+                long end = Math.min(to, start + step);
+                long count = 0;
+                for (long time : hits) {
+                    if (time >= start && time < end) {
+                        count++;
+                    }
+                }
+                Map<String, Object> bucket = new HashMap<>();
+                bucket.put("from", start);
+                bucket.put("to", end);
+                bucket.put("count", count);
+                bucket.put("progress", incomplete && buckets.isEmpty() ? "Incomplete" : "Complete");
+                buckets.add(bucket);
+            }
+            return buckets;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private Map<String, Object> guided(StubSls sls, boolean reverse, int line, int offset) {
+        return HistogramGuidedQuery.execute(FROM, TO, reverse, line, offset, OPTIONS,
+                sls::histogram, pool::submit,
+                (from, to, need) -> sls.logs(from, to, need, reverse), pool::submit);
+    }
+
+    private static List<Long> traceHits() {
+        // 同一个traceId的日志集中在两次调用附近
+        long first = 1760000000L;
+        long second = 1760400000L;
+        return Arrays.asList(first, first + 1, first + 3, first + 40, first + 95, second, second + 2);
+    }
+
+    @Test
+    public void resultsMatchSingleRequest() {
+        StubSls sls = new StubSls(traceHits(), false);
+        for (boolean reverse : new boolean[]{false, true}) {
+            for (int offset = 0; offset <= 8; offset++) {
+                for (int line = 1; line <= 8; line++) {
+                    Map<String, Object> expected = sls.logs(FROM, TO, offset + line, reverse);
+                    List<?> rows = (List<?>) expected.get("data");
+                    Object single = rows.subList(Math.min(offset, rows.size()), rows.size());
+                    Assertions.assertEquals(single, guided(sls, reverse, line, offset).get("data"),
+                            "reverse=" + reverse + " offset=" + offset + " line=" + line);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyHistogramSkipsLogFetch() {
+        StubSls sls = new StubSls(Collections.emptyList(), false);
+        Map<String, Object> result = guided(sls, true, 100, 0);
+        Assertions.assertEquals(Collections.emptyList(), result.get("data"));
+        Assertions.assertEquals(0, sls.logCalls.get());
+        Assertions.assertEquals(1, sls.histogramCalls.get());
+    }
+
+    @Test
+    public void incompleteBucketIsNotPruned() {
+        // 第一个桶未完成统计，即使数量为0也必须保留
+        HistogramGuidedQuery.Locate locate = HistogramGuidedQuery.locate(FROM, TO, OPTIONS,
+                new StubSls(traceHits(), true)::histogram, pool::submit);
+        Assertions.assertEquals(FROM, locate.getRanges().get(0)[0]);
+        Assertions.assertEquals(-1, locate.getRanges().get(0)[2]);
+    }
+
+    @Test
+    public void narrowsToTargetSlices() {
+        HistogramGuidedQuery.Locate locate = HistogramGuidedQuery.locate(FROM, TO, OPTIONS,
+                new StubSls(traceHits(), false)::histogram, pool::submit);
+        long covered = 0;
+        for (long[] range : locate.getRanges()) {
+            covered += range[1] - range[0];
+            Assertions.assertTrue(range[1] - range[0] <= 3600, "定位后的时间段应不超过目标宽度");
+        }
+        Assertions.assertEquals(2, locate.getRanges().size());
+        Assertions.assertTrue(covered < 2 * 3600);
+    }
+
+    @Test
+    public void scansOnlyLocatedRanges() {
+        StubSls sls = new StubSls(traceHits(), false);
+        Object expected = sls.logs(FROM, TO, 100, true).get("data");
+        Assertions.assertEquals(TO - FROM, sls.scannedSeconds.get());
+
+        sls.logCalls.set(0);
+        sls.scannedSeconds.set(0);
+        Map<String, Object> result = guided(sls, true, 100, 0);
+        Assertions.assertEquals(expected, result.get("data"));
+        // 只拉取定位到的两个时间段，每段不超过目标宽度
+        Assertions.assertEquals(2, sls.logCalls.get());
+        Assertions.assertTrue(sls.scannedSeconds.get() <= 2 * 3600, "scanned=" + sls.scannedSeconds.get());
+        Assertions.assertEquals(sls.histogramCalls.get(), ((Map<?, ?>) result.get("locate")).get("histogramCalls"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 键集分页测试：同一秒多行时不重不漏、倒序翻页不受新写入影响、令牌与查询条件绑定
+ */
+public class KeysetPageTest {
+
+    private static final String SCOPE = "系统|app-log|getLogsPro|ERROR|false||";
+
+    /** 模拟日志库：time 秒写入 count 行 */
+    private static void write(List<Map<String, Object>> store, long time, int count) {
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("__time__", String.valueOf(time));
+            row.put("id", time + "-" + store.size());
+            store.add(row);
+        }
+    }
+
+    /** 模拟 SLS 按时间窗口 [from, to)、offset、line 查询，同一秒内保持写入顺序 */
+    private static List<Object> query(List<Map<String, Object>> store, long from, long to, int offset, int line,
+                                      boolean reverse) {
+        List<Map<String, Object>> matched = new ArrayList<>();
+        for (Map<String, Object> row : store) {
+            long time = Long.parseLong((String) row.get("__time__"));
+            if (time >= from && time < to) {
+                matched.add(row);
+            }
+        }
+        matched.sort((a, b) -> {
+            int cmp = Long.compare(Long.parseLong((String) a.get("__time__")), Long.parseLong((String) b.get("__time__")));
+            return reverse ? -cmp : cmp;
+        });
+        return new ArrayList<>(matched.subList(Math.min(offset, matched.size()), Math.min(offset + line, matched.size())));
+    }
+
+    private static List<Object> pageThrough(List<Map<String, Object>> store, long from, long to, int line, boolean reverse,
+                                            int maxPerSecond, Runnable afterFirstPage) {
+        List<Object> all = new ArrayList<>();
+        KeysetPage.Token previous = null;
+        for (int page = 0; page < 1000; page++) {
+            long pageFrom = previous == null ? from : previous.getFrom();
+            long pageTo = previous == null ? to : previous.getTo();
+            int offset = previous == null ? 0 : previous.getSkip();
+            Assertions.assertTrue(offset <= maxPerSecond, "偏移只跳过同一秒内已返回的行，实际 " + offset);
+            List<Object> rows = query(store, pageFrom, pageTo, offset, line, reverse);
+            all.addAll(rows);
+            if (page == 0 && afterFirstPage != null) {
+                afterFirstPage.run();
+            }
+            String token = KeysetPage.next(rows, line, pageFrom, pageTo, offset, previous, reverse, SCOPE);
+            if (token == null) {
+                return all;
+            }
+            previous = KeysetPage.decode(token, SCOPE);
+            Assertions.assertNotNull(previous);
+        }
+        throw new AssertionError("未结束翻页");
+    }
+
+    @Test
+    public void pagesWithoutGapsOrDuplicates() {
+        List<Map<String, Object>> store = new ArrayList<>();
+        for (long time = 100; time < 160; time++) {
+            // 每秒 0~25 行，部分秒的行数超过一页
+            write(store, time, (int) (time * 7 % 26));
+        }
+        for (boolean reverse : new boolean[]{false, true}) {
+            List<Object> expected = query(store, 100, 160, 0, Integer.MAX_VALUE, reverse);
+            List<Object> paged = pageThrough(store, 100, 160, 10, reverse, 25, null);
+            Assertions.assertEquals(expected, paged, reverse ? "倒序" : "正序");
+        }
+    }
+
+    @Test
+    public void newLogsDoNotShiftReversePages() {
+        List<Map<String, Object>> store = new ArrayList<>();
+        for (long time = 100; time < 130; time++) {
+            write(store, time, 5);
+        }
+        List<Object> expected = query(store, 100, 200, 0, Integer.MAX_VALUE, true);
+        // 读完第一页后又写入新日志，offset 翻页会重复返回已读的行
+        List<Object> paged = pageThrough(store, 100, 200, 20, true, 12, () -> write(store, 150, 7));
+        Assertions.assertEquals(expected.subList(0, 20), paged.subList(0, 20));
+        Assertions.assertEquals(expected.size(), paged.size());
+        Assertions.assertEquals(expected, paged);
+    }
+
+    @Test
+    public void rejectsTokenOfAnotherQuery() {
+        List<Map<String, Object>> store = new ArrayList<>();
+        write(store, 100, 30);
+        List<Object> rows = query(store, 0, 200, 0, 10, false);
+        String token = KeysetPage.next(rows, 10, 0, 200, 0, null, false, SCOPE);
+        Assertions.assertNotNull(KeysetPage.decode(token, SCOPE));
+        Assertions.assertNull(KeysetPage.decode(token, SCOPE + "level"));
+        Assertions.assertNull(KeysetPage.decode("not-a-token", SCOPE));
+        // 不足一页时没有下一页
+        Assertions.assertNull(KeysetPage.next(rows.subList(0, 5), 10, 0, 200, 0, null, false, SCOPE));
+        // 从深偏移开始且整页在同一秒时无法确定该秒之前的行数
+        Assertions.assertNull(KeysetPage.next(query(store, 0, 200, 10, 10, false), 10, 0, 200, 10, null, false, SCOPE));
+    }
+}
@@ -0,0 +1,162 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 多日志库查询测试：k路归并与整体排序一致、来源标注、各日志库状态和日志库参数展开
+ */
+public class MultiLogstoreQueryTest {
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static Map<String, Object> row(long time, String content) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("__time__", String.valueOf(time));
+        row.put("content", content);
+        return row;
+    }
+
+    /**
+     * 模拟日志库：按时间排序后返回前 line 行
+     */
+    private static Map<String, Object> fetch(List<Map<String, Object>> rows, boolean reverse, int line) {
+        List<Map<String, Object>> sorted = new ArrayList<>(rows);
+        sorted.sort((a, b) -> {
+            int cmp = Long.compare(Long.parseLong((String) a.get("__time__")), Long.parseLong((String) b.get("__time__")));
+            return reverse ? -cmp : cmp;
+        });
+        Map<String, Object> result = new HashMap<>();
+        result.put("data", new ArrayList<>(sorted.subList(0, Math.min(line, sorted.size()))));
+        result.put(ProgressPoller.PROGRESS_FIELD, ProgressPoller.COMPLETE);
+        return result;
+    }
+
+    @Test
+    public void mergedPageMatchesGlobalSort() {
+        Random random = new Random(11);
+        List<String> logstores = Arrays.asList("app", "gateway", "job");
+        Map<String, List<Map<String, Object>>> stores = new HashMap<>();
+        for (String logstore : logstores) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                rows.add(row(1700000000L + random.nextInt(60), logstore + "-" + i));
+            }
+            stores.put(logstore, rows);
+        }
+        for (boolean reverse : new boolean[]{false, true}) {
+            for (int offset : new int[]{0, 7, 100, 130}) {
+                int line = 25;
+                Map<String, Object> result = MultiLogstoreQuery.execute(logstores, reverse, line, offset,
+                        (logstore, need) -> fetch(stores.get(logstore), reverse, need), pool::submit);
+
+                // 期望：各日志库的前 offset+line 行按时间（相同时按日志库顺序）整体排序后取一页
+                List<String> expected = new ArrayList<>();
+                List<Object[]> all = new ArrayList<>();
+                for (int s = 0; s < logstores.size(); s++) {
+                    List<?> part = (List<?>) fetch(stores.get(logstores.get(s)), reverse, offset + line).get("data");
+                    for (int i = 0; i < part.size(); i++) {
+                        all.add(new Object[]{part.get(i), s, i});
+                    }
+                }
+                all.sort((a, b) -> {
+                    long ta = Long.parseLong((String) ((Map<?, ?>) a[0]).get("__time__"));
+                    long tb = Long.parseLong((String) ((Map<?, ?>) b[0]).get("__time__"));
+                    int cmp = reverse ? Long.compare(tb, ta) : Long.compare(ta, tb);
+                    cmp = cmp != 0 ? cmp : Integer.compare((Integer) a[1], (Integer) b[1]);
+                    return cmp != 0 ? cmp : Integer.compare((Integer) a[2], (Integer) b[2]);
+                });
+                for (Object[] item : all.subList(Math.min(offset, all.size()), Math.min(offset + line, all.size()))) {
+                    expected.add(((Map<?, ?>) item[0]).get("content") + "@" + logstores.get((Integer) item[1]));
+                }
+
+                List<String> actual = new ArrayList<>();
+                for (Object item : (List<?>) result.get("data")) {
+                    Map<?, ?> map = (Map<?, ?>) item;
+                    actual.add(map.get("content") + "@" + map.get(MultiLogstoreQuery.SOURCE_FIELD));
+                }
+                Assertions.assertEquals(expected, actual, "reverse=" + reverse + " offset=" + offset);
+                Assertions.assertEquals(ProgressPoller.COMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+            }
+        }
+        // 标注来源时复制行，日志库返回的行（可能来自缓存）不被修改
+        for (List<Map<String, Object>> rows : stores.values()) {
+            for (Map<String, Object> row : rows) {
+                Assertions.assertFalse(row.containsKey(MultiLogstoreQuery.SOURCE_FIELD));
+            }
+        }
+    }
+
+    @Test
+    public void reportsStatusPerLogstore() {
+        List<String> logstores = Arrays.asList("app", "gateway", "job", "audit");
+        Map<String, Object> result = MultiLogstoreQuery.execute(logstores, false, 10, 0, (logstore, need) -> {
+            switch (logstore) {
+                case "gateway":
+                    return Collections.singletonMap("error", "日志库不存在");
+                case "job":
+                    throw new IllegalStateException("权限不足");
+                case "audit": {
+                    Map<String, Object> partial = fetch(Collections.singletonList(row(1700000002L, "a")), false, need);
+                    partial.put(ProgressPoller.PROGRESS_FIELD, ProgressPoller.INCOMPLETE);
+                    return partial;
+                }
+                default:
+                    return fetch(Arrays.asList(row(1700000001L, "x"), row(1700000003L, "y")), false, need);
+            }
+        }, pool::submit);
+
+        List<?> data = (List<?>) result.get("data");
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals("audit", ((Map<?, ?>) data.get(1)).get(MultiLogstoreQuery.SOURCE_FIELD));
+        // 任一日志库未完成时合并结果也未完成
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+
+        List<?> statuses = (List<?>) result.get("logstores");
+        Map<?, ?> app = (Map<?, ?>) statuses.get(0);
+        Assertions.assertEquals("ok", app.get("status"));
+        Assertions.assertEquals(2, app.get("rows"));
+        Assertions.assertEquals(ProgressPoller.COMPLETE, app.get(ProgressPoller.PROGRESS_FIELD));
+        Assertions.assertEquals("failed", ((Map<?, ?>) statuses.get(1)).get("status"));
+        Assertions.assertEquals("日志库不存在", ((Map<?, ?>) statuses.get(1)).get("error"));
+        Assertions.assertEquals("权限不足", ((Map<?, ?>) statuses.get(2)).get("error"));
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, ((Map<?, ?>) statuses.get(3)).get(ProgressPoller.PROGRESS_FIELD));
+
+        Map<String, Object> allFailed = MultiLogstoreQuery.execute(logstores.subList(1, 2), false, 10, 0,
+                (logstore, need) -> Collections.singletonMap("error", "日志库不存在"), pool::submit);
+        Assertions.assertEquals("所有日志库查询失败", allFailed.get("error"));
+        Assertions.assertNull(allFailed.get("data"));
+    }
+
+    @Test
+    public void expandsLogstoreArgument() {
+        List<String> configured = Arrays.asList("app", "gateway");
+        Assertions.assertEquals(configured, MultiLogstoreQuery.expand(" * ", configured));
+        Assertions.assertEquals(Arrays.asList("job", "app"), MultiLogstoreQuery.expand("job, app,,job ", configured));
+        Assertions.assertEquals(Collections.singletonList("app"), MultiLogstoreQuery.expand(" app ", configured));
+        Assertions.assertEquals(Collections.emptyList(), MultiLogstoreQuery.expand(null, configured));
+    }
+}
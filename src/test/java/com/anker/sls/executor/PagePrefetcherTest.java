@@ -0,0 +1,176 @@
+package com.anker.sls.executor;
+
+import com.anker.sls.config.SlsQueryExecutorConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * 分页预取测试：命中预取的下一页、查询条件变化时不使用其他会话的页、会话过期和按LRU淘汰时丢弃预取的页、预取失败按未命中处理
+ */
+public class PagePrefetcherTest {
+
+    private static final int LINE = 10;
+
+    private SlsQueryExecutorConfig config;
+    private QueryExecutor executor;
+    private PagePrefetcher prefetcher;
+
+    @BeforeEach
+    public void setUp() {
+        config = new SlsQueryExecutorConfig();
+        config.setThreads(4);
+        config.setPerProjectConcurrency(4);
+        config.setPerProjectQps(0);
+        config.setPrefetchPages(1);
+        executor = new QueryExecutor(config, new ProjectLimiter(config));
+        executor.init();
+        prefetcher = new PagePrefetcher(config, executor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.destroy();
+    }
+
+    /**
+     * 模拟分页查询：每页 LINE 行，记录每个offset的加载次数
+     */
+    static class Pages implements IntFunction<Map<String, Object>> {
+        final String name;
+        final Map<Integer, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+        Pages(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Map<String, Object> apply(int offset) {
+            loads.computeIfAbsent(offset, k -> new AtomicInteger()).incrementAndGet();
+            List<String> rows = new ArrayList<>();
+            for (int i = 0; i < LINE; i++) {
+                rows.add(name + "-" + (offset + i));
+            }
+            return Collections.singletonMap("data", rows);
+        }
+
+        int loads(int offset) {
+            AtomicInteger count = loads.get(offset);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    private Map<String, Object> page(String sessionKey, int offset, IntFunction<Map<String, Object>> loader) {
+        return prefetcher.page(sessionKey, "p", offset, LINE, next -> false, loader);
+    }
+
+    private static boolean hit(Map<String, Object> page) {
+        return (Boolean) ((Map<?, ?>) page.get("page")).get("prefetchHit");
+    }
+
+    private static Object first(Map<String, Object> page) {
+        return ((List<?>) page.get("data")).get(0);
+    }
+
+    @Test
+    public void servesNextPageFromPrefetch() {
+        Pages pages = new Pages("a");
+        Assertions.assertFalse(hit(page("a", 0, pages)));
+        Map<String, Object> second = page("a", 10, pages);
+        Assertions.assertTrue(hit(second));
+        Assertions.assertEquals("a-10", first(second));
+        Assertions.assertEquals(1, pages.loads(10));
+        Assertions.assertEquals(1L, prefetcher.snapshot().get("hits"));
+
+        // 不是满页时没有下一页，不再预取
+        long prefetched = (Long) prefetcher.snapshot().get("prefetched");
+        prefetcher.page("b", "p", 0, LINE, next -> false,
+                offset -> Collections.singletonMap("data", Collections.singletonList("b-0")));
+        Assertions.assertEquals(prefetched, prefetcher.snapshot().get("prefetched"));
+    }
+
+    @Test
+    public void changedParametersDoNotReuseOtherSession() {
+        config.setPrefetchMaxSessions(1);
+        Pages error = new Pages("error");
+        Pages warn = new Pages("warn");
+        page("level=ERROR", 0, error);
+
+        // 查询条件变化后是新的会话，不会取到旧条件预取的页；超过会话数上限时旧会话预取的页被丢弃
+        Map<String, Object> changed = page("level=WARN", 10, warn);
+        Assertions.assertFalse(hit(changed));
+        Assertions.assertEquals("warn-10", first(changed));
+        Map<String, Object> snapshot = prefetcher.snapshot();
+        Assertions.assertEquals(1, snapshot.get("sessions"));
+        Assertions.assertEquals(1L, snapshot.get("discarded"));
+
+        Map<String, Object> back = page("level=ERROR", 10, error);
+        Assertions.assertFalse(hit(back));
+        Assertions.assertEquals("error-10", first(back));
+    }
+
+    @Test
+    public void expiredSessionCancelsPrefetch() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Pages pages = new Pages("a");
+        page("a", 0, offset -> {
+            if (offset == 0) {
+                return pages.apply(offset);
+            }
+            // 预取一直未完成，直到会话过期被取消
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+            }
+            return null;
+        });
+        config.setPrefetchTtlSeconds(0);
+        Thread.sleep(5);
+
+        Map<String, Object> second = page("a", 10, pages);
+        Assertions.assertFalse(hit(second));
+        Assertions.assertEquals("a-10", first(second));
+        Assertions.assertTrue(cancelled.await(5, TimeUnit.SECONDS), "过期会话的预取任务应被取消");
+        Assertions.assertEquals(1L, prefetcher.snapshot().get("discarded"));
+    }
+
+    @Test
+    public void failedPrefetchIsAMiss() {
+        Pages pages = new Pages("a");
+        // 第 10、20 行开始的页第一次加载（即预取）分别抛出异常和返回错误
+        IntFunction<Map<String, Object>> flaky = offset -> {
+            int loads = pages.loads(offset);
+            if (offset == 10 && loads == 0) {
+                pages.loads.computeIfAbsent(offset, k -> new AtomicInteger()).incrementAndGet();
+                throw new IllegalStateException("429 Too Many Requests");
+            }
+            if (offset == 20 && loads == 0) {
+                pages.loads.computeIfAbsent(offset, k -> new AtomicInteger()).incrementAndGet();
+                return Collections.singletonMap("error", "timeout");
+            }
+            return pages.apply(offset);
+        };
+        page("a", 0, flaky);
+        // 预取抛出异常：重新查询
+        Map<String, Object> second = page("a", 10, flaky);
+        Assertions.assertFalse(hit(second));
+        Assertions.assertEquals("a-10", first(second));
+        // 预取返回错误结果：重新查询
+        Map<String, Object> third = page("a", 20, flaky);
+        Assertions.assertFalse(hit(third));
+        Assertions.assertEquals("a-20", first(third));
+        Assertions.assertEquals(3L, prefetcher.snapshot().get("misses"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 未完成查询补全测试：用前 N 次返回 Incomplete 的请求桩检查指数退避、截止时间和 completion 记录
+ */
+public class ProgressPollerTest {
+
+    /**
+     * 请求桩：前 incomplete 次返回 Incomplete，之后返回 Complete，记录每次请求的时间
+     */
+    static class StubRequest implements Supplier<Map<String, Object>> {
+        final int incomplete;
+        final List<Long> times = new ArrayList<>();
+
+        StubRequest(int incomplete) {
+            this.incomplete = incomplete;
+        }
+
+        @Override
+        public Map<String, Object> get() {
+            times.add(System.currentTimeMillis());
+            Map<String, Object> result = new HashMap<>();
+            result.put("data", Collections.singletonList(times.size()));
+            result.put(ProgressPoller.PROGRESS_FIELD, times.size() <= incomplete ? ProgressPoller.INCOMPLETE : ProgressPoller.COMPLETE);
+            return result;
+        }
+
+        /** 相邻两次请求的间隔 */
+        List<Long> gaps() {
+            List<Long> gaps = new ArrayList<>();
+            for (int i = 1; i < times.size(); i++) {
+                gaps.add(times.get(i) - times.get(i - 1));
+            }
+            return gaps;
+        }
+    }
+
+    private static Map<?, ?> completion(Map<String, Object> result) {
+        return (Map<?, ?>) result.get("completion");
+    }
+
+    @Test
+    public void backsOffUntilComplete() {
+        StubRequest request = new StubRequest(4);
+        Map<String, Object> result = ProgressPoller.poll(request, 60_000, 10, 40);
+
+        Assertions.assertEquals(ProgressPoller.COMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+        Assertions.assertEquals(Collections.singletonList(5), result.get("data"));
+        Map<?, ?> completion = completion(result);
+        Assertions.assertEquals(ProgressPoller.COMPLETE, completion.get("state"));
+        Assertions.assertEquals(5, completion.get("polls"));
+        // 退避时间逐次翻倍，不超过上限
+        long[] backoffs = {10, 20, 40, 40};
+        List<Long> gaps = request.gaps();
+        long slept = 0;
+        for (int i = 0; i < backoffs.length; i++) {
+            Assertions.assertTrue(gaps.get(i) >= backoffs[i], "gaps=" + gaps);
+            slept += backoffs[i];
+        }
+        Assertions.assertTrue((Long) completion.get("waitedMillis") >= slept);
+    }
+
+    @Test
+    public void stopsBeforeDeadline() {
+        StubRequest request = new StubRequest(Integer.MAX_VALUE);
+        Map<String, Object> result = ProgressPoller.poll(request, 100, 10, 40);
+
+        Map<?, ?> completion = completion(result);
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, completion.get("state"));
+        int polls = (Integer) completion.get("polls");
+        Assertions.assertEquals(request.times.size(), polls);
+        // 下一次退避会超过截止时间时返回最后一次的部分结果，已等待的退避时间不超过截止时间
+        long[] backoffs = {10, 20, 40, 40, 40};
+        long slept = 0;
+        for (int i = 0; i < polls - 1; i++) {
+            slept += backoffs[i];
+        }
+        Assertions.assertTrue(polls >= 1 && slept <= 100, "polls=" + polls);
+        Assertions.assertEquals(Collections.singletonList(polls), result.get("data"));
+
+        StubRequest once = new StubRequest(Integer.MAX_VALUE);
+        Assertions.assertEquals(1, completion(ProgressPoller.poll(once, 0, 10, 40)).get("polls"));
+    }
+
+    @Test
+    public void doesNotRetryWithoutProgressOrWhenInterrupted() {
+        Map<String, Object> failed = ProgressPoller.poll(() -> new HashMap<>(Collections.singletonMap("error", "x")), 1000, 10, 40);
+        Assertions.assertEquals("Unknown", completion(failed).get("state"));
+        Assertions.assertEquals(1, completion(failed).get("polls"));
+        Assertions.assertNull(ProgressPoller.poll(() -> null, 1000, 10, 40));
+
+        // 被取消时返回当前结果并保留中断标记
+        StubRequest request = new StubRequest(Integer.MAX_VALUE);
+        Thread.currentThread().interrupt();
+        Map<String, Object> result = ProgressPoller.poll(request, 60_000, 10, 40);
+        Assertions.assertTrue(Thread.interrupted());
+        Assertions.assertEquals(1, completion(result).get("polls"));
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+    }
+
+    @Test
+    public void readsProgressHeaderIgnoringCase() {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("X-Log-Progress", " Incomplete ");
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, ProgressPoller.progressOf(headers));
+        Assertions.assertNull(ProgressPoller.progressOf(Collections.singletonMap("x-log-count", "3")));
+        Assertions.assertNull(ProgressPoller.progressOf("not headers"));
+    }
+}
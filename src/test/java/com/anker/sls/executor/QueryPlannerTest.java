@@ -0,0 +1,66 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 执行路径规划测试：不同时间桶、行数、分组字段统计情况下选择的路径
+ */
+public class QueryPlannerTest {
+
+    /** 与默认配置相同的代价参数，每页100行 */
+    private static final QueryPlanner.CostModel MODEL = new QueryPlanner.CostModel(150, 48, 4, 500, 200, 10000, 200, 100, 5000);
+
+    private static QueryPlanner.Plan plan(long slots, boolean grouped, long rows, boolean complete, boolean aligned,
+                                          Boolean analytic) {
+        return QueryPlanner.choose(new QueryPlanner.Estimate(slots, grouped, rows, complete, aligned, analytic), MODEL);
+    }
+
+    @Test
+    public void usesFetchedHistogramWhenBucketsAlign() {
+        QueryPlanner.Plan plan = plan(24, false, 3_000_000, true, true, null);
+        Assertions.assertEquals(QueryPlanner.Path.HISTOGRAM, plan.getPath());
+        Assertions.assertFalse(plan.isSplitHistogram());
+        Assertions.assertEquals(0, plan.getEstimatedCostMillis());
+    }
+
+    @Test
+    public void splitsHistogramWhenCheaperThanSql() {
+        // 24 次直方图、4 并发：6 轮 × 150ms = 900ms，SQL 扫描一千万行 2500ms
+        QueryPlanner.Plan plan = plan(24, false, 10_000_000, true, false, null);
+        Assertions.assertEquals(QueryPlanner.Path.HISTOGRAM, plan.getPath());
+        Assertions.assertTrue(plan.isSplitHistogram());
+        Assertions.assertEquals(900, plan.getEstimatedCostMillis(), 0.01);
+
+        // 一万行时 SQL 502ms 更便宜
+        Assertions.assertEquals(QueryPlanner.Path.SQL, plan(24, false, 10_000, true, false, null).getPath());
+        // 时间桶过多时不能逐桶请求直方图
+        Assertions.assertEquals(QueryPlanner.Path.SQL, plan(720, false, 10_000_000, true, false, null).getPath());
+    }
+
+    @Test
+    public void searchesLocallyForFewRows() {
+        Assertions.assertEquals(QueryPlanner.Path.SEARCH, plan(24, false, 80, true, false, null).getPath());
+        Assertions.assertEquals(QueryPlanner.Path.SEARCH, plan(24, true, 150, true, true, true).getPath());
+        // 直方图未完成时行数只是下限，不拉取日志
+        Assertions.assertNotEquals(QueryPlanner.Path.SEARCH, plan(24, true, 150, false, true, true).getPath());
+    }
+
+    @Test
+    public void groupedQueriesDependOnAnalyticIndex() {
+        Assertions.assertEquals(QueryPlanner.Path.SQL, plan(24, true, 2_000_000, true, true, true).getPath());
+        Assertions.assertEquals(QueryPlanner.Path.SQL, plan(24, true, 2_000_000, true, true, null).getPath());
+        Assertions.assertEquals(QueryPlanner.Path.SEARCH, plan(24, true, 3000, true, true, false).getPath());
+
+        // 都不可行时退回分析语句，由SLS返回具体错误
+        QueryPlanner.Plan fallback = plan(24, true, 1_000_000, true, true, false);
+        Assertions.assertEquals(QueryPlanner.Path.SQL, fallback.getPath());
+        List<?> candidates = (List<?>) fallback.toMap().get("candidates");
+        for (Object candidate : candidates) {
+            Assertions.assertEquals(false, ((Map<?, ?>) candidate).get("feasible"));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分层抽样测试：按命中数分配样本、样本不重复且按时间排序、估算总数，以及超时的层按已拉取的行估算
+ */
+public class StratifiedSamplerTest {
+
+    private static final long HOUR = 3600;
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /** 24 个小时桶，白天的命中数是夜间的 10 倍，共 1,320,000 行 */
+    private static List<Map<String, Object>> buckets() {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++) {
+            Map<String, Object> bucket = new HashMap<>();
+            bucket.put("from", hour * HOUR);
+            bucket.put("to", (hour + 1) * HOUR);
+            bucket.put("count", hour >= 8 && hour < 20 ? 100000 : 10000);
+            bucket.put("progress", "Complete");
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * 模拟按偏移拉取：层内第 k 行的时间按所在小时的命中数均匀分布
+     */
+    private static Map<String, Object> fetch(List<Map<String, Object>> buckets, StratifiedSampler.Stratum stratum, int offset,
+                                             int size) {
+        List<Object> rows = new ArrayList<>();
+        long skip = offset;
+        for (Map<String, Object> bucket : buckets) {
+            long from = (Long) bucket.get("from");
+            int count = (Integer) bucket.get("count");
+            if (from < stratum.getFrom() || from >= stratum.getTo()) {
+                continue;
+            }
+            for (long k = Math.max(0, skip); k < count && rows.size() < size; k++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("__time__", String.valueOf(from + k * HOUR / count));
+                row.put("id", from + ":" + k);
+                rows.add(row);
+            }
+            skip -= count;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("data", rows);
+        return result;
+    }
+
+    @Test
+    public void samplesProportionallyAcrossStrata() {
+        List<Map<String, Object>> buckets = buckets();
+        Random random = new Random(42);
+        List<StratifiedSampler.Stratum> plan = StratifiedSampler.plan(buckets, 12, 500, 10, 64, random);
+        Assertions.assertEquals(12, plan.size());
+        Map<String, Object> result = StratifiedSampler.execute(plan, 5000, random,
+                (stratum, offset, size) -> pool.submit(() -> fetch(buckets, stratum, offset, size)));
+
+        List<?> data = (List<?>) result.get("data");
+        Assertions.assertEquals(500, data.size());
+        Assertions.assertEquals(1_320_000L, result.get("estimatedTotal"));
+        Assertions.assertEquals(ProgressPoller.COMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+
+        Set<Object> ids = new HashSet<>();
+        long previous = Long.MIN_VALUE;
+        int daytime = 0;
+        for (Object row : data) {
+            Map<?, ?> map = (Map<?, ?>) row;
+            Assertions.assertTrue(ids.add(map.get("id")), "样本不应重复");
+            long time = Long.parseLong((String) map.get("__time__"));
+            Assertions.assertTrue(time >= previous, "样本按时间升序");
+            previous = time;
+            if (time >= 8 * HOUR && time < 20 * HOUR) {
+                daytime++;
+            }
+        }
+        // 白天占命中数的 1200000/1320000 ≈ 90.9%
+        Assertions.assertEquals(455, daytime, 2);
+
+        long weighted = 0;
+        for (Object item : (List<?>) result.get("strata")) {
+            Map<?, ?> stratum = (Map<?, ?>) item;
+            weighted += Math.round((Integer) stratum.get("sampled") * (Double) stratum.get("weight"));
+        }
+        Assertions.assertEquals(1_320_000L, weighted, 200);
+    }
+
+    @Test
+    public void allocatesExactlyAndCapsRequests() {
+        List<Map<String, Object>> buckets = buckets();
+        List<StratifiedSampler.Stratum> plan = StratifiedSampler.plan(buckets, 5, 997, 10, 20, new Random(1));
+        int requests = 0;
+        int rows = 0;
+        for (StratifiedSampler.Stratum stratum : plan) {
+            requests += stratum.clusters.size();
+            rows += stratum.keep;
+            long end = 0;
+            for (int[] cluster : stratum.clusters) {
+                Assertions.assertTrue(cluster[0] >= end, "小段不重叠");
+                end = cluster[0] + cluster[1];
+            }
+            Assertions.assertTrue(end <= stratum.matched);
+        }
+        Assertions.assertEquals(997, rows);
+        Assertions.assertTrue(requests <= 25, "请求数 " + requests);
+    }
+
+    @Test
+    public void estimatesFromPartialStrataOnTimeout() throws InterruptedException {
+        List<Map<String, Object>> buckets = buckets();
+        Random random = new Random(7);
+        List<StratifiedSampler.Stratum> plan = StratifiedSampler.plan(buckets, 4, 200, 10, 64, random);
+        CountDownLatch interrupted = new CountDownLatch(3);
+        Map<String, Object> result = StratifiedSampler.execute(plan, 300, random, (stratum, offset, size) -> pool.submit(() -> {
+            // 第二层（6-12点，420000行，7段）后3段一直等待，直到超时被取消
+            if (stratum.getFrom() == 6 * HOUR && offset >= 240000) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            }
+            return fetch(buckets, stratum, offset, size);
+        }));
+        Assertions.assertEquals(ProgressPoller.INCOMPLETE, result.get(ProgressPoller.PROGRESS_FIELD));
+        Map<?, ?> partial = (Map<?, ?>) ((List<?>) result.get("strata")).get(1);
+        Assertions.assertEquals(420000L, partial.get("matched"));
+        Assertions.assertEquals(40, partial.get("sampled"));
+        Assertions.assertEquals(10500.0, partial.get("weight"));
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "超时的拉取应被取消");
+    }
+}
@@ -0,0 +1,130 @@
+package com.anker.sls.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间分片查询测试：随机时间范围、偏移和行数下合并结果与整段查询一致，取够行数后取消剩余分片
+ */
+public class TimeSlicedQueryTest {
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /** 模拟日志库：[0, 10000) 秒内随机分布，部分秒有多行 */
+    private static List<Map<String, Object>> store(Random random) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("__time__", (long) random.nextInt(10000));
+            row.put("id", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 模拟 SLS 按 [from, to) 查询前 line 行，同一秒内保持写入顺序
+     */
+    private static Map<String, Object> fetch(List<Map<String, Object>> store, long from, long to, int offset, int line,
+                                             boolean reverse) {
+        List<Map<String, Object>> matched = new ArrayList<>();
+        for (Map<String, Object> row : store) {
+            long time = (Long) row.get("__time__");
+            if (time >= from && time < to) {
+                matched.add(row);
+            }
+        }
+        Comparator<Map<String, Object>> byTime = Comparator.comparingLong(row -> (Long) row.get("__time__"));
+        matched.sort(reverse ? byTime.reversed() : byTime);
+        Map<String, Object> result = new HashMap<>();
+        result.put("data", new ArrayList<>(matched.subList(Math.min(offset, matched.size()),
+                Math.min(offset + line, matched.size()))));
+        result.put(ProgressPoller.PROGRESS_FIELD, ProgressPoller.COMPLETE);
+        return result;
+    }
+
+    @Test
+    public void mergedSlicesMatchSingleRequest() {
+        Random random = new Random(20240601L);
+        List<Map<String, Object>> store = store(random);
+        for (int round = 0; round < 300; round++) {
+            long from = random.nextInt(9000);
+            long to = from + 1 + random.nextInt((int) (10000 - from));
+            int line = 1 + random.nextInt(60);
+            int offset = random.nextInt(120);
+            boolean reverse = random.nextBoolean();
+            List<long[]> slices = TimeSlicedQuery.slices(from, to, from, to, 1 + random.nextInt(8), 1 + random.nextInt(400));
+
+            Map<String, Object> single = fetch(store, from, to, offset, line, reverse);
+            Map<String, Object> merged = TimeSlicedQuery.execute(slices, reverse, line, offset,
+                    (sliceFrom, sliceTo, sliceLine) -> fetch(store, sliceFrom, sliceTo, 0, sliceLine, reverse),
+                    pool::submit);
+            String context = "from=" + from + " to=" + to + " line=" + line + " offset=" + offset + " reverse=" + reverse
+                    + " slices=" + slices.size();
+            Assertions.assertEquals(single.get("data"), merged.get("data"), context);
+            Assertions.assertEquals(ProgressPoller.COMPLETE, merged.get(ProgressPoller.PROGRESS_FIELD), context);
+            Assertions.assertEquals(slices.size(), ((Map<?, ?>) merged.get("fanOut")).get("slices"), context);
+        }
+    }
+
+    @Test
+    public void cancelsRemainingSlicesOnceFilled() throws InterruptedException {
+        Random random = new Random(7);
+        List<Map<String, Object>> store = store(random);
+        CountDownLatch never = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch interrupted = new CountDownLatch(3);
+        List<long[]> slices = TimeSlicedQuery.slices(0, 10000, 0, 10000, 4, 100);
+        Assertions.assertEquals(4, slices.size());
+
+        Map<String, Object> result = TimeSlicedQuery.execute(slices, false, 20, 5, (sliceFrom, sliceTo, sliceLine) -> {
+            if (sliceFrom > 0) {
+                // 后面的分片一直等待，直到被取消
+                started.countDown();
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return fetch(store, sliceFrom, sliceTo, 0, 0, false);
+            }
+            // 等后面的分片都开始执行后再返回，取消时它们都在等待中
+            try {
+                started.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return fetch(store, sliceFrom, sliceTo, 0, sliceLine, false);
+        }, pool::submit);
+
+        Assertions.assertEquals(fetch(store, 0, 10000, 5, 20, false).get("data"), result.get("data"));
+        Map<?, ?> fanOut = (Map<?, ?>) result.get("fanOut");
+        Assertions.assertEquals(1, fanOut.get("completedSlices"));
+        Assertions.assertEquals(3, fanOut.get("cancelledSlices"));
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "取消的分片应被中断");
+    }
+}
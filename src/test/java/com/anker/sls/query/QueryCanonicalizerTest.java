@@ -0,0 +1,130 @@
+package com.anker.sls.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询语句规范化测试：语料库中语义相同的写法归为同一规范形式，语义不同的查询规范形式互不相同
+ */
+public class QueryCanonicalizerTest {
+
+    /**
+     * 语料：每组内写法语义相同，组与组之间语义不同
+     */
+    private static final String[][] GROUPS = {
+            {"*", "", "* | with_pack_meta"},
+            {"ERROR", "\"ERROR\"", "ERROR  | with_pack_meta"},
+            {"error"},
+            // 短语与拆开的关键字
+            {"\"a b\""},
+            {"a b", "a and b", "b AND a", "\"a\" \"b\"", "(a) and (b)"},
+            {"a or b", "b OR a", "\"a\" or \"b\""},
+            {"\"a and b\""},
+            {"\"a or b\""},
+            // 字段查询与同名关键字
+            {"level:ERROR", "level: ERROR", "level:\"ERROR\""},
+            {"\"level:ERROR\""},
+            {"level:error"},
+            {"ERROR level", "level ERROR"},
+            {"content:ERROR"},
+            // 模糊匹配与加引号的 *
+            {"err*"},
+            {"\"err*\""},
+            {"err"},
+            {"level:ERR*"},
+            {"level:\"ERR*\""},
+            {"err?"},
+            {"\"err?\""},
+            // NOT 的位置
+            {"a and not b", "not b and a", "a not b"},
+            {"not a and b", "b and not a"},
+            {"not (a and b)", "not (b and a)"},
+            {"not a and not b", "not b and not a"},
+            {"not (a or b)"},
+            {"not a or b"},
+            {"not (not a)"},
+            // AND/OR 的结合，AND 优先
+            {"(a or b) and c", "c and (b or a)"},
+            {"a or (b and c)", "(c and b) or a", "a or b and c"},
+            {"(a and b) or c"},
+            {"a and (b or c)"},
+            // 比较与范围
+            {"status >= 500", "status>=500"},
+            {"status > 500"},
+            {"status:500"},
+            {"status in [500 599]"},
+            {"status in [500 599)"},
+            {"status in (500 599]"},
+            // 管道后的分析语句
+            {"* | select count(*) as pv", "* | SELECT count(*) AS pv"},
+            {"ERROR | select count(*) as pv"},
+            {"* | select 'a  b'"},
+            {"* | select 'a b'"},
+    };
+
+    @Test
+    public void collapsesOnlyEquivalentWritings() {
+        QueryCanonicalizer canonicalizer = new QueryCanonicalizer();
+        Map<String, String> owners = new HashMap<>();
+        List<String> failures = new ArrayList<>();
+        for (String[] group : GROUPS) {
+            String expected = canonicalizer.canonicalize(group[0]);
+            for (String variant : group) {
+                String actual = canonicalizer.canonicalize(variant);
+                if (!expected.equals(actual)) {
+                    failures.add("同组写法不同: " + variant + " => " + actual + " (期望 " + expected + ")");
+                }
+            }
+            String owner = owners.putIfAbsent(expected, group[0]);
+            if (owner != null) {
+                failures.add("不同查询归为同一形式: " + owner + " / " + group[0] + " => " + expected);
+            }
+        }
+        Assertions.assertTrue(failures.isEmpty(), String.join("\n", failures));
+
+        Map<String, Object> snapshot = canonicalizer.snapshot(3);
+        Assertions.assertEquals(GROUPS.length, snapshot.get("canonicalForms"));
+        Map<?, ?> top = (Map<?, ?>) ((List<?>) snapshot.get("collapsed")).get(0);
+        Assertions.assertEquals(5, top.get("variants"));
+        Assertions.assertEquals("\"a\" AND \"b\"", top.get("canonical"));
+    }
+
+    @Test
+    public void junctionKeepsOperandKinds() {
+        QueryNode phrase = new QueryNode.Term("a b");
+        QueryNode a = new QueryNode.Term("a");
+        QueryNode b = new QueryNode.Term("b");
+        Assertions.assertNotEquals(phrase.canonical(), QueryNode.Junction.of("AND", Arrays.asList(a, b)).canonical());
+
+        QueryNode field = new QueryNode.Field("level", "ERROR", false);
+        QueryNode keyword = new QueryNode.Term("level:ERROR");
+        Assertions.assertNotEquals(field.canonical(), keyword.canonical());
+        Assertions.assertEquals(2, ((QueryNode.Junction) QueryNode.Junction.of("OR", Arrays.asList(field, keyword)))
+                .getOperands().size());
+
+        QueryNode fuzzy = new QueryNode.Term("err*", true);
+        QueryNode quoted = new QueryNode.Term("err*", false);
+        Assertions.assertEquals(2, ((QueryNode.Junction) QueryNode.Junction.of("OR", Arrays.asList(fuzzy, quoted)))
+                .getOperands().size());
+
+        // NOT 只作用于自己的操作数，排序后不会移到其他操作数上
+        String notB = QueryNode.Junction.of("AND", Arrays.asList(a, new QueryNode.Not(b))).canonical();
+        String notA = QueryNode.Junction.of("AND", Arrays.asList(new QueryNode.Not(a), b)).canonical();
+        String notBoth = new QueryNode.Not(QueryNode.Junction.of("AND", Arrays.asList(a, b))).canonical();
+        Assertions.assertEquals(3, new HashSet<>(Arrays.asList(notB, notA, notBoth)).size());
+        Assertions.assertEquals(notB, QueryNode.Junction.of("AND", Arrays.asList(new QueryNode.Not(b), a)).canonical());
+
+        // 嵌套的同类运算展开，不同类的保留括号
+        QueryNode nested = QueryNode.Junction.of("AND", Arrays.asList(a, QueryNode.Junction.of("AND", Arrays.asList(b, phrase))));
+        Assertions.assertEquals(3, ((QueryNode.Junction) nested).getOperands().size());
+        QueryNode mixed = QueryNode.Junction.of("AND", Arrays.asList(a, QueryNode.Junction.of("OR", Arrays.asList(b, phrase))));
+        Assertions.assertEquals("\"a\" AND (\"a b\" OR \"b\")", mixed.canonical());
+    }
+}
@@ -0,0 +1,153 @@
+package com.anker.sls.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 查询语句解析测试：语料库（发给SLS的语句、规范形式）、改写和解析缓存
+ */
+public class QueryParserTest {
+
+    /**
+     * 语料：原始语句 → 发给SLS的语句
+     */
+    private static final String[][] REQUESTS = {
+            {"", "* | with_pack_meta"},
+            {"*", "* | with_pack_meta"},
+            {"* | with_pack_meta", "* | with_pack_meta"},
+            {"ERROR", "\"ERROR\" | with_pack_meta"},
+            {"ERROR   * | with_pack_meta", "\"ERROR\" | with_pack_meta"},
+            {"ERROR timeout", "\"ERROR\" AND \"timeout\" | with_pack_meta"},
+            {"error and not debug", "\"error\" AND NOT \"debug\" | with_pack_meta"},
+            {"(a or b) and c", "(\"a\" OR \"b\") AND \"c\" | with_pack_meta"},
+            {"\"connection reset\" OR \"broken pipe\"", "\"connection reset\" OR \"broken pipe\" | with_pack_meta"},
+            {"level:ERROR", "level:\"ERROR\" | with_pack_meta"},
+            {"level: ERROR", "level:\"ERROR\" | with_pack_meta"},
+            {"level:\"ERROR\" and traceId:abc123", "level:\"ERROR\" AND traceId:\"abc123\" | with_pack_meta"},
+            {"request.method:GET", "request.method:\"GET\" | with_pack_meta"},
+            {"__tag__:__path__:\"/var/log/app.log\"", "__tag__:__path__:\"/var/log/app.log\" | with_pack_meta"},
+            {"__tag__:__hostname__:web-01", "__tag__:__hostname__:\"web-01\" | with_pack_meta"},
+            {"status >= 500", "status >= 500 | with_pack_meta"},
+            {"status>=500 and latency<100", "status >= 500 AND latency < 100 | with_pack_meta"},
+            {"latency in [100 500)", "latency in [100 500) | with_pack_meta"},
+            {"latency in (100 *]", "latency in (100 *] | with_pack_meta"},
+            {"user in beijing", "\"user\" AND \"in\" AND \"beijing\" | with_pack_meta"},
+            {"order*", "order* | with_pack_meta"},
+            {"path:/api/v?/orders*", "path:/api/v?/orders* | with_pack_meta"},
+            {"\"abc*\"", "\"abc*\" | with_pack_meta"},
+            {"12:00:00", "\"12:00:00\" | with_pack_meta"},
+            {"not level:INFO", "NOT level:\"INFO\" | with_pack_meta"},
+            {"* | select count(*) as pv group by status",
+                    "* | select count(*) as pv group by status"},
+            {"level:ERROR | SELECT date_trunc('minute', __time__) t, count(1) GROUP BY t ORDER BY t LIMIT 100",
+                    "level:\"ERROR\" | SELECT date_trunc('minute', __time__) t, count(1) GROUP BY t ORDER BY t LIMIT 100"},
+            {"* | select * where msg = 'a | b'", "* | select * where msg = 'a | b'"},
+            {"(a or b", "(a or b | with_pack_meta"},
+    };
+
+    /**
+     * 语义相同的写法规范形式相同
+     */
+    private static final String[][] EQUIVALENT = {
+            {"ERROR timeout", "timeout and ERROR", "\"timeout\" AND \"ERROR\"", "ERROR   timeout * | with_pack_meta"},
+            {"level:ERROR", "level: \"ERROR\"", "level:\"ERROR\""},
+            {"status>=500", "status >= 500"},
+            {"* | select count(*)   as pv", "* | SELECT count(*) AS pv"},
+    };
+
+    @Test
+    public void rendersRequestsForCorpus() {
+        List<String> failures = new ArrayList<>();
+        for (String[] c : REQUESTS) {
+            String actual = QueryParser.parseUncached(c[0]).toRequest(null);
+            if (!c[1].equals(actual)) {
+                failures.add(c[0] + " => " + actual + " (期望 " + c[1] + ")");
+            }
+        }
+        Assertions.assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    @Test
+    public void equivalentQueriesShareCanonicalForm() {
+        for (String[] group : EQUIVALENT) {
+            String expected = QueryParser.parseUncached(group[0]).canonical();
+            for (String variant : group) {
+                Assertions.assertEquals(expected, QueryParser.parseUncached(variant).canonical(), variant);
+            }
+        }
+        Assertions.assertNotEquals(QueryParser.parseUncached("order*").canonical(), QueryParser.parseUncached("\"order*\"").canonical());
+        Assertions.assertNotEquals(QueryParser.parseUncached("* | select 'A  B'").canonical(),
+                QueryParser.parseUncached("* | select 'A B'").canonical());
+    }
+
+    @Test
+    public void parsesFieldsRangesAndSql() {
+        ParsedQuery parsed = QueryParser.parseUncached("level:ERROR and status in [500 599] and latency > 1.5 | "
+                + "select status, count(1) as n from log where latency > 1 group by status order by n desc limit 10, 20");
+        QueryNode.Junction and = (QueryNode.Junction) parsed.getSearch();
+        Assertions.assertEquals("AND", and.getOperator());
+        QueryNode.Field field = (QueryNode.Field) and.getOperands().get(0);
+        Assertions.assertEquals("level", field.getKey());
+        Assertions.assertEquals("ERROR", field.getValue());
+        QueryNode.Range range = (QueryNode.Range) and.getOperands().get(1);
+        Assertions.assertEquals("500", range.getLow());
+        Assertions.assertEquals("599", range.getHigh());
+        Assertions.assertEquals(">", ((QueryNode.Compare) and.getOperands().get(2)).getOperator());
+
+        SqlStatement sql = parsed.getSql();
+        Assertions.assertEquals(Arrays.asList("status", "count ( 1 ) AS n"), sql.getSelectItems());
+        Assertions.assertEquals("log", sql.getClause("from"));
+        Assertions.assertEquals("latency > 1", sql.getClause("WHERE"));
+        Assertions.assertEquals("n DESC", sql.getClause("ORDER BY"));
+        Assertions.assertEquals(Integer.valueOf(20), sql.getLimit());
+        Assertions.assertNull(sql.getClause("HAVING"));
+    }
+
+    @Test
+    public void scopesKeywordsToField() {
+        ParsedQuery parsed = QueryParser.parseUncached("timeout and not (retry or level:INFO) and status >= 500");
+        Assertions.assertEquals("content:\"timeout\" AND NOT (content:\"retry\" OR level:\"INFO\") AND status >= 500 | with_pack_meta",
+                parsed.toRequest("content"));
+        Assertions.assertEquals("* | with_pack_meta", QueryParser.parseUncached("*").toRequest("content"));
+    }
+
+    @Test
+    public void cachesParsedQueries() {
+        String query = "cache-test-" + System.nanoTime() + " and level:ERROR";
+        long misses = (Long) QueryParser.cacheStats().get("misses");
+        ParsedQuery first = QueryParser.parse(query);
+        Assertions.assertSame(first, QueryParser.parse(query));
+        Assertions.assertEquals(misses + 1, (long) (Long) QueryParser.cacheStats().get("misses"));
+        for (int i = 0; i < QueryParser.CACHE_SIZE + 10; i++) {
+            QueryParser.parse("evict-" + i);
+        }
+        Assertions.assertEquals(QueryParser.CACHE_SIZE, QueryParser.cacheStats().get("entries"));
+        Assertions.assertNotSame(first, QueryParser.parse(query));
+    }
+
+    @Test
+    public void cachedParseMatchesUncached() {
+        List<String> corpus = new ArrayList<>();
+        for (String[] c : REQUESTS) {
+            corpus.add(c[0]);
+        }
+        List<ParsedQuery> first = new ArrayList<>();
+        for (String query : corpus) {
+            ParsedQuery parsed = QueryParser.parse(query);
+            Assertions.assertEquals(QueryParser.parseUncached(query).toRequest(null), parsed.toRequest(null), query);
+            first.add(parsed);
+        }
+        // 第二轮全部命中缓存，返回同一个解析结果
+        long hits = (Long) QueryParser.cacheStats().get("hits");
+        long misses = (Long) QueryParser.cacheStats().get("misses");
+        for (int i = 0; i < corpus.size(); i++) {
+            Assertions.assertSame(first.get(i), QueryParser.parse(corpus.get(i)), corpus.get(i));
+        }
+        Assertions.assertEquals(hits + corpus.size(), (long) (Long) QueryParser.cacheStats().get("hits"));
+        Assertions.assertEquals(misses, (long) (Long) QueryParser.cacheStats().get("misses"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.anker.sls.registry;
+
+import com.anker.sls.config.AliyunSLSConfig;
+import com.anker.sls.config.SystemRegistryConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 系统注册表热加载测试：检测文件变化后原子替换索引，别名随之切换，变更事件列出旧的系统名及别名
+ */
+public class SystemRegistryTest {
+
+    private static final String ADS = "  - keyword: 广告\n    endpoint: cn-a.log.aliyuncs.com\n    project: ads\n"
+            + "    logstore: ads-center\n    aliases: ads,广告中心\n";
+    private static final String TAG = "  - keyword: 标签\n    endpoint: cn-a.log.aliyuncs.com\n    project: tag\n"
+            + "    logstore: tag-logstore-prod\n";
+
+    private final List<Object> events = new ArrayList<>();
+    private Path dir;
+    private SystemRegistry registry;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("sls-registry");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (registry != null) {
+            registry.destroy();
+        }
+        Files.deleteIfExists(dir.resolve("systems.yml"));
+        Files.deleteIfExists(dir);
+    }
+
+    private static void write(File file, String prompts, long modified) throws IOException {
+        Files.write(file.toPath(), ("aliyun:\n  sls:\n    sls-prompts:\n" + prompts.replaceAll("(?m)^", "    "))
+                .getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(file.setLastModified(modified));
+    }
+
+    private SystemRegistry start(File file) {
+        Map<String, String> builtIn = new HashMap<>();
+        builtIn.put("keyword", "红旗");
+        builtIn.put("endpoint", "cn-b.log.aliyuncs.com");
+        builtIn.put("project", "redflag");
+        AliyunSLSConfig aliyunConfig = new AliyunSLSConfig();
+        aliyunConfig.setSlsPrompts(Collections.singletonList(builtIn));
+        SystemRegistryConfig registryConfig = new SystemRegistryConfig();
+        registryConfig.setConfigFile(file.getAbsolutePath());
+        // 定时检查间隔足够长，由测试直接触发检查
+        registryConfig.setReloadIntervalSeconds(3600);
+        registry = new SystemRegistry(aliyunConfig, registryConfig, events::add);
+        registry.init();
+        return registry;
+    }
+
+    @Test
+    public void reloadsChangedFileAndSwapsAliases() throws IOException {
+        File file = dir.resolve("systems.yml").toFile();
+        long modified = 1_700_000_000_000L;
+        write(file, ADS + TAG, modified);
+        SystemRegistry registry = start(file);
+
+        // 启动时外部文件覆盖 application.yml 中的配置
+        Assertions.assertEquals("ads", registry.resolve("ads").getProject());
+        Assertions.assertEquals("广告", registry.resolve("广告中心").getKeyword());
+        Assertions.assertNull(registry.find("红旗"));
+        Assertions.assertEquals(1, events.size());
+        SystemRegistryChangedEvent initial = (SystemRegistryChangedEvent) events.get(0);
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("广告", "标签")), initial.getAdded());
+        Assertions.assertEquals(Collections.singleton("红旗"), initial.getRemoved());
+
+        // 文件未变化时不重新加载
+        registry.checkFile(file);
+        Assertions.assertEquals(1, events.size());
+
+        String moved = "  - keyword: 广告\n    endpoint: cn-a.log.aliyuncs.com\n    project: ads-v2\n"
+                + "    logstore: ads-center\n    aliases: ads-new\n";
+        String order = "  - keyword: 订单\n    endpoint: cn-a.log.aliyuncs.com\n    project: order\n";
+        write(file, moved + order, modified + 5000);
+        registry.checkFile(file);
+
+        Assertions.assertEquals("ads-v2", registry.resolve("ads-new").getProject());
+        Assertions.assertNull(registry.find("ads"));
+        Assertions.assertNull(registry.find("广告中心"));
+        Assertions.assertNull(registry.find("标签"));
+        Assertions.assertEquals("order", registry.resolve("订单").getProject());
+        Assertions.assertEquals(Arrays.asList("广告", "订单"), new ArrayList<>(keywords(registry)));
+
+        Assertions.assertEquals(2, events.size());
+        SystemRegistryChangedEvent event = (SystemRegistryChangedEvent) events.get(1);
+        Assertions.assertEquals(Collections.singleton("订单"), event.getAdded());
+        Assertions.assertEquals(Collections.singleton("标签"), event.getRemoved());
+        Assertions.assertEquals(Collections.singleton("广告"), event.getChanged());
+        // 变更前的系统名和别名都可能是缓存key中的系统名
+        Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("广告", "ads", "广告中心", "标签")), event.getStaleNames());
+    }
+
+    @Test
+    public void keepsIndexWhenFileIsBroken() throws IOException {
+        File file = dir.resolve("systems.yml").toFile();
+        long modified = 1_700_000_000_000L;
+        write(file, ADS, modified);
+        SystemRegistry registry = start(file);
+
+        Files.write(file.toPath(), "aliyun: [unclosed".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(file.setLastModified(modified + 5000));
+        registry.checkFile(file);
+        Assertions.assertEquals("ads", registry.resolve("ads").getProject());
+
+        // 相同内容重新写入时没有变更，不发布事件
+        write(file, ADS, modified + 10000);
+        registry.checkFile(file);
+        Assertions.assertEquals(1, events.size());
+    }
+
+    private static List<String> keywords(SystemRegistry registry) {
+        List<String> keywords = new ArrayList<>();
+        for (SystemEntry entry : registry.getSystems()) {
+            keywords.add(entry.getKeyword());
+        }
+        return keywords;
+    }
+}
@@ -0,0 +1,93 @@
+package com.anker.sls.result;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 字段投影测试：字段列表解析、流式解析时跳过不需要的嵌套值、下推为分析语句
+ */
+public class FieldProjectionTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** 不需要的字段中含嵌套对象、数组和形似 JSON 的字符串 */
+    private static final String ROWS = "["
+            + "{\"__time__\":\"1700000000\",\"__tag__:__pack_id__\":\"p-1\",\"__pack_meta__\":\"0|m|1\","
+            + "\"level\":\"ERROR\",\"content\":\"boom\","
+            + "\"payload\":{\"a\":[1,{\"b\":[2,3]},\"]}\"],\"c\":{\"d\":null}},"
+            + "\"tags\":[[\"x\"],{\"y\":\"}\"}],\"latency\":12.5,\"ctx\":{\"traceId\":\"t1\"}},"
+            + "{\"__time__\":\"1700000001\",\"payload\":\"{not json\",\"level\":\"INFO\"},"
+            + "\"raw line\""
+            + "]";
+
+    @Test
+    public void parsesFieldList() {
+        Assertions.assertNull(FieldProjection.of(null));
+        Assertions.assertNull(FieldProjection.of("  "));
+        Assertions.assertNull(FieldProjection.of(" * "));
+        Assertions.assertNull(FieldProjection.of(" , ,"));
+        Set<String> fields = FieldProjection.of(" level , content,level");
+        Assertions.assertEquals(Arrays.asList("level", "content", "__time__", "__tag__:__pack_id__", "__pack_meta__"),
+                Arrays.asList(fields.toArray()));
+        Assertions.assertEquals(FieldProjection.canonical(fields), FieldProjection.canonical(FieldProjection.of("content,level")));
+        Assertions.assertEquals("*", FieldProjection.canonical(null));
+    }
+
+    @Test
+    public void skipsNestedValuesOfUnselectedFields() throws IOException {
+        Set<String> fields = FieldProjection.of("level,ctx");
+        List<?> rows = (List<?>) FieldProjection.parse(objectMapper, ROWS, fields);
+        Assertions.assertEquals(3, rows.size());
+
+        Map<?, ?> first = (Map<?, ?>) rows.get(0);
+        Assertions.assertEquals(Arrays.asList("__time__", "__tag__:__pack_id__", "__pack_meta__", "level", "ctx"),
+                Arrays.asList(first.keySet().toArray()));
+        Assertions.assertEquals("ERROR", first.get("level"));
+        Assertions.assertEquals("t1", ((Map<?, ?>) first.get("ctx")).get("traceId"));
+
+        // 跳过嵌套值后继续解析后面的行，缺少的必需字段不补
+        Map<?, ?> second = (Map<?, ?>) rows.get(1);
+        Assertions.assertEquals(2, second.size());
+        Assertions.assertEquals("1700000001", second.get("__time__"));
+        Assertions.assertEquals("INFO", second.get("level"));
+        Assertions.assertEquals("raw line", rows.get(2));
+    }
+
+    @Test
+    public void projectsLogsInsideContextResponse() throws IOException {
+        String body = "{\"total_lines\":2,\"logs\":" + ROWS + ",\"meta\":{\"logs\":[{\"content\":\"kept\"}]},"
+                + "\"back_lines\":1}";
+        Map<?, ?> result = (Map<?, ?>) FieldProjection.parse(objectMapper, body, FieldProjection.of("level"));
+        Assertions.assertEquals(2, result.get("total_lines"));
+        Assertions.assertEquals(1, result.get("back_lines"));
+        Map<?, ?> first = (Map<?, ?>) ((List<?>) result.get("logs")).get(0);
+        Assertions.assertFalse(first.containsKey("content"));
+        Assertions.assertFalse(first.containsKey("payload"));
+        // 只投影顶层的 logs，其他字段原样读取
+        Assertions.assertEquals(objectMapper.readValue("{\"logs\":[{\"content\":\"kept\"}]}", Map.class), result.get("meta"));
+
+        // 不投影时完整解析
+        Assertions.assertEquals(objectMapper.readValue(body, Object.class), FieldProjection.parse(objectMapper, body, null));
+        Assertions.assertEquals(7, FieldProjection.parse(objectMapper, "7", FieldProjection.of("level")));
+    }
+
+    @Test
+    public void pushesProjectionDownAsSelect() {
+        Set<String> fields = FieldProjection.of("level,__tag__:__hostname__,request.method");
+        Assertions.assertEquals("select \"level\", \"__tag__:__hostname__\", \"request.method\", \"__time__\", "
+                        + "\"__tag__:__pack_id__\" order by __time__ desc limit 40, 20",
+                FieldProjection.select(fields, 20, 40, true));
+        Assertions.assertEquals("select \"level\" order by __time__ asc limit 0, 0",
+                FieldProjection.select(new LinkedHashSet<>(Arrays.asList("level", "__pack_meta__")), -1, -5, false));
+        Assertions.assertNull(FieldProjection.select(FieldProjection.of("level,bad\"name"), 20, 0, false));
+        Assertions.assertNull(FieldProjection.select(FieldProjection.of("a b"), 20, 0, false));
+    }
+}
@@ -0,0 +1,122 @@
+package com.anker.sls.result;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重复日志折叠测试：脱敏后相同的日志折叠为一行、分组数上限、非 Map 行和只出现一次的行原样输出
+ */
+public class LogFolderTest {
+
+    private static Map<String, Object> row(long time, String content) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("__time__", String.valueOf(time));
+        row.put("__tag__:__pack_id__", "pack-" + time);
+        row.put("__pack_meta__", "0|meta|" + time);
+        row.put("content", content);
+        return row;
+    }
+
+    private static Map<String, Object> result(List<Object> rows) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", rows);
+        result.put("progress", "Complete");
+        return result;
+    }
+
+    private static Map<?, ?> fold(Object row) {
+        return (Map<?, ?>) ((Map<?, ?>) row).get(LogFolder.FOLD_FIELD);
+    }
+
+    @Test
+    public void foldsRepeatedRowsIntoFirstOccurrence() {
+        List<Object> rows = new ArrayList<>();
+        rows.add(row(1700000003L, "order 1001 timeout after 300 ms"));
+        rows.add(row(1700000001L, "cache miss key=sku_7"));
+        rows.add(row(1700000002L, "order 1002 timeout after 512 ms"));
+        rows.add(row(1700000005L, "order 1003 timeout after 90 ms"));
+        Map<String, Object> folded = LogFolder.fold(result(rows), 10, 2, 512);
+
+        List<?> data = (List<?>) folded.get("data");
+        Assertions.assertEquals(2, data.size());
+        // 代表行是首次出现的那一行，保留原有顺序
+        Assertions.assertEquals("order 1001 timeout after 300 ms", ((Map<?, ?>) data.get(0)).get("content"));
+        Map<?, ?> fold = fold(data.get(0));
+        Assertions.assertEquals(3, fold.get("count"));
+        Assertions.assertEquals("1700000002", fold.get("firstTime"));
+        Assertions.assertEquals("1700000005", fold.get("lastTime"));
+        List<?> examples = (List<?>) fold.get("examples");
+        Assertions.assertEquals(2, examples.size());
+        Assertions.assertEquals("pack-1700000003", ((Map<?, ?>) examples.get(0)).get("pack_id"));
+        Assertions.assertEquals("0|meta|1700000002", ((Map<?, ?>) examples.get(1)).get("pack_meta"));
+
+        // 只出现一次的行不加折叠信息
+        Assertions.assertSame(rows.get(1), data.get(1));
+        Map<?, ?> folding = (Map<?, ?>) folded.get("folding");
+        Assertions.assertEquals(4, folding.get("rows"));
+        Assertions.assertEquals(2, folding.get("groups"));
+        Assertions.assertEquals(2, folding.get("returnedRows"));
+        Assertions.assertEquals(0, folding.get("overflowRows"));
+        Assertions.assertEquals("Complete", folded.get("progress"));
+
+        // 原结果不被修改
+        Assertions.assertEquals(4, rows.size());
+        Assertions.assertNull(fold(rows.get(0)));
+    }
+
+    @Test
+    public void rowsBeyondGroupLimitPassThrough() {
+        List<Object> rows = new ArrayList<>();
+        rows.add(row(1L, "login alice"));
+        rows.add(row(2L, "login bob"));
+        rows.add(row(3L, "logout alice"));
+        rows.add(row(4L, "login alice"));
+        rows.add(row(5L, "logout alice"));
+        Map<String, Object> folded = LogFolder.fold(result(rows), 2, 3, 512);
+
+        List<?> data = (List<?>) folded.get("data");
+        // 达到上限后新出现的内容原样输出，已有分组继续计数
+        Assertions.assertEquals(4, data.size());
+        Assertions.assertEquals(2, fold(data.get(0)).get("count"));
+        Assertions.assertSame(rows.get(1), data.get(1));
+        Assertions.assertSame(rows.get(2), data.get(2));
+        Assertions.assertSame(rows.get(4), data.get(3));
+        Map<?, ?> folding = (Map<?, ?>) folded.get("folding");
+        Assertions.assertEquals(2, folding.get("groups"));
+        Assertions.assertEquals(2, folding.get("overflowRows"));
+    }
+
+    @Test
+    public void nonMapRowsAndNonListDataPassThrough() {
+        List<Object> rows = new ArrayList<>(Arrays.asList("raw line", row(1L, "boom 1"), 42, row(2L, "boom 2")));
+        List<?> data = (List<?>) LogFolder.fold(result(rows), 10, 3, 512).get("data");
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals("raw line", data.get(0));
+        Assertions.assertEquals(2, fold(data.get(1)).get("count"));
+        Assertions.assertEquals(42, data.get(2));
+
+        Map<String, Object> notRows = new LinkedHashMap<>();
+        notRows.put("data", "not a list");
+        Assertions.assertSame(notRows, LogFolder.fold(notRows, 10, 3, 512));
+        Assertions.assertNull(LogFolder.fold(null, 10, 3, 512));
+    }
+
+    @Test
+    public void masksNumbersDatesAndLongHex() {
+        StringBuilder sb = new StringBuilder();
+        LogFolder.mask("2024-10-19 10:00:00.123 from 10.0.0.7 trace 0af7651916cd43dd8448eb211c80319c ok", sb, 512);
+        Assertions.assertEquals("<*> <*> from <*> trace <*> ok", sb.toString());
+
+        Map<String, Object> row = row(1L, "x");
+        row.put("level", "ERROR");
+        Assertions.assertEquals("content=x\nlevel=ERROR\n", LogFolder.normalize(row, 512));
+        // 超过长度上限后不再拼接
+        Assertions.assertEquals("content=\n", LogFolder.normalize(row, 5));
+    }
+}
@@ -0,0 +1,150 @@
+package com.anker.sls.result;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 结果裁剪测试：按预算保留高优先级的行、超长值截断标注、低价值字段去掉而必需字段保留
+ */
+public class ResponseShaperTest {
+
+    private static final String LEVEL_FIELDS = "level,content";
+
+    private static Map<String, Object> row(long time, String level, String content) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("__time__", String.valueOf(time));
+        row.put("__tag__:__pack_id__", "pack-" + time);
+        row.put("__pack_meta__", "0|meta|" + time);
+        row.put("level", level);
+        row.put("content", content);
+        return row;
+    }
+
+    private static Map<String, Object> result(List<Map<String, Object>> rows) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", rows);
+        result.put("progress", "Complete");
+        return result;
+    }
+
+    private static Map<?, ?> shaping(Map<String, Object> shaped) {
+        return (Map<?, ?>) shaped.get(ResponseShaper.SHAPING_FIELD);
+    }
+
+    @Test
+    public void keepsHighestPriorityRowsWithinBudget() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String level = i % 20 == 0 ? "ERROR" : i % 7 == 0 ? "WARN" : "INFO";
+            rows.add(row(1_700_000_000L + i, level, "request " + i + " finished with some ordinary detail text"));
+        }
+        long budget = 1500;
+        Map<String, Object> shaped = ResponseShaper.shape(result(rows), "data",
+                new ResponseShaper.Options(0, budget, 2000, "__tag__:__pack_id__", "", LEVEL_FIELDS));
+        Map<?, ?> shaping = shaping(shaped);
+        List<?> data = (List<?>) shaped.get("data");
+
+        int returned = (Integer) shaping.get("returnedRows");
+        Assertions.assertTrue(returned > 10 && returned < 200, "returnedRows=" + returned);
+        Assertions.assertEquals(data.size(), returned);
+        Assertions.assertEquals(200 - returned, shaping.get("omittedRows"));
+        Assertions.assertTrue((Long) shaping.get("estimatedTokens") <= budget);
+        Assertions.assertNotNull(shaping.get("hint"));
+        Assertions.assertEquals("Complete", shaped.get("progress"));
+
+        // 10 条 ERROR 全部保留，其余按时间从新到旧选择，输出保持原有顺序
+        long errors = data.stream().filter(r -> "ERROR".equals(((Map<?, ?>) r).get("level"))).count();
+        Assertions.assertEquals(10, errors);
+        long previous = 0;
+        for (Object item : data) {
+            long time = Long.parseLong((String) ((Map<?, ?>) item).get("__time__"));
+            Assertions.assertTrue(time > previous);
+            previous = time;
+        }
+        Map<?, ?> omittedLevels = (Map<?, ?>) shaping.get("omittedLevels");
+        Assertions.assertNull(omittedLevels.get("ERROR"));
+        Assertions.assertEquals(1_700_000_001L, shaping.get("omittedFirstTime"));
+
+        // 原结果不被修改，不限预算时全部返回
+        Assertions.assertEquals(200, rows.size());
+        Map<String, Object> unlimited = ResponseShaper.shape(result(rows), "data",
+                new ResponseShaper.Options(0, 0, 2000, "__tag__:__pack_id__", "", LEVEL_FIELDS));
+        Assertions.assertEquals(200, ((List<?>) unlimited.get("data")).size());
+        Assertions.assertNull(shaping(unlimited).get("hint"));
+    }
+
+    @Test
+    public void byteBudgetSmallerThanFirstRowReturnsNothing() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(row(1_700_000_000L, "ERROR", "x"));
+        Map<String, Object> shaped = ResponseShaper.shape(result(rows), "data",
+                new ResponseShaper.Options(100, 0, 2000, "", "", LEVEL_FIELDS));
+        Assertions.assertTrue(((List<?>) shaped.get("data")).isEmpty());
+        Assertions.assertEquals(1, shaping(shaped).get("omittedRows"));
+
+        Map<String, Object> notRows = new HashMap<>();
+        notRows.put("data", "not a list");
+        Assertions.assertSame(notRows, ResponseShaper.shape(notRows, "data",
+                new ResponseShaper.Options(100, 0, 2000, "", "", LEVEL_FIELDS)));
+    }
+
+    @Test
+    public void truncatesLongValuesWithMarker() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longText.append("堆栈").append(i).append(' ');
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Map<String, Object> row = row(1_700_000_000L, "ERROR", longText.toString());
+        row.put("latency", 123456789L);
+        rows.add(row);
+        rows.add(row(1_700_000_001L, "INFO", "short"));
+
+        Map<String, Object> shaped = ResponseShaper.shape(result(rows), "data",
+                new ResponseShaper.Options(0, 0, 100, "__tag__:__pack_id__", "", LEVEL_FIELDS));
+        List<?> data = (List<?>) shaped.get("data");
+        String content = (String) ((Map<?, ?>) data.get(0)).get("content");
+        Assertions.assertEquals(longText.substring(0, 100) + "…[已截断，共" + longText.length() + "字符]", content);
+        Assertions.assertEquals(123456789L, ((Map<?, ?>) data.get(0)).get("latency"));
+        Assertions.assertEquals("short", ((Map<?, ?>) data.get(1)).get("content"));
+        Assertions.assertEquals(1, shaping(shaped).get("truncatedValues"));
+        Assertions.assertEquals(longText.toString(), row.get("content"));
+    }
+
+    @Test
+    public void dropsLowValueFieldsButKeepsRequired() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> row = row(1_700_000_000L + i, "INFO", "ok");
+            row.put("__tag__:__hostname__", "web-0" + i);
+            row.put("__tag__:__receive_time__", "1700000000");
+            row.put("__topic__", "");
+            row.put("noise", "debug payload");
+            rows.add(row);
+        }
+        // 配置中去掉了时间和 pack 字段，也未保留 pack_id 标签，必需字段仍然保留
+        Map<String, Object> shaped = ResponseShaper.shape(result(rows), "data",
+                new ResponseShaper.Options(0, 0, 2000, "__tag__:__hostname__", "noise,__time__,__pack_meta__", LEVEL_FIELDS));
+        for (Object item : (List<?>) shaped.get("data")) {
+            Map<?, ?> row = (Map<?, ?>) item;
+            for (String field : FieldProjection.REQUIRED) {
+                Assertions.assertNotNull(row.get(field), field);
+            }
+            Assertions.assertTrue(row.containsKey("__tag__:__hostname__"));
+            Assertions.assertFalse(row.containsKey("__tag__:__receive_time__"));
+            Assertions.assertFalse(row.containsKey("__topic__"));
+            Assertions.assertFalse(row.containsKey("noise"));
+        }
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("__tag__:__receive_time__", 3);
+        expected.put("__topic__", 3);
+        expected.put("noise", 3);
+        Assertions.assertEquals(expected, shaping(shaped).get("droppedFields"));
+    }
+}